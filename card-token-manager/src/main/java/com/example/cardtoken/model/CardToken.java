@@ -1,80 +1,95 @@
 package com.example.cardtoken.model;
 
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 
 import java.time.LocalDateTime;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.Set;
 
-/** Represents a tokenized card in the system. */
-@Data
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
+/**
+ * Represents a tokenized card in the system. Tokens are immutable snapshots: a change builds a new
+ * token with {@link #toBuilder()} and replaces the stored one with {@code TokenVault.replace}, so
+ * a token can be shared between threads and the detokenization cache without copying.
+ */
+@Value
+@Builder(toBuilder = true)
 public class CardToken {
     /** Unique token reference ID */
-    private String tokenReference;
+    String tokenReference;
 
-    /** The payment networks that can use this token */
-    @Builder.Default private Set<PaymentMethod> paymentMethods = new HashSet<>();
+    /** The payment networks that can use this token, as a {@link PaymentMethodMask} */
+    int paymentMethodMask;
 
     /** The token value that replaces the PAN (Primary Account Number) */
-    private String tokenValue;
+    String tokenValue;
 
     /** The BIN (first 6 digits) of the token */
-    private String tokenBin;
+    String tokenBin;
 
     /** The last 4 digits of the original card number (preserved for display purposes) */
-    private String lastFour;
+    String lastFour;
 
     /** The expiration month of the token */
-    private int expiryMonth;
+    int expiryMonth;
 
     /** The expiration year of the token */
-    private int expiryYear;
+    int expiryYear;
 
     /**
      * The original PAN (encrypted or masked, depending on implementation) In a real system, this
      * would be securely encrypted
      */
-    private String maskedPan;
+    String maskedPan;
+
+    /**
+     * Keyed fingerprint of the PAN (HMAC-SHA256 truncated to 128 bits), used to find the tokens of
+     * a card without storing the PAN
+     */
+    String panFingerprint;
 
     /** When the token was created */
-    private LocalDateTime createdAt;
+    LocalDateTime createdAt;
 
     /** When the token expires */
-    private LocalDateTime expiresAt;
+    LocalDateTime expiresAt;
 
     /** Status of the token (ACTIVE, SUSPENDED, EXPIRED) */
-    private TokenStatus status;
+    TokenStatus status;
 
     /**
-     * Checks if the token is active
+     * Gets the payment networks that can use this token.
      *
-     * @return true if the token is active and not expired
+     * @return A new set of the payment methods, which the caller may modify
+     */
+    public Set<PaymentMethod> getPaymentMethods() {
+        return PaymentMethodMask.toSet(paymentMethodMask);
+    }
+
+    /**
+     * Checks if the token is active. Tokens are set to EXPIRED when their expiry date passes, so
+     * the status alone tells.
+     *
+     * @return true if the token is active
      */
     public boolean isActive() {
-        return status == TokenStatus.ACTIVE
-                && (expiresAt == null || expiresAt.isAfter(LocalDateTime.now()));
+        return status == TokenStatus.ACTIVE;
     }
 
     /**
-     * Adds a payment method to this token
+     * Creates a copy of this token that also supports a payment method.
      *
      * @param paymentMethod The payment method to add
-     * @return this token for method chaining
+     * @return The new token, or this token if it already supports the payment method
      */
-    public CardToken addPaymentMethod(PaymentMethod paymentMethod) {
-        if (paymentMethods == null) {
-            paymentMethods = new HashSet<>();
+    public CardToken withPaymentMethod(PaymentMethod paymentMethod) {
+        if (supportsPaymentMethod(paymentMethod)) {
+            return this;
         }
-        paymentMethods.add(paymentMethod);
-        return this;
+        return toBuilder().paymentMethod(paymentMethod).build();
     }
 
     /**
@@ -84,6 +99,30 @@ public class CardToken {
      * @return true if this token supports the payment method
      */
     public boolean supportsPaymentMethod(PaymentMethod paymentMethod) {
-        return paymentMethods != null && paymentMethods.contains(paymentMethod);
+        return PaymentMethodMask.contains(paymentMethodMask, paymentMethod);
+    }
+
+    /** Builds tokens; payment methods may be given as a collection or one at a time. */
+    public static class CardTokenBuilder {
+
+        /**
+         * Sets the payment methods of the token.
+         *
+         * @param paymentMethods The payment methods
+         * @return this builder
+         */
+        public CardTokenBuilder paymentMethods(Collection<PaymentMethod> paymentMethods) {
+            return paymentMethodMask(PaymentMethodMask.of(paymentMethods));
+        }
+
+        /**
+         * Adds a payment method to the token.
+         *
+         * @param paymentMethod The payment method
+         * @return this builder
+         */
+        public CardTokenBuilder paymentMethod(PaymentMethod paymentMethod) {
+            return paymentMethodMask(paymentMethodMask | PaymentMethodMask.bit(paymentMethod));
+        }
     }
 }
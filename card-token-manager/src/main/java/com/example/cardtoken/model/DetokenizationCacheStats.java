@@ -0,0 +1,34 @@
+package com.example.cardtoken.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Counters of the detokenization cache since startup. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetokenizationCacheStats {
+    /** Lookups answered from the cache */
+    private long hits;
+
+    /** Lookups that had to go to the token vault */
+    private long misses;
+
+    /** Hits divided by all lookups, 0 before the first lookup */
+    private double hitRatio;
+
+    /** Entries removed because their time to live passed */
+    private long expirations;
+
+    /** Entries removed to keep the cache within its size limit */
+    private long evictions;
+
+    /** Entries removed because their token changed or was deleted */
+    private long invalidations;
+
+    /** Entries currently cached */
+    private long size;
+}
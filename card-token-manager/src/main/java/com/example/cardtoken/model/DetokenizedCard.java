@@ -0,0 +1,21 @@
+package com.example.cardtoken.model;
+
+import com.example.shared.model.CardDetails;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** An active token together with the card details it stands for. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetokenizedCard {
+    /** The token; may be shared with the detokenization cache and must not be modified */
+    private CardToken token;
+
+    /** The card details of the token */
+    private CardDetails cardDetails;
+}
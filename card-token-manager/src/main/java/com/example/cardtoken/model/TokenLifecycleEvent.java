@@ -0,0 +1,27 @@
+package com.example.cardtoken.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Published when a token expires or is purged from the vault. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenLifecycleEvent {
+    /** The token reference */
+    private String tokenReference;
+
+    /** What happened to the token */
+    private TokenLifecycleEventType type;
+
+    /** The status of the token before the transition */
+    private TokenStatus previousStatus;
+
+    /** When the transition was made */
+    private LocalDateTime occurredAt;
+}
@@ -0,0 +1,10 @@
+package com.example.cardtoken.model;
+
+/** The lifecycle transitions a token makes without a request. */
+public enum TokenLifecycleEventType {
+    /** The token reached its expiry date and its status was set to EXPIRED */
+    EXPIRED,
+
+    /** The token was expired or deleted for the retention period and was removed from the vault */
+    PURGED
+}
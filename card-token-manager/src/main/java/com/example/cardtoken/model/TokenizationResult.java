@@ -0,0 +1,19 @@
+package com.example.cardtoken.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** The token of one card of a tokenization batch. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenizationResult {
+    /** The token of the card */
+    private CardToken token;
+
+    /** False if the card already had a usable token, which is returned instead of a new one */
+    private boolean created;
+}
@@ -0,0 +1,890 @@
+package com.example.cardtoken.repository;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.shared.util.FastHash;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Durable token vault in a local directory. Every change is appended to a checksummed {@link
+ * TokenLog}, and a {@link MappedTokenIndex} maps token references, token values and PAN
+ * fingerprints to the latest record of each token. Both files are memory-mapped, so a lookup is a
+ * few hash probes and a copy of one record.
+ *
+ * <p>Writers are serialized for the append and the index update, then wait for the log to be
+ * forced with group commit, so concurrent writers share a force; throughput is then bounded by
+ * the force latency times the number of concurrent writers. With a sync interval, writers return
+ * without waiting and the log is forced in the background; an operating system crash or power
+ * loss then loses up to one interval of changes, while a crash of the process alone loses none
+ * because the log is memory-mapped. Readers take an optimistic stamp on the index and only lock
+ * if a writer changed it in the meantime.
+ *
+ * <p>On a clean shutdown the index is forced to disk and marked clean, and is reused on startup.
+ * After a crash, or if the index does not belong to the log, the log is scanned up to its last
+ * intact record and the index is rebuilt from it. When most of the log is taken up by deleted or
+ * replaced tokens, it is compacted in the background into a new log holding only the current
+ * tokens, which replaces the old one.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "card-token.vault.type", havingValue = "file")
+public class FileTokenVault implements TokenVault {
+
+    static final String LOG_FILE = "tokens.log";
+    static final String INDEX_FILE = "tokens.idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Each operation that writes new files has its own temporary names, so that a compaction
+    // copying without the write lock never shares a file with an index growth or a clear
+    private static final String CLEAR = "clear";
+    private static final String COMPACT = "compact";
+    private static final String GROW = "grow";
+    private static final String[] OPERATIONS = {CLEAR, COMPACT, GROW};
+
+    // Tables are grown before more than 3/4 of their slots are used
+    private static final int MAX_LOAD_NUMERATOR = 3;
+    private static final int MAX_LOAD_SHIFT = 2;
+
+    private static final long[] SEEDS = {
+        FastHash.hash64("token-reference"),
+        FastHash.hash64("token-value"),
+        FastHash.hash64("token-pan-fingerprint")
+    };
+
+    // Per-thread record buffers: one to encode changes into, one to read records into
+    private static final ThreadLocal<ByteBuffer> ENCODE_BUFFER =
+            ThreadLocal.withInitial(
+                    () -> ByteBuffer.allocateDirect(TokenRecordCodec.MAX_RECORD_BYTES));
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(
+                    () -> ByteBuffer.allocateDirect(TokenRecordCodec.MAX_RECORD_BYTES));
+
+    private final Path directory;
+    private final Path logPath;
+    private final Path indexPath;
+    private final int initialSlots;
+    private final long syncIntervalMillis;
+    private final long compactionCheckIntervalSeconds;
+    private final long compactionMinBytes;
+    private final SecureRandom random = new SecureRandom();
+    private final ScheduledExecutorService maintenance;
+
+    // Serializes appends and index changes
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Lets readers detect index changes and swaps of the log and index
+    private final StampedLock indexLock = new StampedLock();
+
+    private volatile TokenLog tokenLog;
+    private volatile MappedTokenIndex index;
+
+    // Bytes of the current records of all tokens, guarded by the write lock
+    private long liveBytes;
+
+    /**
+     * Opens the vault, creating it if the directory holds none, and recovers it after a crash.
+     *
+     * @param directory The directory of the vault files
+     * @param indexSlots The initial number of index slots per table, rounded up to a power of two
+     * @param syncIntervalMillis The interval between background forces of the log, 0 to force
+     *     before every change returns
+     * @param compactionCheckIntervalSeconds The interval between checks whether to compact the log
+     * @param compactionMinBytes The smallest log that is compacted
+     */
+    public FileTokenVault(
+            @Value("${card-token.vault.directory:data/token-vault}") String directory,
+            @Value("${card-token.vault.index-slots:1048576}") int indexSlots,
+            @Value("${card-token.vault.sync-interval-ms:0}") long syncIntervalMillis,
+            @Value("${card-token.vault.compaction-check-interval-seconds:60}")
+                    long compactionCheckIntervalSeconds,
+            @Value("${card-token.vault.compaction-min-bytes:67108864}") long compactionMinBytes) {
+        if (indexSlots < MappedTokenIndex.MIN_SLOTS || indexSlots > MappedTokenIndex.MAX_SLOTS) {
+            throw new IllegalArgumentException(
+                    "Index slots must be between "
+                            + MappedTokenIndex.MIN_SLOTS
+                            + " and "
+                            + MappedTokenIndex.MAX_SLOTS);
+        }
+        if (syncIntervalMillis < 0 || compactionMinBytes < 0) {
+            throw new IllegalArgumentException(
+                    "Sync interval and compaction size must not be negative");
+        }
+        if (compactionCheckIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("Compaction check interval must be positive");
+        }
+
+        this.directory = Path.of(directory);
+        this.logPath = this.directory.resolve(LOG_FILE);
+        this.indexPath = this.directory.resolve(INDEX_FILE);
+        this.initialSlots = Integer.highestOneBit(indexSlots - 1) << 1;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.compactionCheckIntervalSeconds = compactionCheckIntervalSeconds;
+        this.compactionMinBytes = compactionMinBytes;
+        this.maintenance =
+                Executors.newScheduledThreadPool(
+                        2,
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "token-vault-maintenance");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+
+        try {
+            Files.createDirectories(this.directory);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open token vault in " + directory, e);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (syncIntervalMillis > 0) {
+            maintenance.scheduleWithFixedDelay(
+                    () -> tokenLog.sync(tokenLog.end()),
+                    syncIntervalMillis,
+                    syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        maintenance.scheduleWithFixedDelay(
+                this::compactIfWasteful,
+                compactionCheckIntervalSeconds,
+                compactionCheckIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        maintenance.shutdown();
+        try {
+            if (!maintenance.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Token vault maintenance did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writeLock.lock();
+        try {
+            TokenLog currentLog = tokenLog;
+            currentLog.syncAll();
+            index.checkpoint(currentLog.end(), liveBytes, true);
+            currentLog.close();
+            index.close();
+        } catch (IOException e) {
+            log.error("Failed to close token vault in {}", directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CardToken save(CardToken token) {
+        requireKeys(token);
+        ByteBuffer record = ENCODE_BUFFER.get();
+        TokenRecordCodec.encodePut(token, record);
+        TokenLog currentLog;
+        long end;
+        writeLock.lock();
+        try {
+            append(token, record);
+            currentLog = tokenLog;
+            end = currentLog.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write token " + token.getTokenReference(), e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        awaitDurable(currentLog, end);
+        return token;
+    }
+
+    /**
+     * Appends a batch of tokens and waits for one force of the log for all of them. If a token
+     * cannot be written, the tokens before it stay saved.
+     */
+    @Override
+    public List<CardToken> saveAll(List<CardToken> tokens) {
+        tokens.forEach(FileTokenVault::requireKeys);
+        ByteBuffer record = ENCODE_BUFFER.get();
+        TokenLog currentLog;
+        long end;
+        writeLock.lock();
+        try {
+            for (CardToken token : tokens) {
+                TokenRecordCodec.encodePut(token, record);
+                append(token, record);
+            }
+            currentLog = tokenLog;
+            end = currentLog.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write a batch of tokens", e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        awaitDurable(currentLog, end);
+        return tokens;
+    }
+
+    /** Compares the stored token under the write lock, so no other write comes in between. */
+    @Override
+    public boolean replace(CardToken expected, CardToken updated) {
+        String tokenReference = expected.getTokenReference();
+        if (!tokenReference.equals(updated.getTokenReference())) {
+            throw new IllegalArgumentException(
+                    "A token can only be replaced with one of the same reference");
+        }
+        requireKeys(updated);
+        ByteBuffer record = ENCODE_BUFFER.get();
+        TokenRecordCodec.encodePut(updated, record);
+        TokenLog currentLog;
+        long end;
+        writeLock.lock();
+        try {
+            // Only writers change the index, so no stamp is needed to read it here
+            ByteBuffer stored = READ_BUFFER.get();
+            int slot =
+                    index.find(
+                            MappedTokenIndex.REFERENCES,
+                            hash(MappedTokenIndex.REFERENCES, tokenReference),
+                            matches(tokenLog, MappedTokenIndex.REFERENCES, tokenReference, stored));
+            if (slot < 0 || !TokenRecordCodec.decode(stored).equals(expected)) {
+                return false;
+            }
+            append(updated, record);
+            currentLog = tokenLog;
+            end = currentLog.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write token " + tokenReference, e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        awaitDurable(currentLog, end);
+        return true;
+    }
+
+    @Override
+    public Optional<CardToken> findByTokenReference(String tokenReference) {
+        return Optional.ofNullable(lookup(MappedTokenIndex.REFERENCES, tokenReference));
+    }
+
+    @Override
+    public Optional<CardToken> findByTokenValue(String tokenValue) {
+        return Optional.ofNullable(lookup(MappedTokenIndex.VALUES, tokenValue));
+    }
+
+    @Override
+    public Optional<CardToken> findByPanFingerprint(String panFingerprint) {
+        return Optional.ofNullable(lookup(MappedTokenIndex.PAN_FINGERPRINTS, panFingerprint));
+    }
+
+    @Override
+    public boolean existsByTokenReference(String tokenReference) {
+        return lookup(MappedTokenIndex.REFERENCES, tokenReference) != null;
+    }
+
+    @Override
+    public boolean existsByTokenValue(String tokenValue) {
+        return lookup(MappedTokenIndex.VALUES, tokenValue) != null;
+    }
+
+    @Override
+    public void deleteByTokenReference(String tokenReference) {
+        if (tokenReference != null) {
+            delete(tokenReference, null);
+        }
+    }
+
+    @Override
+    public boolean remove(CardToken expected) {
+        return delete(expected.getTokenReference(), expected);
+    }
+
+    // Deletes the token of a reference, if it is still stored as expected; null deletes any token
+    private boolean delete(String tokenReference, CardToken expected) {
+        TokenLog currentLog;
+        long end;
+        writeLock.lock();
+        try {
+            currentLog = tokenLog;
+            // Only writers change the index, so no stamp is needed to read it here
+            ByteBuffer stored = READ_BUFFER.get();
+            LongPredicate isKey =
+                    matches(currentLog, MappedTokenIndex.REFERENCES, tokenReference, stored);
+            int slot =
+                    index.find(
+                            MappedTokenIndex.REFERENCES,
+                            hash(MappedTokenIndex.REFERENCES, tokenReference),
+                            isKey);
+            if (slot < 0
+                    || (expected != null && !TokenRecordCodec.decode(stored).equals(expected))) {
+                return false;
+            }
+
+            ByteBuffer record = ENCODE_BUFFER.get();
+            TokenRecordCodec.encodeDelete(tokenReference, record);
+            currentLog.append(record);
+            end = currentLog.end();
+            long stamp = indexLock.writeLock();
+            try {
+                liveBytes += applyDelete(index, currentLog, tokenReference);
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete token " + tokenReference, e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        awaitDurable(currentLog, end);
+        return true;
+    }
+
+    @Override
+    public void forEach(Consumer<CardToken> action) {
+        TokenLog scanLog;
+        long scanEnd;
+        writeLock.lock();
+        try {
+            scanLog = tokenLog;
+            scanEnd = scanLog.end();
+        } finally {
+            writeLock.unlock();
+        }
+
+        // Like compaction, pass the records the index still refers to, without blocking writers
+        ByteBuffer record = ByteBuffer.allocateDirect(TokenRecordCodec.MAX_RECORD_BYTES);
+        try {
+            for (long offset = TokenLog.HEADER_BYTES; offset < scanEnd; offset += record.limit()) {
+                readOrFail(scanLog, offset, record);
+                if (TokenRecordCodec.type(record) == TokenRecordCodec.PUT
+                        && isCurrent(scanLog, offset, TokenRecordCodec.reference(record))) {
+                    action.accept(TokenRecordCodec.decode(record));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to scan token vault", e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            long logId = random.nextLong();
+            TokenLog newLog = TokenLog.create(tempPath(logPath, CLEAR), logId);
+            MappedTokenIndex newIndex =
+                    MappedTokenIndex.create(
+                            tempPath(indexPath, CLEAR), initialSlots, logId, newLog.end());
+            replace(newLog, newIndex, 0L);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear token vault", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the current record of each token, while writes continue, and
+     * replaces the log and index with the new ones.
+     *
+     * @throws IOException If the new files cannot be written
+     */
+    void compact() throws IOException {
+        long start = System.nanoTime();
+        TokenLog oldLog;
+        long scanEnd;
+        writeLock.lock();
+        try {
+            oldLog = tokenLog;
+            scanEnd = oldLog.end();
+        } finally {
+            writeLock.unlock();
+        }
+
+        long logId = random.nextLong();
+        TokenLog newLog = TokenLog.create(tempPath(logPath, COMPACT), logId);
+        MappedTokenIndex newIndex = null;
+        boolean replaced = false;
+        try {
+            newIndex =
+                    MappedTokenIndex.create(
+                            tempPath(indexPath, COMPACT), index.slots(), logId, newLog.end());
+            ByteBuffer record = ByteBuffer.allocateDirect(TokenRecordCodec.MAX_RECORD_BYTES);
+            long newLiveBytes = 0L;
+
+            // Copy the records that are still current, without blocking writers
+            for (long offset = TokenLog.HEADER_BYTES; offset < scanEnd; offset += record.limit()) {
+                readOrFail(oldLog, offset, record);
+                if (TokenRecordCodec.type(record) == TokenRecordCodec.PUT
+                        && isCurrent(oldLog, offset, TokenRecordCodec.reference(record))) {
+                    newLiveBytes += copy(record, newLog, newIndex);
+                }
+            }
+
+            writeLock.lock();
+            try {
+                if (tokenLog != oldLog || index.slots() > newIndex.slots()) {
+                    // Cleared meanwhile, or grown so far that the new index may not fit the tokens
+                    return;
+                }
+                // Catch up with the changes made while copying
+                for (long offset = scanEnd; offset < oldLog.end(); offset += record.limit()) {
+                    readOrFail(oldLog, offset, record);
+                    newLiveBytes += copy(record, newLog, newIndex);
+                }
+                replace(newLog, newIndex, newLiveBytes);
+                replaced = true;
+            } finally {
+                writeLock.unlock();
+            }
+
+            log.info(
+                    "Compacted token vault log from {} KB to {} KB in {} ms",
+                    scanEnd / 1024,
+                    newLog.end() / 1024,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            if (!replaced) {
+                newLog.close();
+                if (newIndex != null) {
+                    newIndex.close();
+                }
+                Files.deleteIfExists(tempPath(logPath, COMPACT));
+                Files.deleteIfExists(tempPath(indexPath, COMPACT));
+            }
+        }
+    }
+
+    long logBytes() {
+        return tokenLog.end();
+    }
+
+    long liveBytes() {
+        writeLock.lock();
+        try {
+            return liveBytes;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        for (String operation : OPERATIONS) {
+            Files.deleteIfExists(tempPath(logPath, operation));
+            Files.deleteIfExists(tempPath(indexPath, operation));
+        }
+
+        if (!Files.exists(logPath)) {
+            long logId = random.nextLong();
+            tokenLog = TokenLog.create(logPath, logId);
+            index = MappedTokenIndex.create(indexPath, initialSlots, logId, tokenLog.end());
+            liveBytes = 0L;
+            log.info("Created token vault in {}", directory);
+            return;
+        }
+
+        long logId = TokenLog.readLogId(logPath);
+        MappedTokenIndex existing = MappedTokenIndex.open(indexPath);
+        if (existing != null && (existing.logId() != logId || !existing.isClean())) {
+            existing.close();
+            existing = null;
+        }
+        long from = existing != null ? existing.checkpoint() : TokenLog.HEADER_BYTES;
+        tokenLog = TokenLog.open(logPath, from);
+        long end = tokenLog.end();
+
+        if (existing != null && existing.checkpoint() == end) {
+            index = existing;
+            liveBytes = existing.liveBytes();
+        } else {
+            if (existing != null) {
+                existing.close();
+            }
+            log.warn("Token vault index is missing or was not closed cleanly, rebuilding it");
+            long start = System.nanoTime();
+            index = MappedTokenIndex.create(indexPath, initialSlots, logId, TokenLog.HEADER_BYTES);
+            liveBytes = rebuildIndex(end);
+            log.info(
+                    "Rebuilt token vault index in {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        index.markInUse();
+        log.info(
+                "Opened token vault in {} with {} tokens, log {} KB",
+                directory,
+                index.count(MappedTokenIndex.REFERENCES),
+                end / 1024);
+    }
+
+    // Applies the whole log to an empty index, returns the live bytes
+    private long rebuildIndex(long end) throws IOException {
+        ByteBuffer record = ByteBuffer.allocateDirect(TokenRecordCodec.MAX_RECORD_BYTES);
+        long live = 0L;
+        for (long offset = TokenLog.HEADER_BYTES; offset < end; offset += record.limit()) {
+            readOrFail(tokenLog, offset, record);
+            ensureCapacity();
+            if (TokenRecordCodec.type(record) == TokenRecordCodec.PUT) {
+                live +=
+                        applyPut(
+                                index,
+                                tokenLog,
+                                offset,
+                                TokenRecordCodec.reference(record),
+                                TokenRecordCodec.value(record),
+                                TokenRecordCodec.panFingerprint(record),
+                                record.limit());
+            } else {
+                live += applyDelete(index, tokenLog, TokenRecordCodec.reference(record));
+            }
+        }
+        return live;
+    }
+
+    // Appends a record read from the old log to a new log and index, returns the live byte change
+    private long copy(ByteBuffer record, TokenLog newLog, MappedTokenIndex newIndex)
+            throws IOException {
+        String reference = TokenRecordCodec.reference(record);
+        if (TokenRecordCodec.type(record) == TokenRecordCodec.PUT) {
+            String value = TokenRecordCodec.value(record);
+            String panFingerprint = TokenRecordCodec.panFingerprint(record);
+            long offset = newLog.append(record.position(0));
+            return applyPut(
+                    newIndex, newLog, offset, reference, value, panFingerprint, record.limit());
+        }
+
+        ByteBuffer buffer = READ_BUFFER.get();
+        if (newIndex.find(
+                        MappedTokenIndex.REFERENCES,
+                        hash(MappedTokenIndex.REFERENCES, reference),
+                        matches(newLog, MappedTokenIndex.REFERENCES, reference, buffer))
+                < 0) {
+            return 0L;
+        }
+        newLog.append(record.position(0));
+        return applyDelete(newIndex, newLog, reference);
+    }
+
+    // Whether the index still refers to the record at an offset of the log
+    private boolean isCurrent(TokenLog currentLog, long offset, String reference) {
+        ByteBuffer buffer = READ_BUFFER.get();
+        long stamp = indexLock.readLock();
+        try {
+            MappedTokenIndex currentIndex = index;
+            int slot =
+                    currentIndex.find(
+                            MappedTokenIndex.REFERENCES,
+                            hash(MappedTokenIndex.REFERENCES, reference),
+                            matches(currentLog, MappedTokenIndex.REFERENCES, reference, buffer));
+            return slot >= 0 && currentIndex.offsetAt(MappedTokenIndex.REFERENCES, slot) == offset;
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    private CardToken lookup(int table, String key) {
+        if (key == null) {
+            return null;
+        }
+
+        long hash = hash(table, key);
+        ByteBuffer buffer = READ_BUFFER.get();
+        long stamp = indexLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            TokenLog currentLog = tokenLog;
+            MappedTokenIndex currentIndex = index;
+            // The first entry with the same hash; a torn read is caught by validate
+            int slot = currentIndex.find(table, hash, offset -> true);
+            long offset = slot >= 0 ? currentIndex.offsetAt(table, slot) : 0L;
+            if (indexLock.validate(stamp)) {
+                if (offset == 0L) {
+                    return null;
+                }
+                // Records never change, so reading it after validating is safe
+                if (currentLog.read(offset, buffer) && key.equals(keyOf(table, buffer))) {
+                    return TokenRecordCodec.decode(buffer);
+                }
+            }
+        }
+
+        // A writer changed the index meanwhile, or another key has the same hash
+        stamp = indexLock.readLock();
+        try {
+            int slot = index.find(table, hash, matches(tokenLog, table, key, buffer));
+            return slot >= 0 ? TokenRecordCodec.decode(buffer) : null;
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    // Appends the encoded record of a token and indexes it; the caller holds the write lock
+    private void append(CardToken token, ByteBuffer record) throws IOException {
+        ensureCapacity();
+        long offset = tokenLog.append(record);
+        long stamp = indexLock.writeLock();
+        try {
+            liveBytes +=
+                    applyPut(
+                            index,
+                            tokenLog,
+                            offset,
+                            token.getTokenReference(),
+                            token.getTokenValue(),
+                            token.getPanFingerprint(),
+                            record.limit());
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    // Points the keys of a token at its new record, returns the live byte change
+    private long applyPut(
+            MappedTokenIndex target,
+            TokenLog targetLog,
+            long offset,
+            String reference,
+            String value,
+            String panFingerprint,
+            int recordBytes) {
+        ByteBuffer buffer = READ_BUFFER.get();
+        long change = recordBytes;
+        long hash = hash(MappedTokenIndex.REFERENCES, reference);
+        int slot =
+                target.find(
+                        MappedTokenIndex.REFERENCES,
+                        hash,
+                        matches(targetLog, MappedTokenIndex.REFERENCES, reference, buffer));
+        if (slot >= 0) {
+            long previous = target.offsetAt(MappedTokenIndex.REFERENCES, slot);
+            change -= unlinkRecord(target, targetLog, previous);
+            target.set(MappedTokenIndex.REFERENCES, slot, hash, offset);
+        } else {
+            target.set(MappedTokenIndex.REFERENCES, -(slot + 1), hash, offset);
+        }
+        link(target, targetLog, MappedTokenIndex.VALUES, value, offset);
+        link(target, targetLog, MappedTokenIndex.PAN_FINGERPRINTS, panFingerprint, offset);
+        return change;
+    }
+
+    // Removes a token from the index, returns the live byte change
+    private long applyDelete(MappedTokenIndex target, TokenLog targetLog, String reference) {
+        ByteBuffer buffer = READ_BUFFER.get();
+        int slot =
+                target.find(
+                        MappedTokenIndex.REFERENCES,
+                        hash(MappedTokenIndex.REFERENCES, reference),
+                        matches(targetLog, MappedTokenIndex.REFERENCES, reference, buffer));
+        if (slot < 0) {
+            return 0L;
+        }
+        long previous = target.offsetAt(MappedTokenIndex.REFERENCES, slot);
+        target.remove(MappedTokenIndex.REFERENCES, slot);
+        return -unlinkRecord(target, targetLog, previous);
+    }
+
+    // Removes the value and fingerprint entries still pointing at a record, returns its size
+    private long unlinkRecord(MappedTokenIndex target, TokenLog targetLog, long offset) {
+        ByteBuffer buffer = READ_BUFFER.get();
+        if (!targetLog.read(offset, buffer)) {
+            throw new IllegalStateException("Token vault index points at a missing record");
+        }
+        int size = buffer.limit();
+        String value = TokenRecordCodec.value(buffer);
+        String panFingerprint = TokenRecordCodec.panFingerprint(buffer);
+        unlink(target, targetLog, MappedTokenIndex.VALUES, value, offset);
+        unlink(target, targetLog, MappedTokenIndex.PAN_FINGERPRINTS, panFingerprint, offset);
+        return size;
+    }
+
+    private void link(
+            MappedTokenIndex target, TokenLog targetLog, int table, String key, long offset) {
+        if (key == null) {
+            return;
+        }
+        long hash = hash(table, key);
+        int slot = target.find(table, hash, matches(targetLog, table, key, READ_BUFFER.get()));
+        target.set(table, slot >= 0 ? slot : -(slot + 1), hash, offset);
+    }
+
+    private void unlink(
+            MappedTokenIndex target, TokenLog targetLog, int table, String key, long offset) {
+        if (key == null) {
+            return;
+        }
+        int slot =
+                target.find(
+                        table, hash(table, key), matches(targetLog, table, key, READ_BUFFER.get()));
+        if (slot >= 0 && target.offsetAt(table, slot) == offset) {
+            target.remove(table, slot);
+        }
+    }
+
+    // Doubles the index tables before they get too full; the caller holds the write lock
+    private void ensureCapacity() throws IOException {
+        MappedTokenIndex current = index;
+        int slots = current.slots();
+        if (current.count(MappedTokenIndex.REFERENCES) + 1
+                <= ((long) slots * MAX_LOAD_NUMERATOR) >> MAX_LOAD_SHIFT) {
+            return;
+        }
+        if (slots == MappedTokenIndex.MAX_SLOTS) {
+            throw new IllegalStateException("Token vault is full");
+        }
+
+        long start = System.nanoTime();
+        MappedTokenIndex grown =
+                MappedTokenIndex.create(
+                        tempPath(indexPath, GROW),
+                        slots * 2,
+                        current.logId(),
+                        current.checkpoint());
+        for (int table = 0; table < MappedTokenIndex.TABLES; table++) {
+            int target = table;
+            current.forEach(table, (hash, offset) -> grown.add(target, hash, offset));
+        }
+        grown.checkpoint(current.checkpoint(), liveBytes, false);
+        Files.move(
+                grown.path(),
+                indexPath,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        long stamp = indexLock.writeLock();
+        try {
+            index = grown;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        current.close();
+        log.info(
+                "Grew token vault index to {} slots in {} ms",
+                slots * 2,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Moves a new log and index in place of the current ones; the caller holds the write lock
+    private void replace(TokenLog newLog, MappedTokenIndex newIndex, long newLiveBytes)
+            throws IOException {
+        newLog.syncAll();
+        newIndex.checkpoint(newLog.end(), newLiveBytes, false);
+        // If a crash leaves the new log with the old index, the index is rebuilt on startup
+        Files.move(
+                newLog.path(),
+                logPath,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.move(
+                newIndex.path(),
+                indexPath,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        TokenLog oldLog = tokenLog;
+        MappedTokenIndex oldIndex = index;
+        long stamp = indexLock.writeLock();
+        try {
+            tokenLog = newLog;
+            index = newIndex;
+            liveBytes = newLiveBytes;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        oldLog.close();
+        oldIndex.close();
+    }
+
+    private void awaitDurable(TokenLog currentLog, long end) {
+        if (syncIntervalMillis == 0) {
+            currentLog.sync(end);
+        }
+    }
+
+    private void compactIfWasteful() {
+        try {
+            long end = tokenLog.end();
+            if (end >= compactionMinBytes && end - TokenLog.HEADER_BYTES > 2 * liveBytes()) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep the maintenance task scheduled
+            log.error("Token vault maintenance failed", e);
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the renames are still atomic
+            log.debug("Could not sync token vault directory: {}", e.getMessage());
+        }
+    }
+
+    private static void requireKeys(CardToken token) {
+        if (token.getTokenReference() == null || token.getTokenValue() == null) {
+            throw new IllegalArgumentException("Token reference and value are required");
+        }
+    }
+
+    private static void readOrFail(TokenLog source, long offset, ByteBuffer record)
+            throws IOException {
+        if (!source.read(offset, record)) {
+            throw new IOException("Corrupt token vault record at offset " + offset);
+        }
+    }
+
+    private static LongPredicate matches(
+            TokenLog source, int table, String key, ByteBuffer buffer) {
+        return offset -> source.read(offset, buffer) && key.equals(keyOf(table, buffer));
+    }
+
+    private static String keyOf(int table, ByteBuffer record) {
+        switch (table) {
+            case MappedTokenIndex.REFERENCES:
+                return TokenRecordCodec.reference(record);
+            case MappedTokenIndex.VALUES:
+                return TokenRecordCodec.value(record);
+            default:
+                return TokenRecordCodec.panFingerprint(record);
+        }
+    }
+
+    private static long hash(int table, String key) {
+        return FastHash.hash64(key, SEEDS[table]);
+    }
+
+    private static Path tempPath(Path path, String operation) {
+        return path.resolveSibling(path.getFileName() + "." + operation + TEMP_SUFFIX);
+    }
+}
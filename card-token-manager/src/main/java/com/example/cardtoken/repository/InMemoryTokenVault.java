@@ -2,30 +2,65 @@ package com.example.cardtoken.repository;
 
 import com.example.cardtoken.model.CardToken;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /** An in-memory implementation of a token vault for storing and retrieving card tokens. */
 @Repository
+@ConditionalOnProperty(
+        name = "card-token.vault.type",
+        havingValue = "memory",
+        matchIfMissing = true)
 public class InMemoryTokenVault implements TokenVault {
 
     // Thread-safe map to store tokens by their reference
     private final Map<String, CardToken> tokensByReference = new ConcurrentHashMap<>();
 
-    // Thread-safe map to store tokens by their token value
-    private final Map<String, CardToken> tokensByValue = new ConcurrentHashMap<>();
+    // Thread-safe map to store token references by their token value
+    private final Map<String, String> referencesByValue = new ConcurrentHashMap<>();
+
+    // Thread-safe map to store the reference of the most recently saved token of each card by its
+    // PAN fingerprint
+    private final Map<String, String> referencesByPanFingerprint = new ConcurrentHashMap<>();
 
     @Override
     public CardToken save(CardToken token) {
         // Store token in all maps for different lookup methods
         tokensByReference.put(token.getTokenReference(), token);
-        tokensByValue.put(token.getTokenValue(), token);
+        index(token);
         return token;
     }
 
+    /**
+     * Swaps the token in the map by reference, which the other maps point into, so every lookup
+     * returns the token as replaced once the swap is done.
+     */
+    @Override
+    public boolean replace(CardToken expected, CardToken updated) {
+        String tokenReference = expected.getTokenReference();
+        if (!tokenReference.equals(updated.getTokenReference())) {
+            throw new IllegalArgumentException(
+                    "A token can only be replaced with one of the same reference");
+        }
+        if (!tokensByReference.replace(tokenReference, expected, updated)) {
+            return false;
+        }
+        index(updated);
+        if (!expected.getTokenValue().equals(updated.getTokenValue())) {
+            referencesByValue.remove(expected.getTokenValue(), tokenReference);
+        }
+        if (expected.getPanFingerprint() != null
+                && !expected.getPanFingerprint().equals(updated.getPanFingerprint())) {
+            referencesByPanFingerprint.remove(expected.getPanFingerprint(), tokenReference);
+        }
+        return true;
+    }
+
     @Override
     public Optional<CardToken> findByTokenReference(String tokenReference) {
         return Optional.ofNullable(tokensByReference.get(tokenReference));
@@ -33,7 +68,14 @@ public class InMemoryTokenVault implements TokenVault {
 
     @Override
     public Optional<CardToken> findByTokenValue(String tokenValue) {
-        return Optional.ofNullable(tokensByValue.get(tokenValue));
+        return find(referencesByValue, tokenValue)
+                .filter(token -> tokenValue.equals(token.getTokenValue()));
+    }
+
+    @Override
+    public Optional<CardToken> findByPanFingerprint(String panFingerprint) {
+        return find(referencesByPanFingerprint, panFingerprint)
+                .filter(token -> panFingerprint.equals(token.getPanFingerprint()));
     }
 
     @Override
@@ -43,20 +85,60 @@ public class InMemoryTokenVault implements TokenVault {
 
     @Override
     public boolean existsByTokenValue(String tokenValue) {
-        return tokensByValue.containsKey(tokenValue);
+        return findByTokenValue(tokenValue).isPresent();
     }
 
     @Override
     public void deleteByTokenReference(String tokenReference) {
         CardToken token = tokensByReference.remove(tokenReference);
         if (token != null) {
-            tokensByValue.remove(token.getTokenValue());
+            unindex(token);
         }
     }
 
+    @Override
+    public boolean remove(CardToken expected) {
+        if (!tokensByReference.remove(expected.getTokenReference(), expected)) {
+            return false;
+        }
+        unindex(expected);
+        return true;
+    }
+
+    @Override
+    public void forEach(Consumer<CardToken> action) {
+        tokensByReference.values().forEach(action);
+    }
+
     @Override
     public void clear() {
         tokensByReference.clear();
-        tokensByValue.clear();
+        referencesByValue.clear();
+        referencesByPanFingerprint.clear();
+    }
+
+    private void index(CardToken token) {
+        referencesByValue.put(token.getTokenValue(), token.getTokenReference());
+        if (token.getPanFingerprint() != null) {
+            referencesByPanFingerprint.put(token.getPanFingerprint(), token.getTokenReference());
+        }
+    }
+
+    private void unindex(CardToken token) {
+        referencesByValue.remove(token.getTokenValue(), token.getTokenReference());
+        if (token.getPanFingerprint() != null) {
+            // Only if no newer token of the card replaced it
+            referencesByPanFingerprint.remove(token.getPanFingerprint(), token.getTokenReference());
+        }
+    }
+
+    private Optional<CardToken> find(Map<String, String> references, String key) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        String tokenReference = references.get(key);
+        return tokenReference != null
+                ? Optional.ofNullable(tokensByReference.get(tokenReference))
+                : Optional.empty();
     }
 }
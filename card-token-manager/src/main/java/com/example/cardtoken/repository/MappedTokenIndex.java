@@ -0,0 +1,320 @@
+package com.example.cardtoken.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.function.LongPredicate;
+
+/**
+ * Memory-mapped open-addressing hash tables from token keys to the offsets of their records in a
+ * {@link TokenLog}: one table each for token references, token values and PAN fingerprints. A slot
+ * is the 64-bit hash of the key and the record offset, with offset 0 marking an empty slot. Slots
+ * only hold hashes, so callers confirm a match by reading the key from the record. Tables use
+ * linear probing, and removal shifts later entries back instead of leaving tombstones.
+ *
+ * <p>The header records the log the index belongs to, the log offset the index is complete up to,
+ * and whether it was closed cleanly. The operating system writes changed pages back in any order,
+ * so an index that was in use during a crash is rebuilt from the log rather than trusted.
+ *
+ * <p>Not thread-safe; callers guard access.
+ */
+final class MappedTokenIndex implements Closeable {
+
+    static final int REFERENCES = 0;
+    static final int VALUES = 1;
+    static final int PAN_FINGERPRINTS = 2;
+    static final int TABLES = 3;
+
+    static final int MIN_SLOTS = 1024;
+    static final int MAX_SLOTS = 1 << 26;
+
+    private static final long MAGIC = 0x544f4b4944583031L; // "TOKIDX01"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4096;
+    private static final int SLOT_BYTES = 16;
+
+    // Header layout
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 8;
+    private static final int SLOTS_AT = 12;
+    private static final int LOG_ID_AT = 16;
+    private static final int CHECKPOINT_AT = 24;
+    private static final int CLEAN_AT = 32;
+    private static final int LIVE_BYTES_AT = 40;
+    private static final int COUNTS_AT = 48;
+
+    /** Receives the entries of a table. */
+    interface EntryVisitor {
+        void visit(long hash, long offset);
+    }
+
+    private final Path path;
+    private final RandomAccessFile file;
+    private final int mask;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] tables = new MappedByteBuffer[TABLES];
+    private final long[] counts = new long[TABLES];
+
+    private MappedTokenIndex(Path path, RandomAccessFile file, int slots) throws IOException {
+        this.path = path;
+        this.file = file;
+        this.mask = slots - 1;
+        this.header = TokenLog.map(file, 0, HEADER_BYTES);
+        for (int table = 0; table < TABLES; table++) {
+            tables[table] =
+                    TokenLog.map(
+                            file,
+                            HEADER_BYTES + (long) table * slots * SLOT_BYTES,
+                            (long) slots * SLOT_BYTES);
+        }
+    }
+
+    /**
+     * Creates an empty index, replacing any existing file.
+     *
+     * @param path The file
+     * @param slots The number of slots per table, a power of two
+     * @param logId The ID of the log the index belongs to
+     * @param checkpoint The log offset the index is complete up to
+     * @return The index
+     * @throws IOException If the file cannot be created
+     */
+    static MappedTokenIndex create(Path path, int slots, long logId, long checkpoint)
+            throws IOException {
+        if (slots < MIN_SLOTS || slots > MAX_SLOTS || Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException(
+                    "Index slots must be a power of two between "
+                            + MIN_SLOTS
+                            + " and "
+                            + MAX_SLOTS);
+        }
+
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            file.setLength(0);
+            file.setLength(HEADER_BYTES + (long) TABLES * slots * SLOT_BYTES);
+            MappedTokenIndex index = new MappedTokenIndex(path, file, slots);
+            index.header.putLong(MAGIC_AT, MAGIC);
+            index.header.putInt(VERSION_AT, VERSION);
+            index.header.putInt(SLOTS_AT, slots);
+            index.header.putLong(LOG_ID_AT, logId);
+            index.checkpoint(checkpoint, 0L, false);
+            file.getFD().sync();
+            return index;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing index.
+     *
+     * @param path The file
+     * @return The index, or null if the file is missing or not a valid index
+     * @throws IOException If the file cannot be read
+     */
+    static MappedTokenIndex open(Path path) throws IOException {
+        if (!path.toFile().isFile()) {
+            return null;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            if (file.length() < HEADER_BYTES) {
+                file.close();
+                return null;
+            }
+            file.seek(MAGIC_AT);
+            long magic = file.readLong();
+            int version = file.readInt();
+            int slots = file.readInt();
+            if (magic != MAGIC
+                    || version != VERSION
+                    || slots < MIN_SLOTS
+                    || slots > MAX_SLOTS
+                    || Integer.bitCount(slots) != 1
+                    || file.length() != HEADER_BYTES + (long) TABLES * slots * SLOT_BYTES) {
+                file.close();
+                return null;
+            }
+
+            MappedTokenIndex index = new MappedTokenIndex(path, file, slots);
+            for (int table = 0; table < TABLES; table++) {
+                index.counts[table] = index.header.getLong(COUNTS_AT + table * 8);
+            }
+            return index;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the slot of a key.
+     *
+     * @param table The table
+     * @param hash The hash of the key
+     * @param isKey Tells whether the record at an offset has the key
+     * @return The slot of the key, or -(slot + 1) for the empty slot where it belongs
+     */
+    int find(int table, long hash, LongPredicate isKey) {
+        MappedByteBuffer slots = tables[table];
+        int slot = home(hash);
+        for (int probes = 0; probes <= mask; probes++) {
+            long offset = slots.getLong(slot * SLOT_BYTES + 8);
+            if (offset == 0L) {
+                return -(slot + 1);
+            }
+            if (slots.getLong(slot * SLOT_BYTES) == hash && isKey.test(offset)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        throw new IllegalStateException("Token index table is full");
+    }
+
+    long offsetAt(int table, int slot) {
+        return tables[table].getLong(slot * SLOT_BYTES + 8);
+    }
+
+    /**
+     * Stores an entry in a slot returned by {@link #find}.
+     *
+     * @param table The table
+     * @param slot The slot of the key, or its empty slot
+     * @param hash The hash of the key
+     * @param offset The record offset
+     */
+    void set(int table, int slot, long hash, long offset) {
+        MappedByteBuffer slots = tables[table];
+        if (slots.getLong(slot * SLOT_BYTES + 8) == 0L) {
+            counts[table]++;
+        }
+        slots.putLong(slot * SLOT_BYTES, hash);
+        slots.putLong(slot * SLOT_BYTES + 8, offset);
+    }
+
+    /**
+     * Adds an entry for a key that is known not to be in the table.
+     *
+     * @param table The table
+     * @param hash The hash of the key
+     * @param offset The record offset
+     */
+    void add(int table, long hash, long offset) {
+        int slot = find(table, hash, ignored -> false);
+        set(table, -(slot + 1), hash, offset);
+    }
+
+    /**
+     * Removes the entry in a slot. Later entries of the probe sequence are moved back, so lookups
+     * never need to step over deleted slots.
+     *
+     * @param table The table
+     * @param slot The slot
+     */
+    void remove(int table, int slot) {
+        MappedByteBuffer slots = tables[table];
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (slots.getLong(next * SLOT_BYTES + 8) != 0L) {
+            long hash = slots.getLong(next * SLOT_BYTES);
+            // The entry can move back unless its home slot lies after the hole
+            if (((next - home(hash)) & mask) >= ((next - hole) & mask)) {
+                slots.putLong(hole * SLOT_BYTES, hash);
+                slots.putLong(hole * SLOT_BYTES + 8, slots.getLong(next * SLOT_BYTES + 8));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots.putLong(hole * SLOT_BYTES, 0L);
+        slots.putLong(hole * SLOT_BYTES + 8, 0L);
+        counts[table]--;
+    }
+
+    /**
+     * Visits all entries of a table.
+     *
+     * @param table The table
+     * @param visitor Receives each hash and offset
+     */
+    void forEach(int table, EntryVisitor visitor) {
+        MappedByteBuffer slots = tables[table];
+        for (int slot = 0; slot <= mask; slot++) {
+            long offset = slots.getLong(slot * SLOT_BYTES + 8);
+            if (offset != 0L) {
+                visitor.visit(slots.getLong(slot * SLOT_BYTES), offset);
+            }
+        }
+    }
+
+    long count(int table) {
+        return counts[table];
+    }
+
+    int slots() {
+        return mask + 1;
+    }
+
+    long logId() {
+        return header.getLong(LOG_ID_AT);
+    }
+
+    long checkpoint() {
+        return header.getLong(CHECKPOINT_AT);
+    }
+
+    long liveBytes() {
+        return header.getLong(LIVE_BYTES_AT);
+    }
+
+    boolean isClean() {
+        return header.getInt(CLEAN_AT) != 0;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Forces all entries to disk, then records the log offset they are complete up to.
+     *
+     * @param logOffset The log offset all entries are complete up to
+     * @param liveBytes The bytes of live records in the log up to that offset
+     * @param clean Whether the index is closed after this checkpoint, with no changes after it
+     */
+    void checkpoint(long logOffset, long liveBytes, boolean clean) {
+        for (MappedByteBuffer table : tables) {
+            table.force();
+        }
+        header.putLong(CHECKPOINT_AT, logOffset);
+        header.putLong(LIVE_BYTES_AT, liveBytes);
+        for (int table = 0; table < TABLES; table++) {
+            header.putLong(COUNTS_AT + table * 8, counts[table]);
+        }
+        header.putInt(CLEAN_AT, clean ? 1 : 0);
+        header.force();
+    }
+
+    /** Records that the index is in use, so an unclean shutdown is detected on the next open. */
+    void markInUse() {
+        header.putInt(CLEAN_AT, 0);
+        header.force();
+    }
+
+    /**
+     * Closes the file. The mappings stay valid until they are garbage collected, so readers that
+     * still use this index can finish.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int home(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
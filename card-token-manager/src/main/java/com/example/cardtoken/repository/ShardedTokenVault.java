@@ -0,0 +1,400 @@
+package com.example.cardtoken.repository;
+
+import com.example.cardtoken.model.CardToken;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory token vault split into lock-striped partitions, for many cores writing at once. A
+ * token is kept in the partition chosen by hashing its reference, and its entries in the token
+ * value and PAN fingerprint indexes in the partitions chosen by hashing those keys. Each partition
+ * holds its part of all three indexes under a single {@link StampedLock}.
+ *
+ * <p>A lookup reads one partition, as every index entry holds the token itself, under an
+ * optimistic stamp: it takes no lock unless a write to the partition came in between. A write
+ * locks the partitions of all keys of the old and the new token, in partition order so writers
+ * cannot deadlock, and changes every index before any lock is released: a reader never sees a
+ * token in one index and missing from another, and a delete racing a save cannot leave an
+ * orphaned index entry. Writes to tokens in different partitions do not wait for each other, so
+ * write throughput grows with the number of partitions rather than being capped by one lock.
+ */
+@Repository
+@ConditionalOnProperty(name = "card-token.vault.type", havingValue = "sharded")
+public class ShardedTokenVault implements TokenVault {
+
+    // Partition sets of up to six partitions are packed into a long: partition numbers of 10 bits
+    // each in ascending order from the low bits, and the count in the top bits
+    private static final int PARTITION_BITS = 10;
+    private static final int MAX_PARTITIONS = 1 << PARTITION_BITS;
+    private static final long PARTITION_MASK = MAX_PARTITIONS - 1;
+    private static final int COUNT_SHIFT = 60;
+
+    private final Partition[] partitions;
+    private final int partitionShift;
+
+    /**
+     * Creates an empty vault.
+     *
+     * @param partitions The number of partitions, rounded up to a power of two; 0 uses four per
+     *     available processor
+     */
+    public ShardedTokenVault(@Value("${card-token.vault.partitions:0}") int partitions) {
+        if (partitions < 0 || partitions > MAX_PARTITIONS) {
+            throw new IllegalArgumentException(
+                    "Partitions must be between 0 and " + MAX_PARTITIONS);
+        }
+        int count =
+                partitions > 0
+                        ? partitions
+                        : Math.min(4 * Runtime.getRuntime().availableProcessors(), MAX_PARTITIONS);
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(count, 2) - 1);
+        this.partitions = new Partition[1 << bits];
+        for (int i = 0; i < this.partitions.length; i++) {
+            this.partitions[i] = new Partition();
+        }
+        this.partitionShift = 32 - bits;
+    }
+
+    @Override
+    public CardToken save(CardToken token) {
+        String tokenReference = token.getTokenReference();
+        if (tokenReference == null || token.getTokenValue() == null) {
+            throw new IllegalArgumentException("A token needs a reference and a value to be saved");
+        }
+        Partition home = partitionOf(tokenReference);
+        long locked = partitionsOf(token, null);
+        while (true) {
+            long needed;
+            lockAll(locked);
+            try {
+                CardToken current = home.tokensByReference.get(tokenReference);
+                needed = partitionsOf(token, current);
+                if (needed == locked) {
+                    reindex(current, token);
+                    return token;
+                }
+            } finally {
+                unlockAll(locked);
+            }
+            // The token it replaces has keys in partitions that were not locked
+            locked = needed;
+        }
+    }
+
+    /** Locks the partitions of both tokens, so the comparison and the swap are one step. */
+    @Override
+    public boolean replace(CardToken expected, CardToken updated) {
+        String tokenReference = expected.getTokenReference();
+        if (!tokenReference.equals(updated.getTokenReference())) {
+            throw new IllegalArgumentException(
+                    "A token can only be replaced with one of the same reference");
+        }
+        long locked = partitionsOf(updated, expected);
+        lockAll(locked);
+        try {
+            CardToken stored = partitionOf(tokenReference).tokensByReference.get(tokenReference);
+            if (!expected.equals(stored)) {
+                return false;
+            }
+            reindex(stored, updated);
+            return true;
+        } finally {
+            unlockAll(locked);
+        }
+    }
+
+    @Override
+    public Optional<CardToken> findByTokenReference(String tokenReference) {
+        return Optional.ofNullable(find(tokenReference, partition -> partition.tokensByReference));
+    }
+
+    @Override
+    public Optional<CardToken> findByTokenValue(String tokenValue) {
+        return Optional.ofNullable(find(tokenValue, partition -> partition.tokensByValue));
+    }
+
+    @Override
+    public Optional<CardToken> findByPanFingerprint(String panFingerprint) {
+        return Optional.ofNullable(
+                find(panFingerprint, partition -> partition.tokensByPanFingerprint));
+    }
+
+    @Override
+    public boolean existsByTokenReference(String tokenReference) {
+        return find(tokenReference, partition -> partition.tokensByReference) != null;
+    }
+
+    @Override
+    public boolean existsByTokenValue(String tokenValue) {
+        return find(tokenValue, partition -> partition.tokensByValue) != null;
+    }
+
+    @Override
+    public void deleteByTokenReference(String tokenReference) {
+        Partition home = partitionOf(tokenReference);
+        long locked = add(0L, partitionIndex(tokenReference));
+        while (true) {
+            long needed;
+            lockAll(locked);
+            try {
+                CardToken current = home.tokensByReference.get(tokenReference);
+                if (current == null) {
+                    return;
+                }
+                needed = partitionsOf(current, null);
+                if (needed == locked) {
+                    unindex(current);
+                    return;
+                }
+            } finally {
+                unlockAll(locked);
+            }
+            locked = needed;
+        }
+    }
+
+    @Override
+    public boolean remove(CardToken expected) {
+        // The expected token's keys are the ones to unindex, so its partitions are all it needs
+        long locked = partitionsOf(expected, null);
+        lockAll(locked);
+        try {
+            String tokenReference = expected.getTokenReference();
+            CardToken stored = partitionOf(tokenReference).tokensByReference.get(tokenReference);
+            if (!expected.equals(stored)) {
+                return false;
+            }
+            unindex(expected);
+            return true;
+        } finally {
+            unlockAll(locked);
+        }
+    }
+
+    /**
+     * Copies the tokens of one partition at a time under its read lock, so writers wait for one
+     * partition at most and the action runs without a lock.
+     */
+    @Override
+    public void forEach(Consumer<CardToken> action) {
+        for (Partition partition : partitions) {
+            partition.tokens().forEach(action);
+        }
+    }
+
+    /**
+     * Streams every stored token, split by partition so a parallel stream scans partitions on
+     * several threads. Each partition is copied under its read lock when its turn comes, so the
+     * stream is consistent within a partition and a token changed meanwhile may be seen in its old
+     * or its new state.
+     *
+     * @return A parallel stream of the stored tokens
+     */
+    public Stream<CardToken> parallelStream() {
+        return IntStream.range(0, partitions.length)
+                .parallel()
+                .mapToObj(i -> partitions[i].tokens())
+                .flatMap(List::stream);
+    }
+
+    @Override
+    public void clear() {
+        for (Partition partition : partitions) {
+            partition.writeLock.lock();
+        }
+        try {
+            for (Partition partition : partitions) {
+                partition.tokensByReference.clear();
+                partition.tokensByValue.clear();
+                partition.tokensByPanFingerprint.clear();
+            }
+        } finally {
+            for (int i = partitions.length - 1; i >= 0; i--) {
+                partitions[i].writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of partitions.
+     *
+     * @return The number of partitions
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    private CardToken find(String key, Function<Partition, Map<String, CardToken>> index) {
+        if (key == null) {
+            return null;
+        }
+        Partition partition = partitionOf(key);
+        return partition.read(index.apply(partition), key);
+    }
+
+    // Called with the partitions of all keys of both tokens locked; keys the tokens share are
+    // overwritten rather than removed and added again
+    private void reindex(CardToken current, CardToken token) {
+        String tokenReference = token.getTokenReference();
+        partitionOf(tokenReference).tokensByReference.put(tokenReference, token);
+        move(
+                partition -> partition.tokensByValue,
+                current != null ? current.getTokenValue() : null,
+                token.getTokenValue(),
+                token);
+        // The most recently saved token of the card
+        move(
+                partition -> partition.tokensByPanFingerprint,
+                current != null ? current.getPanFingerprint() : null,
+                token.getPanFingerprint(),
+                token);
+    }
+
+    private void move(
+            Function<Partition, Map<String, CardToken>> index,
+            String oldKey,
+            String newKey,
+            CardToken token) {
+        if (oldKey != null && !oldKey.equals(newKey)) {
+            removeIfOf(index.apply(partitionOf(oldKey)), oldKey, token);
+        }
+        if (newKey != null) {
+            index.apply(partitionOf(newKey)).put(newKey, token);
+        }
+    }
+
+    // Called with the partitions of all keys of the token locked; entries that a newer token took
+    // over are kept
+    private void unindex(CardToken token) {
+        String tokenReference = token.getTokenReference();
+        partitionOf(tokenReference).tokensByReference.remove(tokenReference);
+        removeIfOf(partitionOf(token.getTokenValue()).tokensByValue, token.getTokenValue(), token);
+        if (token.getPanFingerprint() != null) {
+            removeIfOf(
+                    partitionOf(token.getPanFingerprint()).tokensByPanFingerprint,
+                    token.getPanFingerprint(),
+                    token);
+        }
+    }
+
+    private static void removeIfOf(Map<String, CardToken> index, String key, CardToken token) {
+        CardToken indexed = index.get(key);
+        if (indexed != null && indexed.getTokenReference().equals(token.getTokenReference())) {
+            index.remove(key);
+        }
+    }
+
+    // The distinct partitions of the keys of both tokens, as a packed partition set
+    private long partitionsOf(CardToken token, CardToken other) {
+        long partitions = addPartitions(0L, token);
+        return other != null ? addPartitions(partitions, other) : partitions;
+    }
+
+    private long addPartitions(long partitions, CardToken token) {
+        partitions = add(partitions, partitionIndex(token.getTokenReference()));
+        partitions = add(partitions, partitionIndex(token.getTokenValue()));
+        if (token.getPanFingerprint() != null) {
+            partitions = add(partitions, partitionIndex(token.getPanFingerprint()));
+        }
+        return partitions;
+    }
+
+    // Inserts a partition into a packed partition set, keeping it in ascending order
+    private static long add(long partitions, int partition) {
+        int count = (int) (partitions >>> COUNT_SHIFT);
+        long result = 0L;
+        int at = 0;
+        boolean added = false;
+        for (int i = 0; i < count; i++) {
+            int each = partition(partitions, i);
+            if (each == partition) {
+                return partitions;
+            }
+            if (!added && each > partition) {
+                result |= (long) partition << (at++ * PARTITION_BITS);
+                added = true;
+            }
+            result |= (long) each << (at++ * PARTITION_BITS);
+        }
+        if (!added) {
+            result |= (long) partition << (at++ * PARTITION_BITS);
+        }
+        return result | (long) at << COUNT_SHIFT;
+    }
+
+    private static int partition(long partitions, int i) {
+        return (int) ((partitions >>> (i * PARTITION_BITS)) & PARTITION_MASK);
+    }
+
+    // Always locks in ascending partition order, so writers locking several cannot deadlock
+    private void lockAll(long locked) {
+        int count = (int) (locked >>> COUNT_SHIFT);
+        for (int i = 0; i < count; i++) {
+            partitions[partition(locked, i)].writeLock.lock();
+        }
+    }
+
+    private void unlockAll(long locked) {
+        for (int i = (int) (locked >>> COUNT_SHIFT) - 1; i >= 0; i--) {
+            partitions[partition(locked, i)].writeLock.unlock();
+        }
+    }
+
+    private Partition partitionOf(String key) {
+        return partitions[partitionIndex(key)];
+    }
+
+    // The high bits of a multiplicative hash, as the maps inside a partition use the low bits
+    private int partitionIndex(String key) {
+        return (key.hashCode() * 0x9E3779B9) >>> partitionShift;
+    }
+
+    /** One stripe of the vault: its part of every index, guarded by one lock. */
+    private static final class Partition {
+
+        final StampedLock lock = new StampedLock();
+        final Lock writeLock = lock.asWriteLock();
+        // Concurrent maps, so a read under an optimistic stamp never sees a map mid-resize
+        final Map<String, CardToken> tokensByReference = new ConcurrentHashMap<>();
+        final Map<String, CardToken> tokensByValue = new ConcurrentHashMap<>();
+        final Map<String, CardToken> tokensByPanFingerprint = new ConcurrentHashMap<>();
+
+        // Reads without locking, and only takes the read lock if a write came in between
+        CardToken read(Map<String, CardToken> index, String key) {
+            long stamp = lock.tryOptimisticRead();
+            CardToken token = index.get(key);
+            if (lock.validate(stamp)) {
+                return token;
+            }
+            stamp = lock.readLock();
+            try {
+                return index.get(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        List<CardToken> tokens() {
+            long stamp = lock.readLock();
+            try {
+                return new ArrayList<>(tokensByReference.values());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+}
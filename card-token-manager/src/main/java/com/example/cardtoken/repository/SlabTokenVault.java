@@ -0,0 +1,987 @@
+package com.example.cardtoken.repository;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.shared.util.FastHash;
+import com.example.shared.util.PaymentMethodMask;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Compact in-memory token vault for very large numbers of tokens. Tokens are not kept as objects:
+ * each token is packed into a fixed record of {@link #RECORD_LONGS} longs in large {@code long[]}
+ * slabs, and the indexes by token reference, token value and PAN fingerprint are open-addressing
+ * tables of longs. A {@link CardToken} is created from the record on every lookup, so callers own
+ * the returned token and must save it to store changes.
+ *
+ * <p>The heap holds a few thousand arrays of primitives no matter how many tokens are stored, so
+ * the garbage collector has nothing to trace inside the vault and its cost does not grow with the
+ * vault. A token takes 72 bytes of record plus 24 to 64 bytes of index, instead of several hundred
+ * bytes of objects.
+ *
+ * <p>Record layout:
+ *
+ * <ul>
+ *   <li>0-1: token reference, a UUID as its two halves
+ *   <li>2-3: token value as up to 32 packed decimal digits, one nibble each
+ *   <li>4-5: PAN fingerprint, 32 hex characters as two longs
+ *   <li>6: masked PAN (leading digits, masked length, trailing digits) and last four digits
+ *   <li>7: creation and expiry time as unsigned epoch seconds (UTC), 32 bits each
+ *   <li>8: token BIN, expiry month and year, status, payment method mask and presence flags
+ * </ul>
+ *
+ * <p>Tokens must therefore use the formats this module generates: a UUID token reference, a token
+ * value of decimal digits and a PAN fingerprint of lowercase hex. Times are kept to the second.
+ * Other tokens are rejected with an {@link IllegalArgumentException}.
+ *
+ * <p>Writers are serialized by a {@link StampedLock}; readers copy the index slot and record under
+ * an optimistic stamp and only lock if a writer changed the vault meanwhile.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "card-token.vault.type", havingValue = "slab")
+public class SlabTokenVault implements TokenVault {
+
+    /** Longs per token record. */
+    static final int RECORD_LONGS = 9;
+
+    private static final int SLAB_SHIFT = 16;
+    private static final int SLAB_RECORDS = 1 << SLAB_SHIFT;
+    private static final int SLAB_MASK = SLAB_RECORDS - 1;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int SCAN_BATCH_RECORDS = 4096;
+    private static final int MAX_TABLE_SLOTS = 1 << 30;
+
+    // Index tables
+    private static final int REFERENCES = 0;
+    private static final int VALUES = 1;
+    private static final int PAN_FINGERPRINTS = 2;
+    private static final int TABLES = 3;
+
+    // Record words
+    private static final int REFERENCE_AT = 0;
+    private static final int VALUE_AT = 2;
+    private static final int PAN_FINGERPRINT_AT = 4;
+    private static final int PAN_AT = 6;
+    private static final int TIMES_AT = 7;
+    private static final int META_AT = 8;
+
+    // Fields of the PAN word
+    private static final int LAST_FOUR_SHIFT = 45;
+    private static final int MASKED_TAIL_SHIFT = 31;
+    private static final int MASKED_TAIL_DIGITS_SHIFT = 28;
+    private static final int MASKED_STARS_SHIFT = 23;
+    private static final int MASKED_HEAD_SHIFT = 3;
+
+    // Fields of the meta word
+    private static final int BIN_SHIFT = 0;
+    private static final int MONTH_SHIFT = 20;
+    private static final int YEAR_SHIFT = 24;
+    private static final int STATUS_SHIFT = 38;
+    private static final int METHODS_SHIFT = 41;
+    private static final long HAS_PAN_FINGERPRINT = 1L << 50;
+    private static final long HAS_MASKED_PAN = 1L << 51;
+    private static final long HAS_BIN = 1L << 52;
+    private static final long HAS_LAST_FOUR = 1L << 53;
+    private static final long HAS_CREATED_AT = 1L << 54;
+    private static final long HAS_EXPIRES_AT = 1L << 55;
+
+    private static final int MAX_VALUE_DIGITS = 32;
+    private static final int MAX_MASKED_STARS = 31;
+    private static final int MAX_EXPIRY_YEAR = (1 << 14) - 1;
+    private static final TokenStatus[] STATUSES = TokenStatus.values();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final long[] SEEDS = {
+        FastHash.hash64("slab-token-reference"),
+        FastHash.hash64("slab-token-value"),
+        FastHash.hash64("slab-token-pan-fingerprint")
+    };
+
+    // Per-thread scratch: a record to encode into or copy out of, and a parsed lookup key
+    private static final ThreadLocal<long[]> RECORD =
+            ThreadLocal.withInitial(() -> new long[RECORD_LONGS]);
+    private static final ThreadLocal<long[]> KEY = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final int initialCapacity;
+    private final StampedLock lock = new StampedLock();
+
+    // Written under the write lock; read under a stamp
+    private long[][] slabs;
+    private final long[][] tables = new long[TABLES][];
+    private final int[] tableCounts = new int[TABLES];
+    private int nextRecord;
+    private int[] freeRecords;
+    private int freeCount;
+
+    /**
+     * Creates an empty vault.
+     *
+     * @param initialCapacity The number of tokens to size the indexes for; they grow beyond it
+     */
+    public SlabTokenVault(
+            @Value("${card-token.vault.initial-capacity:1048576}") int initialCapacity) {
+        if (initialCapacity < 0 || initialCapacity > MAX_TABLE_SLOTS / 4 * 3) {
+            throw new IllegalArgumentException(
+                    "Initial capacity must be between 0 and " + MAX_TABLE_SLOTS / 4 * 3);
+        }
+        this.initialCapacity = Math.max(initialCapacity, MIN_CAPACITY);
+        reset();
+    }
+
+    @Override
+    public CardToken save(CardToken token) {
+        long[] record = RECORD.get();
+        encode(token, record);
+
+        long stamp = lock.writeLock();
+        try {
+            store(record, 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return token;
+    }
+
+    /**
+     * Encodes all tokens before taking the write lock once for the batch, so a token that does not
+     * fit the record format rejects the whole batch.
+     */
+    @Override
+    public List<CardToken> saveAll(List<CardToken> tokens) {
+        long[] records = new long[tokens.size() * RECORD_LONGS];
+        long[] record = RECORD.get();
+        for (int i = 0; i < tokens.size(); i++) {
+            encode(tokens.get(i), record);
+            System.arraycopy(record, 0, records, i * RECORD_LONGS, RECORD_LONGS);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            for (int at = 0; at < records.length; at += RECORD_LONGS) {
+                store(records, at);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return tokens;
+    }
+
+    /**
+     * Compares the stored record with the record of the expected token, so the stored token is not
+     * decoded.
+     */
+    @Override
+    public boolean replace(CardToken expected, CardToken updated) {
+        if (!expected.getTokenReference().equals(updated.getTokenReference())) {
+            throw new IllegalArgumentException(
+                    "A token can only be replaced with one of the same reference");
+        }
+        // The expected record followed by the updated one
+        long[] records = new long[2 * RECORD_LONGS];
+        long[] record = RECORD.get();
+        encode(expected, record);
+        System.arraycopy(record, 0, records, 0, RECORD_LONGS);
+        encode(updated, record);
+        System.arraycopy(record, 0, records, RECORD_LONGS, RECORD_LONGS);
+
+        long stamp = lock.writeLock();
+        try {
+            int slot =
+                    findSlot(
+                            tables[REFERENCES],
+                            slabs,
+                            REFERENCES,
+                            records[REFERENCE_AT],
+                            records[REFERENCE_AT + 1]);
+            if (slot < 0) {
+                return false;
+            }
+            int id = recordId(tables[REFERENCES][slot]);
+            long[] slab = slabs[id >>> SLAB_SHIFT];
+            int from = (id & SLAB_MASK) * RECORD_LONGS;
+            if (!Arrays.equals(slab, from, from + RECORD_LONGS, records, 0, RECORD_LONGS)) {
+                return false;
+            }
+            store(records, RECORD_LONGS);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Optional<CardToken> findByTokenReference(String tokenReference) {
+        return find(REFERENCES, tokenReference);
+    }
+
+    @Override
+    public Optional<CardToken> findByTokenValue(String tokenValue) {
+        return find(VALUES, tokenValue);
+    }
+
+    @Override
+    public Optional<CardToken> findByPanFingerprint(String panFingerprint) {
+        return find(PAN_FINGERPRINTS, panFingerprint);
+    }
+
+    @Override
+    public boolean existsByTokenReference(String tokenReference) {
+        return lookup(REFERENCES, tokenReference, RECORD.get());
+    }
+
+    @Override
+    public boolean existsByTokenValue(String tokenValue) {
+        return lookup(VALUES, tokenValue, RECORD.get());
+    }
+
+    @Override
+    public void deleteByTokenReference(String tokenReference) {
+        long[] key = KEY.get();
+        if (tokenReference == null || !parseKey(REFERENCES, tokenReference, key)) {
+            return;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(tables[REFERENCES], slabs, REFERENCES, key[0], key[1]);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(CardToken expected) {
+        long[] record = RECORD.get();
+        encode(expected, record);
+
+        long stamp = lock.writeLock();
+        try {
+            int slot =
+                    findSlot(
+                            tables[REFERENCES],
+                            slabs,
+                            REFERENCES,
+                            record[REFERENCE_AT],
+                            record[REFERENCE_AT + 1]);
+            if (slot < 0) {
+                return false;
+            }
+            int id = recordId(tables[REFERENCES][slot]);
+            int from = (id & SLAB_MASK) * RECORD_LONGS;
+            if (!Arrays.equals(
+                    slabs[id >>> SLAB_SHIFT], from, from + RECORD_LONGS, record, 0, RECORD_LONGS)) {
+                return false;
+            }
+            delete(slot);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<CardToken> action) {
+        // Decode a batch of records at a time, so writers wait for one batch at most
+        List<CardToken> batch = new ArrayList<>(SCAN_BATCH_RECORDS);
+        long[] record = new long[RECORD_LONGS];
+        int from = 0;
+        boolean more = true;
+        while (more) {
+            long stamp = lock.readLock();
+            try {
+                int to = (int) Math.min(nextRecord, (long) from + SCAN_BATCH_RECORDS);
+                for (int id = from; id < to; id++) {
+                    System.arraycopy(
+                            slabs[id >>> SLAB_SHIFT],
+                            (id & SLAB_MASK) * RECORD_LONGS,
+                            record,
+                            0,
+                            RECORD_LONGS);
+                    // Free records are zeroed, and no UUID is all zeros
+                    if ((record[REFERENCE_AT] | record[REFERENCE_AT + 1]) != 0L) {
+                        batch.add(decode(record));
+                    }
+                }
+                more = to < nextRecord;
+                from = to;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            batch.forEach(action);
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            reset();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of stored tokens.
+     *
+     * @return The number of tokens
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return tableCounts[REFERENCES];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Estimates the heap taken by the records and indexes, including free space.
+     *
+     * @return The size in bytes
+     */
+    public long memoryBytes() {
+        long stamp = lock.readLock();
+        try {
+            long bytes = (long) slabs.length * 16 + (long) freeRecords.length * 4;
+            for (long[] slab : slabs) {
+                bytes += slab != null ? (long) slab.length * 8 : 0L;
+            }
+            for (long[] table : tables) {
+                bytes += (long) table.length * 8;
+            }
+            return bytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Stores the record at an offset of an array and indexes it; the caller holds the write lock
+    private void store(long[] records, int at) {
+        ensureCapacity();
+        int slot =
+                findSlot(
+                        tables[REFERENCES],
+                        slabs,
+                        REFERENCES,
+                        records[at + REFERENCE_AT],
+                        records[at + REFERENCE_AT + 1]);
+        int id;
+        if (slot >= 0) {
+            id = recordId(tables[REFERENCES][slot]);
+            unlink(id);
+        } else {
+            id = allocate();
+            insert(
+                    REFERENCES,
+                    -(slot + 1),
+                    id,
+                    records[at + REFERENCE_AT],
+                    records[at + REFERENCE_AT + 1]);
+        }
+        long[] slab = slabs[id >>> SLAB_SHIFT];
+        System.arraycopy(records, at, slab, (id & SLAB_MASK) * RECORD_LONGS, RECORD_LONGS);
+        link(VALUES, id, records[at + VALUE_AT], records[at + VALUE_AT + 1]);
+        if ((records[at + META_AT] & HAS_PAN_FINGERPRINT) != 0) {
+            link(
+                    PAN_FINGERPRINTS,
+                    id,
+                    records[at + PAN_FINGERPRINT_AT],
+                    records[at + PAN_FINGERPRINT_AT + 1]);
+        }
+    }
+
+    private Optional<CardToken> find(int table, String key) {
+        long[] record = RECORD.get();
+        return lookup(table, key, record) ? Optional.of(decode(record)) : Optional.empty();
+    }
+
+    // Copies the record of a key, returns false if there is none
+    private boolean lookup(int table, String key, long[] record) {
+        long[] parsed = KEY.get();
+        if (key == null || !parseKey(table, key, parsed)) {
+            return false;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            // Reads may see a vault that a writer is changing; validate discards them then
+            int id = findRecord(tables[table], slabs, table, parsed[0], parsed[1], record);
+            if (lock.validate(stamp)) {
+                return id >= 0;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return findRecord(tables[table], slabs, table, parsed[0], parsed[1], record) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Finds the record of a key and copies it, guarding against torn reads; -1 if absent
+    private static int findRecord(
+            long[] table, long[][] slabs, int tableIndex, long key0, long key1, long[] record) {
+        int slot = findSlot(table, slabs, tableIndex, key0, key1);
+        if (slot < 0) {
+            return -1;
+        }
+        int id = recordId(table[slot]);
+        long[] slab = id >>> SLAB_SHIFT < slabs.length ? slabs[id >>> SLAB_SHIFT] : null;
+        if (slab == null) {
+            return -1;
+        }
+        System.arraycopy(slab, (id & SLAB_MASK) * RECORD_LONGS, record, 0, RECORD_LONGS);
+        return id;
+    }
+
+    /**
+     * Finds the slot of a key. Safe to call while a writer changes the table: it stops after one
+     * pass and ignores record IDs outside the slabs.
+     *
+     * @return The slot of the key, or -(slot + 1) for the empty slot where it belongs
+     */
+    private static int findSlot(
+            long[] table, long[][] slabs, int tableIndex, long key0, long key1) {
+        int mask = table.length - 1;
+        long hash = hash(tableIndex, key0, key1);
+        int tag = (int) (hash >>> 32);
+        int slot = (int) hash & mask;
+        int at = keyAt(tableIndex);
+        for (int probes = 0; probes <= mask; probes++) {
+            long entry = table[slot];
+            if (entry == 0L) {
+                return -(slot + 1);
+            }
+            if ((int) (entry >>> 32) == tag) {
+                int id = recordId(entry);
+                if (id >>> SLAB_SHIFT < slabs.length && slabs[id >>> SLAB_SHIFT] != null) {
+                    long[] slab = slabs[id >>> SLAB_SHIFT];
+                    int base = (id & SLAB_MASK) * RECORD_LONGS;
+                    if (slab[base + at] == key0 && slab[base + at + 1] == key1) {
+                        return slot;
+                    }
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -(mask + 2);
+    }
+
+    // Points the key at a record, replacing the record it pointed at
+    private void link(int table, int id, long key0, long key1) {
+        int slot = findSlot(tables[table], slabs, table, key0, key1);
+        if (slot >= 0) {
+            tables[table][slot] = entry(hash(table, key0, key1), id);
+        } else {
+            insert(table, -(slot + 1), id, key0, key1);
+        }
+    }
+
+    // Deletes the record of a reference table slot, under the write lock
+    private void delete(int slot) {
+        int id = recordId(tables[REFERENCES][slot]);
+        remove(REFERENCES, slot);
+        unlink(id);
+        long[] slab = slabs[id >>> SLAB_SHIFT];
+        Arrays.fill(
+                slab,
+                (id & SLAB_MASK) * RECORD_LONGS,
+                (id & SLAB_MASK) * RECORD_LONGS + RECORD_LONGS,
+                0L);
+        release(id);
+    }
+
+    // Removes the value and fingerprint entries that still point at a record
+    private void unlink(int id) {
+        long[] slab = slabs[id >>> SLAB_SHIFT];
+        int base = (id & SLAB_MASK) * RECORD_LONGS;
+        unlinkKey(VALUES, id, slab[base + VALUE_AT], slab[base + VALUE_AT + 1]);
+        if ((slab[base + META_AT] & HAS_PAN_FINGERPRINT) != 0) {
+            unlinkKey(
+                    PAN_FINGERPRINTS,
+                    id,
+                    slab[base + PAN_FINGERPRINT_AT],
+                    slab[base + PAN_FINGERPRINT_AT + 1]);
+        }
+    }
+
+    private void unlinkKey(int table, int id, long key0, long key1) {
+        int slot = findSlot(tables[table], slabs, table, key0, key1);
+        if (slot >= 0 && recordId(tables[table][slot]) == id) {
+            remove(table, slot);
+        }
+    }
+
+    private void insert(int table, int slot, int id, long key0, long key1) {
+        tables[table][slot] = entry(hash(table, key0, key1), id);
+        tableCounts[table]++;
+    }
+
+    // Backward-shift deletion, so lookups never step over deleted slots
+    private void remove(int table, int slot) {
+        long[] entries = tables[table];
+        int mask = entries.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (entries[next] != 0L) {
+            int home = (int) homeHash(table, recordId(entries[next])) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                entries[hole] = entries[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        entries[hole] = 0L;
+        tableCounts[table]--;
+    }
+
+    // Doubles the tables that would pass 3/4 full with one more token
+    private void ensureCapacity() {
+        for (int table = 0; table < TABLES; table++) {
+            long[] entries = tables[table];
+            if ((long) (tableCounts[table] + 1) * 4 <= (long) entries.length * 3) {
+                continue;
+            }
+            if (entries.length == MAX_TABLE_SLOTS) {
+                throw new IllegalStateException("Token vault is full");
+            }
+
+            long[] grown = new long[entries.length * 2];
+            int mask = grown.length - 1;
+            for (long entry : entries) {
+                if (entry != 0L) {
+                    int slot = (int) homeHash(table, recordId(entry)) & mask;
+                    while (grown[slot] != 0L) {
+                        slot = (slot + 1) & mask;
+                    }
+                    grown[slot] = entry;
+                }
+            }
+            tables[table] = grown;
+            log.info("Grew token vault index {} to {} slots", table, grown.length);
+        }
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeRecords[--freeCount];
+        }
+        int id = nextRecord;
+        if (id == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Token vault is full");
+        }
+        int slab = id >>> SLAB_SHIFT;
+        if (slab == slabs.length) {
+            slabs = Arrays.copyOf(slabs, Math.max(slabs.length * 2, 1));
+        }
+        if (slabs[slab] == null) {
+            slabs[slab] = new long[SLAB_RECORDS * RECORD_LONGS];
+        }
+        nextRecord++;
+        return id;
+    }
+
+    private void release(int id) {
+        if (freeCount == freeRecords.length) {
+            freeRecords = Arrays.copyOf(freeRecords, Math.max(freeRecords.length * 2, 16));
+        }
+        freeRecords[freeCount++] = id;
+    }
+
+    private void reset() {
+        // The smallest power of two that holds the initial capacity at 3/4 load
+        int slots = MIN_CAPACITY;
+        while ((long) slots * 3 < (long) initialCapacity * 4) {
+            slots <<= 1;
+        }
+        slabs = new long[1][];
+        for (int table = 0; table < TABLES; table++) {
+            tables[table] = new long[slots];
+            tableCounts[table] = 0;
+        }
+        nextRecord = 0;
+        freeRecords = new int[0];
+        freeCount = 0;
+    }
+
+    // The hash of the key a stored record has in a table
+    private long homeHash(int table, int id) {
+        long[] slab = slabs[id >>> SLAB_SHIFT];
+        int at = (id & SLAB_MASK) * RECORD_LONGS + keyAt(table);
+        return hash(table, slab[at], slab[at + 1]);
+    }
+
+    private static long hash(int table, long key0, long key1) {
+        return FastHash.hash64(key1, FastHash.hash64(key0, SEEDS[table]));
+    }
+
+    // Entries hold the upper half of the key hash and the record ID plus one, so 0 is empty
+    private static long entry(long hash, int id) {
+        return (hash & 0xFFFFFFFF00000000L) | (id + 1L);
+    }
+
+    private static int recordId(long entry) {
+        return (int) entry - 1;
+    }
+
+    private static int keyAt(int table) {
+        switch (table) {
+            case REFERENCES:
+                return REFERENCE_AT;
+            case VALUES:
+                return VALUE_AT;
+            default:
+                return PAN_FINGERPRINT_AT;
+        }
+    }
+
+    private static boolean parseKey(int table, String key, long[] out) {
+        switch (table) {
+            case REFERENCES:
+                return parseReference(key, out, 0);
+            case VALUES:
+                return parseDigits(key, out, 0);
+            default:
+                return parseHex(key, out, 0);
+        }
+    }
+
+    /**
+     * Packs a token into a record.
+     *
+     * @param token The token
+     * @param record The record to fill
+     * @throws IllegalArgumentException If a field does not fit the record format
+     */
+    static void encode(CardToken token, long[] record) {
+        if (!parseReference(token.getTokenReference(), record, REFERENCE_AT)) {
+            throw new IllegalArgumentException(
+                    "Token reference must be a lowercase UUID: " + token.getTokenReference());
+        }
+        if (!parseDigits(token.getTokenValue(), record, VALUE_AT)) {
+            throw new IllegalArgumentException(
+                    "Token value must be 1 to " + MAX_VALUE_DIGITS + " digits");
+        }
+
+        long meta = 0L;
+        String panFingerprint = token.getPanFingerprint();
+        if (panFingerprint != null) {
+            if (!parseHex(panFingerprint, record, PAN_FINGERPRINT_AT)) {
+                throw new IllegalArgumentException(
+                        "PAN fingerprint must be 32 lowercase hex characters");
+            }
+            meta |= HAS_PAN_FINGERPRINT;
+        } else {
+            record[PAN_FINGERPRINT_AT] = 0L;
+            record[PAN_FINGERPRINT_AT + 1] = 0L;
+        }
+
+        long pan = 0L;
+        if (token.getMaskedPan() != null) {
+            pan = encodeMaskedPan(token.getMaskedPan());
+            meta |= HAS_MASKED_PAN;
+        }
+        if (token.getLastFour() != null) {
+            pan |= (long) fixedDigits(token.getLastFour(), 4, "Last four") << LAST_FOUR_SHIFT;
+            meta |= HAS_LAST_FOUR;
+        }
+        record[PAN_AT] = pan;
+
+        long times = 0L;
+        if (token.getCreatedAt() != null) {
+            times |= epochSeconds(token.getCreatedAt()) << 32;
+            meta |= HAS_CREATED_AT;
+        }
+        if (token.getExpiresAt() != null) {
+            times |= epochSeconds(token.getExpiresAt());
+            meta |= HAS_EXPIRES_AT;
+        }
+        record[TIMES_AT] = times;
+
+        if (token.getTokenBin() != null) {
+            meta |= (long) fixedDigits(token.getTokenBin(), 6, "Token BIN") << BIN_SHIFT;
+            meta |= HAS_BIN;
+        }
+        if (token.getExpiryMonth() < 0 || token.getExpiryMonth() > 12) {
+            throw new IllegalArgumentException("Expiry month must be between 0 and 12");
+        }
+        if (token.getExpiryYear() < 0 || token.getExpiryYear() > MAX_EXPIRY_YEAR) {
+            throw new IllegalArgumentException(
+                    "Expiry year must be between 0 and " + MAX_EXPIRY_YEAR);
+        }
+        meta |= (long) token.getExpiryMonth() << MONTH_SHIFT;
+        meta |= (long) token.getExpiryYear() << YEAR_SHIFT;
+        meta |= (long) (token.getStatus() != null ? token.getStatus().ordinal() + 1 : 0)
+                << STATUS_SHIFT;
+        meta |= (long) (token.getPaymentMethodMask() & PaymentMethodMask.ALL) << METHODS_SHIFT;
+        record[META_AT] = meta;
+    }
+
+    /**
+     * Creates a token from a record.
+     *
+     * @param record The record
+     * @return A new token
+     */
+    static CardToken decode(long[] record) {
+        long meta = record[META_AT];
+        long pan = record[PAN_AT];
+        long times = record[TIMES_AT];
+        int status = (int) (meta >>> STATUS_SHIFT) & 0x7;
+        return CardToken.builder()
+                .tokenReference(formatReference(record[0], record[1]))
+                .tokenValue(formatDigits(record[VALUE_AT], record[VALUE_AT + 1]))
+                .tokenBin(
+                        (meta & HAS_BIN) != 0
+                                ? formatFixed((int) (meta >>> BIN_SHIFT) & 0xFFFFF, 6)
+                                : null)
+                .lastFour(
+                        (meta & HAS_LAST_FOUR) != 0
+                                ? formatFixed((int) (pan >>> LAST_FOUR_SHIFT) & 0x3FFF, 4)
+                                : null)
+                .maskedPan((meta & HAS_MASKED_PAN) != 0 ? formatMaskedPan(pan) : null)
+                .panFingerprint(
+                        (meta & HAS_PAN_FINGERPRINT) != 0
+                                ? formatHex(
+                                        record[PAN_FINGERPRINT_AT],
+                                        record[PAN_FINGERPRINT_AT + 1])
+                                : null)
+                .expiryMonth((int) (meta >>> MONTH_SHIFT) & 0xF)
+                .expiryYear((int) (meta >>> YEAR_SHIFT) & MAX_EXPIRY_YEAR)
+                .createdAt((meta & HAS_CREATED_AT) != 0 ? time(times >>> 32) : null)
+                .expiresAt((meta & HAS_EXPIRES_AT) != 0 ? time(times & 0xFFFFFFFFL) : null)
+                .status(status != 0 ? STATUSES[status - 1] : null)
+                .paymentMethodMask((int) (meta >>> METHODS_SHIFT) & 0x1FF)
+                .build();
+    }
+
+    // Parses a canonical lowercase UUID into two longs
+    private static boolean parseReference(String value, long[] out, int at) {
+        if (value == null || value.length() != 36) {
+            return false;
+        }
+        long high = 0L;
+        long low = 0L;
+        int digits = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+                continue;
+            }
+            int nibble = hexValue(c);
+            if (nibble < 0) {
+                return false;
+            }
+            if (digits++ < 16) {
+                high = high << 4 | nibble;
+            } else {
+                low = low << 4 | nibble;
+            }
+        }
+        out[at] = high;
+        out[at + 1] = low;
+        return true;
+    }
+
+    private static String formatReference(long high, long low) {
+        char[] chars = new char[36];
+        int digit = 0;
+        for (int i = 0; i < 36; i++) {
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                chars[i] = '-';
+                continue;
+            }
+            long word = digit < 16 ? high : low;
+            chars[i] = HEX[(int) (word >>> (60 - 4 * (digit & 15))) & 0xF];
+            digit++;
+        }
+        return new String(chars);
+    }
+
+    // Packs decimal digits as nibbles of the digit plus one, so a zero nibble ends the value
+    private static boolean parseDigits(String value, long[] out, int at) {
+        if (value == null || value.isEmpty() || value.length() > MAX_VALUE_DIGITS) {
+            return false;
+        }
+        long first = 0L;
+        long second = 0L;
+        for (int i = 0; i < value.length(); i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            long nibble = (long) (digit + 1) << (60 - 4 * (i & 15));
+            if (i < 16) {
+                first |= nibble;
+            } else {
+                second |= nibble;
+            }
+        }
+        out[at] = first;
+        out[at + 1] = second;
+        return true;
+    }
+
+    private static String formatDigits(long first, long second) {
+        char[] chars = new char[MAX_VALUE_DIGITS];
+        int length = 0;
+        while (length < MAX_VALUE_DIGITS) {
+            long word = length < 16 ? first : second;
+            int nibble = (int) (word >>> (60 - 4 * (length & 15))) & 0xF;
+            if (nibble == 0) {
+                break;
+            }
+            chars[length++] = (char) ('0' + nibble - 1);
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static boolean parseHex(String value, long[] out, int at) {
+        if (value == null || value.length() != 32) {
+            return false;
+        }
+        long high = 0L;
+        long low = 0L;
+        for (int i = 0; i < 32; i++) {
+            int nibble = hexValue(value.charAt(i));
+            if (nibble < 0) {
+                return false;
+            }
+            if (i < 16) {
+                high = high << 4 | nibble;
+            } else {
+                low = low << 4 | nibble;
+            }
+        }
+        out[at] = high;
+        out[at + 1] = low;
+        return true;
+    }
+
+    private static String formatHex(long high, long low) {
+        char[] chars = new char[32];
+        for (int i = 0; i < 32; i++) {
+            long word = i < 16 ? high : low;
+            chars[i] = HEX[(int) (word >>> (60 - 4 * (i & 15))) & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    // Up to 6 leading digits, up to 31 mask characters and up to 4 trailing digits
+    private static long encodeMaskedPan(String maskedPan) {
+        int length = maskedPan.length();
+        int head = 0;
+        while (head < length && head < 6 && isDigit(maskedPan.charAt(head))) {
+            head++;
+        }
+        int stars = 0;
+        while (head + stars < length && maskedPan.charAt(head + stars) == '*') {
+            stars++;
+        }
+        int tail = length - head - stars;
+        if (stars > MAX_MASKED_STARS || tail > 4) {
+            throw new IllegalArgumentException("Masked PAN has an unsupported format");
+        }
+        for (int i = head + stars; i < length; i++) {
+            if (!isDigit(maskedPan.charAt(i))) {
+                throw new IllegalArgumentException("Masked PAN has an unsupported format");
+            }
+        }
+
+        long headValue = head > 0 ? Integer.parseInt(maskedPan, 0, head, 10) : 0;
+        long tailValue = tail > 0 ? Integer.parseInt(maskedPan, head + stars, length, 10) : 0;
+        return tailValue << MASKED_TAIL_SHIFT
+                | (long) tail << MASKED_TAIL_DIGITS_SHIFT
+                | (long) stars << MASKED_STARS_SHIFT
+                | headValue << MASKED_HEAD_SHIFT
+                | head;
+    }
+
+    private static String formatMaskedPan(long pan) {
+        int head = (int) pan & 0x7;
+        int stars = (int) (pan >>> MASKED_STARS_SHIFT) & 0x1F;
+        int tail = (int) (pan >>> MASKED_TAIL_DIGITS_SHIFT) & 0x7;
+        StringBuilder builder = new StringBuilder(head + stars + tail);
+        if (head > 0) {
+            builder.append(formatFixed((int) (pan >>> MASKED_HEAD_SHIFT) & 0xFFFFF, head));
+        }
+        builder.append("*".repeat(stars));
+        if (tail > 0) {
+            builder.append(formatFixed((int) (pan >>> MASKED_TAIL_SHIFT) & 0x3FFF, tail));
+        }
+        return builder.toString();
+    }
+
+    private static int fixedDigits(String value, int length, String name) {
+        if (value.length() != length) {
+            throw new IllegalArgumentException(name + " must be " + length + " digits");
+        }
+        int result = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                throw new IllegalArgumentException(name + " must be " + length + " digits");
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static String formatFixed(int value, int length) {
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long epochSeconds(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        if (seconds < 0 || seconds > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Time out of range: " + time);
+        }
+        return seconds;
+    }
+
+    private static LocalDateTime time(long seconds) {
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+}
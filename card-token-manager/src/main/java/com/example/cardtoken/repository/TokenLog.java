@@ -0,0 +1,336 @@
+package com.example.cardtoken.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Append-only file of {@link TokenRecordCodec} records. The file is grown in fixed-size segments
+ * that are memory-mapped, so appends and reads are memory copies; records may span segments. The
+ * file header holds a magic number and a random log ID, which ties an index to the log it was
+ * built from.
+ *
+ * <p>Appends must be serialized by the caller; reads of records below {@link #end()} are safe from
+ * any thread. {@link #sync} makes a prefix of the log durable with group commit: a thread that
+ * needs its record durable either forces everything written so far or waits for the force that is
+ * already running, so concurrent writers share one force.
+ *
+ * <p>Writes through a mapping never fail because a thread was interrupted, unlike file channel
+ * I/O, which closes the channel for all threads.
+ */
+final class TokenLog implements Closeable {
+
+    static final long MAGIC = 0x544f4b4c4f473031L; // "TOKLOG01"
+    static final int HEADER_BYTES = 16;
+
+    static final int SEGMENT_SHIFT = 26;
+    static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = (int) SEGMENT_BYTES - 1;
+
+    private final Path path;
+    private final RandomAccessFile file;
+    private final long logId;
+    private volatile MappedByteBuffer[] segments;
+    private volatile long end;
+    private volatile long syncedEnd;
+    private final Object syncLock = new Object();
+
+    private TokenLog(Path path, RandomAccessFile file, long logId, long end) throws IOException {
+        this.path = path;
+        this.file = file;
+        this.logId = logId;
+        this.segments = new MappedByteBuffer[0];
+        ensureMapped(Math.max(end, HEADER_BYTES));
+        this.end = end;
+        this.syncedEnd = end;
+    }
+
+    /**
+     * Creates an empty log, replacing any existing file.
+     *
+     * @param path The file
+     * @param logId The log ID
+     * @return The log
+     * @throws IOException If the file cannot be created
+     */
+    static TokenLog create(Path path, long logId) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            file.setLength(0);
+            TokenLog log = new TokenLog(path, file, logId, HEADER_BYTES);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(MAGIC).putLong(logId);
+            log.write(0, header.flip());
+            log.syncAll();
+            return log;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the log ID of an existing log.
+     *
+     * @param path The file
+     * @return The log ID
+     * @throws IOException If the file cannot be read or is not a token log
+     */
+    static long readLogId(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() < HEADER_BYTES || file.readLong() != MAGIC) {
+                throw new IOException(path + " is not a token log");
+            }
+            return file.readLong();
+        }
+    }
+
+    /**
+     * Opens an existing log. The end is set to the first record that is not intact, and the rest
+     * of the file is zeroed, so a record torn by a crash is never mistaken for a valid one later.
+     *
+     * @param path The file
+     * @param from An offset at which a record starts, to search for the end from
+     * @return The log, or null if the file is not a token log
+     * @throws IOException If the file cannot be read
+     */
+    static TokenLog open(Path path, long from) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            if (file.length() < HEADER_BYTES) {
+                file.close();
+                return null;
+            }
+            file.seek(0);
+            long magic = file.readLong();
+            long logId = file.readLong();
+            if (magic != MAGIC) {
+                file.close();
+                return null;
+            }
+
+            long length = file.length();
+            TokenLog log = new TokenLog(path, file, logId, length);
+            long end = Math.max(HEADER_BYTES, Math.min(from, length));
+            ByteBuffer record = ByteBuffer.allocate(TokenRecordCodec.MAX_RECORD_BYTES);
+            while (log.read(end, record, length)) {
+                end += record.limit();
+            }
+            long dirtyEnd = log.lastNonZero(end, length);
+            log.zero(end, dirtyEnd);
+            log.force(end, dirtyEnd);
+            log.end = end;
+            log.syncAll();
+            return log;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a record. Callers must serialize appends.
+     *
+     * @param record The record between its position and limit
+     * @return The offset of the record
+     * @throws IOException If the file cannot be grown
+     */
+    long append(ByteBuffer record) throws IOException {
+        long offset = end;
+        long newEnd = offset + record.remaining();
+        ensureMapped(newEnd);
+        write(offset, record);
+        end = newEnd;
+        return offset;
+    }
+
+    /**
+     * Reads the intact record at an offset.
+     *
+     * @param offset The offset of a record
+     * @param record The buffer of at least {@link TokenRecordCodec#MAX_RECORD_BYTES} to read into;
+     *     on return it holds the record between position 0 and the limit
+     * @return false if there is no intact record at the offset
+     */
+    boolean read(long offset, ByteBuffer record) {
+        return read(offset, record, end);
+    }
+
+    private boolean read(long offset, ByteBuffer record, long limit) {
+        if (offset < HEADER_BYTES || offset + TokenRecordCodec.HEADER_BYTES > limit) {
+            return false;
+        }
+        record.clear().limit(TokenRecordCodec.HEADER_BYTES);
+        copyTo(offset, record);
+        int length = TokenRecordCodec.bodyLength(record);
+        if (length <= 0
+                || length > TokenRecordCodec.MAX_BODY_BYTES
+                || offset + TokenRecordCodec.HEADER_BYTES + length > limit) {
+            return false;
+        }
+        record.limit(TokenRecordCodec.HEADER_BYTES + length);
+        copyTo(offset + TokenRecordCodec.HEADER_BYTES, record);
+        record.flip();
+        return TokenRecordCodec.isValid(record);
+    }
+
+    /**
+     * Makes the log durable up to an offset. If another thread is already forcing the log, waits
+     * for it and forces again only if its force did not cover the offset.
+     *
+     * @param offset The offset
+     */
+    void sync(long offset) {
+        if (syncedEnd >= offset) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedEnd >= offset) {
+                return;
+            }
+            long from = syncedEnd;
+            long to = end;
+            force(from, to);
+            syncedEnd = to;
+        }
+    }
+
+    /** Makes the whole log durable, including records read back after a process restart. */
+    void syncAll() throws IOException {
+        synchronized (syncLock) {
+            force(0, end);
+            file.getFD().sync();
+            syncedEnd = end;
+        }
+    }
+
+    long end() {
+        return end;
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Closes the file. The mappings stay valid until they are garbage collected, so readers that
+     * still hold offsets into this log can finish.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void ensureMapped(long offset) throws IOException {
+        int needed = (int) ((offset + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] current = segments;
+        if (needed <= current.length) {
+            return;
+        }
+
+        MappedByteBuffer[] grown = Arrays.copyOf(current, needed);
+        if (file.length() < (long) needed << SEGMENT_SHIFT) {
+            file.setLength((long) needed << SEGMENT_SHIFT);
+            // Forcing a mapping does not write the new file length
+            file.getFD().sync();
+        }
+        for (int segment = current.length; segment < needed; segment++) {
+            grown[segment] = map(file, (long) segment << SEGMENT_SHIFT, SEGMENT_BYTES);
+        }
+        segments = grown;
+    }
+
+    /**
+     * Maps a region of a file for reading and writing.
+     *
+     * @param file The file
+     * @param position The start of the region
+     * @param size The size of the region
+     * @return The mapping
+     * @throws IOException If the region cannot be mapped
+     */
+    static MappedByteBuffer map(RandomAccessFile file, long position, long size)
+            throws IOException {
+        // Mapping through a channel fails if the thread is interrupted, and closes the channel
+        boolean interrupted = Thread.interrupted();
+        try {
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, position, size);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(long offset, ByteBuffer source) {
+        MappedByteBuffer[] mapped = segments;
+        while (source.hasRemaining()) {
+            int segment = (int) (offset >>> SEGMENT_SHIFT);
+            int position = (int) offset & SEGMENT_MASK;
+            int length = (int) Math.min(source.remaining(), SEGMENT_BYTES - position);
+            mapped[segment].put(position, source, source.position(), length);
+            source.position(source.position() + length);
+            offset += length;
+        }
+    }
+
+    // Fills the buffer from its position to its limit with the bytes at the offset
+    private void copyTo(long offset, ByteBuffer target) {
+        MappedByteBuffer[] mapped = segments;
+        while (target.hasRemaining()) {
+            int segment = (int) (offset >>> SEGMENT_SHIFT);
+            int position = (int) offset & SEGMENT_MASK;
+            int length = (int) Math.min(target.remaining(), SEGMENT_BYTES - position);
+            target.put(target.position(), mapped[segment], position, length);
+            target.position(target.position() + length);
+            offset += length;
+        }
+    }
+
+    // The offset after the last non-zero byte in a range, or from if the range is all zeros
+    private long lastNonZero(long from, long to) {
+        MappedByteBuffer[] mapped = segments;
+        long last = from;
+        for (long offset = from; offset < to; offset++) {
+            int segment = (int) (offset >>> SEGMENT_SHIFT);
+            int position = (int) offset & SEGMENT_MASK;
+            if ((position & 7) == 0 && offset + 8 <= to) {
+                // Skip zero words
+                if (mapped[segment].getLong(position) == 0L) {
+                    offset += 7;
+                    continue;
+                }
+            }
+            if (mapped[segment].get(position) != 0) {
+                last = offset + 1;
+            }
+        }
+        return last;
+    }
+
+    private void zero(long from, long to) {
+        ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+        for (long offset = from; offset < to; offset += zeros.capacity()) {
+            write(offset, zeros.clear().limit((int) Math.min(zeros.capacity(), to - offset)));
+        }
+    }
+
+    private void force(long from, long to) {
+        MappedByteBuffer[] mapped = segments;
+        for (long offset = from; offset < to; ) {
+            int segment = (int) (offset >>> SEGMENT_SHIFT);
+            int position = (int) offset & SEGMENT_MASK;
+            int length = (int) Math.min(to - offset, SEGMENT_BYTES - position);
+            mapped[segment].force(position, length);
+            offset += length;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.cardtoken.repository;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.shared.util.PaymentMethodMask;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary format of the records in a {@link TokenLog}. A record is a header of the body length
+ * (int), a CRC-32C checksum (int) of the type and body, and the record type (byte), followed by
+ * the body. A put record holds all fields of a {@link CardToken}; a delete record only the token
+ * reference. Both start with the token reference, so it can be read without decoding the rest.
+ *
+ * <p>Strings are stored as a short UTF-8 length (-1 for null) and the bytes, dates as epoch
+ * seconds and nanos of the local date-time, and payment methods as a {@link PaymentMethodMask}.
+ */
+final class TokenRecordCodec {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    static final int HEADER_BYTES = 9;
+    static final int MAX_BODY_BYTES = 16 * 1024;
+    static final int MAX_RECORD_BYTES = HEADER_BYTES + MAX_BODY_BYTES;
+
+    private static final int LENGTH = 0;
+    private static final int CHECKSUM = 4;
+    private static final int TYPE = 8;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private TokenRecordCodec() {}
+
+    /**
+     * Encodes a put record.
+     *
+     * @param token The token
+     * @param out The buffer of at least {@link #MAX_RECORD_BYTES}; on return it holds the record
+     *     between position 0 and the limit
+     */
+    static void encodePut(CardToken token, ByteBuffer out) {
+        out.clear().position(HEADER_BYTES);
+        try {
+            putString(out, token.getTokenReference());
+            putString(out, token.getTokenValue());
+            putString(out, token.getTokenBin());
+            putString(out, token.getLastFour());
+            putString(out, token.getMaskedPan());
+            putString(out, token.getPanFingerprint());
+            out.putInt(token.getExpiryMonth());
+            out.putInt(token.getExpiryYear());
+            putTime(out, token.getCreatedAt());
+            putTime(out, token.getExpiresAt());
+            out.put(token.getStatus() != null ? (byte) token.getStatus().ordinal() : -1);
+            out.putInt(token.getPaymentMethodMask());
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException(
+                    "Token " + token.getTokenReference() + " is too large to store");
+        }
+        finish(out, PUT);
+    }
+
+    /**
+     * Encodes a delete record.
+     *
+     * @param tokenReference The reference of the deleted token
+     * @param out The buffer of at least {@link #MAX_RECORD_BYTES}; on return it holds the record
+     *     between position 0 and the limit
+     */
+    static void encodeDelete(String tokenReference, ByteBuffer out) {
+        out.clear().position(HEADER_BYTES);
+        putString(out, tokenReference);
+        finish(out, DELETE);
+    }
+
+    /**
+     * Gets the body length from a record header, without validating it.
+     *
+     * @param record The record, starting at position 0
+     * @return The body length
+     */
+    static int bodyLength(ByteBuffer record) {
+        return record.getInt(LENGTH);
+    }
+
+    /**
+     * Checks the body length and checksum of a complete record.
+     *
+     * @param record The record between position 0 and the limit
+     * @return true if the record is intact
+     */
+    static boolean isValid(ByteBuffer record) {
+        int length = record.getInt(LENGTH);
+        if (length <= 0 || length > MAX_BODY_BYTES || record.limit() != HEADER_BYTES + length) {
+            return false;
+        }
+        byte type = record.get(TYPE);
+        return (type == PUT || type == DELETE) && record.getInt(CHECKSUM) == checksum(record);
+    }
+
+    static byte type(ByteBuffer record) {
+        return record.get(TYPE);
+    }
+
+    static String reference(ByteBuffer record) {
+        return getString(record.position(HEADER_BYTES));
+    }
+
+    static String value(ByteBuffer record) {
+        record.position(HEADER_BYTES);
+        skipString(record);
+        return getString(record);
+    }
+
+    static String panFingerprint(ByteBuffer record) {
+        record.position(HEADER_BYTES);
+        for (int i = 0; i < 5; i++) {
+            skipString(record);
+        }
+        return getString(record);
+    }
+
+    /**
+     * Decodes a put record.
+     *
+     * @param record The record between position 0 and the limit
+     * @return A new token
+     */
+    static CardToken decode(ByteBuffer record) {
+        record.position(HEADER_BYTES);
+        return CardToken.builder()
+                .tokenReference(getString(record))
+                .tokenValue(getString(record))
+                .tokenBin(getString(record))
+                .lastFour(getString(record))
+                .maskedPan(getString(record))
+                .panFingerprint(getString(record))
+                .expiryMonth(record.getInt())
+                .expiryYear(record.getInt())
+                .createdAt(getTime(record))
+                .expiresAt(getTime(record))
+                .status(getStatus(record))
+                .paymentMethodMask(record.getInt())
+                .build();
+    }
+
+    private static TokenStatus getStatus(ByteBuffer record) {
+        byte status = record.get();
+        return status >= 0 ? TokenStatus.values()[status] : null;
+    }
+
+    private static void finish(ByteBuffer out, byte type) {
+        int end = out.position();
+        out.put(TYPE, type);
+        out.limit(end).position(0);
+        out.putInt(LENGTH, end - HEADER_BYTES);
+        out.putInt(CHECKSUM, checksum(out));
+    }
+
+    // Checksum of the type and body of a record between position 0 and the limit
+    private static int checksum(ByteBuffer record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record.duplicate().position(TYPE));
+        return (int) crc.getValue();
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new BufferOverflowException();
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length > 0) {
+            in.position(in.position() + length);
+        }
+    }
+
+    private static void putTime(ByteBuffer out, LocalDateTime time) {
+        if (time == null) {
+            out.putLong(NO_TIME);
+            out.putInt(0);
+        } else {
+            out.putLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.putInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime getTime(ByteBuffer in) {
+        long seconds = in.getLong();
+        int nanos = in.getInt();
+        if (seconds == NO_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
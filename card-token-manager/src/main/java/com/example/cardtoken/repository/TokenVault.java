@@ -2,7 +2,10 @@ package com.example.cardtoken.repository;
 
 import com.example.cardtoken.model.CardToken;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /** Interface for a token vault that stores and retrieves card tokens. */
 public interface TokenVault {
@@ -15,6 +18,52 @@ public interface TokenVault {
      */
     CardToken save(CardToken token);
 
+    /**
+     * Saves a batch of tokens. Vaults that write to disk make the whole batch durable at once.
+     *
+     * @param tokens The tokens to save
+     * @return The saved tokens
+     */
+    default List<CardToken> saveAll(List<CardToken> tokens) {
+        tokens.forEach(this::save);
+        return tokens;
+    }
+
+    /**
+     * Replaces a stored token with an updated one, if the token is still stored as expected: a
+     * compare-and-swap on the token reference. Tokens are immutable, so an update reads a token,
+     * builds the changed token from it and replaces it, and reads again if another update came
+     * first.
+     *
+     * @param expected The token as it was read from the vault
+     * @param updated The changed token, with the same reference
+     * @return true if the token was replaced, false if it changed or was deleted meanwhile
+     */
+    boolean replace(CardToken expected, CardToken updated);
+
+    /**
+     * Changes a stored token: reads it, applies a change to the token read and replaces it with
+     * the result, and starts again from the read if another update replaced the token first. No
+     * lock is held across the read and the replace, so readers never wait for the change.
+     *
+     * @param tokenReference The token reference
+     * @param change Creates the changed token from the current one, and may run more than once;
+     *     returning the same token leaves it unchanged
+     * @return The changed token, or empty if not found
+     */
+    default Optional<CardToken> update(String tokenReference, UnaryOperator<CardToken> change) {
+        while (true) {
+            Optional<CardToken> current = findByTokenReference(tokenReference);
+            if (current.isEmpty()) {
+                return current;
+            }
+            CardToken updated = change.apply(current.get());
+            if (updated == current.get() || replace(current.get(), updated)) {
+                return Optional.of(updated);
+            }
+        }
+    }
+
     /**
      * Finds a token by its reference.
      *
@@ -31,6 +80,14 @@ public interface TokenVault {
      */
     Optional<CardToken> findByTokenValue(String tokenValue);
 
+    /**
+     * Finds the most recently saved token of a card by the fingerprint of its PAN.
+     *
+     * @param panFingerprint The PAN fingerprint
+     * @return An Optional containing the token if found
+     */
+    Optional<CardToken> findByPanFingerprint(String panFingerprint);
+
     /**
      * Checks if a token exists by its reference.
      *
@@ -54,6 +111,24 @@ public interface TokenVault {
      */
     void deleteByTokenReference(String tokenReference);
 
+    /**
+     * Deletes a stored token, if it is still stored as expected: the conditional counterpart of
+     * {@link #deleteByTokenReference(String)}, as {@link #replace(CardToken, CardToken)} is for
+     * {@link #save(CardToken)}.
+     *
+     * @param expected The token as it was read from the vault
+     * @return true if the token was deleted, false if it changed or was deleted meanwhile
+     */
+    boolean remove(CardToken expected);
+
+    /**
+     * Passes every stored token to an action, for scans at startup. Writes may continue during the
+     * scan; a token changed meanwhile may be passed in its old or its new state.
+     *
+     * @param action Receives each token; it must not write to the vault
+     */
+    void forEach(Consumer<CardToken> action);
+
     /** Clears all tokens from the vault. */
     void clear();
 }
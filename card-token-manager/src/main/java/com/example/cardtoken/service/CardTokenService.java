@@ -1,7 +1,10 @@
 package com.example.cardtoken.service;
 
 import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.DetokenizationCacheStats;
+import com.example.cardtoken.model.DetokenizedCard;
 import com.example.cardtoken.model.TokenStatus;
+import com.example.cardtoken.model.TokenizationResult;
 import com.example.shared.model.CardDetails;
 import com.example.shared.model.PaymentMethod;
 
@@ -24,6 +27,8 @@ import java.util.Set;
 public class CardTokenService {
 
     private final TokenManagementService tokenManagementService;
+    private final DetokenizationCache detokenizationCache;
+    private final TokenBatchExecutor tokenBatchExecutor;
 
     /**
      * Tokenizes a card for the specified payment method.
@@ -51,6 +56,29 @@ public class CardTokenService {
         return tokenManagementService.tokenizeForMultipleNetworks(cardDetails, paymentMethods);
     }
 
+    /**
+     * Tokenizes a batch of cards, such as the stored cards of a merchant being migrated. Cards that
+     * already have a usable token get it back instead of a new one. Callers streaming a large
+     * number of cards should pass them in chunks of {@link #getTokenizationChunkSize()}.
+     *
+     * @param cards The cards to tokenize
+     * @param paymentMethod The payment method to use for tokenization
+     * @return One result per card, in the order of the cards
+     */
+    public List<TokenizationResult> tokenizeBatch(
+            List<CardDetails> cards, PaymentMethod paymentMethod) {
+        return tokenManagementService.tokenizeBatch(cards, paymentMethod);
+    }
+
+    /**
+     * Gets the number of cards streaming callers should pass to {@link #tokenizeBatch} at a time.
+     *
+     * @return The chunk size
+     */
+    public int getTokenizationChunkSize() {
+        return tokenBatchExecutor.getChunkSize();
+    }
+
     /**
      * Retrieves a token by its reference.
      *
@@ -71,6 +99,27 @@ public class CardTokenService {
         return tokenManagementService.detokenize(tokenReference);
     }
 
+    /**
+     * Looks up an active token and detokenizes it in one lookup, replacing a call to {@link
+     * #getToken} followed by {@link #detokenize}. Recently detokenized tokens are served from the
+     * detokenization cache.
+     *
+     * @param tokenReference The token reference
+     * @return An Optional containing the token and card details if the token is found and active
+     */
+    public Optional<DetokenizedCard> detokenizeToken(String tokenReference) {
+        return tokenManagementService.detokenizeToken(tokenReference);
+    }
+
+    /**
+     * Gets the hit, miss and eviction counters of the detokenization cache.
+     *
+     * @return The cache counters
+     */
+    public DetokenizationCacheStats getDetokenizationCacheStats() {
+        return detokenizationCache.getStats();
+    }
+
     /**
      * Suspends a token.
      *
@@ -136,30 +185,17 @@ public class CardTokenService {
     public List<CardToken> findValidTokensForCard(CardDetails cardDetails) {
         log.info("Finding valid tokens for card ending with {}.", cardDetails.getLastFour());
 
-        // First check if there are existing tokens for this card by token value
-        // In a real implementation, we would use a secure lookup based on a fingerprint or hash of
-        // the PAN
-        // For this demo, we'll use the tokensByValue map as a simulation
-        String cardNumber = cardDetails.getCardNumber();
-
-        // Find tokens by token value (simulating PAN lookup)
-        // In a real implementation, we would search in a more sophisticated way
-        Optional<CardToken> existingToken = tokenManagementService.findByTokenValue(cardNumber);
-
-        if (existingToken.isEmpty()) {
-            // Try looking up by last 4 digits (common fallback in real systems)
-            existingToken =
-                    findTokenByLastFour(
-                            cardDetails.getLastFour(),
-                            cardDetails.getExpiryMonth(),
-                            cardDetails.getExpiryYear());
-        }
+        // Look the card up by the keyed fingerprint of its PAN
+        Optional<CardToken> existingToken =
+                tokenManagementService.findByCardNumber(cardDetails.getCardNumber());
 
         if (existingToken.isPresent()) {
             CardToken token = existingToken.get();
 
-            // Check if the token is active
-            if (token.isActive()) {
+            // Check if the token is active and the card was not reissued with a new expiry date
+            if (token.isActive()
+                    && token.getExpiryMonth() == cardDetails.getExpiryMonth()
+                    && token.getExpiryYear() == cardDetails.getExpiryYear()) {
                 log.info(
                         "Found existing valid token {} for card ending with {}",
                         token.getTokenReference(),
@@ -167,9 +203,10 @@ public class CardTokenService {
                 return List.of(token);
             }
 
-            // If token exists but is not active, create a new one
+            // If the token exists but cannot be used, a new one is created
             log.info(
-                    "Found existing token {} for card ending with {} but it's not active, creating new token",
+                    "Found existing token {} for card ending with {} but it's not valid, "
+                            + "creating new token",
                     token.getTokenReference(),
                     cardDetails.getLastFour());
         }
@@ -177,22 +214,6 @@ public class CardTokenService {
         return List.of();
     }
 
-    /**
-     * Helper method to find a token by the last four digits of the card and expiry date. This is a
-     * simplified implementation for demonstration purposes.
-     *
-     * @param lastFour The last four digits of the card
-     * @param expiryMonth The expiry month
-     * @param expiryYear The expiry year
-     * @return An Optional containing the token if found
-     */
-    private Optional<CardToken> findTokenByLastFour(
-            String lastFour, int expiryMonth, int expiryYear) {
-        // In a real implementation, this would query a database
-        // For this demo, we'll return an empty Optional
-        return Optional.empty();
-    }
-
     /**
      * Adds a payment method to an existing token.
      *
@@ -0,0 +1,284 @@
+package com.example.cardtoken.service;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.DetokenizationCacheStats;
+import com.example.cardtoken.model.DetokenizedCard;
+import com.example.shared.model.CardDetails;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived cache of detokenized cards, so a payment that reads a token and its card details
+ * goes to the token vault once. Entries live for a fixed time to live from when they were cached
+ * and are never returned after it, however often they are read.
+ *
+ * <p>The cache holds card numbers only as byte arrays, which are overwritten with zeros when an
+ * entry expires, is evicted, is invalidated or is replaced. The {@link CardDetails} handed out
+ * carry the card number as a String, which the caller owns. Expired entries are swept in the
+ * background, so card numbers do not stay in memory long after their time to live.
+ *
+ * <p>Every entry has the same time to live, so insertion order is also expiry order: a queue of
+ * entries serves both for sweeping expired entries and for evicting the oldest entries when the
+ * cache is full.
+ */
+@Slf4j
+@Service
+public class DetokenizationCache {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long sweepIntervalMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService sweeper;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates the cache.
+     *
+     * @param ttlMillis How long an entry may be returned after it was cached, 0 to disable caching
+     * @param maxEntries The maximum number of cached entries
+     * @param sweepIntervalMillis The interval between sweeps of expired entries
+     */
+    public DetokenizationCache(
+            @Value("${card-token.detokenization-cache.ttl-ms:30000}") long ttlMillis,
+            @Value("${card-token.detokenization-cache.max-entries:10000}") int maxEntries,
+            @Value("${card-token.detokenization-cache.sweep-interval-ms:1000}")
+                    long sweepIntervalMillis) {
+        if (ttlMillis < 0 || maxEntries <= 0 || sweepIntervalMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "TTL must not be negative, max entries and sweep interval must be positive");
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.sweepIntervalMillis = sweepIntervalMillis;
+        this.sweeper =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "detokenization-cache-sweeper");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @PostConstruct
+    public void start() {
+        if (ttlNanos > 0) {
+            sweeper.scheduleWithFixedDelay(
+                    () -> sweep(System.nanoTime()),
+                    sweepIntervalMillis,
+                    sweepIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+        clear();
+    }
+
+    /**
+     * Gets a cached detokenized card.
+     *
+     * @param tokenReference The token reference
+     * @return The detokenized card, or null if it is not cached or has expired
+     */
+    public DetokenizedCard get(String tokenReference) {
+        return get(tokenReference, System.nanoTime());
+    }
+
+    DetokenizedCard get(String tokenReference, long nowNanos) {
+        if (ttlNanos == 0 || tokenReference == null) {
+            return null;
+        }
+
+        Entry entry = entries.get(tokenReference);
+        if (entry != null && nowNanos - entry.cachedAt >= ttlNanos) {
+            if (entries.remove(tokenReference, entry)) {
+                entry.zero();
+                expirations.increment();
+            }
+            entry = null;
+        }
+        // Null if the entry was zeroed since it was looked up
+        DetokenizedCard card = entry != null ? entry.toDetokenizedCard() : null;
+        if (card == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return card;
+    }
+
+    /**
+     * Caches a detokenized card, replacing the entry of the same token.
+     *
+     * @param token The active token
+     * @param cardDetails The card details of the token
+     */
+    public void put(CardToken token, CardDetails cardDetails) {
+        put(token, cardDetails, System.nanoTime());
+    }
+
+    void put(CardToken token, CardDetails cardDetails, long nowNanos) {
+        if (ttlNanos == 0 || cardDetails.getCardNumber() == null) {
+            return;
+        }
+
+        Entry entry = new Entry(token, cardDetails, nowNanos);
+        Entry previous = entries.put(token.getTokenReference(), entry);
+        if (previous != null) {
+            previous.zero();
+        }
+        insertionOrder.add(entry);
+
+        // Evict the oldest entries beyond the limit
+        while (entries.size() > maxEntries) {
+            Entry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            if (entries.remove(oldest.token.getTokenReference(), oldest)) {
+                oldest.zero();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of a token that changed or was deleted.
+     *
+     * @param tokenReference The token reference
+     */
+    public void invalidate(String tokenReference) {
+        if (tokenReference == null) {
+            return;
+        }
+        Entry entry = entries.remove(tokenReference);
+        if (entry != null) {
+            entry.zero();
+            invalidations.increment();
+        }
+    }
+
+    /** Removes all entries. */
+    public void clear() {
+        Entry entry;
+        while ((entry = insertionOrder.poll()) != null) {
+            entries.remove(entry.token.getTokenReference(), entry);
+            entry.zero();
+        }
+        // Entries put concurrently may still be mapped after their queue element was polled
+        entries.values().forEach(Entry::zero);
+        entries.clear();
+    }
+
+    /**
+     * Removes the entries whose time to live has passed.
+     *
+     * @param nowNanos The current {@link System#nanoTime()}
+     * @return The number of removed entries
+     */
+    int sweep(long nowNanos) {
+        int removed = 0;
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null && nowNanos - oldest.cachedAt >= ttlNanos) {
+            if (!insertionOrder.remove(oldest)) {
+                // Evicted by a concurrent put
+                continue;
+            }
+            if (entries.remove(oldest.token.getTokenReference(), oldest)) {
+                removed++;
+                expirations.increment();
+            }
+            oldest.zero();
+        }
+        if (removed > 0) {
+            log.debug("Swept {} expired detokenization cache entries", removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the cache counters.
+     *
+     * @return The counters since startup
+     */
+    public DetokenizationCacheStats getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        return DetokenizationCacheStats.builder()
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRatio(lookups > 0 ? (double) hitCount / lookups : 0.0)
+                .expirations(expirations.sum())
+                .evictions(evictions.sum())
+                .invalidations(invalidations.sum())
+                .size(entries.size())
+                .build();
+    }
+
+    /** A cached card; the card number bytes are guarded by the entry's monitor. */
+    private static final class Entry {
+        final CardToken token;
+        final long cachedAt;
+        final int expiryMonth;
+        final int expiryYear;
+        final String cardholderName;
+        private final byte[] cardNumber;
+        private boolean zeroed;
+
+        Entry(CardToken token, CardDetails cardDetails, long cachedAt) {
+            this.token = token;
+            this.cachedAt = cachedAt;
+            this.expiryMonth = cardDetails.getExpiryMonth();
+            this.expiryYear = cardDetails.getExpiryYear();
+            this.cardholderName = cardDetails.getCardholderName();
+            this.cardNumber = cardDetails.getCardNumber().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        synchronized DetokenizedCard toDetokenizedCard() {
+            if (zeroed) {
+                return null;
+            }
+            CardDetails cardDetails =
+                    CardDetails.builder()
+                            .cardNumber(new String(cardNumber, StandardCharsets.US_ASCII))
+                            .cardholderName(cardholderName)
+                            .expiryMonth(expiryMonth)
+                            .expiryYear(expiryYear)
+                            .build();
+            return DetokenizedCard.builder().token(token).cardDetails(cardDetails).build();
+        }
+
+        synchronized void zero() {
+            Arrays.fill(cardNumber, (byte) 0);
+            zeroed = true;
+        }
+    }
+}
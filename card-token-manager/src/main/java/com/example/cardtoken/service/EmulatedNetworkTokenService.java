@@ -0,0 +1,91 @@
+package com.example.cardtoken.service;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.shared.model.CardDetails;
+import com.example.shared.model.PaymentMethod;
+
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local stand-in for the token services of the payment networks. Each request is answered
+ * after a random latency, and a share of them is declined. Answers are scheduled on a timer
+ * thread rather than slept on, so any number of requests can be in flight at once.
+ */
+@Slf4j
+@Component
+public class EmulatedNetworkTokenService implements NetworkTokenService {
+
+    private final long minLatencyMillis;
+    private final long maxLatencyMillis;
+    private final double declineRate;
+    private final ScheduledExecutorService responder;
+
+    /**
+     * Creates the emulated token services.
+     *
+     * @param minLatencyMillis The shortest time a network takes to answer
+     * @param maxLatencyMillis The longest time a network takes to answer
+     * @param declineRate The share of requests a network declines
+     */
+    public EmulatedNetworkTokenService(
+            @Value("${card-token.provisioning.emulator.min-latency-ms:50}") long minLatencyMillis,
+            @Value("${card-token.provisioning.emulator.max-latency-ms:500}") long maxLatencyMillis,
+            @Value("${card-token.provisioning.emulator.decline-rate:0.05}") double declineRate) {
+        if (minLatencyMillis < 0 || maxLatencyMillis < minLatencyMillis) {
+            throw new IllegalArgumentException("Invalid emulated latency range");
+        }
+        if (declineRate < 0 || declineRate > 1) {
+            throw new IllegalArgumentException("Decline rate must be between 0 and 1");
+        }
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.declineRate = declineRate;
+        this.responder =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "network-token-emulator");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        responder.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<Void> provision(
+            CardToken token, CardDetails cardDetails, PaymentMethod network) {
+        CompletableFuture<Void> response = new CompletableFuture<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latencyMillis = random.nextLong(minLatencyMillis, maxLatencyMillis + 1);
+        boolean declined = random.nextDouble() < declineRate;
+        responder.schedule(
+                () -> {
+                    if (declined) {
+                        log.warn(
+                                "Network {} declined token {}", network, token.getTokenReference());
+                        response.completeExceptionally(
+                                new IllegalStateException(
+                                        "Token declined by the " + network + " token service"));
+                    } else {
+                        response.complete(null);
+                    }
+                },
+                latencyMillis,
+                TimeUnit.MILLISECONDS);
+        return response;
+    }
+}
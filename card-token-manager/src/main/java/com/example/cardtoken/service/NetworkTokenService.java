@@ -0,0 +1,25 @@
+package com.example.cardtoken.service;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.shared.model.CardDetails;
+import com.example.shared.model.PaymentMethod;
+
+import java.util.concurrent.CompletableFuture;
+
+/** Interface to the token services of the payment networks. */
+public interface NetworkTokenService {
+
+    /**
+     * Asks a payment network's token service to provision a token for a card, so payments with
+     * the token can be routed to the network. The call must not block; the network answers
+     * through the returned future.
+     *
+     * @param token The token to provision
+     * @param cardDetails The card details of the token
+     * @param network The payment network
+     * @return A future that completes when the network provisioned the token, or completes
+     *     exceptionally when the network declined it or could not be reached
+     */
+    CompletableFuture<Void> provision(
+            CardToken token, CardDetails cardDetails, PaymentMethod network);
+}
@@ -0,0 +1,132 @@
+package com.example.cardtoken.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes keyed fingerprints of PANs: HMAC-SHA256 over the PAN digits, truncated to 128 bits and
+ * hex encoded. Fingerprints let the vault find the tokens of a card without storing the PAN, and
+ * cannot be reversed or recomputed without the key.
+ *
+ * <p>The key is read from {@code card-token.fingerprint.key} (base64, at least 256 bits). Without
+ * it a random key is generated at startup, so fingerprints do not survive a restart.
+ */
+@Slf4j
+@Service
+public class PanFingerprintService {
+
+    /** Length of a fingerprint in hex characters (128 bits). */
+    public static final int FINGERPRINT_LENGTH = 32;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_BYTES = 32;
+    private static final int MAC_BYTES = 32;
+    private static final int MIN_PAN_DIGITS = 12;
+    private static final int MAX_PAN_DIGITS = 19;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Per-thread scratch buffer: the MAC output followed by the PAN digits
+    private static final ThreadLocal<byte[]> BUFFER =
+            ThreadLocal.withInitial(() -> new byte[MAC_BYTES + MAX_PAN_DIGITS]);
+
+    private final SecretKeySpec key;
+
+    // Mac instances are not thread-safe, and creating one costs more than using it
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * Creates the fingerprint service.
+     *
+     * @param key The base64 encoded HMAC key; empty generates a random key
+     */
+    public PanFingerprintService(@Value("${card-token.fingerprint.key:}") String key) {
+        byte[] keyBytes;
+        if (key == null || key.isBlank()) {
+            keyBytes = new byte[MIN_KEY_BYTES];
+            new SecureRandom().nextBytes(keyBytes);
+            log.warn(
+                    "No card-token.fingerprint.key configured, using a random key; "
+                            + "tokens cannot be found by card after a restart");
+        } else {
+            keyBytes = Base64.getDecoder().decode(key.trim());
+            if (keyBytes.length < MIN_KEY_BYTES) {
+                throw new IllegalArgumentException(
+                        "PAN fingerprint key must be at least " + MIN_KEY_BYTES * 8 + " bits");
+            }
+        }
+
+        // SecretKeySpec keeps its own copy of the key
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        Arrays.fill(keyBytes, (byte) 0);
+        // Fail at startup rather than on the first fingerprint if HMAC-SHA256 is unavailable
+        newMac();
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Computes the fingerprint of a PAN. Spaces and dashes are ignored.
+     *
+     * @param pan The PAN
+     * @return The fingerprint, or null if the PAN is not 12 to 19 digits
+     */
+    public String fingerprint(String pan) {
+        if (pan == null) {
+            return null;
+        }
+
+        byte[] buffer = BUFFER.get();
+        int digits = 0;
+        try {
+            for (int i = 0; i < pan.length(); i++) {
+                char c = pan.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    if (digits == MAX_PAN_DIGITS) {
+                        return null;
+                    }
+                    buffer[MAC_BYTES + digits++] = (byte) c;
+                } else if (c != ' ' && c != '-') {
+                    return null;
+                }
+            }
+            if (digits < MIN_PAN_DIGITS) {
+                return null;
+            }
+
+            Mac mac = macs.get();
+            mac.update(buffer, MAC_BYTES, digits);
+            mac.doFinal(buffer, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to compute PAN fingerprint", e);
+        } finally {
+            // Do not leave PAN digits behind in the buffer
+            Arrays.fill(buffer, MAC_BYTES, MAC_BYTES + digits, (byte) 0);
+        }
+
+        char[] hex = new char[FINGERPRINT_LENGTH];
+        for (int i = 0; i < FINGERPRINT_LENGTH / 2; i++) {
+            hex[2 * i] = HEX_DIGITS[(buffer[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[buffer[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.cardtoken.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: {@link #LEVELS} wheels of {@link #SLOTS} slots, where a slot of
+ * level {@code n} spans {@code SLOTS^n} ticks. A timeout is linked into the slot of the lowest
+ * level whose span reaches its deadline, and moves down a level each time the wheel above turns
+ * to its slot, so scheduling and firing take constant time however many timeouts are pending.
+ * Deadlines beyond the top level wait in its furthest slot and are placed again when it turns.
+ *
+ * <p>Timeouts are intrusive nodes, so a pending timeout takes no memory besides the timeout
+ * itself. A timeout fires on the first tick at or after its deadline, never before it. The wheel
+ * is not thread-safe; it belongs to the thread that advances it.
+ *
+ * @param <T> The type of timeouts
+ */
+final class TimingWheel<T extends TimingWheel.Timeout> {
+
+    private static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    static final int LEVELS = 6;
+
+    // The furthest tick the top level can hold, relative to the current tick
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickMillis;
+    private final long originMillis;
+    private final Timeout[][] slots = new Timeout[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param tickMillis The duration of a tick
+     * @param nowMillis The current time, which becomes tick 0
+     */
+    TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.originMillis = nowMillis;
+    }
+
+    /**
+     * Schedules a timeout. A deadline that has passed fires on the next tick.
+     *
+     * @param timeout A timeout that is not scheduled
+     * @param deadlineMillis The time from which the timeout may fire
+     */
+    void schedule(T timeout, long deadlineMillis) {
+        // Round up, so a timeout never fires before its deadline
+        long deadlineTick = -Math.floorDiv(originMillis - deadlineMillis, tickMillis);
+        timeout.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+        insert(timeout);
+        size++;
+    }
+
+    /**
+     * Advances the wheel to a time and fires the timeouts whose deadline was reached.
+     *
+     * @param nowMillis The current time; times before the last advance are ignored
+     * @param expired Receives each fired timeout, which may be scheduled again
+     * @return The number of fired timeouts
+     */
+    int advance(long nowMillis, Consumer<? super T> expired) {
+        long targetTick = Math.floorDiv(nowMillis - originMillis, tickMillis);
+        int fired = 0;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                // Nothing to cascade or fire on the way
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+
+            // Move the timeouts of the slots turned to down, from the top level first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, slotOf(currentTick, level));
+                }
+            }
+
+            Timeout timeout = slots[0][slotOf(currentTick, 0)];
+            slots[0][slotOf(currentTick, 0)] = null;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                size--;
+                fired++;
+                @SuppressWarnings("unchecked")
+                T expiredTimeout = (T) timeout;
+                expired.accept(expiredTimeout);
+                timeout = next;
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * Gets the number of scheduled timeouts.
+     *
+     * @return The number of timeouts
+     */
+    int size() {
+        return size;
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout timeout = slots[level][slot];
+        slots[level][slot] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            insert(timeout);
+            timeout = next;
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        // Beyond the top level, wait in its furthest slot and be placed again from there
+        long tick = delta > MAX_DELTA ? currentTick + MAX_DELTA : timeout.deadlineTick;
+        int level = 0;
+        while (level < LEVELS - 1 && Math.min(delta, MAX_DELTA) >> (SLOT_BITS * (level + 1)) != 0) {
+            level++;
+        }
+        int slot = slotOf(tick, level);
+        timeout.next = slots[level][slot];
+        slots[level][slot] = timeout;
+    }
+
+    private static int slotOf(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+    }
+
+    /** A node that can be scheduled on a {@link TimingWheel}. */
+    static class Timeout {
+        long deadlineTick;
+        Timeout next;
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.cardtoken.service;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenLifecycleEvent;
+import com.example.cardtoken.model.TokenLifecycleEventType;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.cardtoken.repository.TokenVault;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves tokens through the lifecycle steps that no request triggers: an active or suspended token
+ * is set to EXPIRED when its expiry date passes, and a token that has been expired or deleted for
+ * the retention period is purged from the vault. Each step publishes a {@link
+ * TokenLifecycleEvent}.
+ *
+ * <p>Only tokens whose next step is due within a horizon ({@code
+ * card-token.lifecycle.horizon-hours}) are tracked, each with one timer on a {@link TimingWheel},
+ * so a tick costs nothing for tokens whose time has not come. Most tokens expire years from now
+ * and take no memory here: the vault is scanned again every half horizon, moving the horizon on
+ * and scheduling the tokens that came within it. Token changes schedule a new timer through
+ * {@link #schedule(CardToken)}, which replaces the pending one, or drop it if the next step moved
+ * beyond the horizon. Timers are queued to the ticker thread, which owns the wheel, so callers
+ * never wait for it. When a timer fires, the token is read from the vault again and only changed
+ * if it still is due, so a timer that is out of date because the token changed meanwhile is
+ * rescheduled or dropped.
+ *
+ * <p>Deleted tokens do not record when they were deleted, so they are tracked whatever their purge
+ * time, and after a restart their retention starts again.
+ */
+@Slf4j
+@Service
+public class TokenLifecycleScheduler {
+
+    private static final long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TokenVault tokenVault;
+    private final DetokenizationCache detokenizationCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long tickMillis;
+    private final long purgeAfterMillis;
+    private final long horizonMillis;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // The latest timer of each tracked token
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    // Steps due from this time on are left to a later scan of the vault
+    private volatile long horizonEndMillis;
+
+    // Timers scheduled since the last tick, handed to the ticker thread
+    private final Queue<Timer> scheduled = new ConcurrentLinkedQueue<>();
+
+    // Guarded by this
+    private final TimingWheel<Timer> wheel;
+
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Creates the scheduler.
+     *
+     * @param tokenVault The token vault
+     * @param detokenizationCache The cache to invalidate tokens in when they expire or are purged
+     * @param eventPublisher Publishes the lifecycle events
+     * @param tickMillis The resolution of the timers
+     * @param purgeAfterDays How long expired and deleted tokens are kept before they are purged
+     * @param horizonHours How far ahead steps are tracked; the vault is scanned every half horizon
+     */
+    public TokenLifecycleScheduler(
+            TokenVault tokenVault,
+            DetokenizationCache detokenizationCache,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${card-token.lifecycle.tick-ms:1000}") long tickMillis,
+            @Value("${card-token.lifecycle.purge-after-days:90}") int purgeAfterDays,
+            @Value("${card-token.lifecycle.horizon-hours:24}") int horizonHours) {
+        if (tickMillis <= 0 || purgeAfterDays < 0 || horizonHours <= 0) {
+            throw new IllegalArgumentException(
+                    "Tick and horizon must be positive and purge after days must not be negative");
+        }
+        this.tokenVault = tokenVault;
+        this.detokenizationCache = detokenizationCache;
+        this.eventPublisher = eventPublisher;
+        this.tickMillis = tickMillis;
+        this.purgeAfterMillis = TimeUnit.DAYS.toMillis(purgeAfterDays);
+        this.horizonMillis = TimeUnit.HOURS.toMillis(horizonHours);
+        long nowMillis = System.currentTimeMillis();
+        this.horizonEndMillis = nowMillis + horizonMillis;
+        this.wheel = new TimingWheel<>(tickMillis, nowMillis);
+        this.ticker =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "token-lifecycle-ticker");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @PostConstruct
+    public void start() {
+        // Scan on the ticker thread, so a large vault does not hold up startup
+        ticker.scheduleWithFixedDelay(
+                () -> scheduleStoredTokens(System.currentTimeMillis()),
+                0,
+                horizonMillis / 2,
+                TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        advance(System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        // Keep the ticker scheduled
+                        log.error("Token lifecycle tick failed", e);
+                    }
+                },
+                tickMillis,
+                tickMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Schedules the next lifecycle step of a token after it was saved, replacing its pending one:
+     * expiry for an active or suspended token, purging for an expired or deleted token. A step
+     * beyond the horizon is left to a later scan of the vault.
+     *
+     * @param token The saved token
+     */
+    public void schedule(CardToken token) {
+        schedule(token, System.currentTimeMillis());
+    }
+
+    void schedule(CardToken token, long nowMillis) {
+        String tokenReference = token.getTokenReference();
+        TokenStatus status = token.getStatus();
+        if ((status == TokenStatus.ACTIVE || status == TokenStatus.SUSPENDED)
+                && token.getExpiresAt() != null) {
+            addWithinHorizon(
+                    new Timer(tokenReference, TokenLifecycleEventType.EXPIRED, epochMillis(token)));
+        } else if (status == TokenStatus.EXPIRED && token.getExpiresAt() != null) {
+            // An expired token is retained from its expiry date
+            long retainedFrom = Math.min(epochMillis(token), nowMillis);
+            addWithinHorizon(
+                    new Timer(
+                            tokenReference,
+                            TokenLifecycleEventType.PURGED,
+                            retainedFrom + purgeAfterMillis));
+        } else if (status == TokenStatus.EXPIRED || status == TokenStatus.DELETED) {
+            // Retained from now, which a later scan could not tell again
+            add(
+                    new Timer(
+                            tokenReference,
+                            TokenLifecycleEventType.PURGED,
+                            nowMillis + purgeAfterMillis));
+        } else {
+            cancel(tokenReference);
+        }
+    }
+
+    /**
+     * Drops the pending step of a token that was removed from the vault.
+     *
+     * @param tokenReference The token reference
+     */
+    public void cancel(String tokenReference) {
+        // The timer stays on the wheel until it fires, and is ignored then
+        timers.remove(tokenReference);
+    }
+
+    /**
+     * Gets the number of tokens with a pending lifecycle step.
+     *
+     * @return The number of tracked tokens
+     */
+    public int getTrackedTokenCount() {
+        return timers.size();
+    }
+
+    /**
+     * Advances the timers to a time and makes the lifecycle steps that are due.
+     *
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The number of tokens that expired or were purged
+     */
+    synchronized int advance(long nowMillis) {
+        Timer timer;
+        while ((timer = scheduled.poll()) != null) {
+            // Timers replaced before reaching the wheel are skipped
+            if (timers.get(timer.tokenReference) == timer) {
+                wheel.schedule(timer, timer.deadlineMillis);
+            }
+        }
+
+        int[] changed = new int[1];
+        wheel.advance(
+                nowMillis,
+                fired -> {
+                    if (timers.remove(fired.tokenReference, fired) && fire(fired, nowMillis)) {
+                        changed[0]++;
+                    }
+                });
+        if (changed[0] > 0) {
+            log.info("Token lifecycle tick expired or purged {} tokens", changed[0]);
+        }
+        return changed[0];
+    }
+
+    /**
+     * Moves the horizon on and scans the vault for the tokens whose next step came within it.
+     *
+     * @param nowMillis The current time in epoch milliseconds
+     */
+    void scheduleStoredTokens(long nowMillis) {
+        long start = System.nanoTime();
+        // Before the scan, so a token saved meanwhile is either scheduled by its save or scanned
+        horizonEndMillis = nowMillis + horizonMillis;
+        try {
+            tokenVault.forEach(
+                    token -> {
+                        // Tracked tokens were scheduled when they were saved
+                        if (!timers.containsKey(token.getTokenReference())) {
+                            schedule(token, nowMillis);
+                        }
+                    });
+            log.info(
+                    "Scanned the token vault in {} ms, {} tokens have a lifecycle step within {} h",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    timers.size(),
+                    TimeUnit.MILLISECONDS.toHours(horizonMillis));
+        } catch (RuntimeException e) {
+            log.error("Failed to scan the token vault for lifecycle steps", e);
+        }
+    }
+
+    // Makes the step of a fired timer if it is still due; returns whether the token changed
+    private boolean fire(Timer timer, long nowMillis) {
+        try {
+            Optional<CardToken> tokenOpt = tokenVault.findByTokenReference(timer.tokenReference);
+            if (tokenOpt.isEmpty()) {
+                return false;
+            }
+            CardToken token = tokenOpt.get();
+            TokenStatus status = token.getStatus();
+            LocalDateTime now = LocalDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), zone);
+
+            if (timer.type == TokenLifecycleEventType.EXPIRED
+                    && (status == TokenStatus.ACTIVE || status == TokenStatus.SUSPENDED)
+                    && token.getExpiresAt() != null
+                    && !token.getExpiresAt().isAfter(now)) {
+                CardToken expired = token.toBuilder().status(TokenStatus.EXPIRED).build();
+                if (!tokenVault.replace(token, expired)) {
+                    // Changed since it was read, so decide again on the stored token
+                    return fire(timer, nowMillis);
+                }
+                detokenizationCache.invalidate(timer.tokenReference);
+                schedule(expired, nowMillis);
+                publish(timer, status, now);
+                return true;
+            }
+
+            if (timer.type == TokenLifecycleEventType.PURGED
+                    && (status == TokenStatus.EXPIRED || status == TokenStatus.DELETED)) {
+                if (!tokenVault.remove(token)) {
+                    // Changed since it was read, e.g. restored, so decide again on the stored token
+                    return fire(timer, nowMillis);
+                }
+                detokenizationCache.invalidate(timer.tokenReference);
+                publish(timer, status, now);
+                return true;
+            }
+
+            // The token changed without being scheduled again, so work out its step anew
+            if (!timers.containsKey(timer.tokenReference)) {
+                schedule(token, nowMillis);
+            }
+            return false;
+        } catch (RuntimeException e) {
+            log.warn(
+                    "Failed to make lifecycle step {} of token {}, retrying",
+                    timer.type,
+                    timer.tokenReference,
+                    e);
+            Timer retry =
+                    new Timer(timer.tokenReference, timer.type, nowMillis + RETRY_DELAY_MILLIS);
+            // Unless the token was scheduled again meanwhile
+            if (timers.putIfAbsent(timer.tokenReference, retry) == null) {
+                scheduled.add(retry);
+            }
+            return false;
+        }
+    }
+
+    private void publish(Timer timer, TokenStatus previousStatus, LocalDateTime now) {
+        log.info("Token {} {}", timer.tokenReference, timer.type);
+        eventPublisher.publishEvent(
+                TokenLifecycleEvent.builder()
+                        .tokenReference(timer.tokenReference)
+                        .type(timer.type)
+                        .previousStatus(previousStatus)
+                        .occurredAt(now)
+                        .build());
+    }
+
+    private void addWithinHorizon(Timer timer) {
+        if (timer.deadlineMillis < horizonEndMillis) {
+            add(timer);
+        } else {
+            cancel(timer.tokenReference);
+        }
+    }
+
+    private void add(Timer timer) {
+        timers.put(timer.tokenReference, timer);
+        scheduled.add(timer);
+    }
+
+    private long epochMillis(CardToken token) {
+        return token.getExpiresAt().atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /** The pending lifecycle step of a token. */
+    private static final class Timer extends TimingWheel.Timeout {
+        final String tokenReference;
+        final TokenLifecycleEventType type;
+        final long deadlineMillis;
+
+        Timer(String tokenReference, TokenLifecycleEventType type, long deadlineMillis) {
+            this.tokenReference = tokenReference;
+            this.type = type;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.cardtoken.service;
 
 import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.DetokenizedCard;
 import com.example.cardtoken.model.TokenStatus;
+import com.example.cardtoken.model.TokenizationResult;
 import com.example.cardtoken.repository.TokenVault;
 import com.example.shared.model.CardDetails;
 import com.example.shared.model.PaymentMethod;
@@ -14,9 +16,12 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 /** Service for managing card tokens across different payment networks. */
 @Slf4j
@@ -25,10 +30,21 @@ import java.util.concurrent.ThreadLocalRandom;
 public class TokenManagementService {
 
     private final TokenVault tokenVault;
+    private final PanFingerprintService panFingerprintService;
+    private final DetokenizationCache detokenizationCache;
+    private final TokenLifecycleScheduler tokenLifecycleScheduler;
+    private final TokenBatchExecutor tokenBatchExecutor;
+    private final TokenProvisioningService tokenProvisioningService;
+
+    // Random bytes of the token references of batches, drawn once per batch
+    private static final SecureRandom REFERENCE_RANDOM = new SecureRandom();
 
     // List of token BIN ranges that can overlap across payment methods
     private static final List<TokenBinRange> TOKEN_BIN_RANGES = new ArrayList<>();
 
+    // Per payment method tables of the ranges, built once they are all added
+    private static final TokenValueGenerator TOKEN_VALUE_GENERATOR;
+
     // Default token validity in months
     private static final int DEFAULT_TOKEN_VALIDITY_MONTHS = 36;
 
@@ -125,6 +141,9 @@ public class TokenManagementService {
                         .endBin("674999")
                         .paymentMethod(PaymentMethod.MAESTRO)
                         .build());
+
+        // BINs followed by 10 random digits, Visa's ranges for payment methods without any
+        TOKEN_VALUE_GENERATOR = new TokenValueGenerator(TOKEN_BIN_RANGES, PaymentMethod.VISA, 10);
     }
 
     /**
@@ -144,6 +163,9 @@ public class TokenManagementService {
         // Create a masked version of the PAN
         String maskedPan = maskPan(cardDetails.getCardNumber());
 
+        // Fingerprint the PAN so that later payments with the card find this token
+        String panFingerprint = panFingerprintService.fingerprint(cardDetails.getCardNumber());
+
         // Create the token with an expiry date 3 years from now
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime expiryDate = now.plusMonths(DEFAULT_TOKEN_VALIDITY_MONTHS);
@@ -158,14 +180,16 @@ public class TokenManagementService {
                         .expiryMonth(cardDetails.getExpiryMonth())
                         .expiryYear(cardDetails.getExpiryYear())
                         .maskedPan(maskedPan)
+                        .panFingerprint(panFingerprint)
                         .createdAt(now)
                         .expiresAt(expiryDate)
                         .status(TokenStatus.ACTIVE)
-                        .build()
-                        .addPaymentMethod(paymentMethod);
+                        .paymentMethod(paymentMethod)
+                        .build();
 
-        // Save the token to the vault
+        // Save the token to the vault and schedule its expiry
         tokenVault.save(token);
+        tokenLifecycleScheduler.schedule(token);
 
         log.info("Created token {} for payment method {}", tokenReference, paymentMethod);
 
@@ -173,11 +197,15 @@ public class TokenManagementService {
     }
 
     /**
-     * Tokenizes a card for multiple payment methods.
+     * Tokenizes a card for multiple payment methods. The token value comes from the token BIN
+     * range of the first of the payment methods in declaration order, and the token can be used
+     * with that payment method right away. The other payment methods are provisioned with their
+     * networks' token services in the background and added to the token as they answer.
      *
      * @param cardDetails The card details to tokenize
      * @param paymentMethods The set of payment methods to use for tokenization
-     * @return The generated card token that supports multiple payment methods
+     * @return The generated card token, which supports the first payment method until the others
+     *     are provisioned
      */
     public CardToken tokenizeForMultipleNetworks(
             CardDetails cardDetails, Set<PaymentMethod> paymentMethods) {
@@ -185,8 +213,10 @@ public class TokenManagementService {
             throw new IllegalArgumentException("At least one payment method must be specified");
         }
 
-        // Use the first payment method to generate the token value
-        PaymentMethod primaryMethod = paymentMethods.iterator().next();
+        // Use the first payment method in a fixed order to generate the token value
+        Set<PaymentMethod> networks = EnumSet.copyOf(paymentMethods);
+        PaymentMethod primaryMethod = networks.iterator().next();
+        networks.remove(primaryMethod);
         String tokenValue = generateTokenValue(primaryMethod);
 
         // Generate a unique token reference
@@ -195,11 +225,14 @@ public class TokenManagementService {
         // Create a masked version of the PAN
         String maskedPan = maskPan(cardDetails.getCardNumber());
 
+        // Fingerprint the PAN so that later payments with the card find this token
+        String panFingerprint = panFingerprintService.fingerprint(cardDetails.getCardNumber());
+
         // Create the token with an expiry date 3 years from now
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime expiryDate = now.plusMonths(DEFAULT_TOKEN_VALIDITY_MONTHS);
 
-        // Build the token with all payment methods
+        // Build the token with the first payment method
         CardToken token =
                 CardToken.builder()
                         .tokenReference(tokenReference)
@@ -209,20 +242,101 @@ public class TokenManagementService {
                         .expiryMonth(cardDetails.getExpiryMonth())
                         .expiryYear(cardDetails.getExpiryYear())
                         .maskedPan(maskedPan)
+                        .panFingerprint(panFingerprint)
                         .createdAt(now)
                         .expiresAt(expiryDate)
                         .status(TokenStatus.ACTIVE)
-                        .paymentMethods(new HashSet<>(paymentMethods))
+                        .paymentMethod(primaryMethod)
                         .build();
 
-        // Save the token to the vault
+        // Save the token to the vault and schedule its expiry
         tokenVault.save(token);
+        tokenLifecycleScheduler.schedule(token);
+
+        log.info(
+                "Created token {} for payment method {}, provisioning {}",
+                tokenReference,
+                primaryMethod,
+                networks);
 
-        log.info("Created token {} for payment methods {}", tokenReference, paymentMethods);
+        // Other networks are added to the saved token as they answer
+        tokenProvisioningService.provision(token, cardDetails, networks);
 
         return token;
     }
 
+    /**
+     * Tokenizes a batch of cards for a payment method, for bulk migration of stored cards. A card
+     * that already has an active token for the payment method with the same expiry date, found by
+     * its PAN fingerprint, gets that token back, and so does a card repeated later in the batch.
+     * New tokens are generated in parallel and saved to the vault in one batch.
+     *
+     * @param cards The cards to tokenize
+     * @param paymentMethod The payment method to use for tokenization
+     * @return One result per card, in the order of the cards
+     */
+    public List<TokenizationResult> tokenizeBatch(
+            List<CardDetails> cards, PaymentMethod paymentMethod) {
+        // One draw of randomness for all token references, rather than one per card
+        byte[] referenceBytes = new byte[cards.size() * 16];
+        REFERENCE_RANDOM.nextBytes(referenceBytes);
+        LocalDateTime now = LocalDateTime.now();
+
+        List<TokenizationResult> results =
+                tokenBatchExecutor.map(
+                        IntStream.range(0, cards.size()).boxed().toList(),
+                        i -> tokenizeInBatch(cards.get(i), paymentMethod, referenceBytes, i, now));
+
+        // Give repeats of a card within the batch the token created for its first occurrence
+        Map<String, CardToken> createdByFingerprint = new HashMap<>();
+        List<CardToken> created = new ArrayList<>();
+        Set<String> createdValues = new HashSet<>();
+        for (int i = 0; i < results.size(); i++) {
+            TokenizationResult result = results.get(i);
+            if (!result.isCreated()) {
+                continue;
+            }
+            CardToken token = result.getToken();
+            CardToken first =
+                    token.getPanFingerprint() != null
+                            ? createdByFingerprint.putIfAbsent(token.getPanFingerprint(), token)
+                            : null;
+            if (first != null && isReusable(first, cards.get(i), paymentMethod)) {
+                results.set(i, TokenizationResult.builder().token(first).created(false).build());
+            } else {
+                // Values were generated concurrently, so two of the batch may match
+                if (!createdValues.add(token.getTokenValue())) {
+                    String tokenValue =
+                            TOKEN_VALUE_GENERATOR.generate(
+                                    paymentMethod,
+                                    value ->
+                                            createdValues.contains(value)
+                                                    || tokenVault.existsByTokenValue(value));
+                    createdValues.add(tokenValue);
+                    token =
+                            token.toBuilder()
+                                    .tokenValue(tokenValue)
+                                    .tokenBin(tokenValue.substring(0, 6))
+                                    .build();
+                    results.set(i, TokenizationResult.builder().token(token).created(true).build());
+                    if (first == null) {
+                        createdByFingerprint.put(token.getPanFingerprint(), token);
+                    }
+                }
+                created.add(token);
+            }
+        }
+
+        tokenVault.saveAll(created);
+        created.forEach(tokenLifecycleScheduler::schedule);
+        log.info(
+                "Tokenized batch of {} cards for payment method {}: {} new tokens",
+                cards.size(),
+                paymentMethod,
+                created.size());
+        return results;
+    }
+
     /**
      * Adds a payment method to an existing token.
      *
@@ -232,17 +346,15 @@ public class TokenManagementService {
      */
     public Optional<CardToken> addPaymentMethodToToken(
             String tokenReference, PaymentMethod paymentMethod) {
-        Optional<CardToken> tokenOpt = tokenVault.findByTokenReference(tokenReference);
+        Optional<CardToken> tokenOpt =
+                tokenVault.update(tokenReference, token -> token.withPaymentMethod(paymentMethod));
 
         if (tokenOpt.isPresent()) {
-            CardToken token = tokenOpt.get();
-            token.addPaymentMethod(paymentMethod);
-            tokenVault.save(token);
+            detokenizationCache.invalidate(tokenReference);
             log.info("Added payment method {} to token {}", paymentMethod, tokenReference);
-            return Optional.of(token);
         }
 
-        return Optional.empty();
+        return tokenOpt;
     }
 
     /**
@@ -263,17 +375,17 @@ public class TokenManagementService {
      * @return The updated token, or empty if not found
      */
     public Optional<CardToken> updateTokenStatus(String tokenReference, TokenStatus status) {
-        Optional<CardToken> tokenOpt = tokenVault.findByTokenReference(tokenReference);
+        Optional<CardToken> tokenOpt =
+                tokenVault.update(
+                        tokenReference, token -> token.toBuilder().status(status).build());
 
         if (tokenOpt.isPresent()) {
-            CardToken token = tokenOpt.get();
-            token.setStatus(status);
-            tokenVault.save(token);
+            detokenizationCache.invalidate(tokenReference);
+            tokenLifecycleScheduler.schedule(tokenOpt.get());
             log.info("Updated token {} status to {}", tokenReference, status);
-            return Optional.of(token);
         }
 
-        return Optional.empty();
+        return tokenOpt;
     }
 
     /**
@@ -285,6 +397,8 @@ public class TokenManagementService {
     public boolean deleteToken(String tokenReference) {
         if (tokenVault.existsByTokenReference(tokenReference)) {
             tokenVault.deleteByTokenReference(tokenReference);
+            detokenizationCache.invalidate(tokenReference);
+            tokenLifecycleScheduler.cancel(tokenReference);
             log.info("Deleted token {}", tokenReference);
             return true;
         }
@@ -299,6 +413,23 @@ public class TokenManagementService {
      * @return An Optional containing the card details if the token is found and active
      */
     public Optional<CardDetails> detokenize(String tokenReference) {
+        return detokenizeToken(tokenReference).map(DetokenizedCard::getCardDetails);
+    }
+
+    /**
+     * Looks up an active token and its card details in one step, from the detokenization cache if
+     * it was detokenized recently.
+     *
+     * @param tokenReference The token reference
+     * @return An Optional containing the token and card details if the token is found and active
+     */
+    public Optional<DetokenizedCard> detokenizeToken(String tokenReference) {
+        // Tokens are invalidated in the cache when they change or expire
+        DetokenizedCard cached = detokenizationCache.get(tokenReference);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
         Optional<CardToken> tokenOpt = tokenVault.findByTokenReference(tokenReference);
 
         if (tokenOpt.isPresent()) {
@@ -322,7 +453,14 @@ public class TokenManagementService {
                             .expiryYear(token.getExpiryYear())
                             .build();
 
-            return Optional.of(cardDetails);
+            detokenizationCache.put(token, cardDetails);
+            // A change that invalidated the token between the read and the put would leave the
+            // old token cached; changes invalidate after writing the vault, so read it again
+            if (!tokenOpt.equals(tokenVault.findByTokenReference(tokenReference))) {
+                detokenizationCache.invalidate(tokenReference);
+            }
+            return Optional.of(
+                    DetokenizedCard.builder().token(token).cardDetails(cardDetails).build());
         }
 
         return Optional.empty();
@@ -336,25 +474,26 @@ public class TokenManagementService {
      * @return The updated token, or empty if not found
      */
     public Optional<CardToken> refreshToken(String tokenReference, int additionalMonths) {
-        Optional<CardToken> tokenOpt = tokenVault.findByTokenReference(tokenReference);
+        Optional<CardToken> tokenOpt =
+                tokenVault.update(
+                        tokenReference,
+                        token ->
+                                token.toBuilder()
+                                        // Extend the expiry date
+                                        .expiresAt(
+                                                token.getExpiresAt().plusMonths(additionalMonths))
+                                        // Ensure the token is active
+                                        .status(TokenStatus.ACTIVE)
+                                        .build());
 
         if (tokenOpt.isPresent()) {
             CardToken token = tokenOpt.get();
-
-            // Extend the expiry date
-            LocalDateTime newExpiryDate = token.getExpiresAt().plusMonths(additionalMonths);
-            token.setExpiresAt(newExpiryDate);
-
-            // Ensure the token is active
-            token.setStatus(TokenStatus.ACTIVE);
-
-            tokenVault.save(token);
-            log.info("Refreshed token {} expiry to {}", tokenReference, newExpiryDate);
-
-            return Optional.of(token);
+            detokenizationCache.invalidate(tokenReference);
+            tokenLifecycleScheduler.schedule(token);
+            log.info("Refreshed token {} expiry to {}", tokenReference, token.getExpiresAt());
         }
 
-        return Optional.empty();
+        return tokenOpt;
     }
 
     /**
@@ -364,7 +503,9 @@ public class TokenManagementService {
      * @return The saved token
      */
     public CardToken save(CardToken token) {
-        return tokenVault.save(token);
+        CardToken saved = tokenVault.save(token);
+        tokenLifecycleScheduler.schedule(saved);
+        return saved;
     }
 
     /**
@@ -378,59 +519,75 @@ public class TokenManagementService {
     }
 
     /**
-     * Generates a token value based on the payment method's token BIN range.
+     * Finds the most recently created token of a card by the keyed fingerprint of its PAN.
      *
-     * @param paymentMethod The payment method
-     * @return A token value with the appropriate BIN
+     * @param cardNumber The card number
+     * @return An Optional containing the token if found
      */
-    private String generateTokenValue(PaymentMethod paymentMethod) {
-        // Find all matching token bin ranges for the payment method
-        List<TokenBinRange> matchingRanges =
-                TOKEN_BIN_RANGES.stream()
-                        .filter(range -> range.getPaymentMethod().equals(paymentMethod))
-                        .toList();
-
-        if (matchingRanges.isEmpty()) {
-            // Default to Visa token BIN range if the payment method is not found
-            matchingRanges =
-                    TOKEN_BIN_RANGES.stream()
-                            .filter(range -> range.getPaymentMethod().equals(PaymentMethod.VISA))
-                            .toList();
-
-            if (matchingRanges.isEmpty()) {
-                // Fallback to the first range if no Visa ranges are found
-                matchingRanges = List.of(TOKEN_BIN_RANGES.get(0));
-            }
+    public Optional<CardToken> findByCardNumber(String cardNumber) {
+        String panFingerprint = panFingerprintService.fingerprint(cardNumber);
+        if (panFingerprint == null) {
+            return Optional.empty();
         }
+        return tokenVault.findByPanFingerprint(panFingerprint);
+    }
 
-        // Randomly select one of the matching ranges
-        TokenBinRange selectedRange =
-                matchingRanges.get(ThreadLocalRandom.current().nextInt(matchingRanges.size()));
-
-        // Generate a random BIN within the selected range
-        String tokenBin = generateRandomBin(selectedRange.getStartBin(), selectedRange.getEndBin());
-
-        // Generate the rest of the token (10 digits)
-        StringBuilder tokenBuilder = new StringBuilder(tokenBin);
-        for (int i = 0; i < 10; i++) {
-            tokenBuilder.append(ThreadLocalRandom.current().nextInt(10));
+    // Finds the usable token of a card of a batch, or builds a new one that is not saved yet
+    private TokenizationResult tokenizeInBatch(
+            CardDetails cardDetails,
+            PaymentMethod paymentMethod,
+            byte[] referenceBytes,
+            int index,
+            LocalDateTime now) {
+        String panFingerprint = panFingerprintService.fingerprint(cardDetails.getCardNumber());
+        if (panFingerprint != null) {
+            Optional<CardToken> existing = tokenVault.findByPanFingerprint(panFingerprint);
+            if (existing.isPresent() && isReusable(existing.get(), cardDetails, paymentMethod)) {
+                return TokenizationResult.builder().token(existing.get()).created(false).build();
+            }
         }
 
-        return tokenBuilder.toString();
+        // A version 4 UUID from the batch's random bytes
+        ByteBuffer bytes = ByteBuffer.wrap(referenceBytes, index * 16, 16);
+        long high = (bytes.getLong() & ~0xF000L) | 0x4000L;
+        long low = (bytes.getLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        String tokenValue = generateTokenValue(paymentMethod);
+        CardToken token =
+                CardToken.builder()
+                        .tokenReference(new UUID(high, low).toString())
+                        .tokenValue(tokenValue)
+                        .tokenBin(tokenValue.substring(0, 6))
+                        .lastFour(cardDetails.getLastFour())
+                        .expiryMonth(cardDetails.getExpiryMonth())
+                        .expiryYear(cardDetails.getExpiryYear())
+                        .maskedPan(maskPan(cardDetails.getCardNumber()))
+                        .panFingerprint(panFingerprint)
+                        .createdAt(now)
+                        .expiresAt(now.plusMonths(DEFAULT_TOKEN_VALIDITY_MONTHS))
+                        .status(TokenStatus.ACTIVE)
+                        .paymentMethod(paymentMethod)
+                        .build();
+        return TokenizationResult.builder().token(token).created(true).build();
+    }
+
+    // Whether a token of the same card can be used instead of a new one
+    private static boolean isReusable(
+            CardToken token, CardDetails cardDetails, PaymentMethod paymentMethod) {
+        return token.isActive()
+                && token.supportsPaymentMethod(paymentMethod)
+                && token.getExpiryMonth() == cardDetails.getExpiryMonth()
+                && token.getExpiryYear() == cardDetails.getExpiryYear();
     }
 
     /**
-     * Generates a random BIN within the specified range.
+     * Generates a token value based on the payment method's token BIN range, which no stored
+     * token has.
      *
-     * @param startBin The start of the BIN range
-     * @param endBin The end of the BIN range
-     * @return A random BIN within the range
+     * @param paymentMethod The payment method
+     * @return A token value with the appropriate BIN
      */
-    private String generateRandomBin(String startBin, String endBin) {
-        int start = Integer.parseInt(startBin);
-        int end = Integer.parseInt(endBin);
-        int randomBin = ThreadLocalRandom.current().nextInt(start, end + 1);
-        return String.format("%06d", randomBin);
+    private String generateTokenValue(PaymentMethod paymentMethod) {
+        return TOKEN_VALUE_GENERATOR.generate(paymentMethod, tokenVault::existsByTokenValue);
     }
 
     /**
@@ -483,7 +640,7 @@ public class TokenManagementService {
     @Data
     @Builder
     @AllArgsConstructor
-    private static class TokenBinRange {
+    static class TokenBinRange {
         private String startBin;
         private String endBin;
         private PaymentMethod paymentMethod;
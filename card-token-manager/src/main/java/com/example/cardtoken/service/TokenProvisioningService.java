@@ -0,0 +1,165 @@
+package com.example.cardtoken.service;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.repository.TokenVault;
+import com.example.shared.model.CardDetails;
+import com.example.shared.model.PaymentMethod;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Provisions tokens with the token services of further payment networks in the background. The
+ * networks of a token are asked concurrently, each with its own timeout, and every network that
+ * provisions the token is added to its payment methods in the vault as soon as it answers. A
+ * payment with the token is routed over the networks provisioned so far, so it never waits for
+ * the slowest network. Networks that decline or time out are left off the token.
+ */
+@Slf4j
+@Service
+public class TokenProvisioningService {
+
+    private final TokenVault tokenVault;
+    private final NetworkTokenService networkTokenService;
+    private final DetokenizationCache detokenizationCache;
+
+    // Timeouts by payment method ordinal
+    private final long[] timeoutMillis = new long[PaymentMethod.values().length];
+
+    // The number of networks still to answer for each token being provisioned
+    private final Map<String, Integer> pendingNetworks = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the provisioning service.
+     *
+     * @param tokenVault The token vault
+     * @param networkTokenService The token services of the networks
+     * @param detokenizationCache The cache to invalidate tokens in when a network is added
+     * @param defaultTimeoutMillis How long a network may take to answer
+     * @param networkTimeouts Timeouts of networks that differ from the default, as {@code
+     *     NETWORK=milliseconds} entries
+     */
+    public TokenProvisioningService(
+            TokenVault tokenVault,
+            NetworkTokenService networkTokenService,
+            DetokenizationCache detokenizationCache,
+            @Value("${card-token.provisioning.timeout-ms:2000}") long defaultTimeoutMillis,
+            @Value("${card-token.provisioning.network-timeouts-ms:}") String[] networkTimeouts) {
+        if (defaultTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Provisioning timeout must be positive");
+        }
+        this.tokenVault = tokenVault;
+        this.networkTokenService = networkTokenService;
+        this.detokenizationCache = detokenizationCache;
+
+        Arrays.fill(timeoutMillis, defaultTimeoutMillis);
+        for (String entry : networkTimeouts) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] fields = entry.trim().split("=");
+            long millis = fields.length == 2 ? Long.parseLong(fields[1].trim()) : 0;
+            if (millis <= 0) {
+                throw new IllegalArgumentException("Invalid network timeout: " + entry);
+            }
+            timeoutMillis[PaymentMethod.valueOf(fields[0].trim()).ordinal()] = millis;
+        }
+    }
+
+    /**
+     * Requests a token from the token services of networks, without waiting for them.
+     *
+     * @param token The saved token
+     * @param cardDetails The card details of the token
+     * @param networks The networks to provision the token with
+     * @return A future of the token with every network that provisioned it, which completes once
+     *     all networks answered or timed out
+     */
+    public CompletableFuture<Optional<CardToken>> provision(
+            CardToken token, CardDetails cardDetails, Set<PaymentMethod> networks) {
+        String tokenReference = token.getTokenReference();
+        if (networks.isEmpty()) {
+            return CompletableFuture.completedFuture(Optional.of(token));
+        }
+        pendingNetworks.merge(tokenReference, networks.size(), Integer::sum);
+
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[networks.size()];
+        int i = 0;
+        for (PaymentMethod network : networks) {
+            CompletableFuture<Void> response;
+            try {
+                response = networkTokenService.provision(token, cardDetails, network);
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            responses[i++] =
+                    response.orTimeout(timeoutMillis[network.ordinal()], TimeUnit.MILLISECONDS)
+                            .handle(
+                                    (ignored, failure) -> {
+                                        record(tokenReference, network, failure);
+                                        return null;
+                                    });
+        }
+        log.info("Provisioning token {} with networks {}", tokenReference, networks);
+        return CompletableFuture.allOf(responses)
+                .thenApply(ignored -> tokenVault.findByTokenReference(tokenReference));
+    }
+
+    /**
+     * Gets the number of tokens that are waiting for a network to answer.
+     *
+     * @return The number of tokens being provisioned
+     */
+    public int getPendingTokenCount() {
+        return pendingNetworks.size();
+    }
+
+    private void record(String tokenReference, PaymentMethod network, Throwable failure) {
+        if (failure != null) {
+            Throwable cause =
+                    failure instanceof CompletionException && failure.getCause() != null
+                            ? failure.getCause()
+                            : failure;
+            log.warn(
+                    "Network {} did not provision token {}: {}",
+                    network,
+                    tokenReference,
+                    cause instanceof TimeoutException ? "timed out" : cause.getMessage());
+        }
+
+        if (failure == null) {
+            addNetwork(tokenReference, network);
+        }
+        pendingNetworks.computeIfPresent(
+                tokenReference, (reference, pending) -> pending > 1 ? pending - 1 : null);
+    }
+
+    private void addNetwork(String tokenReference, PaymentMethod network) {
+        try {
+            // Networks of a token answer concurrently; a network added by another answer between
+            // the read and the replace makes the update start again from the stored token
+            Optional<CardToken> tokenOpt =
+                    tokenVault.update(tokenReference, token -> token.withPaymentMethod(network));
+            if (tokenOpt.isEmpty()) {
+                // Deleted while it was being provisioned
+                return;
+            }
+            detokenizationCache.invalidate(tokenReference);
+            log.info("Network {} provisioned token {}", network, tokenReference);
+        } catch (RuntimeException e) {
+            log.error("Failed to store network {} of token {}", network, tokenReference, e);
+        }
+    }
+}
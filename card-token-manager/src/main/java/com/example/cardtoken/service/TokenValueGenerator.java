@@ -0,0 +1,182 @@
+package com.example.cardtoken.service;
+
+import com.example.shared.model.PaymentMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Generates token values: a BIN from the token BIN ranges of a payment method followed by random
+ * account digits. The ranges of each payment method are merged where they overlap and flattened
+ * into arrays of start BINs and cumulative sizes up front, so a value takes one random draw and a
+ * scan of a few ranges, and every BIN of a payment method is equally likely however its ranges
+ * differ in size. Digits are written into a reused per-thread buffer.
+ *
+ * <p>A value that is already taken is drawn again. Draws are independent, so when a fraction
+ * {@code f} of the values of a payment method is taken a value takes {@code 1 / (1 - f)} draws on
+ * average, 10 when it is 90% full, instead of the long runs a probe to the next free value walks
+ * through clusters of taken values.
+ */
+final class TokenValueGenerator {
+
+    static final int BIN_DIGITS = 6;
+
+    // Draws before giving up; the chance of needing more is 0.9^256, about 2e-12, at 90% full
+    static final int MAX_ATTEMPTS = 256;
+
+    private final int accountDigits;
+    private final long accountValues;
+    private final BinTable[] tables = new BinTable[PaymentMethod.values().length];
+    private final ThreadLocal<char[]> digits;
+
+    /**
+     * Creates a generator.
+     *
+     * @param ranges The token BIN ranges, which may overlap; a BIN in several ranges of a payment
+     *     method counts once
+     * @param defaultMethod The payment method whose ranges are used for payment methods without any
+     * @param accountDigits The number of random digits after the BIN
+     */
+    TokenValueGenerator(
+            List<TokenManagementService.TokenBinRange> ranges,
+            PaymentMethod defaultMethod,
+            int accountDigits) {
+        if (ranges.isEmpty() || accountDigits <= 0 || accountDigits > 12) {
+            throw new IllegalArgumentException(
+                    "Ranges must not be empty and account digits must be between 1 and 12");
+        }
+        this.accountDigits = accountDigits;
+        this.accountValues = (long) Math.pow(10, accountDigits);
+        this.digits = ThreadLocal.withInitial(() -> new char[BIN_DIGITS + accountDigits]);
+
+        for (PaymentMethod method : PaymentMethod.values()) {
+            List<TokenManagementService.TokenBinRange> methodRanges = new ArrayList<>();
+            for (TokenManagementService.TokenBinRange range : ranges) {
+                if (range.getPaymentMethod() == method) {
+                    methodRanges.add(range);
+                }
+            }
+            if (!methodRanges.isEmpty()) {
+                tables[method.ordinal()] = new BinTable(methodRanges);
+            }
+        }
+
+        // Payment methods without ranges use the default method's, or else the first range
+        BinTable fallback = tables[defaultMethod.ordinal()];
+        if (fallback == null) {
+            fallback = new BinTable(List.of(ranges.get(0)));
+        }
+        for (int i = 0; i < tables.length; i++) {
+            if (tables[i] == null) {
+                tables[i] = fallback;
+            }
+        }
+    }
+
+    /**
+     * Generates a token value that is not taken.
+     *
+     * @param paymentMethod The payment method whose BINs to use
+     * @param taken Tells whether a value is taken
+     * @return The token value
+     * @throws IllegalStateException If no free value was drawn in {@link #MAX_ATTEMPTS} draws
+     */
+    String generate(PaymentMethod paymentMethod, Predicate<String> taken) {
+        BinTable table = tables[paymentMethod.ordinal()];
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            String value = next(table);
+            if (!taken.test(value)) {
+                return value;
+            }
+        }
+        throw new IllegalStateException(
+                "No free token value for payment method "
+                        + paymentMethod
+                        + " in "
+                        + MAX_ATTEMPTS
+                        + " attempts");
+    }
+
+    /**
+     * Gets the number of token values a payment method has.
+     *
+     * @param paymentMethod The payment method
+     * @return The number of values
+     */
+    long capacity(PaymentMethod paymentMethod) {
+        return tables[paymentMethod.ordinal()].size * accountValues;
+    }
+
+    private String next(BinTable table) {
+        // One draw picks both the BIN and the account digits
+        long draw = ThreadLocalRandom.current().nextLong(table.size * accountValues);
+        long binIndex = draw / accountValues;
+        long account = draw % accountValues;
+
+        int range = 0;
+        while (binIndex >= table.cumulativeSizes[range]) {
+            range++;
+        }
+        long bin =
+                table.startBins[range]
+                        + binIndex
+                        - (range == 0 ? 0 : table.cumulativeSizes[range - 1]);
+
+        char[] chars = digits.get();
+        for (int i = chars.length - 1; i >= BIN_DIGITS; i--) {
+            chars[i] = (char) ('0' + account % 10);
+            account /= 10;
+        }
+        for (int i = BIN_DIGITS - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + bin % 10);
+            bin /= 10;
+        }
+        return new String(chars);
+    }
+
+    /** The ranges of a payment method, with overlapping and adjacent ranges merged. */
+    private static final class BinTable {
+        final int[] startBins;
+        // The number of BINs in the ranges up to and including each range
+        final long[] cumulativeSizes;
+        final long size;
+
+        BinTable(List<TokenManagementService.TokenBinRange> ranges) {
+            int[][] bounds = new int[ranges.size()][];
+            for (int i = 0; i < ranges.size(); i++) {
+                int start = Integer.parseInt(ranges.get(i).getStartBin());
+                int end = Integer.parseInt(ranges.get(i).getEndBin());
+                if (end < start || end >= 1_000_000) {
+                    throw new IllegalArgumentException(
+                            "Invalid token BIN range " + start + "-" + end);
+                }
+                bounds[i] = new int[] {start, end};
+            }
+            Arrays.sort(bounds, Comparator.comparingInt(range -> range[0]));
+
+            // Merged, so that a BIN in several ranges is not drawn more often than the others
+            int merged = 0;
+            for (int[] range : bounds) {
+                if (merged > 0 && range[0] <= bounds[merged - 1][1] + 1) {
+                    bounds[merged - 1][1] = Math.max(bounds[merged - 1][1], range[1]);
+                } else {
+                    bounds[merged++] = range;
+                }
+            }
+
+            startBins = new int[merged];
+            cumulativeSizes = new long[merged];
+            long total = 0;
+            for (int i = 0; i < merged; i++) {
+                startBins[i] = bounds[i][0];
+                total += bounds[i][1] - bounds[i][0] + 1;
+                cumulativeSizes[i] = total;
+            }
+            size = total;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.cardtoken.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.shared.model.PaymentMethod;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+
+public class FileTokenVaultTest {
+
+    @TempDir Path directory;
+
+    private FileTokenVault tokenVault;
+
+    @AfterEach
+    void tearDown() {
+        if (tokenVault != null) {
+            tokenVault.stop();
+        }
+    }
+
+    @Test
+    void save_AfterReopen_ShouldFindTokenByAllKeys() {
+        // Arrange
+        tokenVault = open();
+        CardToken token = token("ref-1", "4900000000000001", "fp-a");
+        tokenVault.save(token);
+
+        // Act
+        tokenVault.stop();
+        tokenVault = open();
+
+        // Assert
+        CardToken found = tokenVault.findByTokenReference("ref-1").orElseThrow();
+        assertEquals(token.getTokenValue(), found.getTokenValue());
+        assertEquals(token.getMaskedPan(), found.getMaskedPan());
+        assertEquals(token.getExpiryYear(), found.getExpiryYear());
+        assertEquals(token.getCreatedAt(), found.getCreatedAt());
+        assertEquals(token.getExpiresAt(), found.getExpiresAt());
+        assertEquals(token.getStatus(), found.getStatus());
+        assertEquals(token.getPaymentMethods(), found.getPaymentMethods());
+        assertEquals(
+                Optional.of("ref-1"),
+                tokenVault.findByTokenValue("4900000000000001").map(CardToken::getTokenReference));
+        assertEquals(
+                Optional.of("ref-1"),
+                tokenVault.findByPanFingerprint("fp-a").map(CardToken::getTokenReference));
+        assertTrue(tokenVault.existsByTokenReference("ref-1"));
+        assertFalse(tokenVault.existsByTokenValue("4900000000000002"));
+    }
+
+    @Test
+    void save_WithUpdatesAndDeletes_ShouldKeepLatestStateAfterReopen() {
+        // Arrange
+        tokenVault = open();
+        CardToken first = token("ref-1", "4900000000000001", "fp-a");
+        CardToken second = token("ref-2", "4900000000000002", "fp-a");
+        tokenVault.save(first);
+        tokenVault.save(second);
+        tokenVault.save(first.toBuilder().status(TokenStatus.SUSPENDED).build());
+
+        // Act
+        tokenVault.deleteByTokenReference("ref-2");
+        tokenVault.stop();
+        tokenVault = open();
+
+        // Assert
+        assertEquals(
+                TokenStatus.SUSPENDED,
+                tokenVault.findByTokenReference("ref-1").orElseThrow().getStatus());
+        assertTrue(tokenVault.findByTokenReference("ref-2").isEmpty());
+        assertTrue(tokenVault.findByTokenValue("4900000000000002").isEmpty());
+        assertEquals(
+                "ref-1", tokenVault.findByPanFingerprint("fp-a").orElseThrow().getTokenReference());
+    }
+
+    @Test
+    void replace_WithStaleExpectedToken_ShouldKeepTheNewerTokenAfterReopen() {
+        // Arrange
+        tokenVault = open();
+        CardToken token = token("ref-1", "4900000000000001", "fp-a");
+        tokenVault.save(token);
+        CardToken suspended = token.toBuilder().status(TokenStatus.SUSPENDED).build();
+
+        // Act
+        boolean first = tokenVault.replace(token, suspended);
+        boolean stale =
+                tokenVault.replace(token, token.toBuilder().status(TokenStatus.DELETED).build());
+        CardToken unsaved = token("ref-2", "4900000000000002", null);
+        boolean missing = tokenVault.replace(unsaved, unsaved);
+        tokenVault.stop();
+        tokenVault = open();
+
+        // Assert
+        assertTrue(first);
+        assertFalse(stale);
+        assertFalse(missing);
+        assertEquals(suspended, tokenVault.findByTokenReference("ref-1").orElseThrow());
+    }
+
+    @Test
+    void remove_WithStaleExpectedToken_ShouldKeepTheNewerTokenAfterReopen() {
+        // Arrange
+        tokenVault = open();
+        CardToken token = token("ref-1", "4900000000000001", "fp-a");
+        CardToken other = token("ref-2", "4900000000000002", "fp-b");
+        tokenVault.save(token);
+        tokenVault.save(other);
+        CardToken suspended = token.toBuilder().status(TokenStatus.SUSPENDED).build();
+        tokenVault.replace(token, suspended);
+
+        // Act
+        boolean stale = tokenVault.remove(token);
+        boolean removed = tokenVault.remove(other);
+        tokenVault.stop();
+        tokenVault = open();
+
+        // Assert
+        assertFalse(stale);
+        assertTrue(removed);
+        assertEquals(suspended, tokenVault.findByTokenReference("ref-1").orElseThrow());
+        assertFalse(tokenVault.existsByTokenReference("ref-2"));
+        assertTrue(tokenVault.findByPanFingerprint("fp-b").isEmpty());
+    }
+
+    @Test
+    void open_AfterCrashWithTornRecord_ShouldRecoverIntactRecords() throws IOException {
+        // Arrange
+        tokenVault = open();
+        tokenVault.save(token("ref-1", "4900000000000001", "fp-a"));
+        tokenVault.save(token("ref-2", "4900000000000002", "fp-b"));
+        long end = tokenVault.logBytes();
+        // Simulate a crash: the index stays marked in use and a record is half written
+        tokenVault = null;
+        try (var channel =
+                Files.newByteChannel(
+                        directory.resolve(FileTokenVault.LOG_FILE), StandardOpenOption.WRITE)) {
+            channel.position(end).write(ByteBuffer.wrap(new byte[] {42, 0, 0, 0, 7}));
+        }
+
+        // Act
+        tokenVault = open();
+
+        // Assert
+        assertEquals(end, tokenVault.logBytes());
+        assertTrue(tokenVault.existsByTokenReference("ref-1"));
+        assertTrue(tokenVault.existsByTokenReference("ref-2"));
+
+        // Act
+        tokenVault.save(token("ref-3", "4900000000000003", "fp-c"));
+        tokenVault.stop();
+        tokenVault = open();
+
+        // Assert
+        assertTrue(tokenVault.existsByTokenValue("4900000000000003"));
+        assertEquals("ref-2", tokenVault.findByPanFingerprint("fp-b").orElseThrow()
+                .getTokenReference());
+    }
+
+    @Test
+    void compact_WithReplacedTokens_ShouldShrinkLogAndKeepTokens() throws IOException {
+        // Arrange
+        tokenVault = open();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                tokenVault.save(token("ref-" + i, "49000000000" + (10000 + i), "fp-" + i));
+            }
+        }
+        tokenVault.deleteByTokenReference("ref-0");
+        long before = tokenVault.logBytes();
+
+        // Act
+        tokenVault.compact();
+
+        // Assert
+        assertTrue(tokenVault.logBytes() < before / 5);
+        assertTrue(tokenVault.findByTokenReference("ref-0").isEmpty());
+        assertEquals("fp-99", tokenVault.findByTokenValue("4900000000010099").orElseThrow()
+                .getPanFingerprint());
+
+        // Act
+        tokenVault.stop();
+        tokenVault = open();
+
+        // Assert
+        assertTrue(tokenVault.findByTokenReference("ref-0").isEmpty());
+        assertTrue(tokenVault.existsByTokenReference("ref-99"));
+        assertEquals(tokenVault.logBytes() - TokenLog.HEADER_BYTES, tokenVault.liveBytes());
+    }
+
+    @Test
+    void save_BeyondInitialIndexSize_ShouldGrowIndex() {
+        // Arrange
+        tokenVault = open();
+
+        // Act
+        for (int i = 0; i < 5000; i++) {
+            tokenVault.save(token("ref-" + i, "value-" + i, null));
+        }
+
+        // Assert
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(tokenVault.existsByTokenValue("value-" + i));
+        }
+        tokenVault.clear();
+        assertFalse(tokenVault.existsByTokenReference("ref-1"));
+    }
+
+    @Test
+    void compact_WhileIndexGrows_ShouldKeepEveryToken() throws Exception {
+        // Arrange: just below the growth threshold of 768 tokens, with a log worth compacting
+        tokenVault = open();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 760; i++) {
+                tokenVault.save(token("ref-" + i, "value-" + i, "fp-" + round));
+            }
+        }
+        List<Throwable> failures = new ArrayList<>();
+        Thread compactor =
+                new Thread(
+                        () -> {
+                            try {
+                                tokenVault.compact();
+                            } catch (Throwable e) {
+                                failures.add(e);
+                            }
+                        });
+
+        // Act: grow the index while the compaction copies
+        compactor.start();
+        for (int i = 760; i < 800; i++) {
+            tokenVault.save(token("ref-" + i, "value-" + i, null));
+        }
+        compactor.join();
+        tokenVault.compact();
+
+        // Assert
+        assertEquals(List.of(), failures);
+        for (int i = 0; i < 800; i++) {
+            assertTrue(tokenVault.existsByTokenValue("value-" + i));
+        }
+        tokenVault.stop();
+        tokenVault = open();
+        for (int i = 0; i < 800; i++) {
+            assertTrue(tokenVault.existsByTokenReference("ref-" + i));
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void forEach_WithUpdatesAndDeletes_ShouldPassCurrentTokensOnce() {
+        // Arrange
+        tokenVault = open();
+        CardToken first = token("ref-1", "4900000000000001", "fp-a");
+        tokenVault.save(first);
+        tokenVault.save(token("ref-2", "4900000000000002", "fp-b"));
+        tokenVault.save(token("ref-3", "4900000000000003", "fp-c"));
+        tokenVault.save(first.toBuilder().status(TokenStatus.SUSPENDED).build());
+        tokenVault.deleteByTokenReference("ref-2");
+
+        // Act
+        List<CardToken> tokens = new ArrayList<>();
+        tokenVault.forEach(tokens::add);
+
+        // Assert
+        assertEquals(2, tokens.size());
+        assertEquals("ref-3", tokens.get(0).getTokenReference());
+        assertEquals("ref-1", tokens.get(1).getTokenReference());
+        assertEquals(TokenStatus.SUSPENDED, tokens.get(1).getStatus());
+    }
+
+    @Test
+    void saveAll_AfterReopen_ShouldFindEveryToken() {
+        // Arrange
+        tokenVault = open();
+        List<CardToken> tokens = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            tokens.add(token("ref-" + i, "value-" + i, "fp-" + i));
+        }
+
+        // Act
+        tokenVault.saveAll(tokens);
+        tokenVault.stop();
+        tokenVault = open();
+
+        // Assert
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(
+                    Optional.of("ref-" + i),
+                    tokenVault.findByPanFingerprint("fp-" + i).map(CardToken::getTokenReference));
+        }
+        assertEquals(tokenVault.logBytes() - TokenLog.HEADER_BYTES, tokenVault.liveBytes());
+    }
+
+    private FileTokenVault open() {
+        return new FileTokenVault(directory.toString(), 1024, 0, 60, 0);
+    }
+
+    private static CardToken token(String reference, String value, String panFingerprint) {
+        return CardToken.builder()
+                .tokenReference(reference)
+                .tokenValue(value)
+                .tokenBin("490000")
+                .lastFour("0001")
+                .maskedPan("490000******0001")
+                .panFingerprint(panFingerprint)
+                .expiryMonth(12)
+                .expiryYear(2030)
+                .createdAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6000))
+                .expiresAt(LocalDateTime.of(2030, 12, 31, 23, 59))
+                .status(TokenStatus.ACTIVE)
+                .paymentMethods(EnumSet.of(PaymentMethod.VISA, PaymentMethod.STAR))
+                .build();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.cardtoken.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.shared.model.PaymentMethod;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+public class InMemoryTokenVaultTest {
+
+    private final InMemoryTokenVault tokenVault = new InMemoryTokenVault();
+
+    @Test
+    void findByPanFingerprint_WithSavedTokens_ShouldReturnMostRecentTokenOfCard() {
+        // Arrange
+        CardToken first = token("ref-1", "4900000000000001", "fp-a");
+        CardToken second = token("ref-2", "4900000000000002", "fp-a");
+        CardToken other = token("ref-3", "4900000000000003", "fp-b");
+        tokenVault.save(first);
+        tokenVault.save(second);
+        tokenVault.save(other);
+
+        // Act
+        Optional<CardToken> result = tokenVault.findByPanFingerprint("fp-a");
+
+        // Assert
+        assertEquals(Optional.of(second), result);
+        assertEquals(Optional.of(other), tokenVault.findByPanFingerprint("fp-b"));
+        assertTrue(tokenVault.findByPanFingerprint("fp-c").isEmpty());
+        assertTrue(tokenVault.findByPanFingerprint(null).isEmpty());
+    }
+
+    @Test
+    void deleteByTokenReference_WithReplacedToken_ShouldKeepNewerTokenIndexed() {
+        // Arrange
+        CardToken first = token("ref-1", "4900000000000001", "fp-a");
+        CardToken second = token("ref-2", "4900000000000002", "fp-a");
+        tokenVault.save(first);
+        tokenVault.save(second);
+
+        // Act
+        tokenVault.deleteByTokenReference("ref-1");
+
+        // Assert
+        assertEquals(Optional.of(second), tokenVault.findByPanFingerprint("fp-a"));
+
+        // Act
+        tokenVault.deleteByTokenReference("ref-2");
+
+        // Assert
+        assertTrue(tokenVault.findByPanFingerprint("fp-a").isEmpty());
+    }
+
+    @Test
+    void update_FromConcurrentThreads_ShouldKeepEveryChange() throws InterruptedException {
+        // Arrange
+        tokenVault.save(token("ref-1", "4900000000000001", "fp-a"));
+        PaymentMethod[] methods = PaymentMethod.values();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (PaymentMethod method : methods) {
+            Thread thread =
+                    new Thread(
+                            () -> {
+                                try {
+                                    start.await();
+                                } catch (InterruptedException e) {
+                                    return;
+                                }
+                                tokenVault.update(
+                                        "ref-1", token -> token.withPaymentMethod(method));
+                            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // Act
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        CardToken token = tokenVault.findByTokenValue("4900000000000001").orElseThrow();
+        assertEquals(EnumSet.allOf(PaymentMethod.class), token.getPaymentMethods());
+        assertTrue(tokenVault.update("ref-2", current -> current).isEmpty());
+    }
+
+    @Test
+    void replace_WithStaleExpectedToken_ShouldReturnFalse() {
+        // Arrange
+        CardToken token = token("ref-1", "4900000000000001", "fp-a");
+        tokenVault.save(token);
+        CardToken changed = token("ref-1", "4900000000000009", "fp-b");
+        tokenVault.replace(token, changed);
+
+        // Act
+        boolean replaced =
+                tokenVault.replace(token, token.toBuilder().status(TokenStatus.DELETED).build());
+
+        // Assert
+        assertFalse(replaced);
+        assertEquals(Optional.of(changed), tokenVault.findByPanFingerprint("fp-b"));
+        assertTrue(tokenVault.findByPanFingerprint("fp-a").isEmpty());
+        assertTrue(tokenVault.findByTokenValue("4900000000000001").isEmpty());
+    }
+
+    @Test
+    void remove_WithStaleExpectedToken_ShouldKeepTheNewerToken() {
+        // Arrange
+        CardToken token = token("ref-1", "4900000000000001", "fp-a");
+        tokenVault.save(token);
+        CardToken suspended = token.toBuilder().status(TokenStatus.SUSPENDED).build();
+        tokenVault.replace(token, suspended);
+
+        // Act
+        boolean stale = tokenVault.remove(token);
+        boolean current = tokenVault.remove(suspended);
+
+        // Assert
+        assertFalse(stale);
+        assertTrue(current);
+        assertFalse(tokenVault.existsByTokenReference("ref-1"));
+        assertTrue(tokenVault.findByTokenValue("4900000000000001").isEmpty());
+        assertTrue(tokenVault.findByPanFingerprint("fp-a").isEmpty());
+    }
+
+    private static CardToken token(String reference, String value, String panFingerprint) {
+        return CardToken.builder()
+                .tokenReference(reference)
+                .tokenValue(value)
+                .panFingerprint(panFingerprint)
+                .status(TokenStatus.ACTIVE)
+                .build();
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.cardtoken.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+public class ShardedTokenVaultTest {
+
+    private final ShardedTokenVault tokenVault = new ShardedTokenVault(8);
+
+    @Test
+    void save_WithChangedToken_ShouldReindexValueAndFingerprint() {
+        // Arrange
+        tokenVault.save(token("ref-1", "4900000000000001", "fp-a"));
+        CardToken changed =
+                token("ref-1", "4900000000000002", "fp-b").toBuilder()
+                        .status(TokenStatus.SUSPENDED)
+                        .build();
+
+        // Act
+        tokenVault.save(changed);
+
+        // Assert
+        assertFalse(tokenVault.existsByTokenValue("4900000000000001"));
+        assertTrue(tokenVault.findByPanFingerprint("fp-a").isEmpty());
+        assertEquals(Optional.of(changed), tokenVault.findByTokenValue("4900000000000002"));
+        assertEquals(Optional.of(changed), tokenVault.findByPanFingerprint("fp-b"));
+        assertEquals(Optional.of(changed), tokenVault.findByTokenReference("ref-1"));
+    }
+
+    @Test
+    void deleteByTokenReference_WithReplacedToken_ShouldKeepNewerTokenIndexed() {
+        // Arrange
+        CardToken first = token("ref-1", "4900000000000001", "fp-a");
+        CardToken second = token("ref-2", "4900000000000002", "fp-a");
+        tokenVault.save(first);
+        tokenVault.save(second);
+
+        // Act
+        tokenVault.deleteByTokenReference("ref-1");
+
+        // Assert
+        assertEquals(Optional.of(second), tokenVault.findByPanFingerprint("fp-a"));
+        assertTrue(tokenVault.findByTokenValue("4900000000000001").isEmpty());
+        assertFalse(tokenVault.existsByTokenReference("ref-1"));
+    }
+
+    @Test
+    void replace_WithStaleExpectedToken_ShouldReturnFalse() {
+        // Arrange
+        CardToken token = token("ref-1", "4900000000000001", "fp-a");
+        tokenVault.save(token);
+        CardToken suspended = token.toBuilder().status(TokenStatus.SUSPENDED).build();
+
+        // Act
+        boolean first = tokenVault.replace(token, suspended);
+        boolean stale =
+                tokenVault.replace(token, token.toBuilder().status(TokenStatus.DELETED).build());
+
+        // Assert
+        assertTrue(first);
+        assertFalse(stale);
+        assertEquals(Optional.of(suspended), tokenVault.findByTokenValue("4900000000000001"));
+    }
+
+    @Test
+    void remove_WithStaleExpectedToken_ShouldKeepTheNewerToken() {
+        // Arrange
+        CardToken token = token("ref-1", "4900000000000001", "fp-a");
+        tokenVault.save(token);
+        CardToken changed = token("ref-1", "4900000000000002", "fp-b");
+        tokenVault.replace(token, changed);
+
+        // Act
+        boolean stale = tokenVault.remove(token);
+        boolean removed = tokenVault.remove(changed);
+
+        // Assert
+        assertFalse(stale);
+        assertTrue(removed);
+        assertFalse(tokenVault.existsByTokenReference("ref-1"));
+        assertFalse(tokenVault.existsByTokenValue("4900000000000002"));
+        assertTrue(tokenVault.findByPanFingerprint("fp-b").isEmpty());
+    }
+
+    @Test
+    void save_RacingDeletesOnManyThreads_ShouldLeaveNoOrphanedIndexEntries()
+            throws InterruptedException {
+        // Arrange: each thread saves references that the others delete, with a new value each time
+        int threads = 8;
+        int references = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread =
+                    new Thread(
+                            () -> {
+                                try {
+                                    start.await();
+                                } catch (InterruptedException e) {
+                                    return;
+                                }
+                                ThreadLocalRandom random = ThreadLocalRandom.current();
+                                for (int i = 0; i < 2000; i++) {
+                                    String reference = "ref-" + random.nextInt(references);
+                                    if (random.nextBoolean()) {
+                                        tokenVault.deleteByTokenReference(reference);
+                                    } else {
+                                        String value = String.format("49%02d%012d", worker, i);
+                                        tokenVault.save(token(reference, value, "fp-" + worker));
+                                    }
+                                }
+                            });
+            thread.start();
+            workers.add(thread);
+        }
+
+        // Act
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        // Assert: every index entry belongs to the stored token of its reference
+        List<CardToken> stored = new ArrayList<>();
+        tokenVault.forEach(stored::add);
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < 2000; i++) {
+                Optional<CardToken> byValue =
+                        tokenVault.findByTokenValue(String.format("49%02d%012d", t, i));
+                if (byValue.isPresent()) {
+                    assertTrue(stored.contains(byValue.get()));
+                }
+            }
+            Optional<CardToken> byFingerprint = tokenVault.findByPanFingerprint("fp-" + t);
+            if (byFingerprint.isPresent()) {
+                assertTrue(stored.contains(byFingerprint.get()));
+            }
+        }
+        for (CardToken token : stored) {
+            assertEquals(Optional.of(token), tokenVault.findByTokenValue(token.getTokenValue()));
+        }
+    }
+
+    @Test
+    void parallelStream_WithTokensInEveryPartition_ShouldReturnEachTokenOnce() {
+        // Arrange
+        Set<String> saved = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String reference = "ref-" + i;
+            tokenVault.save(token(reference, String.format("49%014d", i), null));
+            saved.add(reference);
+        }
+
+        // Act
+        List<String> streamed =
+                tokenVault
+                        .parallelStream()
+                        .map(CardToken::getTokenReference)
+                        .collect(Collectors.toList());
+
+        // Assert
+        assertEquals(saved.size(), streamed.size());
+        assertEquals(saved, new HashSet<>(streamed));
+    }
+
+    @Test
+    void constructor_WithPartitionsNotAPowerOfTwo_ShouldRoundUp() {
+        // Act
+        ShardedTokenVault vault = new ShardedTokenVault(5);
+
+        // Assert
+        assertEquals(8, vault.getPartitionCount());
+        assertTrue(new ShardedTokenVault(0).getPartitionCount() >= 4);
+        assertThrows(IllegalArgumentException.class, () -> new ShardedTokenVault(-1));
+    }
+
+    private static CardToken token(String reference, String value, String panFingerprint) {
+        return CardToken.builder()
+                .tokenReference(reference)
+                .tokenValue(value)
+                .panFingerprint(panFingerprint)
+                .status(TokenStatus.ACTIVE)
+                .build();
+    }
+}
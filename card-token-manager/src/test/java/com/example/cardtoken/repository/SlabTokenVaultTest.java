@@ -0,0 +1,252 @@
+package com.example.cardtoken.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.shared.model.PaymentMethod;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+public class SlabTokenVaultTest {
+
+    private static final String FINGERPRINT = "3acce036e24fa90a0b060b5655621b33";
+
+    private final SlabTokenVault tokenVault = new SlabTokenVault(0);
+
+    @Test
+    void save_WithGeneratedToken_ShouldReturnEqualFieldsFromEveryKey() {
+        // Arrange
+        CardToken token = token(UUID.randomUUID().toString(), "4000120000001234", FINGERPRINT);
+
+        // Act
+        tokenVault.save(token);
+
+        // Assert
+        CardToken found = tokenVault.findByTokenReference(token.getTokenReference()).orElseThrow();
+        assertNotSame(token, found);
+        assertEquals(token.getTokenReference(), found.getTokenReference());
+        assertEquals(token.getTokenValue(), found.getTokenValue());
+        assertEquals(token.getTokenBin(), found.getTokenBin());
+        assertEquals(token.getLastFour(), found.getLastFour());
+        assertEquals(token.getMaskedPan(), found.getMaskedPan());
+        assertEquals(token.getPanFingerprint(), found.getPanFingerprint());
+        assertEquals(token.getExpiryMonth(), found.getExpiryMonth());
+        assertEquals(token.getExpiryYear(), found.getExpiryYear());
+        assertEquals(token.getCreatedAt(), found.getCreatedAt());
+        assertEquals(token.getExpiresAt(), found.getExpiresAt());
+        assertEquals(token.getStatus(), found.getStatus());
+        assertEquals(token.getPaymentMethods(), found.getPaymentMethods());
+        assertEquals(
+                Optional.of(token.getTokenReference()),
+                tokenVault.findByTokenValue("4000120000001234").map(CardToken::getTokenReference));
+        assertEquals(
+                Optional.of(token.getTokenReference()),
+                tokenVault.findByPanFingerprint(FINGERPRINT).map(CardToken::getTokenReference));
+        assertTrue(tokenVault.existsByTokenValue("4000120000001234"));
+        assertFalse(tokenVault.existsByTokenValue("400012000000123"));
+    }
+
+    @Test
+    void save_WithNullOptionalFields_ShouldKeepThemNull() {
+        // Arrange
+        CardToken token =
+                CardToken.builder()
+                        .tokenReference(UUID.randomUUID().toString())
+                        .tokenValue("0000000000000000000")
+                        .maskedPan("************")
+                        .build();
+
+        // Act
+        tokenVault.save(token);
+
+        // Assert
+        CardToken found = tokenVault.findByTokenValue("0000000000000000000").orElseThrow();
+        assertEquals("************", found.getMaskedPan());
+        assertNull(found.getPanFingerprint());
+        assertNull(found.getLastFour());
+        assertNull(found.getCreatedAt());
+        assertNull(found.getStatus());
+        assertTrue(found.getPaymentMethods().isEmpty());
+    }
+
+    @Test
+    void replace_WithStaleExpectedToken_ShouldKeepTheNewerToken() {
+        // Arrange
+        CardToken token = token(UUID.randomUUID().toString(), "4000120000001234", FINGERPRINT);
+        tokenVault.save(token);
+        CardToken suspended = token.toBuilder().status(TokenStatus.SUSPENDED).build();
+        CardToken deleted = token.toBuilder().status(TokenStatus.DELETED).build();
+
+        // Act
+        boolean first = tokenVault.replace(token, suspended);
+        boolean stale = tokenVault.replace(token, deleted);
+
+        // Assert
+        assertTrue(first);
+        assertFalse(stale);
+        assertEquals(
+                TokenStatus.SUSPENDED,
+                tokenVault.findByTokenValue("4000120000001234").orElseThrow().getStatus());
+    }
+
+    @Test
+    void remove_WithStaleExpectedToken_ShouldKeepTheNewerToken() {
+        // Arrange
+        CardToken token = token(UUID.randomUUID().toString(), "4000120000001234", FINGERPRINT);
+        tokenVault.save(token);
+        CardToken suspended = token.toBuilder().status(TokenStatus.SUSPENDED).build();
+        tokenVault.replace(token, suspended);
+
+        // Act
+        boolean stale = tokenVault.remove(token);
+        int sizeAfterStale = tokenVault.size();
+        boolean removed = tokenVault.remove(suspended);
+
+        // Assert
+        assertFalse(stale);
+        assertEquals(1, sizeAfterStale);
+        assertTrue(removed);
+        assertEquals(0, tokenVault.size());
+        assertFalse(tokenVault.existsByTokenValue("4000120000001234"));
+        assertTrue(tokenVault.findByPanFingerprint(FINGERPRINT).isEmpty());
+    }
+
+    @Test
+    void save_WithChangedToken_ShouldReindexValueAndFingerprint() {
+        // Arrange
+        String reference = UUID.randomUUID().toString();
+        tokenVault.save(token(reference, "4000120000001234", FINGERPRINT));
+        CardToken changed =
+                token(reference, "4000120000005678", null).toBuilder()
+                        .status(TokenStatus.SUSPENDED)
+                        .build();
+
+        // Act
+        tokenVault.save(changed);
+
+        // Assert
+        assertEquals(1, tokenVault.size());
+        assertFalse(tokenVault.existsByTokenValue("4000120000001234"));
+        assertTrue(tokenVault.findByPanFingerprint(FINGERPRINT).isEmpty());
+        assertEquals(
+                TokenStatus.SUSPENDED,
+                tokenVault.findByTokenValue("4000120000005678").orElseThrow().getStatus());
+    }
+
+    @Test
+    void deleteByTokenReference_WithManyTokens_ShouldRemoveOnlyDeletedTokens() {
+        // Arrange
+        String[] references = new String[5000];
+        for (int i = 0; i < references.length; i++) {
+            references[i] = UUID.randomUUID().toString();
+            tokenVault.save(token(references[i], String.valueOf(4000000000000000L + i), null));
+        }
+
+        // Act
+        for (int i = 0; i < references.length; i += 2) {
+            tokenVault.deleteByTokenReference(references[i]);
+        }
+        for (int i = 0; i < references.length; i += 2) {
+            tokenVault.save(token(references[i], String.valueOf(5000000000000000L + i), null));
+        }
+
+        // Assert
+        assertEquals(references.length, tokenVault.size());
+        for (int i = 0; i < references.length; i++) {
+            String value = String.valueOf((i % 2 == 0 ? 5000000000000000L : 4000000000000000L) + i);
+            assertEquals(
+                    Optional.of(references[i]),
+                    tokenVault.findByTokenValue(value).map(CardToken::getTokenReference));
+        }
+        assertFalse(tokenVault.existsByTokenValue("4000000000000000"));
+    }
+
+    @Test
+    void forEach_WithMoreTokensThanOneBatch_ShouldPassStoredTokensOnce() {
+        // Arrange
+        Set<String> stored = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            String reference = UUID.randomUUID().toString();
+            tokenVault.save(token(reference, String.valueOf(4000000000000000L + i), null));
+            if (i % 3 == 0) {
+                tokenVault.deleteByTokenReference(reference);
+            } else {
+                stored.add(reference);
+            }
+        }
+
+        // Act
+        Set<String> passed = new HashSet<>();
+        int[] count = new int[1];
+        tokenVault.forEach(
+                token -> {
+                    passed.add(token.getTokenReference());
+                    count[0]++;
+                });
+
+        // Assert
+        assertEquals(stored.size(), count[0]);
+        assertEquals(stored, passed);
+    }
+
+    @Test
+    void save_WithUnsupportedFormats_ShouldThrow() {
+        // Arrange
+        CardToken badReference = token("ref-1", "4000120000001234", null);
+        CardToken badValue = token(UUID.randomUUID().toString(), "4000-1200", null);
+        CardToken badFingerprint = token(UUID.randomUUID().toString(), "4000120000001234", "FP");
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> tokenVault.save(badReference));
+        assertThrows(IllegalArgumentException.class, () -> tokenVault.save(badValue));
+        assertThrows(IllegalArgumentException.class, () -> tokenVault.save(badFingerprint));
+        assertEquals(0, tokenVault.size());
+        assertTrue(tokenVault.findByTokenReference("ref-1").isEmpty());
+    }
+
+    @Test
+    void saveAll_WithOneUnsupportedToken_ShouldSaveNone() {
+        // Arrange
+        List<CardToken> tokens =
+                List.of(
+                        token(UUID.randomUUID().toString(), "4000120000001234", null),
+                        token(UUID.randomUUID().toString(), "4000120000005678", null),
+                        token("ref-1", "4000120000009999", null));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> tokenVault.saveAll(tokens));
+        assertEquals(0, tokenVault.size());
+
+        tokenVault.saveAll(tokens.subList(0, 2));
+        assertEquals(2, tokenVault.size());
+        assertEquals(
+                Optional.of(tokens.get(1).getTokenReference()),
+                tokenVault.findByTokenValue("4000120000005678").map(CardToken::getTokenReference));
+    }
+
+    private static CardToken token(String reference, String value, String panFingerprint) {
+        return CardToken.builder()
+                .tokenReference(reference)
+                .tokenValue(value)
+                .tokenBin(value.length() >= 6 ? value.substring(0, 6) : null)
+                .lastFour("0042")
+                .maskedPan("411111******0042")
+                .panFingerprint(panFingerprint)
+                .expiryMonth(7)
+                .expiryYear(2031)
+                .createdAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5))
+                .expiresAt(LocalDateTime.of(2031, 7, 31, 23, 59, 59))
+                .status(TokenStatus.ACTIVE)
+                .paymentMethods(EnumSet.of(PaymentMethod.VISA, PaymentMethod.MAESTRO))
+                .build();
+    }
+}
@@ -298,4 +298,45 @@ public class CardTokenServiceTest {
         assertFalse(result);
         verify(tokenManagementService).getToken(validTokenReference);
     }
+
+    @Test
+    void findValidTokensForCard_WithActiveTokenForCard_ShouldReturnToken() {
+        // Arrange
+        when(tokenManagementService.findByCardNumber("4500123456789010"))
+                .thenReturn(Optional.of(validCardToken));
+
+        // Act
+        List<CardToken> result = cardTokenService.findValidTokensForCard(validCardDetails);
+
+        // Assert
+        assertEquals(List.of(validCardToken), result);
+        verify(tokenManagementService).findByCardNumber("4500123456789010");
+    }
+
+    @Test
+    void findValidTokensForCard_WithReissuedCard_ShouldReturnEmpty() {
+        // Arrange
+        validCardDetails.setExpiryYear(2033);
+        when(tokenManagementService.findByCardNumber("4500123456789010"))
+                .thenReturn(Optional.of(validCardToken));
+
+        // Act
+        List<CardToken> result = cardTokenService.findValidTokensForCard(validCardDetails);
+
+        // Assert
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void findValidTokensForCard_WithUnknownCard_ShouldReturnEmpty() {
+        // Arrange
+        when(tokenManagementService.findByCardNumber("4500123456789010"))
+                .thenReturn(Optional.empty());
+
+        // Act
+        List<CardToken> result = cardTokenService.findValidTokensForCard(validCardDetails);
+
+        // Assert
+        assertTrue(result.isEmpty());
+    }
 }
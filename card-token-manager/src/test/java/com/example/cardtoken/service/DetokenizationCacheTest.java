@@ -0,0 +1,116 @@
+package com.example.cardtoken.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.DetokenizationCacheStats;
+import com.example.cardtoken.model.DetokenizedCard;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.shared.model.CardDetails;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class DetokenizationCacheTest {
+
+    private static final long TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private final DetokenizationCache cache = new DetokenizationCache(1000, 2, 1000);
+
+    @Test
+    void get_WithinTtl_ShouldReturnCachedCard() {
+        // Arrange
+        cache.put(token("ref-1"), card("4111111111111111"), 0L);
+
+        // Act
+        DetokenizedCard result = cache.get("ref-1", TTL_NANOS - 1);
+
+        // Assert
+        assertNotNull(result);
+        assertEquals("ref-1", result.getToken().getTokenReference());
+        assertEquals("4111111111111111", result.getCardDetails().getCardNumber());
+        assertEquals(12, result.getCardDetails().getExpiryMonth());
+        assertEquals(2030, result.getCardDetails().getExpiryYear());
+        assertNull(cache.get("ref-2", 0L));
+        DetokenizationCacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    void get_AtTtl_ShouldMissAndRemoveEntry() {
+        // Arrange
+        cache.put(token("ref-1"), card("4111111111111111"), 0L);
+
+        // Act
+        DetokenizedCard result = cache.get("ref-1", TTL_NANOS);
+
+        // Assert
+        assertNull(result);
+        assertEquals(1, cache.getStats().getExpirations());
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    void put_BeyondMaxEntries_ShouldEvictOldestEntry() {
+        // Arrange
+        cache.put(token("ref-1"), card("4111111111111111"), 0L);
+        cache.put(token("ref-2"), card("4222222222222222"), 1L);
+
+        // Act
+        cache.put(token("ref-3"), card("4333333333333333"), 2L);
+
+        // Assert
+        assertNull(cache.get("ref-1", 3L));
+        assertNotNull(cache.get("ref-2", 3L));
+        assertNotNull(cache.get("ref-3", 3L));
+        assertEquals(1, cache.getStats().getEvictions());
+        assertEquals(2, cache.getStats().getSize());
+    }
+
+    @Test
+    void invalidate_WithCachedEntry_ShouldRemoveIt() {
+        // Arrange
+        cache.put(token("ref-1"), card("4111111111111111"), 0L);
+        DetokenizedCard before = cache.get("ref-1", 1L);
+
+        // Act
+        cache.invalidate("ref-1");
+
+        // Assert
+        assertNull(cache.get("ref-1", 2L));
+        assertEquals(1, cache.getStats().getInvalidations());
+        // Cards handed out before keep their own copy of the card number
+        assertEquals("4111111111111111", before.getCardDetails().getCardNumber());
+    }
+
+    @Test
+    void sweep_AfterTtl_ShouldRemoveOnlyExpiredEntries() {
+        // Arrange
+        cache.put(token("ref-1"), card("4111111111111111"), 0L);
+        cache.put(token("ref-1"), card("4111111111111111"), 10L);
+        cache.put(token("ref-2"), card("4222222222222222"), TTL_NANOS);
+
+        // Act
+        int removed = cache.sweep(TTL_NANOS + 10L);
+
+        // Assert
+        assertEquals(1, removed);
+        assertEquals(1, cache.getStats().getSize());
+        assertNotNull(cache.get("ref-2", TTL_NANOS + 10L));
+    }
+
+    private static CardToken token(String reference) {
+        return CardToken.builder().tokenReference(reference).status(TokenStatus.ACTIVE).build();
+    }
+
+    private static CardDetails card(String cardNumber) {
+        return CardDetails.builder()
+                .cardNumber(cardNumber)
+                .expiryMonth(12)
+                .expiryYear(2030)
+                .build();
+    }
+}
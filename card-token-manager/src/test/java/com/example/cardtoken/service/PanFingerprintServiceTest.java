@@ -0,0 +1,75 @@
+package com.example.cardtoken.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+public class PanFingerprintServiceTest {
+
+    private static final String KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+    @Test
+    void fingerprint_WithSamePan_ShouldReturnSame128BitHex() {
+        // Arrange
+        PanFingerprintService service = new PanFingerprintService(KEY);
+
+        // Act
+        String fingerprint = service.fingerprint("4500123456789010");
+
+        // Assert
+        assertEquals(PanFingerprintService.FINGERPRINT_LENGTH, fingerprint.length());
+        assertTrue(fingerprint.matches("[0-9a-f]+"));
+        assertEquals(fingerprint, service.fingerprint("4500 1234 5678 9010"));
+        assertEquals(fingerprint, service.fingerprint("4500-1234-5678-9010"));
+        assertNotEquals(fingerprint, service.fingerprint("4500123456789011"));
+    }
+
+    @Test
+    void fingerprint_WithKnownKey_ShouldMatchTruncatedHmacSha256() {
+        // Arrange: HMAC-SHA256 of "4111111111111111" under a key of 32 zero bytes
+        PanFingerprintService service = new PanFingerprintService(KEY);
+
+        // Act
+        String fingerprint = service.fingerprint("4111111111111111");
+
+        // Assert
+        assertEquals("3acce036e24fa90a0b060b5655621b33", fingerprint);
+    }
+
+    @Test
+    void fingerprint_WithDifferentKeys_ShouldDiffer() {
+        // Arrange
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        PanFingerprintService service = new PanFingerprintService(KEY);
+        PanFingerprintService other =
+                new PanFingerprintService(Base64.getEncoder().encodeToString(otherKey));
+
+        // Act & Assert
+        assertNotEquals(
+                service.fingerprint("4500123456789010"), other.fingerprint("4500123456789010"));
+    }
+
+    @Test
+    void fingerprint_WithInvalidPan_ShouldReturnNull() {
+        // Arrange
+        PanFingerprintService service = new PanFingerprintService(KEY);
+
+        // Act & Assert
+        assertNull(service.fingerprint(null));
+        assertNull(service.fingerprint("45001234567"));
+        assertNull(service.fingerprint("45001234567890101234"));
+        assertNull(service.fingerprint("4500x23456789010"));
+    }
+
+    @Test
+    void constructor_WithShortKey_ShouldThrowException() {
+        // Arrange
+        String shortKey = Base64.getEncoder().encodeToString(new byte[16]);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new PanFingerprintService(shortKey));
+    }
+}
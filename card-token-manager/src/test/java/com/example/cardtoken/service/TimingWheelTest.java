@@ -0,0 +1,92 @@
+package com.example.cardtoken.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimingWheelTest {
+
+    private final TimingWheel<Deadline> wheel = new TimingWheel<>(10, 1000);
+
+    @Test
+    void advance_ToDeadline_ShouldFireOnlyThen() {
+        // Arrange
+        List<Deadline> fired = new ArrayList<>();
+        Deadline deadline = new Deadline(1025);
+        wheel.schedule(deadline, deadline.millis);
+
+        // Act
+        int beforeDeadline = wheel.advance(1029, fired::add);
+        int atDeadline = wheel.advance(1030, fired::add);
+
+        // Assert
+        assertEquals(0, beforeDeadline);
+        assertEquals(1, atDeadline);
+        assertEquals(List.of(deadline), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void schedule_WithPastDeadline_ShouldFireOnNextTick() {
+        // Arrange
+        List<Deadline> fired = new ArrayList<>();
+        wheel.advance(2000, fired::add);
+
+        // Act
+        wheel.schedule(new Deadline(500), 500);
+
+        // Assert
+        assertEquals(0, wheel.advance(2009, fired::add));
+        assertEquals(1, wheel.advance(2010, fired::add));
+    }
+
+    @Test
+    void advance_WithDeadlinesOnEveryLevel_ShouldFireEachInTheStepReachingIt() {
+        // Arrange
+        Random random = new Random(42);
+        List<Deadline> deadlines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            // Up to four levels of ticks ahead, most of them far
+            long ticks = (long) Math.pow(TimingWheel.SLOTS, random.nextDouble() * 4);
+            Deadline deadline = new Deadline(1000 + ticks * 10 + random.nextInt(10));
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline.millis);
+        }
+        long end = 1000 + (long) Math.pow(TimingWheel.SLOTS, 4) * 10 + 10;
+
+        // Act
+        List<Deadline> late = new ArrayList<>();
+        for (long previous = 1000; previous < end; previous += 12_345) {
+            long from = previous;
+            long to = previous + 12_345;
+            wheel.advance(
+                    to,
+                    deadline -> {
+                        deadline.fired = true;
+                        // Fired in the step that reached its deadline, rounded up to a tick
+                        long dueAt = (deadline.millis + 9) / 10 * 10;
+                        if (dueAt <= from || dueAt > to) {
+                            late.add(deadline);
+                        }
+                    });
+        }
+
+        // Assert
+        assertEquals(0, late.size());
+        assertTrue(deadlines.stream().allMatch(deadline -> deadline.fired));
+        assertEquals(0, wheel.size());
+    }
+
+    private static final class Deadline extends TimingWheel.Timeout {
+        final long millis;
+        boolean fired;
+
+        Deadline(long millis) {
+            this.millis = millis;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.cardtoken.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenLifecycleEvent;
+import com.example.cardtoken.model.TokenLifecycleEventType;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.cardtoken.repository.InMemoryTokenVault;
+import com.example.shared.model.CardDetails;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TokenLifecycleSchedulerTest {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // Runs once right after the next read of a token, to change it between a read and a write
+    private final AtomicReference<Runnable> afterNextRead = new AtomicReference<>();
+    private final InMemoryTokenVault tokenVault =
+            new InMemoryTokenVault() {
+                @Override
+                public Optional<CardToken> findByTokenReference(String tokenReference) {
+                    Optional<CardToken> token = super.findByTokenReference(tokenReference);
+                    Runnable hook = afterNextRead.getAndSet(null);
+                    if (hook != null) {
+                        hook.run();
+                    }
+                    return token;
+                }
+            };
+    private final DetokenizationCache detokenizationCache =
+            new DetokenizationCache(60000, 10, 1000);
+    private final List<TokenLifecycleEvent> events = new ArrayList<>();
+    private final TokenLifecycleScheduler scheduler =
+            new TokenLifecycleScheduler(
+                    tokenVault,
+                    detokenizationCache,
+                    event -> events.add((TokenLifecycleEvent) event),
+                    1000,
+                    1,
+                    48);
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    void advance_PastExpiryDate_ShouldExpireTokenAndPublishEvent() {
+        // Arrange
+        CardToken token = save("ref-1", TokenStatus.ACTIVE, now + 5000);
+        scheduler.schedule(token, now);
+        detokenizationCache.put(
+                token, CardDetails.builder().cardNumber("4111111111111111").build());
+
+        // Act
+        int beforeExpiry = scheduler.advance(now + 4000);
+        int afterExpiry = scheduler.advance(now + 6000);
+
+        // Assert
+        assertEquals(0, beforeExpiry);
+        assertEquals(1, afterExpiry);
+        CardToken expired = tokenVault.findByTokenReference("ref-1").orElseThrow();
+        assertEquals(TokenStatus.EXPIRED, expired.getStatus());
+        assertFalse(expired.isActive());
+        assertNull(detokenizationCache.get("ref-1"));
+        assertEquals(1, events.size());
+        assertEquals("ref-1", events.get(0).getTokenReference());
+        assertEquals(TokenLifecycleEventType.EXPIRED, events.get(0).getType());
+        assertEquals(TokenStatus.ACTIVE, events.get(0).getPreviousStatus());
+    }
+
+    @Test
+    void advance_PastRetention_ShouldPurgeExpiredToken() {
+        // Arrange
+        scheduler.schedule(save("ref-1", TokenStatus.SUSPENDED, now + 5000), now);
+        scheduler.advance(now + 6000);
+
+        // Act
+        int beforeRetention = scheduler.advance(now + 5000 + DAY_MILLIS - 1000);
+        int afterRetention = scheduler.advance(now + 5000 + DAY_MILLIS + 1000);
+
+        // Assert
+        assertEquals(0, beforeRetention);
+        assertEquals(1, afterRetention);
+        assertFalse(tokenVault.existsByTokenReference("ref-1"));
+        assertEquals(0, scheduler.getTrackedTokenCount());
+        assertEquals(2, events.size());
+        assertEquals(TokenStatus.SUSPENDED, events.get(0).getPreviousStatus());
+        assertEquals(TokenLifecycleEventType.PURGED, events.get(1).getType());
+        assertEquals(TokenStatus.EXPIRED, events.get(1).getPreviousStatus());
+    }
+
+    @Test
+    void advance_WithTokenRestoredWhilePurging_ShouldKeepIt() {
+        // Arrange
+        CardToken deleted = save("ref-1", TokenStatus.DELETED, now + DAY_MILLIS + 60000);
+        scheduler.schedule(deleted, now);
+        CardToken restored = deleted.toBuilder().status(TokenStatus.ACTIVE).build();
+        afterNextRead.set(() -> tokenVault.replace(deleted, restored));
+
+        // Act
+        int changed = scheduler.advance(now + DAY_MILLIS + 1000);
+
+        // Assert
+        assertEquals(0, changed);
+        assertEquals(restored, tokenVault.findByTokenReference("ref-1").orElseThrow());
+        assertEquals(1, scheduler.getTrackedTokenCount());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void advance_AfterExpiryDateWasExtended_ShouldExpireAtNewDate() {
+        // Arrange
+        CardToken token = save("ref-1", TokenStatus.ACTIVE, now + 5000);
+        scheduler.schedule(token, now);
+        // Refreshed in the vault without scheduling the token again
+        tokenVault.save(token.toBuilder().expiresAt(time(now + DAY_MILLIS)).build());
+
+        // Act
+        int atOldDate = scheduler.advance(now + 6000);
+        int atNewDate = scheduler.advance(now + DAY_MILLIS + 1000);
+
+        // Assert
+        assertEquals(0, atOldDate);
+        assertEquals(1, atNewDate);
+        assertEquals(
+                TokenStatus.EXPIRED, tokenVault.findByTokenReference("ref-1").get().getStatus());
+    }
+
+    @Test
+    void scheduleStoredTokens_WithTokensInVault_ShouldExpireOverdueAndKeepDeleted() {
+        // Arrange
+        save("ref-1", TokenStatus.ACTIVE, now - 1000);
+        save("ref-2", TokenStatus.ACTIVE, now + DAY_MILLIS);
+        save("ref-3", TokenStatus.DELETED, now + DAY_MILLIS);
+
+        // Act
+        scheduler.scheduleStoredTokens(now);
+        int changed = scheduler.advance(now + 2000);
+
+        // Assert
+        assertEquals(1, changed);
+        assertEquals(3, scheduler.getTrackedTokenCount());
+        assertFalse(tokenVault.findByTokenReference("ref-1").get().isActive());
+        assertTrue(tokenVault.findByTokenReference("ref-2").get().isActive());
+        assertTrue(tokenVault.existsByTokenReference("ref-3"));
+    }
+
+    @Test
+    void schedule_BeyondHorizon_ShouldLeaveTokenToALaterScan() {
+        // Arrange
+        CardToken token = save("ref-1", TokenStatus.ACTIVE, now + 3 * DAY_MILLIS);
+        CardToken deleted = save("ref-2", TokenStatus.DELETED, now + 3 * DAY_MILLIS);
+
+        // Act
+        scheduler.schedule(token, now);
+        scheduler.schedule(deleted, now);
+        int trackedBeforeScan = scheduler.getTrackedTokenCount();
+        scheduler.advance(now + 2 * DAY_MILLIS);
+        scheduler.scheduleStoredTokens(now + 2 * DAY_MILLIS);
+        int trackedAfterScan = scheduler.getTrackedTokenCount();
+        int changed = scheduler.advance(now + 3 * DAY_MILLIS + 1000);
+
+        // Assert: deleted tokens are tracked whenever they are due, as a scan cannot tell when
+        assertEquals(1, trackedBeforeScan);
+        assertEquals(1, trackedAfterScan);
+        assertEquals(1, changed);
+        assertEquals(
+                TokenStatus.EXPIRED, tokenVault.findByTokenReference("ref-1").get().getStatus());
+    }
+
+    @Test
+    void cancel_WithScheduledToken_ShouldNotExpireIt() {
+        // Arrange
+        scheduler.schedule(save("ref-1", TokenStatus.ACTIVE, now + 5000), now);
+        scheduler.advance(now + 1000);
+
+        // Act
+        scheduler.cancel("ref-1");
+
+        // Assert
+        assertEquals(0, scheduler.advance(now + 6000));
+        assertEquals(0, scheduler.getTrackedTokenCount());
+        assertTrue(events.isEmpty());
+    }
+
+    private CardToken save(String reference, TokenStatus status, long expiresAtMillis) {
+        CardToken token =
+                CardToken.builder()
+                        .tokenReference(reference)
+                        .tokenValue("49000000000000" + reference.substring(4))
+                        .expiresAt(time(expiresAtMillis))
+                        .status(status)
+                        .build();
+        tokenVault.save(token);
+        return token;
+    }
+
+    private static LocalDateTime time(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.cardtoken.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.cardtoken.model.TokenizationResult;
+import com.example.cardtoken.repository.InMemoryTokenVault;
+import com.example.shared.model.CardDetails;
+import com.example.shared.model.PaymentMethod;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TokenManagementServiceTest {
+
+    private final AtomicReference<Runnable> afterNextRead = new AtomicReference<>();
+    private final InMemoryTokenVault tokenVault =
+            new InMemoryTokenVault() {
+                @Override
+                public Optional<CardToken> findByTokenReference(String tokenReference) {
+                    Optional<CardToken> token = super.findByTokenReference(tokenReference);
+                    Runnable hook = afterNextRead.getAndSet(null);
+                    if (hook != null) {
+                        hook.run();
+                    }
+                    return token;
+                }
+            };
+    private final DetokenizationCache detokenizationCache =
+            new DetokenizationCache(60000, 10, 1000);
+    private final TokenBatchExecutor tokenBatchExecutor = new TokenBatchExecutor(2, 1, 1000);
+    private final Map<PaymentMethod, CompletableFuture<Void>> networkResponses =
+            new ConcurrentHashMap<>();
+    private final TokenManagementService service =
+            new TokenManagementService(
+                    tokenVault,
+                    new PanFingerprintService(
+                            Base64.getEncoder().encodeToString(new byte[32])),
+                    detokenizationCache,
+                    new TokenLifecycleScheduler(
+                            tokenVault, detokenizationCache, event -> {}, 1000, 90, 24),
+                    tokenBatchExecutor,
+                    new TokenProvisioningService(
+                            tokenVault,
+                            (token, cardDetails, network) ->
+                                    networkResponses.computeIfAbsent(
+                                            network, ignored -> new CompletableFuture<>()),
+                            detokenizationCache,
+                            60000,
+                            new String[0]));
+
+    @AfterEach
+    void tearDown() {
+        tokenBatchExecutor.shutdown();
+    }
+
+    @Test
+    void tokenizeForMultipleNetworks_WithNetworksAnsweringLater_ShouldAddEachThatProvisions() {
+        // Act
+        CardToken token =
+                service.tokenizeForMultipleNetworks(
+                        card("4500123456789010", 12),
+                        Set.of(PaymentMethod.STAR, PaymentMethod.VISA, PaymentMethod.ACCEL));
+        Set<PaymentMethod> beforeAnswers = token.getPaymentMethods();
+        networkResponses.get(PaymentMethod.STAR).complete(null);
+        networkResponses.get(PaymentMethod.ACCEL).completeExceptionally(new RuntimeException());
+
+        // Assert: Visa is declared first, the others were requested from their networks
+        assertEquals(Set.of(PaymentMethod.VISA), beforeAnswers);
+        assertTrue(token.getTokenBin().startsWith("49"));
+        assertEquals(Set.of(PaymentMethod.ACCEL, PaymentMethod.STAR), networkResponses.keySet());
+        assertEquals(
+                Set.of(PaymentMethod.VISA, PaymentMethod.STAR),
+                tokenVault
+                        .findByTokenReference(token.getTokenReference())
+                        .orElseThrow()
+                        .getPaymentMethods());
+    }
+
+    @Test
+    void detokenizeToken_WithTokenSuspendedWhileReading_ShouldNotCacheIt() {
+        // Arrange
+        CardToken token = service.tokenize(card("4500123456789010", 12), PaymentMethod.VISA);
+        String reference = token.getTokenReference();
+        detokenizationCache.invalidate(reference);
+        afterNextRead.set(() -> service.updateTokenStatus(reference, TokenStatus.SUSPENDED));
+
+        // Act
+        service.detokenizeToken(reference);
+
+        // Assert
+        assertNull(detokenizationCache.get(reference));
+        assertTrue(service.detokenizeToken(reference).isEmpty());
+    }
+
+    @Test
+    void tokenizeBatch_WithKnownAndRepeatedCards_ShouldCreateOneTokenPerCard() {
+        // Arrange
+        CardToken known = service.tokenize(card("4500123456789010", 12), PaymentMethod.VISA);
+        List<CardDetails> cards =
+                List.of(
+                        card("4500123456789010", 12),
+                        card("4111111111111111", 12),
+                        card("4111111111111111", 12),
+                        card("4500123456789010", 11));
+
+        // Act
+        List<TokenizationResult> results = service.tokenizeBatch(cards, PaymentMethod.VISA);
+
+        // Assert
+        assertEquals(4, results.size());
+        assertFalse(results.get(0).isCreated());
+        assertEquals(known.getTokenReference(), results.get(0).getToken().getTokenReference());
+        assertTrue(results.get(1).isCreated());
+        assertFalse(results.get(2).isCreated());
+        assertEquals(
+                results.get(1).getToken().getTokenReference(),
+                results.get(2).getToken().getTokenReference());
+        // A different expiry date is a reissued card, which gets a token of its own
+        assertTrue(results.get(3).isCreated());
+        assertEquals(11, results.get(3).getToken().getExpiryMonth());
+        assertTrue(
+                tokenVault.existsByTokenReference(results.get(1).getToken().getTokenReference()));
+        assertTrue(
+                tokenVault.existsByTokenReference(results.get(3).getToken().getTokenReference()));
+    }
+
+    @Test
+    void tokenizeBatch_WithDistinctCards_ShouldSaveTokensWithUniqueVersion4References() {
+        // Arrange
+        List<CardDetails> cards = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            cards.add(card(String.format("4000%012d", i), 6));
+        }
+
+        // Act
+        List<TokenizationResult> results = service.tokenizeBatch(cards, PaymentMethod.MASTERCARD);
+
+        // Assert
+        Set<String> references = new HashSet<>();
+        for (int i = 0; i < cards.size(); i++) {
+            CardToken token = results.get(i).getToken();
+            UUID reference = UUID.fromString(token.getTokenReference());
+            assertEquals(4, reference.version());
+            assertEquals(2, reference.variant());
+            assertTrue(references.add(token.getTokenReference()));
+            assertEquals(cards.get(i).getLastFour(), token.getLastFour());
+            assertTrue(token.supportsPaymentMethod(PaymentMethod.MASTERCARD));
+            assertTrue(tokenVault.existsByTokenReference(token.getTokenReference()));
+        }
+    }
+
+    private static CardDetails card(String cardNumber, int expiryMonth) {
+        return CardDetails.builder()
+                .cardNumber(cardNumber)
+                .cardholderName("John Doe")
+                .expiryMonth(expiryMonth)
+                .expiryYear(2030)
+                .build();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.cardtoken.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenStatus;
+import com.example.cardtoken.repository.InMemoryTokenVault;
+import com.example.shared.model.CardDetails;
+import com.example.shared.model.PaymentMethod;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class TokenProvisioningServiceTest {
+
+    private final InMemoryTokenVault tokenVault = new InMemoryTokenVault();
+    private final DetokenizationCache detokenizationCache =
+            new DetokenizationCache(60000, 10, 1000);
+    private final Map<PaymentMethod, CompletableFuture<Void>> networkResponses =
+            new ConcurrentHashMap<>();
+    private final TokenProvisioningService service =
+            new TokenProvisioningService(
+                    tokenVault,
+                    (token, cardDetails, network) ->
+                            networkResponses.computeIfAbsent(
+                                    network, ignored -> new CompletableFuture<>()),
+                    detokenizationCache,
+                    60000,
+                    new String[] {"PULSE=50", " "});
+    private final CardDetails cardDetails =
+            CardDetails.builder().cardNumber("4500123456789010").build();
+
+    @Test
+    void provision_WithNetworksAnsweringSeparately_ShouldStoreEachAsItAnswers() throws Exception {
+        // Arrange
+        CardToken token = save("ref-1");
+        detokenizationCache.put(token, cardDetails);
+
+        // Act
+        CompletableFuture<Optional<CardToken>> provisioned =
+                service.provision(
+                        token,
+                        cardDetails,
+                        EnumSet.of(PaymentMethod.ACCEL, PaymentMethod.STAR, PaymentMethod.NYCE));
+        networkResponses.get(PaymentMethod.STAR).complete(null);
+        Set<PaymentMethod> afterFirstAnswer = stored("ref-1");
+        networkResponses.get(PaymentMethod.NYCE).completeExceptionally(new RuntimeException());
+        boolean doneBeforeLastAnswer = provisioned.isDone();
+        networkResponses.get(PaymentMethod.ACCEL).complete(null);
+
+        // Assert
+        assertEquals(Set.of(PaymentMethod.VISA, PaymentMethod.STAR), afterFirstAnswer);
+        assertNull(detokenizationCache.get("ref-1"));
+        assertFalse(doneBeforeLastAnswer);
+        assertEquals(
+                Set.of(PaymentMethod.VISA, PaymentMethod.STAR, PaymentMethod.ACCEL),
+                provisioned.get(5, TimeUnit.SECONDS).orElseThrow().getPaymentMethods());
+        assertEquals(0, service.getPendingTokenCount());
+    }
+
+    @Test
+    void provision_WithNetworkPastItsTimeout_ShouldLeaveItOffTheToken() throws Exception {
+        // Arrange
+        CardToken token = save("ref-1");
+
+        // Act: Pulse times out after 50 ms, the others after a minute
+        CompletableFuture<Optional<CardToken>> provisioned =
+                service.provision(
+                        token, cardDetails, EnumSet.of(PaymentMethod.STAR, PaymentMethod.PULSE));
+        networkResponses.get(PaymentMethod.STAR).complete(null);
+
+        // Assert
+        assertEquals(
+                Set.of(PaymentMethod.VISA, PaymentMethod.STAR),
+                provisioned.get(5, TimeUnit.SECONDS).orElseThrow().getPaymentMethods());
+        networkResponses.get(PaymentMethod.PULSE).complete(null);
+        assertEquals(Set.of(PaymentMethod.VISA, PaymentMethod.STAR), stored("ref-1"));
+        assertEquals(0, service.getPendingTokenCount());
+    }
+
+    @Test
+    void provision_WithTokenDeletedMeanwhile_ShouldNotStoreIt() throws Exception {
+        // Arrange
+        CardToken token = save("ref-1");
+        CompletableFuture<Optional<CardToken>> provisioned =
+                service.provision(token, cardDetails, EnumSet.of(PaymentMethod.STAR));
+
+        // Act
+        tokenVault.deleteByTokenReference("ref-1");
+        networkResponses.get(PaymentMethod.STAR).complete(null);
+
+        // Assert
+        assertTrue(provisioned.get(5, TimeUnit.SECONDS).isEmpty());
+        assertFalse(tokenVault.existsByTokenReference("ref-1"));
+    }
+
+    private CardToken save(String reference) {
+        CardToken token =
+                CardToken.builder()
+                        .tokenReference(reference)
+                        .tokenValue("4900000000000001")
+                        .status(TokenStatus.ACTIVE)
+                        .paymentMethod(PaymentMethod.VISA)
+                        .build();
+        tokenVault.save(token);
+        return token;
+    }
+
+    private Set<PaymentMethod> stored(String reference) {
+        return tokenVault.findByTokenReference(reference).orElseThrow().getPaymentMethods();
+    }
+}
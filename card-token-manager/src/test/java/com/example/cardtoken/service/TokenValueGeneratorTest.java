@@ -0,0 +1,145 @@
+package com.example.cardtoken.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.shared.model.PaymentMethod;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TokenValueGeneratorTest {
+
+    @Test
+    void generate_WithOverlappingRanges_ShouldDrawEveryBinOfTheMethodEquallyOften() {
+        // Arrange: 1000 BINs in one range and 100 in another, which overlaps Visa's
+        TokenValueGenerator generator =
+                new TokenValueGenerator(
+                        List.of(
+                                range("490000", "499999", PaymentMethod.VISA),
+                                range("670000", "670999", PaymentMethod.ACCEL),
+                                range("493500", "493599", PaymentMethod.ACCEL)),
+                        PaymentMethod.VISA,
+                        10);
+
+        // Act
+        int inSmallRange = 0;
+        for (int i = 0; i < 11000; i++) {
+            String value = generator.generate(PaymentMethod.ACCEL, taken -> false);
+            assertTrue(value.matches("(670\\d{3}|4935\\d{2})\\d{10}"), value);
+            if (value.startsWith("4935")) {
+                inSmallRange++;
+            }
+        }
+
+        // Assert: about 1000 of 11000
+        assertTrue(inSmallRange > 800 && inSmallRange < 1200, "In small range: " + inSmallRange);
+        assertEquals(1100L * 10_000_000_000L, generator.capacity(PaymentMethod.ACCEL));
+    }
+
+    @Test
+    void generate_WithOverlappingRangesOfOneMethod_ShouldCountEachBinOnce() {
+        // Arrange: 490000-490099 and 490050-490149 share 50 BINs, 490150-490199 is adjacent
+        TokenValueGenerator generator =
+                new TokenValueGenerator(
+                        List.of(
+                                range("490050", "490149", PaymentMethod.VISA),
+                                range("490000", "490099", PaymentMethod.VISA),
+                                range("490150", "490199", PaymentMethod.VISA),
+                                range("490060", "490070", PaymentMethod.VISA)),
+                        PaymentMethod.VISA,
+                        1);
+
+        // Act
+        int inSharedBins = 0;
+        for (int i = 0; i < 20000; i++) {
+            String value = generator.generate(PaymentMethod.VISA, taken -> false);
+            int bin = Integer.parseInt(value.substring(0, 6));
+            assertTrue(bin >= 490000 && bin <= 490199, value);
+            if (bin >= 490050 && bin <= 490099) {
+                inSharedBins++;
+            }
+        }
+
+        // Assert: 50 of 200 BINs, about 5000 of 20000
+        assertTrue(inSharedBins > 4500 && inSharedBins < 5500, "In shared BINs: " + inSharedBins);
+        assertEquals(200L * 10, generator.capacity(PaymentMethod.VISA));
+    }
+
+    @Test
+    void generate_WithMethodWithoutRanges_ShouldUseDefaultMethodsRanges() {
+        // Arrange
+        TokenValueGenerator generator =
+                new TokenValueGenerator(
+                        List.of(
+                                range("590000", "599999", PaymentMethod.MASTERCARD),
+                                range("490000", "490000", PaymentMethod.VISA)),
+                        PaymentMethod.VISA,
+                        10);
+
+        // Act
+        String value = generator.generate(PaymentMethod.PULSE, taken -> false);
+
+        // Assert
+        assertEquals(16, value.length());
+        assertTrue(value.startsWith("490000"));
+    }
+
+    @Test
+    void generate_WithNinetyPercentTaken_ShouldTakeAboutTenDraws() {
+        // Arrange: 10 BINs of 100 values each, 900 of them taken
+        TokenValueGenerator generator =
+                new TokenValueGenerator(
+                        List.of(range("490000", "490009", PaymentMethod.VISA)),
+                        PaymentMethod.VISA,
+                        2);
+        Set<String> taken = new HashSet<>();
+        while (taken.size() < 900) {
+            taken.add(generator.generate(PaymentMethod.VISA, taken::contains));
+        }
+
+        // Act: free a value for every value generated, so the space stays 90% full
+        int[] draws = new int[1];
+        for (int i = 0; i < 1000; i++) {
+            String value =
+                    generator.generate(
+                            PaymentMethod.VISA,
+                            candidate -> {
+                                draws[0]++;
+                                return taken.contains(candidate);
+                            });
+            assertTrue(taken.add(value));
+            taken.remove(taken.iterator().next());
+        }
+
+        // Assert
+        double average = draws[0] / 1000.0;
+        assertTrue(average > 8 && average < 12, "Average draws: " + average);
+    }
+
+    @Test
+    void generate_WithEveryValueTaken_ShouldThrow() {
+        // Arrange
+        TokenValueGenerator generator =
+                new TokenValueGenerator(
+                        List.of(range("490000", "490000", PaymentMethod.VISA)),
+                        PaymentMethod.VISA,
+                        1);
+
+        // Act & Assert
+        assertThrows(
+                IllegalStateException.class,
+                () -> generator.generate(PaymentMethod.VISA, taken -> true));
+    }
+
+    private static TokenManagementService.TokenBinRange range(
+            String startBin, String endBin, PaymentMethod paymentMethod) {
+        return TokenManagementService.TokenBinRange.builder()
+                .startBin(startBin)
+                .endBin(endBin)
+                .paymentMethod(paymentMethod)
+                .build();
+    }
+}
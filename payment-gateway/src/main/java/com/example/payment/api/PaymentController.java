@@ -1,7 +1,10 @@
 package com.example.payment.api;
 
 import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.TokenizationResult;
 import com.example.cardtoken.service.CardTokenService;
+import com.example.payment.api.dto.BatchCardDto;
+import com.example.payment.api.dto.BatchTokenizationError;
 import com.example.payment.api.dto.CardDetailsDto;
 import com.example.payment.api.dto.CardPaymentRequest;
 import com.example.payment.api.dto.PaymentResponse;
@@ -9,28 +12,48 @@ import com.example.payment.api.dto.TokenResponse;
 import com.example.payment.service.PaymentService;
 import com.example.shared.model.CardDetails;
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.NdjsonWriter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+@Slf4j
 @RestController
 @RequestMapping("/api/v1/payments")
 @RequiredArgsConstructor
 @Tag(name = "Payment API", description = "API for processing card payments")
 public class PaymentController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final PaymentService paymentService;
     private final CardTokenService cardTokenService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
 
     @PostMapping("/authorize")
     @Operation(summary = "Authorize a payment")
@@ -82,6 +105,13 @@ public class PaymentController {
         return ResponseEntity.ok(paymentService.refund(paymentId, amount, merchantId));
     }
 
+    @PostMapping("/{paymentId}/chargeback")
+    @Operation(summary = "Record a chargeback on a captured payment")
+    public ResponseEntity<PaymentResponse> chargeback(
+            @RequestHeader("X-Merchant-Id") String merchantId, @PathVariable String paymentId) {
+        return ResponseEntity.ok(paymentService.chargeback(paymentId, merchantId));
+    }
+
     @GetMapping("/{paymentId}/status")
     @Operation(summary = "Get payment status")
     public ResponseEntity<PaymentResponse> getStatus(
@@ -130,6 +160,73 @@ public class PaymentController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Tokenizes a stream of stored cards, such as when a merchant's cards are migrated. The request
+     * and the response are newline-delimited JSON, one card per line in and one token per line
+     * out, in the same order. Cards that already have a usable token get it back with {@code
+     * created} false. Lines that cannot be parsed or are invalid produce a {@link
+     * BatchTokenizationError} instead. Lines are read and tokenized in chunks, so the batch does
+     * not have to fit in memory. Each batch is logged with the merchant that sent it and its
+     * counts, for auditing.
+     *
+     * @param merchantId The merchant ID
+     * @param paymentMethod The payment method of the tokens, VISA if not specified
+     * @param body The cards
+     * @param response The response to stream the tokens to
+     * @throws IOException If the request cannot be read or the response cannot be written
+     */
+    @PostMapping(value = "/tokenize/batch", consumes = NDJSON, produces = NDJSON)
+    @Operation(summary = "Tokenize a stream of stored cards")
+    public void tokenizeBatch(
+            @RequestHeader("X-Merchant-Id") String merchantId,
+            @RequestParam(required = false) PaymentMethod paymentMethod,
+            InputStream body,
+            HttpServletResponse response)
+            throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        PaymentMethod method = paymentMethod != null ? paymentMethod : PaymentMethod.VISA;
+
+        int chunkSize = cardTokenService.getTokenizationChunkSize();
+        List<CardDetails> cards = new ArrayList<>(chunkSize);
+        // One entry per line of the chunk, null for lines that are tokenized
+        List<BatchTokenizationError> errors = new ArrayList<>(chunkSize);
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        long tokenized = 0;
+        long created = 0;
+        long rejected = 0;
+        try (NdjsonWriter writer = new NdjsonWriter(objectMapper, response.getOutputStream())) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                BatchTokenizationError error = parseBatchLine(line, lineNumber, cards);
+                errors.add(error);
+                if (error != null) {
+                    rejected++;
+                }
+                if (errors.size() == chunkSize) {
+                    tokenized += cards.size();
+                    created += writeTokenizationChunk(writer, cards, errors, method);
+                }
+            }
+            tokenized += cards.size();
+            created += writeTokenizationChunk(writer, cards, errors, method);
+        } finally {
+            log.info(
+                    "Merchant {} tokenized a batch of {} cards: {} new tokens, {} rejected lines",
+                    merchantId,
+                    tokenized,
+                    created,
+                    rejected);
+        }
+    }
+
     @GetMapping("/tokens/{tokenReference}")
     @Operation(summary = "Retrieve token details")
     public ResponseEntity<TokenResponse> retrieveToken(
@@ -159,4 +256,73 @@ public class PaymentController {
 
         return ResponseEntity.ok(response);
     }
+
+    private BatchTokenizationError parseBatchLine(
+            String line, long lineNumber, List<CardDetails> cards) {
+        BatchCardDto card;
+        try {
+            card = objectMapper.readValue(line, BatchCardDto.class);
+        } catch (JsonProcessingException e) {
+            return new BatchTokenizationError(
+                    lineNumber, "Invalid JSON: " + e.getOriginalMessage());
+        }
+
+        Set<ConstraintViolation<BatchCardDto>> violations = validator.validate(card);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<BatchCardDto> violation = violations.iterator().next();
+            return new BatchTokenizationError(
+                    lineNumber, violation.getPropertyPath() + " " + violation.getMessage());
+        }
+
+        cards.add(
+                CardDetails.builder()
+                        .cardNumber(card.getCardNumber())
+                        .cardholderName(card.getCardholderName())
+                        .expiryMonth(card.getExpiryMonth())
+                        .expiryYear(card.getExpiryYear())
+                        .build());
+        return null;
+    }
+
+    // Returns the number of new tokens
+    private int writeTokenizationChunk(
+            NdjsonWriter writer,
+            List<CardDetails> cards,
+            List<BatchTokenizationError> errors,
+            PaymentMethod method)
+            throws IOException {
+        List<TokenizationResult> results =
+                cards.isEmpty() ? List.of() : cardTokenService.tokenizeBatch(cards, method);
+        int next = 0;
+        for (BatchTokenizationError error : errors) {
+            writer.write(error != null ? error : toTokenResponse(results.get(next++)));
+        }
+        writer.flush();
+        cards.clear();
+        errors.clear();
+
+        int created = 0;
+        for (TokenizationResult result : results) {
+            if (result.isCreated()) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    private static TokenResponse toTokenResponse(TokenizationResult result) {
+        CardToken token = result.getToken();
+        TokenResponse response = new TokenResponse();
+        response.setTokenReference(token.getTokenReference());
+        response.setLastFour(token.getLastFour());
+        response.setExpiryMonth(token.getExpiryMonth());
+        response.setExpiryYear(token.getExpiryYear());
+        response.setPaymentMethods(token.getPaymentMethods());
+        response.setTokenBin(token.getTokenBin());
+        response.setCreatedAt(token.getCreatedAt());
+        response.setExpiresAt(token.getExpiresAt());
+        response.setStatus(token.getStatus());
+        response.setCreated(result.isCreated());
+        return response;
+    }
 }
@@ -0,0 +1,31 @@
+package com.example.payment.api;
+
+import com.example.paymentrouting.model.ExperimentArmStatistics;
+import com.example.paymentrouting.service.RoutingExperimentService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import lombok.RequiredArgsConstructor;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/routing/experiment")
+@RequiredArgsConstructor
+@Tag(name = "Routing Experiment API", description = "API for inspecting routing experiments")
+public class RoutingExperimentController {
+
+    private final RoutingExperimentService routingExperimentService;
+
+    @GetMapping("/arms")
+    @Operation(summary = "Get aggregated results per routing experiment arm")
+    public ResponseEntity<List<ExperimentArmStatistics>> getArmStatistics() {
+        return ResponseEntity.ok(routingExperimentService.getArmStatistics());
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.payment.api.dto;
+
+import jakarta.validation.constraints.*;
+
+import lombok.Data;
+
+/** One stored card of a bulk tokenization request; stored cards carry no CVV. */
+@Data
+public class BatchCardDto {
+    @NotBlank(message = "Card number is required")
+    @Pattern(regexp = "^[0-9]{13,19}$", message = "Invalid card number")
+    private String cardNumber;
+
+    private String cardholderName;
+
+    @NotNull(message = "Expiry month is required")
+    @Min(value = 1, message = "Invalid expiry month")
+    @Max(value = 12, message = "Invalid expiry month")
+    private Integer expiryMonth;
+
+    @NotNull(message = "Expiry year is required")
+    @Min(value = 2023, message = "Card has expired")
+    private Integer expiryYear;
+}
@@ -0,0 +1,17 @@
+package com.example.payment.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Written in place of a token for a batch line that could not be tokenized. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTokenizationError {
+    /** The line number in the request, starting at 1. */
+    private long line;
+
+    /** Why the line was rejected. */
+    private String error;
+}
@@ -25,6 +25,19 @@ public class CardPaymentRequest {
 
     private String tokenReference;
 
+    /** IP address of the customer, if known. Used for velocity checks. */
+    private String customerIpAddress;
+
+    /** Device identifier of the customer, if known. Used for velocity checks. */
+    private String customerDeviceId;
+
+    /**
+     * ISO 18245 merchant category code of the sale, if known. Used for the merchant category risk
+     * when the merchant has no profile of its own.
+     */
+    @Pattern(regexp = "\\d{4}", message = "Merchant category code must be 4 digits")
+    private String merchantCategoryCode;
+
     /**
      * Validates that either card details or token reference is provided, but not both. This is used
      * by the controller to validate the request before processing.
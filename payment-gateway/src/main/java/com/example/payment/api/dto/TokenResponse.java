@@ -20,4 +20,7 @@ public class TokenResponse {
     private LocalDateTime createdAt;
     private LocalDateTime expiresAt;
     private TokenStatus status;
+
+    /** Set by bulk tokenization: false if the card already had a token, which was returned */
+    private Boolean created;
 }
@@ -29,6 +29,9 @@ public class Payment {
     private com.example.riskfraud.model.RiskLevel riskLevel;
     private String tokenReference; // Reference to the card token used for this payment
     private String transactionId; // Reference to the transaction ID from the card processor
+    private long cardFingerprint; // Keyed hash of the card for risk tracking, 0 if unknown
+    private String customerIpAddress;
+    private String customerDeviceId;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
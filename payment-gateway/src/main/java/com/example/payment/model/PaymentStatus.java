@@ -20,6 +20,9 @@ public enum PaymentStatus {
     /** Payment has been partially refunded */
     PARTIALLY_REFUNDED("Partially Refunded"),
 
+    /** Payment has been charged back by the cardholder's issuer */
+    CHARGED_BACK("Charged Back"),
+
     /** Payment has been voided/cancelled before capture */
     CANCELLED("Cancelled"),
 
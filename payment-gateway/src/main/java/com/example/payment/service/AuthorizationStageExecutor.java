@@ -0,0 +1,156 @@
+package com.example.payment.service;
+
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs independent stages of an authorization (risk assessment and routing) concurrently when the
+ * concurrent orchestration mode is enabled. Stages run on virtual threads when the runtime supports
+ * them (Java 21+), otherwise on a bounded pool of platform threads.
+ *
+ * <p>A saturated pool rejects new stages rather than running them on the caller's thread, where
+ * they would not be bound by the stage deadline. The caller then runs the authorization stages
+ * sequentially; each fallback is counted and periodically logged.
+ */
+@Slf4j
+@Component
+public class AuthorizationStageExecutor {
+
+    private final boolean concurrent;
+    private final long stageDeadlineMillis;
+    private final ExecutorService executor;
+    private final AtomicLong sequentialFallbacks = new AtomicLong();
+
+    /**
+     * Creates the stage executor.
+     *
+     * @param concurrent Whether authorization stages should run concurrently
+     * @param stageDeadlineMillis How long to wait for all concurrent stages to complete
+     * @param platformThreads The maximum number of platform threads if virtual threads are not
+     *     available
+     */
+    public AuthorizationStageExecutor(
+            @Value("${payment.authorization.concurrent:false}") boolean concurrent,
+            @Value("${payment.authorization.stage-deadline-ms:2000}") long stageDeadlineMillis,
+            @Value("${payment.authorization.stage-threads:64}") int platformThreads) {
+        if (stageDeadlineMillis <= 0) {
+            throw new IllegalArgumentException("Stage deadline must be positive");
+        }
+
+        this.concurrent = concurrent;
+        this.stageDeadlineMillis = stageDeadlineMillis;
+        this.executor = concurrent ? newExecutor(platformThreads) : null;
+    }
+
+    /**
+     * Checks whether authorization stages should run concurrently.
+     *
+     * @return true if the concurrent orchestration mode is enabled
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Gets how long to wait for all concurrent stages of an authorization to complete.
+     *
+     * @return The deadline in milliseconds
+     */
+    public long getStageDeadlineMillis() {
+        return stageDeadlineMillis;
+    }
+
+    /**
+     * Gets how often a stage could not be started because the executor was saturated or shut down.
+     *
+     * @return The number of stages the caller had to run sequentially
+     */
+    public long getSequentialFallbacks() {
+        return sequentialFallbacks.get();
+    }
+
+    /**
+     * Starts a stage.
+     *
+     * @param stage The stage to run
+     * @param <T> The stage result type
+     * @return A future for the stage result, cancelling it interrupts the stage; or null if the
+     *     executor is saturated and the caller must run the stage itself
+     */
+    public <T> Future<T> fork(Callable<T> stage) {
+        if (executor == null) {
+            throw new IllegalStateException("Concurrent authorization stages are disabled");
+        }
+        try {
+            return executor.submit(stage);
+        } catch (RejectedExecutionException e) {
+            long fallbacks = sequentialFallbacks.incrementAndGet();
+            if (fallbacks == 1 || fallbacks % 1000 == 0) {
+                log.warn(
+                        "Authorization stage executor saturated, running stages sequentially"
+                                + " ({} times since startup)",
+                        fallbacks);
+            }
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ExecutorService newExecutor(int platformThreads) {
+        try {
+            ExecutorService executor =
+                    (ExecutorService)
+                            Executors.class
+                                    .getMethod("newVirtualThreadPerTaskExecutor")
+                                    .invoke(null);
+            log.info("Running concurrent authorization stages on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            log.info(
+                    "Virtual threads not available, running concurrent authorization stages on"
+                            + " up to {} platform threads",
+                    platformThreads);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool =
+                new ThreadPoolExecutor(
+                        platformThreads,
+                        platformThreads,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(platformThreads),
+                        runnable -> {
+                            Thread thread =
+                                    new Thread(
+                                            runnable,
+                                            "authorization-stage-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
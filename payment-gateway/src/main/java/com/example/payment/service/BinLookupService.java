@@ -2,6 +2,7 @@ package com.example.payment.service;
 
 import com.example.payment.model.BinRange;
 import com.example.payment.model.CardBinInfo;
+import com.example.paymentrouting.model.NetworkEligibilityIndex;
 import com.example.shared.model.PaymentMethod;
 
 import jakarta.annotation.PostConstruct;
@@ -24,11 +25,37 @@ public class BinLookupService {
     private final ConcurrentMap<String, List<BinRange>> binRanges = new ConcurrentHashMap<>();
     private final List<BinRange> allRanges = new ArrayList<>();
 
+    // Eligible networks per BIN, rebuilt and swapped whenever the BIN ranges change
+    private volatile NetworkEligibilityIndex eligibilityIndex = NetworkEligibilityIndex.EMPTY;
+
     @PostConstruct
     public void init() {
         loadDefaultBinRanges();
         // Sort all ranges by length of bin for more specific matches first
         allRanges.sort(Comparator.comparingInt(r -> -r.getStartBin().length()));
+        rebuildEligibilityIndex();
+    }
+
+    /**
+     * Gets all networks a BIN is eligible for, including the unaffiliated debit networks of
+     * overlapping ranges. Equivalent to collecting the payment methods of {@link #lookup(String)},
+     * but answered from a precomputed index without building any lists.
+     *
+     * @param bin The first 6-8 digits of the card number
+     * @return The eligible networks as a {@link com.example.shared.util.PaymentMethodMask}, or 0
+     *     if the BIN is not found
+     */
+    public int eligibleNetworks(String bin) {
+        return eligibilityIndex.eligibleNetworks(bin);
+    }
+
+    /**
+     * Gets the current BIN-to-eligible-network index.
+     *
+     * @return The eligibility index
+     */
+    public NetworkEligibilityIndex getEligibilityIndex() {
+        return eligibilityIndex;
     }
 
     /**
@@ -59,6 +86,56 @@ public class BinLookupService {
         return matches;
     }
 
+    /**
+     * Looks up the card information of a BIN for one network: the most specific range of that
+     * network, or the most specific range of any network if the BIN has none for it. Unlike
+     * {@link #lookup(String)}, this builds no list of all matches.
+     *
+     * @param bin The first 6-8 digits of the card number
+     * @param paymentMethod The network, or null for the most specific range of any network
+     * @return The card information, or null if the BIN is not found
+     */
+    public CardBinInfo lookup(String bin, PaymentMethod paymentMethod) {
+        if (bin == null || bin.length() < 6 || bin.length() > 8) {
+            return null;
+        }
+
+        // Ranges are sorted most specific first
+        BinRange firstMatch = null;
+        for (BinRange range : allRanges) {
+            if (isBinInRange(bin, range.getStartBin(), range.getEndBin())) {
+                if (paymentMethod == null || paymentMethod == range.getPaymentMethod()) {
+                    return createCardBinInfo(bin, range);
+                }
+                if (firstMatch == null) {
+                    firstMatch = range;
+                }
+            }
+        }
+
+        return firstMatch != null ? createCardBinInfo(bin, firstMatch) : matchIinPattern(bin);
+    }
+
+    private void rebuildEligibilityIndex() {
+        NetworkEligibilityIndex.Builder builder = NetworkEligibilityIndex.builder();
+        for (BinRange range : allRanges) {
+            if (range.getPaymentMethod() != null) {
+                builder.addRange(range.getStartBin(), range.getEndBin(), range.getPaymentMethod());
+            }
+        }
+
+        // Same IIN patterns as findMatchingIinPattern, used where no range matches
+        builder
+                .addFallbackRange("400000", "499999", PaymentMethod.VISA)
+                .addFallbackRange("510000", "559999", PaymentMethod.MASTERCARD)
+                .addFallbackRange("340000", "349999", PaymentMethod.AMEX)
+                .addFallbackRange("370000", "379999", PaymentMethod.AMEX)
+                .addFallbackRange("600000", "699999", PaymentMethod.DISCOVER);
+
+        eligibilityIndex = builder.build();
+        log.info("Built network eligibility index with {} intervals", eligibilityIndex.size());
+    }
+
     private boolean isBinInRange(String bin, String startBin, String endBin) {
         // Pad with zeros for comparison if needed
         String paddedBin =
@@ -70,20 +147,22 @@ public class BinLookupService {
     }
 
     private List<CardBinInfo> findMatchingIinPattern(String bin) {
-        List<CardBinInfo> results = new ArrayList<>();
+        CardBinInfo binInfo = matchIinPattern(bin);
+        return binInfo != null ? List.of(binInfo) : List.of();
+    }
 
+    private CardBinInfo matchIinPattern(String bin) {
         // Common IIN patterns for major card networks
         if (bin.startsWith("4")) {
-            results.add(createVisaBinInfo(bin));
+            return createVisaBinInfo(bin);
         } else if (bin.matches("^5[1-5].*")) {
-            results.add(createMastercardBinInfo(bin));
+            return createMastercardBinInfo(bin);
         } else if (bin.startsWith("34") || bin.startsWith("37")) {
-            results.add(createAmexBinInfo(bin));
+            return createAmexBinInfo(bin);
         } else if (bin.startsWith("6")) {
-            results.add(createDiscoverBinInfo(bin));
+            return createDiscoverBinInfo(bin);
         }
-
-        return results;
+        return null;
     }
 
     private CardBinInfo createCardBinInfo(String bin, BinRange range) {
@@ -348,7 +427,7 @@ public class BinLookupService {
      *
      * @param range The BIN range to add or update
      */
-    public void addOrUpdateBinRange(BinRange range) {
+    public synchronized void addOrUpdateBinRange(BinRange range) {
         String key = range.getStartBin().substring(0, 6);
 
         // Remove any existing range with the same start and end bins
@@ -370,5 +449,6 @@ public class BinLookupService {
 
         // Resort the list
         allRanges.sort(Comparator.comparingInt(r -> -r.getStartBin().length()));
+        rebuildEligibilityIndex();
     }
 }
@@ -24,6 +24,9 @@ public interface PaymentService {
     /** Refund a captured payment. */
     PaymentResponse refund(String paymentId, BigDecimal amount, String merchantId);
 
+    /** Record a chargeback reported for a captured payment. */
+    PaymentResponse chargeback(String paymentId, String merchantId);
+
     /** Get payment status. */
     PaymentStatus getPaymentStatus(String paymentId, String merchantId);
 }
@@ -3,7 +3,9 @@ package com.example.payment.service;
 import com.example.cardnetwork.emulator.CardAuthorizationResult;
 import com.example.cardnetwork.emulator.CardProcessor;
 import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.DetokenizedCard;
 import com.example.cardtoken.service.CardTokenService;
+import com.example.cardtoken.service.PanFingerprintService;
 import com.example.payment.api.dto.CardDetailsDto;
 import com.example.payment.api.dto.CardPaymentRequest;
 import com.example.payment.api.dto.PaymentResponse;
@@ -14,6 +16,7 @@ import com.example.payment.model.CardBinInfo;
 import com.example.payment.model.Payment;
 import com.example.payment.model.PaymentStatus;
 import com.example.payment.repository.PaymentRepository;
+import com.example.paymentrouting.model.RoutingContext;
 import com.example.paymentrouting.model.RoutingResult;
 import com.example.paymentrouting.service.PaymentRoutingService;
 import com.example.riskfraud.model.RiskAssessment;
@@ -23,6 +26,8 @@ import com.example.riskfraud.service.RiskAssessmentService;
 import com.example.shared.model.CardDetails;
 import com.example.shared.model.CardInfo;
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.FastHash;
+import com.example.shared.util.PaymentMethodMask;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -32,7 +37,10 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.time.YearMonth;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /** Implementation of the PaymentService interface. */
 @Slf4j
@@ -40,12 +48,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class PaymentServiceImpl implements PaymentService {
 
+    // Seed for the card fingerprint, keeps it distinct from other uses of FastHash
+    private static final long CARD_FINGERPRINT_SEED = 0x5EED_CA4D_F1A6_E4A1L;
+
     private final PaymentRepository paymentRepository;
     private final CardProcessor cardProcessor;
     private final BinLookupService binLookupService;
     private final PaymentRoutingService paymentRoutingService;
     private final RiskAssessmentService riskAssessmentService;
     private final CardTokenService cardTokenService;
+    private final PanFingerprintService panFingerprintService;
+    private final AuthorizationStageExecutor authorizationStageExecutor;
 
     @Override
     public PaymentResponse authorize(CardPaymentRequest request, String merchantId) {
@@ -57,37 +70,29 @@ public class PaymentServiceImpl implements PaymentService {
             }
 
             CardDetails cardDetails;
-            Set<PaymentMethod> availableNetworks = new HashSet<>();
+            int eligibleNetworks = PaymentMethodMask.NONE;
             CardToken token = null;
 
             // Handle token-based payment
             if (request.hasTokenReference()) {
-                // Retrieve token and validate
-                Optional<CardToken> tokenOpt =
-                        cardTokenService.getToken(request.getTokenReference());
-                if (tokenOpt.isEmpty()) {
-                    throw new PaymentException(
-                            "Invalid token reference: " + request.getTokenReference());
-                }
-
-                token = tokenOpt.get();
-                if (!token.isActive()) {
+                // Retrieve the active token and its card details in one lookup
+                Optional<DetokenizedCard> detokenized =
+                        cardTokenService.detokenizeToken(request.getTokenReference());
+                if (detokenized.isEmpty()) {
+                    // Only on failure, look the token up again to tell why
+                    if (cardTokenService.getToken(request.getTokenReference()).isEmpty()) {
+                        throw new PaymentException(
+                                "Invalid token reference: " + request.getTokenReference());
+                    }
                     throw new PaymentException(
                             "Token is not active: " + request.getTokenReference());
                 }
 
-                // Get card details from token
-                Optional<CardDetails> cardDetailsOpt =
-                        cardTokenService.detokenize(request.getTokenReference());
-                if (cardDetailsOpt.isEmpty()) {
-                    throw new PaymentException(
-                            "Failed to detokenize card: " + request.getTokenReference());
-                }
-
-                cardDetails = cardDetailsOpt.get();
+                token = detokenized.get().getToken();
+                cardDetails = detokenized.get().getCardDetails();
 
                 // Use the payment methods from the token
-                availableNetworks.addAll(token.getPaymentMethods());
+                eligibleNetworks = token.getPaymentMethodMask();
 
                 log.info("Processing payment with token {}", request.getTokenReference());
             } else {
@@ -114,28 +119,24 @@ public class PaymentServiceImpl implements PaymentService {
                     token = existingTokens.get(0);
                     log.info("Found existing token {} for card", token.getTokenReference());
 
-                    // Add token networks to available networks
-                    availableNetworks.addAll(token.getPaymentMethods());
+                    // Add token networks to eligible networks
+                    eligibleNetworks |= token.getPaymentMethodMask();
                 }
 
-                // Look up BIN information to get available networks for the card
+                // Extract the BIN from the card number
                 String cardNumber = cardDetailsDto.getCardNumber();
                 String bin = cardNumber.length() >= 6 ? cardNumber.substring(0, 6) : cardNumber;
 
-                // Look up BIN information to get available networks for the card
-                List<CardBinInfo> binMatches = binLookupService.lookup(bin);
+                // Eligible networks for the BIN, including unaffiliated debit networks
+                int binNetworks = binLookupService.eligibleNetworks(bin);
 
-                if (binMatches.isEmpty()) {
+                if (binNetworks == PaymentMethodMask.NONE) {
                     // If no BIN matches found, fail the payment
                     log.warn("No BIN matches found for {}, rejecting payment", bin);
                     throw new PaymentException("Invalid card number: No BIN information found");
                 }
 
-                // Add card networks to available networks
-                binMatches.stream()
-                        .map(CardBinInfo::getPaymentMethod)
-                        .filter(Objects::nonNull)
-                        .forEach(availableNetworks::add);
+                eligibleNetworks |= binNetworks;
             }
 
             // Check for duplicate transaction
@@ -149,9 +150,62 @@ public class PaymentServiceImpl implements PaymentService {
             Payment payment = createPaymentFromRequest(request, merchantId, token);
             payment = paymentRepository.save(payment);
 
-            // Perform risk assessment
-            Transaction transaction = createTransactionFromRequest(payment, request, merchantId);
-            RiskAssessment riskAssessment = riskAssessmentService.assessRisk(transaction);
+            long cardFingerprint =
+                    request.hasTokenReference()
+                            ? cardFingerprint(token)
+                            : cardFingerprint(cardDetails);
+            // Kept with the payment, so that a later chargeback reaches the same risk entities
+            payment.setCardFingerprint(cardFingerprint);
+            payment.setCustomerIpAddress(request.getCustomerIpAddress());
+            payment.setCustomerDeviceId(request.getCustomerDeviceId());
+            Transaction transaction =
+                    createTransactionFromRequest(payment, request, merchantId, cardFingerprint);
+            RoutingContext routingContext =
+                    RoutingContext.builder()
+                            .merchantId(merchantId)
+                            .merchantReference(request.getMerchantReference())
+                            .cardFingerprint(cardFingerprint)
+                            .build();
+
+            // Risk assessment and routing are independent of each other, in concurrent mode they
+            // run side by side and routing is cancelled if the transaction is rejected. A stage
+            // the saturated executor could not start runs sequentially on this thread instead
+            int networks = eligibleNetworks;
+            Future<RoutingResult> routingFuture = null;
+            long stageDeadline = 0;
+            RiskAssessment riskAssessment;
+            if (authorizationStageExecutor.isConcurrent()) {
+                stageDeadline =
+                        System.nanoTime()
+                                + TimeUnit.MILLISECONDS.toNanos(
+                                        authorizationStageExecutor.getStageDeadlineMillis());
+                routingFuture =
+                        authorizationStageExecutor.fork(
+                                () ->
+                                        paymentRoutingService.findOptimalNetwork(
+                                                request.getAmount(),
+                                                request.getCurrency(),
+                                                networks,
+                                                routingContext));
+                Future<RiskAssessment> riskFuture =
+                        routingFuture != null
+                                ? authorizationStageExecutor.fork(
+                                        () -> riskAssessmentService.assessRisk(transaction))
+                                : null;
+                riskAssessment =
+                        riskFuture != null
+                                ? awaitStage(riskFuture, stageDeadline, payment, routingFuture)
+                                : riskAssessmentService.assessRisk(transaction);
+            } else {
+                riskAssessment = riskAssessmentService.assessRisk(transaction);
+            }
+
+            if (riskAssessment.isTimedOut()) {
+                log.warn(
+                        "Risk scoring for payment {} timed out, using fallback score {}",
+                        payment.getId(),
+                        riskAssessment.getRiskScore());
+            }
 
             // Update payment with risk assessment
             payment.setRiskScore(riskAssessment.getRiskScore());
@@ -159,6 +213,10 @@ public class PaymentServiceImpl implements PaymentService {
 
             // Reject high-risk transactions
             if (riskAssessment.getRiskLevel() == RiskLevel.CRITICAL) {
+                if (routingFuture != null) {
+                    routingFuture.cancel(true);
+                }
+                riskAssessmentService.recordOutcome(transaction, false);
                 payment.updateStatus(PaymentStatus.FAILED);
                 paymentRepository.save(payment);
                 throw new PaymentException("Transaction rejected due to high risk");
@@ -166,8 +224,13 @@ public class PaymentServiceImpl implements PaymentService {
 
             // Find optimal payment network based on cost
             RoutingResult routingResult =
-                    paymentRoutingService.findOptimalNetwork(
-                            request.getAmount(), request.getCurrency(), availableNetworks);
+                    routingFuture != null
+                            ? awaitStage(routingFuture, stageDeadline, payment)
+                            : paymentRoutingService.findOptimalNetwork(
+                                    request.getAmount(),
+                                    request.getCurrency(),
+                                    eligibleNetworks,
+                                    routingContext);
 
             if (!routingResult.hasValidOption()) {
                 payment.updateStatus(PaymentStatus.FAILED);
@@ -183,8 +246,14 @@ public class PaymentServiceImpl implements PaymentService {
                         .build();
             }
 
-            // Update payment with selected network and routing info
+            // Update payment with selected network and routing info. The card information is
+            // replaced rather than updated, a timed out risk task may still be reading it
             payment.setSelectedNetwork(routingResult.getSelectedPaymentMethod());
+            payment.setCardInfo(
+                    routedCardInfo(
+                            request,
+                            payment.getCardInfo(),
+                            routingResult.getSelectedPaymentMethod()));
             payment.setRoutingCost(routingResult.getEstimatedCost());
 
             // Set token reference if the routing result indicates to use token and we have a token
@@ -202,6 +271,7 @@ public class PaymentServiceImpl implements PaymentService {
 
             // Process the authorization with the card processor
             CardAuthorizationResult authResult;
+            long authorizationStart = System.nanoTime();
             try {
                 authResult =
                         cardProcessor.authorize(
@@ -211,11 +281,18 @@ public class PaymentServiceImpl implements PaymentService {
                                 routingResult.getSelectedPaymentMethod());
             } catch (Exception e) {
                 // Handle processor errors
+                paymentRoutingService.recordOutcome(
+                        routingResult, false, System.nanoTime() - authorizationStart);
                 payment.updateStatus(PaymentStatus.FAILED);
                 payment = paymentRepository.save(payment);
                 throw new PaymentException("Authorization failed: " + e.getMessage(), e);
             }
 
+            // Report the outcome so routing experiments can compare their arms
+            paymentRoutingService.recordOutcome(
+                    routingResult, authResult.isSuccess(), System.nanoTime() - authorizationStart);
+            riskAssessmentService.recordAuthorization(transaction, authResult.isSuccess());
+
             // Update payment with authorization result
             if (authResult.isSuccess()) {
                 payment.authorize(authResult.getAuthCode(), authResult.getRrn());
@@ -526,6 +603,42 @@ public class PaymentServiceImpl implements PaymentService {
         }
     }
 
+    @Override
+    public PaymentResponse chargeback(String paymentId, String merchantId) {
+        try {
+            Payment payment = getPayment(paymentId, merchantId);
+
+            if (payment.getStatus() != PaymentStatus.CAPTURED
+                    && payment.getStatus() != PaymentStatus.PARTIALLY_CAPTURED
+                    && payment.getStatus() != PaymentStatus.PARTIALLY_REFUNDED) {
+                throw new PaymentException("Only captured payments can be charged back");
+            }
+
+            payment.updateStatus(PaymentStatus.CHARGED_BACK);
+            paymentRepository.save(payment);
+
+            // Feeds the card's chargeback history, the known-bad devices and the cluster totals
+            riskAssessmentService.recordChargeback(createTransactionFromPayment(payment));
+            log.info("Payment {} charged back", payment.getId());
+
+            return PaymentResponse.success(
+                    payment.getId(),
+                    payment.getMerchantReference(),
+                    payment.getAmount().getValue(),
+                    payment.getAmount().getCurrency(),
+                    payment.getStatus(),
+                    payment.getAuthCode(),
+                    payment.getSelectedNetwork() != null
+                            ? payment.getSelectedNetwork().name()
+                            : null,
+                    payment.getRoutingCost(),
+                    payment.getRrn());
+        } catch (Exception e) {
+            log.error("Payment chargeback failed: {}", e.getMessage(), e);
+            return PaymentResponse.error(paymentId, null, e.getMessage());
+        }
+    }
+
     @Override
     public PaymentStatus getPaymentStatus(String paymentId, String merchantId) {
         Payment payment = getPayment(paymentId, merchantId);
@@ -546,28 +659,13 @@ public class PaymentServiceImpl implements PaymentService {
             String cardNumber = cardDetails.getCardNumber();
             String bin = cardNumber.length() >= 6 ? cardNumber.substring(0, 6) : cardNumber;
 
-            // Look up BIN information to get available networks for the card
-            List<CardBinInfo> binMatches = binLookupService.lookup(bin);
-
-            // Select the most appropriate BIN match
-            CardBinInfo selectedBinInfo =
-                    selectBestBinMatch(binMatches, bin, request.getAmount(), request.getCurrency());
-
-            return CardInfo.builder()
-                    .bin(bin)
-                    .lastFour(cardNumber.substring(Math.max(0, cardNumber.length() - 4)))
-                    .paymentMethod(selectedBinInfo.getPaymentMethod())
-                    .debit("DEBIT".equals(selectedBinInfo.getCardType()))
-                    .issuer(selectedBinInfo.getIssuer())
-                    .country(selectedBinInfo.getCountryCode())
-                    .expiryMonth(cardDetails.getExpiryMonth())
-                    .expiryYear(cardDetails.getExpiryYear())
-                    .cardholderName(cardDetails.getCardholderName())
-                    .prepaid(selectedBinInfo.isPrepaid())
-                    .corporate(selectedBinInfo.isCorporate())
-                    .commercial(selectedBinInfo.isCommercial())
-                    .productType(selectedBinInfo.getProductType())
-                    .build();
+            // Card attributes of the most specific BIN range; the network is settled by routing
+            CardBinInfo binInfo = binLookupService.lookup(bin, null);
+            if (binInfo == null) {
+                log.warn("No BIN matches found for {}, rejecting payment", bin);
+                throw new PaymentException("Invalid card number: No BIN information found");
+            }
+            return toCardInfo(cardDetails, bin, binInfo);
         } else if (request.hasTokenReference()) {
             // For token-based payments, create card info from token
             CardToken token = existingToken;
@@ -601,19 +699,41 @@ public class PaymentServiceImpl implements PaymentService {
 
     /** Creates a Transaction object from the payment request for risk assessment. */
     private Transaction createTransactionFromRequest(
-            Payment payment, CardPaymentRequest request, String merchantId) {
+            Payment payment, CardPaymentRequest request, String merchantId, long cardFingerprint) {
 
         // Build and return the transaction using the CardInfo from the payment
         return Transaction.builder()
                 .transactionReference(request.getMerchantReference())
                 .amount(request.getAmount())
                 .cardInfo(payment.getCardInfo())
+                .cardFingerprint(cardFingerprint)
                 .merchantId(merchantId)
                 .merchantName(
                         "Unknown") // This would come from merchant service in a real implementation
-                .merchantCategoryCode("default") // This would come from merchant service
+                .merchantCategoryCode(request.getMerchantCategoryCode())
                 .transactionTime(java.time.LocalDateTime.now())
                 .transactionChannel("API") // Could be determined from request headers
+                .userIpAddress(request.getCustomerIpAddress())
+                .userDeviceId(request.getCustomerDeviceId())
+                .build();
+    }
+
+    /**
+     * Rebuilds the risk entities of an authorized payment, for outcomes reported after the
+     * authorization.
+     *
+     * @param payment The payment
+     * @return The transaction with the payment's card, device and IP address
+     */
+    private static Transaction createTransactionFromPayment(Payment payment) {
+        return Transaction.builder()
+                .transactionReference(payment.getMerchantReference())
+                .amount(payment.getAmount().getValue())
+                .cardInfo(payment.getCardInfo())
+                .cardFingerprint(payment.getCardFingerprint())
+                .merchantId(payment.getMerchantId())
+                .userIpAddress(payment.getCustomerIpAddress())
+                .userDeviceId(payment.getCustomerDeviceId())
                 .build();
     }
 
@@ -636,61 +756,128 @@ public class PaymentServiceImpl implements PaymentService {
     }
 
     /**
-     * Selects the most appropriate BIN match from multiple possible matches using the payment
-     * routing service. This ensures consistent routing decisions throughout the payment flow.
+     * Gets the card information of a card payment for the network selected by routing, if the
+     * BIN has a range of that network other than the one the payment was created with.
      *
-     * @param binMatches List of potential BIN matches
-     * @param bin The BIN to match
-     * @param amount The transaction amount (optional)
-     * @param currency The transaction currency (optional)
-     * @return The selected CardBinInfo
+     * @param request The payment request
+     * @param cardInfo The card information the payment was created with
+     * @param selectedMethod The network selected by routing
+     * @return The card information for the selected network
      */
-    private CardBinInfo selectBestBinMatch(
-            List<CardBinInfo> binMatches, String bin, BigDecimal amount, String currency) {
-        if (binMatches.isEmpty()) {
-            // If no BIN matches found, fail the payment
-            log.warn("No BIN matches found for {}, rejecting payment", bin);
-            throw new PaymentException("Invalid card number: No BIN information found");
+    private CardInfo routedCardInfo(
+            CardPaymentRequest request, CardInfo cardInfo, PaymentMethod selectedMethod) {
+        if (!request.hasCardDetails()
+                || cardInfo == null
+                || selectedMethod == cardInfo.getPaymentMethod()) {
+            return cardInfo;
         }
-
-        // Convert to set of payment methods
-        Set<PaymentMethod> availableNetworks =
-                binMatches.stream()
-                        .map(CardBinInfo::getPaymentMethod)
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toSet());
-
-        if (availableNetworks.isEmpty()) {
-            // If no valid payment methods found, fail the payment
-            log.warn("No valid payment methods found for BIN {}", bin);
-            throw new PaymentException("Invalid card number: No valid payment methods found");
+        CardBinInfo binInfo = binLookupService.lookup(cardInfo.getBin(), selectedMethod);
+        if (binInfo == null || binInfo.getPaymentMethod() != selectedMethod) {
+            return cardInfo;
         }
+        return toCardInfo(request.getCardDetails(), cardInfo.getBin(), binInfo);
+    }
 
-        // Use default amount and currency if not provided
-        BigDecimal routingAmount = amount != null ? amount : BigDecimal.valueOf(100);
-        String routingCurrency = currency != null ? currency : "USD";
-
-        // Use payment routing service to find optimal network
-        RoutingResult routingResult =
-                paymentRoutingService.findOptimalNetwork(
-                        routingAmount, routingCurrency, availableNetworks);
+    private static CardInfo toCardInfo(
+            CardDetailsDto cardDetails, String bin, CardBinInfo binInfo) {
+        String cardNumber = cardDetails.getCardNumber();
+        return CardInfo.builder()
+                .bin(bin)
+                .lastFour(cardNumber.substring(Math.max(0, cardNumber.length() - 4)))
+                .paymentMethod(binInfo.getPaymentMethod())
+                .debit("DEBIT".equals(binInfo.getCardType()))
+                .issuer(binInfo.getIssuer())
+                .country(binInfo.getCountryCode())
+                .expiryMonth(cardDetails.getExpiryMonth())
+                .expiryYear(cardDetails.getExpiryYear())
+                .cardholderName(cardDetails.getCardholderName())
+                .prepaid(binInfo.isPrepaid())
+                .corporate(binInfo.isCorporate())
+                .commercial(binInfo.isCommercial())
+                .productType(binInfo.getProductType())
+                .build();
+    }
 
-        if (!routingResult.hasValidOption()) {
-            // If no valid routing options, fail the payment
-            log.warn("No valid routing options found for BIN {}", bin);
-            throw new PaymentException("Invalid card number: No valid routing options found");
+    /**
+     * Computes the fingerprint of the card number. Used as the key for routing experiments and
+     * risk history, including the risk feature store snapshot, so it is derived from the keyed
+     * PAN fingerprint and cannot be brute-forced back to the card number without the key. An
+     * unkeyed hash of the card number must never be persisted or exposed.
+     *
+     * @param cardDetails The card details
+     * @return The card fingerprint, or 0 if the card number is unknown
+     */
+    private long cardFingerprint(CardDetails cardDetails) {
+        if (cardDetails == null) {
+            return 0L;
         }
+        String panFingerprint = panFingerprintService.fingerprint(cardDetails.getCardNumber());
+        if (panFingerprint == null) {
+            return 0L;
+        }
+        return FastHash.hash64(panFingerprint, CARD_FINGERPRINT_SEED);
+    }
+
+    /**
+     * Computes the card fingerprint of a token payment. The card details of a detokenized token do
+     * not carry the real card number, so the key comes from the token's PAN fingerprint, which
+     * gives the same card fingerprint as a payment with the card details, or from the token
+     * reference for tokens provisioned without one.
+     *
+     * @param token The token used for the payment
+     * @return The card fingerprint
+     */
+    private long cardFingerprint(CardToken token) {
+        String key =
+                token.getPanFingerprint() != null
+                        ? token.getPanFingerprint()
+                        : token.getTokenReference();
+        return FastHash.hash64(key, CARD_FINGERPRINT_SEED);
+    }
 
-        // Find the BIN info that matches the selected payment method
-        PaymentMethod selectedMethod = routingResult.getSelectedPaymentMethod();
+    /**
+     * Waits for a concurrently running authorization stage. If the stage fails or does not complete
+     * before the deadline, the other pending stages are cancelled; on a missed deadline the payment
+     * is marked as failed.
+     *
+     * @param stage The stage to wait for
+     * @param deadlineNanos The {@link System#nanoTime()} deadline for all stages
+     * @param payment The payment being authorized
+     * @param pending Other stages to cancel if this one does not complete
+     * @return The stage result
+     */
+    private <T> T awaitStage(
+            Future<T> stage, long deadlineNanos, Payment payment, Future<?>... pending) {
+        try {
+            return stage.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            stage.cancel(true);
+            cancelStages(pending);
+            payment.updateStatus(PaymentStatus.FAILED);
+            paymentRepository.save(payment);
+            throw new PaymentException("Authorization did not complete within the deadline");
+        } catch (ExecutionException e) {
+            cancelStages(pending);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new PaymentException("Authorization stage failed: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stage.cancel(true);
+            cancelStages(pending);
+            throw new PaymentException("Authorization interrupted", e);
+        }
+    }
 
-        // Find the most specific BIN match for the selected payment method
-        return binMatches.stream()
-                .filter(binInfo -> selectedMethod.equals(binInfo.getPaymentMethod()))
-                .max(Comparator.comparingInt(b -> b.getBin() != null ? b.getBin().length() : 0))
-                .orElse(
-                        binMatches.get(
-                                0)); // Fallback to first match if no match for selected method
+    private static void cancelStages(Future<?>... stages) {
+        for (Future<?> stage : stages) {
+            stage.cancel(true);
+        }
     }
 
     private void validateCardDetails(CardDetailsDto cardDetails) {
@@ -5,11 +5,15 @@ import static org.junit.jupiter.api.Assertions.*;
 import com.example.payment.model.BinRange;
 import com.example.payment.model.CardBinInfo;
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class BinLookupServiceTest {
 
@@ -114,6 +118,36 @@ public class BinLookupServiceTest {
         assertTrue(results.isEmpty());
     }
 
+    @Test
+    void lookupForNetwork_WithOverlappingRanges_ShouldReturnRangeOfThatNetwork() {
+        // Act
+        CardBinInfo pulse = binLookupService.lookup("601127", PaymentMethod.PULSE);
+        CardBinInfo discover = binLookupService.lookup("601127", PaymentMethod.DISCOVER);
+
+        // Assert
+        assertEquals(PaymentMethod.PULSE, pulse.getPaymentMethod());
+        assertEquals("WELLS_FARGO", pulse.getIssuer());
+        assertEquals(PaymentMethod.DISCOVER, discover.getPaymentMethod());
+        assertEquals("601127", discover.getBin());
+    }
+
+    @Test
+    void lookupForNetwork_WithNetworkNotInRanges_ShouldReturnFirstMatch() {
+        // Act
+        CardBinInfo anyNetwork = binLookupService.lookup("601127", null);
+        CardBinInfo otherNetwork = binLookupService.lookup("601127", PaymentMethod.STAR);
+
+        // Assert
+        CardBinInfo firstMatch = binLookupService.lookup("601127").get(0);
+        assertEquals(firstMatch.getPaymentMethod(), anyNetwork.getPaymentMethod());
+        assertEquals(firstMatch.getIssuerName(), anyNetwork.getIssuerName());
+        assertEquals(anyNetwork.getIssuerName(), otherNetwork.getIssuerName());
+        CardBinInfo pattern = binLookupService.lookup("499999", null);
+        assertEquals(PaymentMethod.VISA, pattern.getPaymentMethod());
+        assertNull(binLookupService.lookup("123456", null));
+        assertNull(binLookupService.lookup(null, PaymentMethod.VISA));
+    }
+
     @Test
     void lookup_WithCustomBinRange_ShouldMatchCorrectly() {
         // Arrange
@@ -256,4 +290,71 @@ public class BinLookupServiceTest {
         assertEquals("UPDATED", updatedResults.get(0).getIssuer());
         assertEquals("UK", updatedResults.get(0).getCountryCode());
     }
+
+    @Test
+    void eligibleNetworks_WithDualNetworkDebitBin_ShouldReturnBothNetworks() {
+        // Act
+        int visaAccel = binLookupService.eligibleNetworks("453205");
+        int mastercardNyce = binLookupService.eligibleNetworks("52005012");
+        int discoverPulse = binLookupService.eligibleNetworks("601127");
+
+        // Assert
+        assertEquals(PaymentMethodMask.of(PaymentMethod.VISA, PaymentMethod.ACCEL), visaAccel);
+        assertEquals(
+                PaymentMethodMask.of(PaymentMethod.MASTERCARD, PaymentMethod.NYCE),
+                mastercardNyce);
+        assertEquals(
+                PaymentMethodMask.of(PaymentMethod.DISCOVER, PaymentMethod.PULSE), discoverPulse);
+    }
+
+    @Test
+    void eligibleNetworks_ShouldMatchNetworksFromLookup() {
+        // Arrange
+        String[] bins = {
+            "000000", "123456", "339999", "340000", "349999", "370001", "399999", "400000",
+            "453199", "453200", "453210", "453211", "453299", "499999", "500000", "509999",
+            "510000", "520049", "520050", "520099", "559999", "560000", "600000", "600100",
+            "600110", "600399", "601100", "601110", "601125", "601129", "601130", "699999",
+            "45320599", "5200501", "12345", "123456789", null
+        };
+
+        for (String bin : bins) {
+            // Act
+            Set<PaymentMethod> expected =
+                    binLookupService.lookup(bin).stream()
+                            .map(CardBinInfo::getPaymentMethod)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toSet());
+            int mask = binLookupService.eligibleNetworks(bin);
+
+            // Assert
+            assertEquals(expected, PaymentMethodMask.toSet(mask), "BIN " + bin);
+        }
+    }
+
+    @Test
+    void eligibleNetworks_AfterAddOrUpdateBinRange_ShouldReflectNewRange() {
+        // Arrange
+        BinRange starOverlap =
+                BinRange.builder()
+                        .startBin("453200")
+                        .endBin("453205")
+                        .paymentMethod(PaymentMethod.STAR)
+                        .cardType("DEBIT")
+                        .issuer("TEST_BANK")
+                        .issuerName("Test Bank (Star)")
+                        .countryCode("US")
+                        .build();
+
+        // Act
+        binLookupService.addOrUpdateBinRange(starOverlap);
+
+        // Assert
+        assertEquals(
+                PaymentMethodMask.of(PaymentMethod.VISA, PaymentMethod.ACCEL, PaymentMethod.STAR),
+                binLookupService.eligibleNetworks("453203"));
+        assertEquals(
+                PaymentMethodMask.of(PaymentMethod.VISA, PaymentMethod.ACCEL),
+                binLookupService.eligibleNetworks("453206"));
+    }
 }
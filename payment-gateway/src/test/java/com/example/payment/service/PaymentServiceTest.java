@@ -8,8 +8,10 @@ import static org.mockito.Mockito.*;
 import com.example.cardnetwork.emulator.CardAuthorizationResult;
 import com.example.cardnetwork.emulator.CardProcessor;
 import com.example.cardtoken.model.CardToken;
+import com.example.cardtoken.model.DetokenizedCard;
 import com.example.cardtoken.model.TokenStatus;
 import com.example.cardtoken.service.CardTokenService;
+import com.example.cardtoken.service.PanFingerprintService;
 import com.example.payment.api.dto.CardDetailsDto;
 import com.example.payment.api.dto.CardPaymentRequest;
 import com.example.payment.api.dto.PaymentResponse;
@@ -18,14 +20,31 @@ import com.example.payment.model.Amount;
 import com.example.payment.model.CardBinInfo;
 import com.example.payment.model.Payment;
 import com.example.payment.model.PaymentStatus;
+import com.example.payment.repository.InMemoryPaymentRepository;
 import com.example.payment.repository.PaymentRepository;
+import com.example.paymentrouting.model.RoutingContext;
 import com.example.paymentrouting.model.RoutingResult;
 import com.example.paymentrouting.service.PaymentRoutingService;
 import com.example.riskfraud.model.RiskAssessment;
 import com.example.riskfraud.model.RiskLevel;
+import com.example.riskfraud.model.Transaction;
+import com.example.riskfraud.service.CardFeatureStore;
+import com.example.riskfraud.service.DeviceReputationService;
+import com.example.riskfraud.service.EntityLinkService;
+import com.example.riskfraud.service.IpReputationService;
+import com.example.riskfraud.service.MerchantRiskProfileRegistry;
+import com.example.riskfraud.service.MerchantSketchService;
 import com.example.riskfraud.service.RiskAssessmentService;
+import com.example.riskfraud.service.RiskBatchExecutor;
+import com.example.riskfraud.service.RiskMaintenanceScheduler;
+import com.example.riskfraud.service.RiskModelScorer;
+import com.example.riskfraud.service.RiskRuleEngine;
+import com.example.riskfraud.service.RiskScoringDeadline;
+import com.example.riskfraud.service.ShadowRiskEvaluator;
+import com.example.riskfraud.service.VelocityService;
 import com.example.shared.model.CardDetails;
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -53,6 +72,10 @@ public class PaymentServiceTest {
 
     @Mock private CardTokenService cardTokenService;
 
+    @Mock private PanFingerprintService panFingerprintService;
+
+    @Mock private AuthorizationStageExecutor authorizationStageExecutor;
+
     @InjectMocks private PaymentServiceImpl paymentService;
 
     private CardPaymentRequest cardPaymentRequest;
@@ -64,7 +87,7 @@ public class PaymentServiceTest {
     private String tokenReference;
     private String paymentId;
     private String transactionId;
-    private List<CardBinInfo> binMatches;
+    private CardBinInfo binInfo;
     private RoutingResult routingResult;
     private CardAuthorizationResult authorizationResult;
     private RiskAssessment riskAssessment;
@@ -123,8 +146,8 @@ public class PaymentServiceTest {
                         .expiresAt(LocalDateTime.now().plusYears(3))
                         .build();
 
-        // Set up bin matches
-        CardBinInfo binInfo =
+        // Set up bin info
+        binInfo =
                 CardBinInfo.builder()
                         .bin("450012")
                         .paymentMethod(PaymentMethod.VISA)
@@ -133,7 +156,6 @@ public class PaymentServiceTest {
                         .issuerName("Visa")
                         .countryCode("US")
                         .build();
-        binMatches = Collections.singletonList(binInfo);
 
         // Set up routing result
         routingResult =
@@ -181,13 +203,16 @@ public class PaymentServiceTest {
                         cardPaymentRequest.getMerchantReference(), merchantId))
                 .thenReturn(false);
 
-        when(binLookupService.lookup(anyString())).thenReturn(binMatches);
+        when(binLookupService.lookup(anyString(), any())).thenReturn(binInfo);
+        when(binLookupService.eligibleNetworks(anyString()))
+                .thenReturn(PaymentMethodMask.of(PaymentMethod.VISA));
 
         when(paymentRepository.save(any(Payment.class))).thenReturn(payment);
 
         when(riskAssessmentService.assessRisk(any())).thenReturn(riskAssessment);
 
-        when(paymentRoutingService.findOptimalNetwork(any(BigDecimal.class), anyString(), anySet()))
+        when(paymentRoutingService.findOptimalNetwork(
+                        any(BigDecimal.class), anyString(), anyInt(), any(RoutingContext.class)))
                 .thenReturn(routingResult);
 
         when(cardProcessor.authorize(
@@ -227,9 +252,8 @@ public class PaymentServiceTest {
         // Arrange
         // Need to setup binLookupService or provide token to ensure we get past initial validation
         // Using token-based approach since it has less dependencies
-        when(cardTokenService.getToken(anyString())).thenReturn(Optional.of(cardToken));
-
-        when(cardTokenService.detokenize(anyString())).thenReturn(Optional.of(cardDetails));
+        when(cardTokenService.detokenizeToken(anyString()))
+                .thenReturn(Optional.of(detokenizedCard()));
 
         when(paymentRepository.existsByMerchantReferenceAndMerchantId(anyString(), anyString()))
                 .thenReturn(true); // This should trigger the duplicate reference error
@@ -262,7 +286,7 @@ public class PaymentServiceTest {
     @Test
     void authorize_WithInvalidBin_ShouldReturnErrorResponse() {
         // Arrange
-        when(binLookupService.lookup(anyString())).thenReturn(Collections.emptyList());
+        when(binLookupService.eligibleNetworks(anyString())).thenReturn(PaymentMethodMask.NONE);
 
         // Act
         PaymentResponse response = paymentService.authorize(cardPaymentRequest, merchantId);
@@ -273,8 +297,8 @@ public class PaymentServiceTest {
         assertNotNull(response.getStatusMessage());
 
         // Verify that BIN lookup is called, but merchant reference check is never reached
-        // due to the exception thrown when bin matches are empty
-        verify(binLookupService, atLeastOnce()).lookup(anyString());
+        // due to the exception thrown when the BIN has no eligible networks
+        verify(binLookupService, atLeastOnce()).eligibleNetworks(anyString());
         verify(paymentRepository, never())
                 .existsByMerchantReferenceAndMerchantId(anyString(), anyString());
     }
@@ -283,9 +307,8 @@ public class PaymentServiceTest {
     void authorize_WithHighRisk_ShouldReturnErrorResponse() {
         // Arrange
         // Setup token-based payment to bypass card validation
-        when(cardTokenService.getToken(anyString())).thenReturn(Optional.of(cardToken));
-
-        when(cardTokenService.detokenize(anyString())).thenReturn(Optional.of(cardDetails));
+        when(cardTokenService.detokenizeToken(anyString()))
+                .thenReturn(Optional.of(detokenizedCard()));
 
         // Allow the payment to be created
         when(paymentRepository.existsByMerchantReferenceAndMerchantId(anyString(), anyString()))
@@ -325,13 +348,119 @@ public class PaymentServiceTest {
         assertTrue(response.getStatusMessage().toLowerCase().contains("risk"));
 
         // Verify risk assessment was performed
-        verify(cardTokenService).getToken(anyString());
-        verify(cardTokenService).detokenize(anyString());
+        verify(cardTokenService).detokenizeToken(anyString());
+        verify(cardTokenService, never()).getToken(anyString());
         verify(paymentRepository).existsByMerchantReferenceAndMerchantId(anyString(), anyString());
         verify(paymentRepository, atLeastOnce()).save(any(Payment.class));
         verify(riskAssessmentService).assessRisk(any());
     }
 
+    @Test
+    void authorize_ConcurrentWithHighRisk_ShouldNotCallProcessor() {
+        // Arrange
+        AuthorizationStageExecutor stageExecutor = new AuthorizationStageExecutor(true, 2000, 4);
+        PaymentServiceImpl concurrentService = concurrentPaymentService(stageExecutor);
+
+        when(cardTokenService.detokenizeToken(tokenReference))
+                .thenReturn(Optional.of(detokenizedCard()));
+        when(paymentRepository.existsByMerchantReferenceAndMerchantId(anyString(), anyString()))
+                .thenReturn(false);
+        when(paymentRepository.save(any(Payment.class))).thenReturn(payment);
+        when(riskAssessmentService.assessRisk(any()))
+                .thenReturn(
+                        RiskAssessment.builder()
+                                .riskScore(0.9)
+                                .riskLevel(RiskLevel.CRITICAL)
+                                .build());
+
+        try {
+            // Act
+            PaymentResponse response =
+                    concurrentService.authorize(tokenPaymentRequest, merchantId);
+
+            // Assert
+            assertEquals(PaymentStatus.FAILED, response.getStatus());
+            assertTrue(response.getStatusMessage().toLowerCase().contains("risk"));
+            verify(riskAssessmentService).recordOutcome(any(), eq(false));
+            verify(cardProcessor, never()).authorize(any(), any(), any(), any());
+        } finally {
+            stageExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void authorize_ConcurrentWithSlowRiskAssessment_ShouldFailAtDeadline() {
+        // Arrange
+        AuthorizationStageExecutor stageExecutor = new AuthorizationStageExecutor(true, 100, 4);
+        PaymentServiceImpl concurrentService = concurrentPaymentService(stageExecutor);
+
+        when(cardTokenService.detokenizeToken(tokenReference))
+                .thenReturn(Optional.of(detokenizedCard()));
+        when(paymentRepository.existsByMerchantReferenceAndMerchantId(anyString(), anyString()))
+                .thenReturn(false);
+        when(paymentRepository.save(any(Payment.class))).thenReturn(payment);
+        when(riskAssessmentService.assessRisk(any()))
+                .thenAnswer(
+                        invocation -> {
+                            Thread.sleep(5000);
+                            return RiskAssessment.builder()
+                                    .riskScore(0.1)
+                                    .riskLevel(RiskLevel.LOW)
+                                    .build();
+                        });
+
+        try {
+            // Act
+            long start = System.nanoTime();
+            PaymentResponse response =
+                    concurrentService.authorize(tokenPaymentRequest, merchantId);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // Assert
+            assertEquals(PaymentStatus.FAILED, response.getStatus());
+            assertTrue(response.getStatusMessage().contains("deadline"));
+            assertTrue(elapsedMillis < 5000);
+            assertEquals(PaymentStatus.FAILED, payment.getStatus());
+            verify(cardProcessor, never()).authorize(any(), any(), any(), any());
+        } finally {
+            stageExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void authorize_ConcurrentWithSaturatedExecutor_ShouldRunStagesSequentially() {
+        // Arrange
+        when(authorizationStageExecutor.isConcurrent()).thenReturn(true);
+        when(authorizationStageExecutor.getStageDeadlineMillis()).thenReturn(2000L);
+        when(authorizationStageExecutor.fork(any())).thenReturn(null);
+        when(cardTokenService.detokenizeToken(tokenReference))
+                .thenReturn(Optional.of(detokenizedCard()));
+        when(paymentRepository.existsByMerchantReferenceAndMerchantId(anyString(), anyString()))
+                .thenReturn(false);
+        when(paymentRepository.save(any(Payment.class))).thenReturn(payment);
+        when(riskAssessmentService.assessRisk(any())).thenReturn(riskAssessment);
+        when(paymentRoutingService.findOptimalNetwork(
+                        any(BigDecimal.class), anyString(), anyInt(), any(RoutingContext.class)))
+                .thenReturn(routingResult);
+        when(cardProcessor.authorize(
+                        any(CardDetails.class),
+                        any(BigDecimal.class),
+                        anyString(),
+                        any(PaymentMethod.class)))
+                .thenReturn(authorizationResult);
+
+        // Act
+        PaymentResponse response = paymentService.authorize(tokenPaymentRequest, merchantId);
+
+        // Assert
+        assertEquals(PaymentStatus.AUTHORIZED, response.getStatus());
+        verify(authorizationStageExecutor).fork(any());
+        verify(riskAssessmentService).assessRisk(any());
+        verify(paymentRoutingService)
+                .findOptimalNetwork(
+                        any(BigDecimal.class), anyString(), anyInt(), any(RoutingContext.class));
+    }
+
     @Test
     void authorize_WithValidToken_ShouldReturnSuccessResponse() {
         // Arrange
@@ -339,9 +468,8 @@ public class PaymentServiceTest {
                         tokenPaymentRequest.getMerchantReference(), merchantId))
                 .thenReturn(false);
 
-        when(cardTokenService.getToken(tokenReference)).thenReturn(Optional.of(cardToken));
-
-        when(cardTokenService.detokenize(tokenReference)).thenReturn(Optional.of(cardDetails));
+        when(cardTokenService.detokenizeToken(tokenReference))
+                .thenReturn(Optional.of(detokenizedCard()));
 
         payment.setMerchantReference(tokenPaymentRequest.getMerchantReference());
         payment.getAmount().setValue(tokenPaymentRequest.getAmount());
@@ -351,7 +479,8 @@ public class PaymentServiceTest {
 
         when(riskAssessmentService.assessRisk(any())).thenReturn(riskAssessment);
 
-        when(paymentRoutingService.findOptimalNetwork(any(BigDecimal.class), anyString(), anySet()))
+        when(paymentRoutingService.findOptimalNetwork(
+                        any(BigDecimal.class), anyString(), anyInt(), any(RoutingContext.class)))
                 .thenReturn(routingResult);
 
         when(cardProcessor.authorize(
@@ -376,7 +505,7 @@ public class PaymentServiceTest {
         verify(paymentRepository)
                 .existsByMerchantReferenceAndMerchantId(
                         eq(tokenPaymentRequest.getMerchantReference()), eq(merchantId));
-        verify(cardTokenService).getToken(eq(tokenReference));
+        verify(cardTokenService).detokenizeToken(eq(tokenReference));
         verify(cardProcessor)
                 .authorize(
                         any(CardDetails.class),
@@ -418,7 +547,7 @@ public class PaymentServiceTest {
                 .existsByMerchantReferenceAndMerchantId(anyString(), anyString());
 
         // These shouldn't be called after token validation fails
-        verify(cardTokenService, never()).detokenize(anyString());
+        verify(cardTokenService).detokenizeToken(anyString());
         verify(paymentRepository, never()).save(any(Payment.class));
     }
 
@@ -459,7 +588,7 @@ public class PaymentServiceTest {
                 .existsByMerchantReferenceAndMerchantId(anyString(), anyString());
 
         // These shouldn't be called after token validation fails
-        verify(cardTokenService, never()).detokenize(anyString());
+        verify(cardTokenService).detokenizeToken(anyString());
         verify(paymentRepository, never()).save(any(Payment.class));
     }
 
@@ -470,7 +599,9 @@ public class PaymentServiceTest {
                         cardPaymentRequest.getMerchantReference(), merchantId))
                 .thenReturn(false);
 
-        when(binLookupService.lookup(anyString())).thenReturn(binMatches);
+        when(binLookupService.lookup(anyString(), any())).thenReturn(binInfo);
+        when(binLookupService.eligibleNetworks(anyString()))
+                .thenReturn(PaymentMethodMask.of(PaymentMethod.VISA));
 
         Payment savedPayment =
                 Payment.builder()
@@ -489,7 +620,8 @@ public class PaymentServiceTest {
 
         when(riskAssessmentService.assessRisk(any())).thenReturn(riskAssessment);
 
-        when(paymentRoutingService.findOptimalNetwork(any(BigDecimal.class), anyString(), anySet()))
+        when(paymentRoutingService.findOptimalNetwork(
+                        any(BigDecimal.class), anyString(), anyInt(), any(RoutingContext.class)))
                 .thenReturn(routingResult);
 
         CardAuthorizationResult failedAuth = CardAuthorizationResult.failed("Declined by issuer");
@@ -1105,6 +1237,127 @@ public class PaymentServiceTest {
         verify(paymentRepository, never()).save(any(Payment.class));
     }
 
+    @Test
+    void chargeback_WithNonCapturedPayment_ShouldReturnErrorResponse() {
+        // Arrange
+        when(paymentRepository.findByIdAndMerchantId(paymentId, merchantId))
+                .thenReturn(Optional.of(payment));
+
+        // Act
+        PaymentResponse response = paymentService.chargeback(paymentId, merchantId);
+
+        // Assert
+        assertNotNull(response);
+        assertEquals(PaymentStatus.FAILED, response.getStatus());
+        assertTrue(
+                response.getStatusMessage()
+                        .contains("Only captured payments can be charged back"));
+
+        // Verify interactions
+        verify(paymentRepository, never()).save(any(Payment.class));
+        verify(riskAssessmentService, never()).recordChargeback(any());
+    }
+
+    @Test
+    void chargeback_AfterCapture_ShouldReachRiskScoring() throws Exception {
+        // Arrange
+        RiskMaintenanceScheduler scheduler = new RiskMaintenanceScheduler();
+        CardFeatureStore cardFeatureStore = new CardFeatureStore(64, "", 0, 100);
+        DeviceReputationService deviceReputationService =
+                new DeviceReputationService(10_000, 0.01, 2, 1, "", 0);
+        EntityLinkService entityLinkService = new EntityLinkService(1024, 3, 24, 60);
+        RiskAssessmentService riskService =
+                new RiskAssessmentService(
+                        new VelocityService(64),
+                        cardFeatureStore,
+                        new IpReputationService("", 0, scheduler),
+                        deviceReputationService,
+                        new RiskRuleEngine("", 0, scheduler),
+                        new RiskModelScorer("", 0, 0.5, scheduler),
+                        new ShadowRiskEvaluator("", "", 16, 0),
+                        new RiskBatchExecutor(1, 10, 100),
+                        new MerchantRiskProfileRegistry("", 0, scheduler),
+                        new RiskScoringDeadline(
+                                1000,
+                                4,
+                                new double[] {100, 1000, 5000, 10000},
+                                new double[] {0.1, 0.15, 0.2, 0.3, 0.35},
+                                0.2),
+                        new MerchantSketchService(64, 10, 0.02, 100),
+                        entityLinkService);
+        PaymentRepository repository = new InMemoryPaymentRepository();
+        PaymentServiceImpl service =
+                new PaymentServiceImpl(
+                        repository,
+                        cardProcessor,
+                        binLookupService,
+                        paymentRoutingService,
+                        riskService,
+                        cardTokenService,
+                        panFingerprintService,
+                        authorizationStageExecutor);
+
+        cardPaymentRequest.setCustomerIpAddress("203.0.113.7");
+        cardPaymentRequest.setCustomerDeviceId("device-1");
+
+        when(binLookupService.lookup(anyString(), any())).thenReturn(binInfo);
+        when(binLookupService.eligibleNetworks(anyString()))
+                .thenReturn(PaymentMethodMask.of(PaymentMethod.VISA));
+        when(panFingerprintService.fingerprint(anyString())).thenReturn("pan-fingerprint");
+        when(paymentRoutingService.findOptimalNetwork(
+                        any(BigDecimal.class), anyString(), anyInt(), any(RoutingContext.class)))
+                .thenReturn(routingResult);
+        when(cardProcessor.authorize(
+                        any(CardDetails.class),
+                        any(BigDecimal.class),
+                        anyString(),
+                        any(PaymentMethod.class)))
+                .thenReturn(authorizationResult);
+        when(cardProcessor.capture(anyString(), any(BigDecimal.class), anyString()))
+                .thenReturn(true);
+
+        try {
+            PaymentResponse authorization = service.authorize(cardPaymentRequest, merchantId);
+            assertEquals(PaymentStatus.AUTHORIZED, authorization.getStatus());
+            String id = authorization.getPaymentId();
+            assertEquals(PaymentStatus.CAPTURED, service.capture(id, null, merchantId).getStatus());
+
+            // Act
+            PaymentResponse response = service.chargeback(id, merchantId);
+
+            // Assert
+            assertEquals(PaymentStatus.CHARGED_BACK, response.getStatus());
+            assertEquals(PaymentStatus.CHARGED_BACK, service.getPaymentStatus(id, merchantId));
+
+            Payment chargedBack = repository.findById(id).orElseThrow();
+            long cardFingerprint = chargedBack.getCardFingerprint();
+            assertNotEquals(0L, cardFingerprint);
+
+            // The card feature store applies updates asynchronously
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cardFeatureStore.getFeatures(cardFingerprint).getChargebacks() == 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, cardFeatureStore.getFeatures(cardFingerprint).getChargebacks());
+            assertTrue(deviceReputationService.isKnownBadDevice("device-1"));
+
+            Transaction transaction =
+                    Transaction.builder()
+                            .cardFingerprint(cardFingerprint)
+                            .merchantId(merchantId)
+                            .userIpAddress("203.0.113.7")
+                            .userDeviceId("device-1")
+                            .build();
+            assertEquals(1, entityLinkService.getCluster(transaction).getChargebacks());
+        } finally {
+            cardFeatureStore.stop();
+            deviceReputationService.stop();
+            entityLinkService.stop();
+            scheduler.stop();
+        }
+    }
+
     @Test
     void getPaymentStatus_WithValidPaymentId_ShouldReturnCorrectStatus() {
         // Arrange
@@ -1138,4 +1391,20 @@ public class PaymentServiceTest {
         // Verify interactions
         verify(paymentRepository).findByIdAndMerchantId(invalidPaymentId, merchantId);
     }
+
+    private DetokenizedCard detokenizedCard() {
+        return DetokenizedCard.builder().token(cardToken).cardDetails(cardDetails).build();
+    }
+
+    private PaymentServiceImpl concurrentPaymentService(AuthorizationStageExecutor stageExecutor) {
+        return new PaymentServiceImpl(
+                paymentRepository,
+                cardProcessor,
+                binLookupService,
+                paymentRoutingService,
+                riskAssessmentService,
+                cardTokenService,
+                panFingerprintService,
+                stageExecutor);
+    }
 }
@@ -1,15 +1,30 @@
 package com.example.paymentrouting.config;
 
+import com.example.paymentrouting.model.BucketingKey;
 import com.example.paymentrouting.service.PaymentRoutingService;
+import com.example.paymentrouting.service.impl.ExperimentRoutingServiceImpl;
+import com.example.paymentrouting.service.impl.LowestFeeRoutingServiceImpl;
 import com.example.paymentrouting.service.impl.PaymentRoutingServiceImpl;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /** Configuration class for payment routing components. */
 @Configuration
 public class PaymentRoutingConfig {
 
+    /** Arm name of the default expected-cost routing strategy. */
+    public static final String CONTROL_ARM = "control";
+
+    /** Arm name of the lowest-nominal-fee routing strategy. */
+    public static final String LOWEST_FEE_ARM = "lowest-fee";
+
     /**
      * Creates and configures the payment routing service.
      *
@@ -19,4 +34,68 @@ public class PaymentRoutingConfig {
     public PaymentRoutingService paymentRoutingService() {
         return new PaymentRoutingServiceImpl();
     }
+
+    /**
+     * Creates the lowest-fee routing strategy used as an experiment candidate.
+     *
+     * @return The lowest-fee routing strategy
+     */
+    @Bean
+    public PaymentRoutingService lowestFeeRoutingService() {
+        return new LowestFeeRoutingServiceImpl();
+    }
+
+    /**
+     * Creates the experiment-aware routing service that callers use by default. It delegates to
+     * the strategy of the arm each transaction is bucketed into.
+     *
+     * @param control The default routing strategy
+     * @param lowestFee The lowest-fee routing strategy
+     * @param enabled Whether traffic is split across arms
+     * @param experimentName The experiment name, which also seeds the bucketing hash
+     * @param bucketingKey The transaction attribute used for bucketing
+     * @param allocation The traffic allocation, e.g. "control:90,lowest-fee:10"
+     * @return The experiment routing service
+     */
+    @Bean
+    @Primary
+    public ExperimentRoutingServiceImpl experimentRoutingService(
+            @Qualifier("paymentRoutingService") PaymentRoutingService control,
+            @Qualifier("lowestFeeRoutingService") PaymentRoutingService lowestFee,
+            @Value("${payment-routing.experiment.enabled:false}") boolean enabled,
+            @Value("${payment-routing.experiment.name:routing-strategy}") String experimentName,
+            @Value("${payment-routing.experiment.bucketing-key:MERCHANT_REFERENCE}")
+                    BucketingKey bucketingKey,
+            @Value("${payment-routing.experiment.allocation:control:100}") String allocation) {
+        Map<String, PaymentRoutingService> strategies = new LinkedHashMap<>();
+        strategies.put(CONTROL_ARM, control);
+        strategies.put(LOWEST_FEE_ARM, lowestFee);
+
+        return new ExperimentRoutingServiceImpl(
+                experimentName,
+                bucketingKey,
+                enabled,
+                CONTROL_ARM,
+                strategies,
+                parseAllocation(allocation));
+    }
+
+    /**
+     * Parses an allocation string of the form "arm:percentage,arm:percentage".
+     *
+     * @param allocation The allocation string
+     * @return The percentage per arm, in declaration order
+     */
+    static Map<String, Integer> parseAllocation(String allocation) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String part : allocation.split(",")) {
+            String[] armAndPercentage = part.trim().split(":");
+            if (armAndPercentage.length != 2) {
+                throw new IllegalArgumentException("Invalid experiment allocation: " + part);
+            }
+            result.put(
+                    armAndPercentage[0].trim(), Integer.parseInt(armAndPercentage[1].trim()));
+        }
+        return result;
+    }
 }
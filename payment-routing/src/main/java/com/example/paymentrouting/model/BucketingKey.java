@@ -0,0 +1,10 @@
+package com.example.paymentrouting.model;
+
+/** The attribute of a transaction used to assign it to a routing experiment arm. */
+public enum BucketingKey {
+    /** Bucket by the merchant's payment reference; each payment is assigned independently. */
+    MERCHANT_REFERENCE,
+
+    /** Bucket by card fingerprint; all payments of a card see the same strategy. */
+    CARD_FINGERPRINT
+}
@@ -0,0 +1,45 @@
+package com.example.paymentrouting.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/** A point-in-time snapshot of the results collected for one routing experiment arm. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExperimentArmStatistics {
+    /** The name of the arm (e.g. "control"). */
+    private String arm;
+
+    /** The share of traffic allocated to this arm, in percent. */
+    private int allocationPercentage;
+
+    /** The number of routing decisions made by this arm. */
+    private long decisions;
+
+    /** The number of authorization outcomes reported for this arm. */
+    private long outcomes;
+
+    /** The number of approved authorizations. */
+    private long approvals;
+
+    /** Approvals divided by outcomes (0.0 when no outcomes were reported). */
+    private double approvalRate;
+
+    /** The sum of the estimated routing costs of all decisions. */
+    private BigDecimal totalEstimatedCost;
+
+    /** The average estimated routing cost per decision. */
+    private BigDecimal averageEstimatedCost;
+
+    /** The average authorization latency in milliseconds. */
+    private double averageLatencyMillis;
+
+    /** The highest authorization latency observed, in milliseconds. */
+    private double maxLatencyMillis;
+}
@@ -0,0 +1,219 @@
+package com.example.paymentrouting.model;
+
+import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable index from BIN to the set of networks a card can be routed to, encoded as a {@link
+ * PaymentMethodMask}. Debit BINs that are enabled on both a signature network and an unaffiliated
+ * PIN network (e.g. Visa and Accel) resolve to a mask containing both, so a single lookup gives the
+ * full eligible set for regulated dual-network routing.
+ *
+ * <p>BIN ranges are normalized to 8 digits and flattened into sorted, disjoint intervals, each
+ * carrying the union of the networks of all ranges covering it. A lookup is a binary search over a
+ * primitive array and does not allocate.
+ *
+ * <p>Fallback ranges (e.g. IIN prefix patterns) only apply to intervals not covered by any regular
+ * range. Instances are built once per BIN table version and replaced as a whole on change.
+ */
+public final class NetworkEligibilityIndex {
+
+    /** An index with no BIN ranges; every lookup returns {@link PaymentMethodMask#NONE}. */
+    public static final NetworkEligibilityIndex EMPTY =
+            new NetworkEligibilityIndex(new int[0], new int[0]);
+
+    private static final int MIN_BIN_LENGTH = 6;
+    private static final int MAX_BIN_LENGTH = 8;
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000};
+
+    // starts[i] is the first 8-digit BIN of interval i, which extends to starts[i + 1] - 1
+    private final int[] starts;
+    private final int[] masks;
+
+    private NetworkEligibilityIndex(int[] starts, int[] masks) {
+        this.starts = starts;
+        this.masks = masks;
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @return A new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the networks a BIN is eligible for.
+     *
+     * @param bin The first 6-8 digits of the card number
+     * @return The mask of eligible networks, or {@link PaymentMethodMask#NONE} if the BIN is
+     *     invalid or unknown
+     */
+    public int eligibleNetworks(CharSequence bin) {
+        int key = normalize(bin, 0);
+        if (key < 0) {
+            return PaymentMethodMask.NONE;
+        }
+
+        int index = Arrays.binarySearch(starts, key);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index < 0 ? PaymentMethodMask.NONE : masks[index];
+    }
+
+    /**
+     * Gets the number of disjoint intervals in the index.
+     *
+     * @return The number of intervals
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Normalizes a 6-8 digit BIN to 8 digits by padding it with a digit on the right.
+     *
+     * @param bin The BIN
+     * @param padDigit The digit to pad with (0 for range starts and lookups, 9 for range ends)
+     * @return The normalized BIN, or -1 if the BIN is not 6-8 digits
+     */
+    private static int normalize(CharSequence bin, int padDigit) {
+        if (bin == null || bin.length() < MIN_BIN_LENGTH || bin.length() > MAX_BIN_LENGTH) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = 0; i < bin.length(); i++) {
+            int digit = bin.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+
+        int padding = MAX_BIN_LENGTH - bin.length();
+        int scale = POWERS_OF_TEN[padding];
+        return value * scale + (padDigit == 9 ? scale - 1 : 0);
+    }
+
+    /** Builder collecting BIN ranges before they are flattened into an index. */
+    public static final class Builder {
+
+        // Each entry is {start, endExclusive, bit}
+        private final List<int[]> ranges = new ArrayList<>();
+        private final List<int[]> fallbackRanges = new ArrayList<>();
+
+        private Builder() {}
+
+        /**
+         * Adds a BIN range. Overlapping ranges contribute all of their networks.
+         *
+         * @param startBin The first BIN of the range (6-8 digits)
+         * @param endBin The last BIN of the range (6-8 digits)
+         * @param paymentMethod The network the range is enabled on
+         * @return This builder
+         */
+        public Builder addRange(String startBin, String endBin, PaymentMethod paymentMethod) {
+            ranges.add(toRange(startBin, endBin, paymentMethod));
+            return this;
+        }
+
+        /**
+         * Adds a BIN range that only applies to BINs not covered by any range added with {@link
+         * #addRange}.
+         *
+         * @param startBin The first BIN of the range (6-8 digits)
+         * @param endBin The last BIN of the range (6-8 digits)
+         * @param paymentMethod The network the range is enabled on
+         * @return This builder
+         */
+        public Builder addFallbackRange(
+                String startBin, String endBin, PaymentMethod paymentMethod) {
+            fallbackRanges.add(toRange(startBin, endBin, paymentMethod));
+            return this;
+        }
+
+        /**
+         * Flattens the collected ranges into an index.
+         *
+         * @return The index
+         */
+        public NetworkEligibilityIndex build() {
+            int[] boundaries = new int[(ranges.size() + fallbackRanges.size()) * 2];
+            int count = 0;
+            for (List<int[]> list : List.of(ranges, fallbackRanges)) {
+                for (int[] range : list) {
+                    boundaries[count++] = range[0];
+                    boundaries[count++] = range[1];
+                }
+            }
+            Arrays.sort(boundaries, 0, count);
+
+            int[] starts = new int[count];
+            int[] masks = new int[count];
+            int size = 0;
+            int previous = -1;
+            for (int i = 0; i < count; i++) {
+                int start = boundaries[i];
+                if (start == previous) {
+                    continue;
+                }
+                previous = start;
+
+                int mask = maskAt(ranges, start);
+                if (mask == PaymentMethodMask.NONE) {
+                    mask = maskAt(fallbackRanges, start);
+                }
+
+                // Merge adjacent intervals with the same networks
+                if (size > 0 && masks[size - 1] == mask) {
+                    continue;
+                }
+                if (size == 0 && mask == PaymentMethodMask.NONE) {
+                    continue;
+                }
+                starts[size] = start;
+                masks[size] = mask;
+                size++;
+            }
+
+            return new NetworkEligibilityIndex(
+                    Arrays.copyOf(starts, size), Arrays.copyOf(masks, size));
+        }
+
+        private static int maskAt(List<int[]> ranges, int bin) {
+            int mask = PaymentMethodMask.NONE;
+            for (int[] range : ranges) {
+                if (bin >= range[0] && bin < range[1]) {
+                    mask |= range[2];
+                }
+            }
+            return mask;
+        }
+
+        private static int[] toRange(String startBin, String endBin, PaymentMethod paymentMethod) {
+            if (paymentMethod == null) {
+                throw new IllegalArgumentException("Payment method cannot be null");
+            }
+
+            int start = normalize(startBin, 0);
+            int end = normalize(endBin, 9);
+            if (start < 0 || end < 0) {
+                throw new IllegalArgumentException(
+                        "BIN range must be 6-8 digits: " + startBin + "-" + endBin);
+            }
+            if (start > end) {
+                throw new IllegalArgumentException(
+                        "BIN range start must not be after end: " + startBin + "-" + endBin);
+            }
+            return new int[] {start, end + 1, PaymentMethodMask.bit(paymentMethod)};
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.paymentrouting.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Describes the transaction being routed beyond amount and currency. Used for deterministic
+ * experiment bucketing and other routing decisions that depend on who is paying.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoutingContext {
+    /** The merchant the payment belongs to. */
+    private String merchantId;
+
+    /** The merchant's reference for the payment. */
+    private String merchantReference;
+
+    /** A stable 64-bit fingerprint of the card (0 when unknown). */
+    private long cardFingerprint;
+}
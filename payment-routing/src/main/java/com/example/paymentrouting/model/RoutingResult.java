@@ -34,6 +34,9 @@ public class RoutingResult {
     /** All available routing options with their estimated costs. */
     private Map<PaymentMethod, BigDecimal> allOptions;
 
+    /** The routing experiment arm that produced this result, or null outside of experiments. */
+    private String experimentArm;
+
     /**
      * Creates a routing result indicating no valid routing options were found.
      *
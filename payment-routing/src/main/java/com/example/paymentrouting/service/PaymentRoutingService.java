@@ -1,7 +1,9 @@
 package com.example.paymentrouting.service;
 
+import com.example.paymentrouting.model.RoutingContext;
 import com.example.paymentrouting.model.RoutingResult;
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
 
 import java.math.BigDecimal;
 import java.util.Set;
@@ -20,6 +22,53 @@ public interface PaymentRoutingService {
     RoutingResult findOptimalNetwork(
             BigDecimal amount, String currency, Set<PaymentMethod> availableNetworks);
 
+    /**
+     * Finds the optimal payment network for a transaction, taking the routing context into
+     * account. Strategies that do not use the context can rely on the default implementation.
+     *
+     * @param amount The transaction amount
+     * @param currency The transaction currency
+     * @param availableNetworks Set of available payment networks for the card
+     * @param context The routing context (merchant reference, card fingerprint)
+     * @return RoutingResult containing the selected network and cost information
+     */
+    default RoutingResult findOptimalNetwork(
+            BigDecimal amount,
+            String currency,
+            Set<PaymentMethod> availableNetworks,
+            RoutingContext context) {
+        return findOptimalNetwork(
+                amount, currency, PaymentMethodMask.of(availableNetworks), context);
+    }
+
+    /**
+     * Finds the optimal payment network for a transaction from a precomputed eligibility mask, as
+     * returned by a {@link com.example.paymentrouting.model.NetworkEligibilityIndex} lookup.
+     * Strategies should override this to avoid converting the mask to a set.
+     *
+     * @param amount The transaction amount
+     * @param currency The transaction currency
+     * @param eligibleNetworks The eligible payment networks as a {@link PaymentMethodMask}
+     * @param context The routing context (merchant reference, card fingerprint), may be null
+     * @return RoutingResult containing the selected network and cost information
+     */
+    default RoutingResult findOptimalNetwork(
+            BigDecimal amount, String currency, int eligibleNetworks, RoutingContext context) {
+        return findOptimalNetwork(amount, currency, PaymentMethodMask.toSet(eligibleNetworks));
+    }
+
+    /**
+     * Reports the authorization outcome of a routing decision so that strategies can track their
+     * performance. The default implementation ignores the outcome.
+     *
+     * @param routingResult The routing result the authorization was sent with
+     * @param approved Whether the authorization was approved
+     * @param latencyNanos The authorization latency in nanoseconds
+     */
+    default void recordOutcome(RoutingResult routingResult, boolean approved, long latencyNanos) {
+        // Outcome tracking is optional for routing strategies
+    }
+
     /**
      * Gets the estimated cost for using a specific payment network.
      *
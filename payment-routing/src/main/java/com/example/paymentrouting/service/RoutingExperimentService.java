@@ -0,0 +1,30 @@
+package com.example.paymentrouting.service;
+
+import com.example.paymentrouting.model.ExperimentArmStatistics;
+
+import java.util.List;
+
+/** Service exposing the state and results of the active routing experiment. */
+public interface RoutingExperimentService {
+
+    /**
+     * Checks whether traffic is currently being split across experiment arms.
+     *
+     * @return true if the experiment is enabled
+     */
+    boolean isExperimentEnabled();
+
+    /**
+     * Gets the name of the active experiment.
+     *
+     * @return The experiment name
+     */
+    String getExperimentName();
+
+    /**
+     * Gets a snapshot of the aggregated results for every arm of the experiment.
+     *
+     * @return The per-arm statistics, in allocation order
+     */
+    List<ExperimentArmStatistics> getArmStatistics();
+}
@@ -0,0 +1,275 @@
+package com.example.paymentrouting.service.impl;
+
+import com.example.paymentrouting.model.BucketingKey;
+import com.example.paymentrouting.model.ExperimentArmStatistics;
+import com.example.paymentrouting.model.RoutingContext;
+import com.example.paymentrouting.model.RoutingResult;
+import com.example.paymentrouting.service.PaymentRoutingService;
+import com.example.paymentrouting.service.RoutingExperimentService;
+import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.FastHash;
+import com.example.shared.util.PaymentMethodMask;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routing service that splits traffic across several routing strategies (arms) and aggregates
+ * their results. Transactions are assigned to an arm by hashing the configured bucketing key into
+ * one of {@value #BUCKETS} buckets, so the same merchant reference or card always lands in the
+ * same arm for a given experiment. Transactions without a bucketing key are assigned to a random
+ * bucket.
+ *
+ * <p>Assignment is a hash plus an array lookup and all counters are {@link LongAdder}s, so the
+ * experiment can stay enabled for all traffic without adding contention.
+ */
+@Slf4j
+public class ExperimentRoutingServiceImpl
+        implements PaymentRoutingService, RoutingExperimentService {
+
+    static final int BUCKETS = 10_000;
+
+    private final String experimentName;
+    private final BucketingKey bucketingKey;
+    private final boolean enabled;
+    private final long seed;
+    private final Arm control;
+    private final Map<String, Arm> armsByName;
+    private final Arm[] armByBucket;
+
+    /**
+     * Creates an experiment over the given strategies.
+     *
+     * @param experimentName The experiment name; also seeds the bucketing hash
+     * @param bucketingKey The transaction attribute used for bucketing
+     * @param enabled Whether traffic should be split; when false all traffic uses the control arm
+     * @param controlArm The name of the control arm
+     * @param strategies The routing strategies by arm name
+     * @param allocation The percentage of traffic per arm name; must add up to 100
+     */
+    public ExperimentRoutingServiceImpl(
+            String experimentName,
+            BucketingKey bucketingKey,
+            boolean enabled,
+            String controlArm,
+            Map<String, PaymentRoutingService> strategies,
+            Map<String, Integer> allocation) {
+        if (!strategies.containsKey(controlArm)) {
+            throw new IllegalArgumentException("Unknown control arm: " + controlArm);
+        }
+
+        if (allocation.values().stream().anyMatch(percentage -> percentage < 0)) {
+            throw new IllegalArgumentException("Experiment allocation must not be negative");
+        }
+
+        int totalPercentage = allocation.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalPercentage != 100) {
+            throw new IllegalArgumentException(
+                    "Experiment allocation must add up to 100%, got " + totalPercentage + "%");
+        }
+
+        this.experimentName = experimentName;
+        this.bucketingKey = bucketingKey;
+        this.enabled = enabled;
+        this.seed = FastHash.hash64(experimentName);
+
+        Map<String, Arm> arms = new LinkedHashMap<>();
+        this.armByBucket = new Arm[BUCKETS];
+        int nextBucket = 0;
+        for (Map.Entry<String, Integer> entry : allocation.entrySet()) {
+            PaymentRoutingService strategy = strategies.get(entry.getKey());
+            if (strategy == null) {
+                throw new IllegalArgumentException("Unknown experiment arm: " + entry.getKey());
+            }
+
+            Arm arm = new Arm(entry.getKey(), strategy, entry.getValue());
+            arms.put(arm.name, arm);
+            int bucketCount = entry.getValue() * (BUCKETS / 100);
+            for (int i = 0; i < bucketCount; i++) {
+                armByBucket[nextBucket++] = arm;
+            }
+        }
+
+        this.control =
+                arms.computeIfAbsent(controlArm, name -> new Arm(name, strategies.get(name), 0));
+        this.armsByName = Collections.unmodifiableMap(arms);
+
+        log.info(
+                "Routing experiment '{}' {} with allocation {} (bucketing by {})",
+                experimentName,
+                enabled ? "enabled" : "disabled",
+                allocation,
+                bucketingKey);
+    }
+
+    @Override
+    public RoutingResult findOptimalNetwork(
+            BigDecimal amount, String currency, Set<PaymentMethod> availableNetworks) {
+        return findOptimalNetwork(amount, currency, PaymentMethodMask.of(availableNetworks), null);
+    }
+
+    @Override
+    public RoutingResult findOptimalNetwork(
+            BigDecimal amount, String currency, int eligibleNetworks, RoutingContext context) {
+        if (!enabled) {
+            return control.strategy.findOptimalNetwork(
+                    amount, currency, eligibleNetworks, context);
+        }
+
+        int bucket = bucketOf(context);
+        if (bucket < 0) {
+            // Without a bucketing key the transaction cannot stick to an arm, but a random bucket
+            // still assigns it in proportion to the allocation
+            bucket = ThreadLocalRandom.current().nextInt(BUCKETS);
+        }
+
+        Arm arm = armByBucket[bucket];
+        RoutingResult result =
+                arm.strategy.findOptimalNetwork(amount, currency, eligibleNetworks, context);
+        if (result != null && result.hasValidOption()) {
+            result.setExperimentArm(arm.name);
+            // Interrupted when a concurrent authorization cancelled routing, so it never decided
+            if (Thread.currentThread().isInterrupted()) {
+                return result;
+            }
+            arm.decisions.increment();
+            if (result.getEstimatedCost() != null) {
+                arm.costMicros.add(result.getEstimatedCost().movePointRight(6).longValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void recordOutcome(RoutingResult routingResult, boolean approved, long latencyNanos) {
+        if (routingResult == null || routingResult.getExperimentArm() == null) {
+            return;
+        }
+
+        Arm arm = armsByName.get(routingResult.getExperimentArm());
+        if (arm == null) {
+            return;
+        }
+
+        arm.outcomes.increment();
+        if (approved) {
+            arm.approvals.increment();
+        }
+        arm.latencyNanos.add(latencyNanos);
+        arm.maxLatencyNanos.accumulate(latencyNanos);
+    }
+
+    @Override
+    public BigDecimal getNetworkCost(
+            PaymentMethod paymentMethod, BigDecimal amount, String currency) {
+        return control.strategy.getNetworkCost(paymentMethod, amount, currency);
+    }
+
+    @Override
+    public RoutingResult getDefaultRoutingResult(BigDecimal amount, String currency) {
+        return control.strategy.getDefaultRoutingResult(amount, currency);
+    }
+
+    @Override
+    public boolean isExperimentEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String getExperimentName() {
+        return experimentName;
+    }
+
+    @Override
+    public List<ExperimentArmStatistics> getArmStatistics() {
+        List<ExperimentArmStatistics> statistics = new ArrayList<>(armsByName.size());
+        for (Arm arm : armsByName.values()) {
+            statistics.add(arm.snapshot());
+        }
+        return statistics;
+    }
+
+    /**
+     * Determines the bucket for a routing context.
+     *
+     * @param context The routing context
+     * @return The bucket in [0, BUCKETS), or -1 if the context has no usable bucketing key
+     */
+    int bucketOf(RoutingContext context) {
+        if (context == null) {
+            return -1;
+        }
+
+        long hash;
+        if (bucketingKey == BucketingKey.CARD_FINGERPRINT) {
+            if (context.getCardFingerprint() == 0L) {
+                return -1;
+            }
+            hash = FastHash.hash64(context.getCardFingerprint(), seed);
+        } else {
+            if (context.getMerchantReference() == null) {
+                return -1;
+            }
+            hash = FastHash.hash64(context.getMerchantReference(), seed);
+        }
+
+        return (int) Long.remainderUnsigned(hash, BUCKETS);
+    }
+
+    /** A single experiment arm: a routing strategy and its lock-free result counters. */
+    private static final class Arm {
+        private final String name;
+        private final PaymentRoutingService strategy;
+        private final int allocationPercentage;
+        private final LongAdder decisions = new LongAdder();
+        private final LongAdder outcomes = new LongAdder();
+        private final LongAdder approvals = new LongAdder();
+        private final LongAdder costMicros = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0L);
+
+        private Arm(String name, PaymentRoutingService strategy, int allocationPercentage) {
+            this.name = name;
+            this.strategy = strategy;
+            this.allocationPercentage = allocationPercentage;
+        }
+
+        private ExperimentArmStatistics snapshot() {
+            long decisionCount = decisions.sum();
+            long outcomeCount = outcomes.sum();
+            long approvalCount = approvals.sum();
+            BigDecimal totalCost = BigDecimal.valueOf(costMicros.sum(), 6);
+
+            return ExperimentArmStatistics.builder()
+                    .arm(name)
+                    .allocationPercentage(allocationPercentage)
+                    .decisions(decisionCount)
+                    .outcomes(outcomeCount)
+                    .approvals(approvalCount)
+                    .approvalRate(outcomeCount == 0 ? 0.0 : (double) approvalCount / outcomeCount)
+                    .totalEstimatedCost(totalCost)
+                    .averageEstimatedCost(
+                            decisionCount == 0
+                                    ? BigDecimal.ZERO
+                                    : totalCost.divide(
+                                            BigDecimal.valueOf(decisionCount),
+                                            6,
+                                            RoundingMode.HALF_UP))
+                    .averageLatencyMillis(
+                            outcomeCount == 0 ? 0.0 : latencyNanos.sum() / 1e6 / outcomeCount)
+                    .maxLatencyMillis(maxLatencyNanos.get() / 1e6)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.paymentrouting.service.impl;
+
+import com.example.paymentrouting.model.RoutingContext;
+import com.example.paymentrouting.model.RoutingCost;
+import com.example.paymentrouting.model.RoutingResult;
+import com.example.paymentrouting.service.PaymentRoutingService;
+import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Candidate routing strategy that selects the network with the lowest nominal fee, ignoring
+ * authorization rates. Uses the same fee structures as {@link PaymentRoutingServiceImpl} so that
+ * experiments compare decision logic rather than fee data.
+ */
+@Slf4j
+public class LowestFeeRoutingServiceImpl implements PaymentRoutingService {
+
+    // Card and token fees of each network, in the order they are compared
+    private static final boolean[] TOKEN_OPTIONS = {false, true};
+
+    @Override
+    public RoutingResult findOptimalNetwork(
+            BigDecimal amount, String currency, Set<PaymentMethod> availableNetworks) {
+        return findOptimalNetwork(
+                amount, currency, PaymentMethodMask.of(availableNetworks), null);
+    }
+
+    @Override
+    public RoutingResult findOptimalNetwork(
+            BigDecimal amount, String currency, int eligibleNetworks, RoutingContext context) {
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Transaction amount must be positive");
+        }
+
+        if (eligibleNetworks == PaymentMethodMask.NONE) {
+            return getDefaultRoutingResult(amount, currency);
+        }
+
+        RoutingCost bestCost = null;
+        BigDecimal bestFee = null;
+        Map<PaymentMethod, BigDecimal> methodCosts = new EnumMap<>(PaymentMethod.class);
+
+        for (int mask = eligibleNetworks & PaymentMethodMask.ALL; mask != 0; mask &= mask - 1) {
+            PaymentMethod method = PaymentMethodMask.methodAt(Integer.numberOfTrailingZeros(mask));
+            for (boolean isToken : TOKEN_OPTIONS) {
+                RoutingCost cost = PaymentRoutingServiceImpl.getDefaultFeeStructure(method, isToken);
+                if (cost == null) {
+                    continue;
+                }
+
+                BigDecimal fee = cost.calculateCost(amount);
+                methodCosts.merge(method, fee, BigDecimal::min);
+                if (bestFee == null || fee.compareTo(bestFee) < 0) {
+                    bestFee = fee;
+                    bestCost = cost;
+                }
+            }
+        }
+
+        if (bestCost == null) {
+            return RoutingResult.noValidOptions(amount, currency);
+        }
+
+        return RoutingResult.builder()
+                .selectedPaymentMethod(bestCost.getPaymentMethod())
+                .estimatedCost(bestFee)
+                .transactionAmount(amount)
+                .currency(currency)
+                .useToken(bestCost.isToken())
+                .allOptions(methodCosts)
+                .build();
+    }
+
+    @Override
+    public BigDecimal getNetworkCost(
+            PaymentMethod paymentMethod, BigDecimal amount, String currency) {
+        if (paymentMethod == null) {
+            throw new IllegalArgumentException("Payment method cannot be null");
+        }
+
+        RoutingCost cost = PaymentRoutingServiceImpl.getDefaultFeeStructure(paymentMethod, false);
+        if (cost == null) {
+            throw new IllegalArgumentException("Unknown payment method: " + paymentMethod);
+        }
+        return cost.calculateCost(amount);
+    }
+
+    @Override
+    public RoutingResult getDefaultRoutingResult(BigDecimal amount, String currency) {
+        log.warn(
+                "No valid routing options available for transaction amount: {}, currency: {}",
+                amount,
+                currency);
+        return RoutingResult.noValidOptions(amount, currency);
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.paymentrouting.service.impl;
 
+import com.example.paymentrouting.model.RoutingContext;
 import com.example.paymentrouting.model.RoutingCost;
 import com.example.paymentrouting.model.RoutingResult;
 import com.example.paymentrouting.service.PaymentRoutingService;
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +14,7 @@ import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -29,6 +32,10 @@ public class PaymentRoutingServiceImpl implements PaymentRoutingService {
     // In a real application, these would come from a configuration or database
     private static final Map<String, RoutingCost> DEFAULT_FEES = new HashMap<>();
 
+    // The same fee structures indexed by PaymentMethod ordinal, used when routing over a mask
+    private static final RoutingCost[] PAN_FEES = new RoutingCost[PaymentMethod.values().length];
+    private static final RoutingCost[] TOKEN_FEES = new RoutingCost[PaymentMethod.values().length];
+
     static {
         // Initialize default fee structures with authorization rates
         // Signature networks (Visa, MC, Amex, Discover) have higher auth rates but higher fees
@@ -216,6 +223,11 @@ public class PaymentRoutingServiceImpl implements PaymentRoutingService {
                         .authorizationRate(0.85)
                         .isToken(true)
                         .build());
+
+        for (RoutingCost cost : DEFAULT_FEES.values()) {
+            RoutingCost[] fees = cost.isToken() ? TOKEN_FEES : PAN_FEES;
+            fees[cost.getPaymentMethod().ordinal()] = cost;
+        }
     }
 
     /** Helper method to create a unique key for the fee map */
@@ -226,76 +238,65 @@ public class PaymentRoutingServiceImpl implements PaymentRoutingService {
     @Override
     public RoutingResult findOptimalNetwork(
             BigDecimal amount, String currency, Set<PaymentMethod> availableNetworks) {
+        return findOptimalNetwork(
+                amount, currency, PaymentMethodMask.of(availableNetworks), null);
+    }
+
+    @Override
+    public RoutingResult findOptimalNetwork(
+            BigDecimal amount, String currency, int eligibleNetworks, RoutingContext context) {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Transaction amount must be positive");
         }
 
-        if (availableNetworks == null || availableNetworks.isEmpty()) {
+        if (eligibleNetworks == PaymentMethodMask.NONE) {
             log.warn("No available payment networks provided");
             return getDefaultRoutingResult(amount, currency);
         }
 
-        // Calculate costs for all available networks, for both token and PAN options
-        Map<String, BigDecimal> costs = new HashMap<>();
-
-        // Check both token and PAN options for each network
-        for (PaymentMethod method : availableNetworks) {
-            // Check PAN option
-            String panKey = getKey(method, false);
-            if (DEFAULT_FEES.containsKey(panKey)) {
-                RoutingCost cost = DEFAULT_FEES.get(panKey);
-                costs.put(panKey, cost.calculateExpectedCost(amount));
-            }
-
-            // Check token option
-            String tokenKey = getKey(method, true);
-            if (DEFAULT_FEES.containsKey(tokenKey)) {
-                RoutingCost cost = DEFAULT_FEES.get(tokenKey);
-                costs.put(tokenKey, cost.calculateExpectedCost(amount));
+        // Calculate expected costs for all eligible networks, for both token and PAN options,
+        // keeping the lowest cost per network for the result
+        Map<PaymentMethod, BigDecimal> methodCosts = new EnumMap<>(PaymentMethod.class);
+        RoutingCost selectedCost = null;
+        BigDecimal bestExpectedCost = null;
+
+        for (int mask = eligibleNetworks & PaymentMethodMask.ALL; mask != 0; mask &= mask - 1) {
+            int ordinal = Integer.numberOfTrailingZeros(mask);
+            for (int option = 0; option < 2; option++) {
+                RoutingCost cost = option == 0 ? PAN_FEES[ordinal] : TOKEN_FEES[ordinal];
+                if (cost == null) {
+                    continue;
+                }
+
+                BigDecimal expectedCost = cost.calculateExpectedCost(amount);
+                methodCosts.merge(cost.getPaymentMethod(), expectedCost, BigDecimal::min);
+                if (bestExpectedCost == null || expectedCost.compareTo(bestExpectedCost) < 0) {
+                    bestExpectedCost = expectedCost;
+                    selectedCost = cost;
+                }
             }
         }
 
-        if (costs.isEmpty()) {
-            log.warn("No valid routing options found for networks: {}", availableNetworks);
+        if (selectedCost == null) {
+            log.warn(
+                    "No valid routing options found for networks: {}",
+                    PaymentMethodMask.toSet(eligibleNetworks));
             return RoutingResult.noValidOptions(amount, currency);
         }
 
-        // Find the option with the lowest expected cost
-        Map.Entry<String, BigDecimal> bestOption =
-                costs.entrySet().stream()
-                        .min(Map.Entry.comparingByValue())
-                        .orElseThrow(
-                                () ->
-                                        new IllegalStateException(
-                                                "Failed to determine optimal network"));
-
-        String bestKey = bestOption.getKey();
-        RoutingCost selectedCost = DEFAULT_FEES.get(bestKey);
         boolean useToken = selectedCost.isToken();
         PaymentMethod selectedMethod = selectedCost.getPaymentMethod();
 
         log.info(
                 "Selected payment network: {} with expected cost: ${} (Auth Rate: {}%, Token: {})",
                 selectedMethod,
-                bestOption.getValue().setScale(4, RoundingMode.HALF_UP),
+                bestExpectedCost.setScale(4, RoundingMode.HALF_UP),
                 String.format("%.1f", selectedCost.getAuthorizationRate() * 100),
                 useToken ? "Yes" : "No");
 
-        // Convert the costs map to a map of PaymentMethod to BigDecimal for the result
-        Map<PaymentMethod, BigDecimal> methodCosts = new HashMap<>();
-        costs.forEach(
-                (key, value) -> {
-                    PaymentMethod method = DEFAULT_FEES.get(key).getPaymentMethod();
-                    // If we already have an entry for this method, keep the lower cost
-                    if (!methodCosts.containsKey(method)
-                            || value.compareTo(methodCosts.get(method)) < 0) {
-                        methodCosts.put(method, value);
-                    }
-                });
-
         return RoutingResult.builder()
                 .selectedPaymentMethod(selectedMethod)
-                .estimatedCost(bestOption.getValue())
+                .estimatedCost(bestExpectedCost)
                 .transactionAmount(amount)
                 .currency(currency)
                 .useToken(useToken)
@@ -324,12 +325,12 @@ public class PaymentRoutingServiceImpl implements PaymentRoutingService {
         }
 
         // Default to non-token cost
-        String key = getKey(paymentMethod, false);
-        if (!DEFAULT_FEES.containsKey(key)) {
+        RoutingCost cost = PAN_FEES[paymentMethod.ordinal()];
+        if (cost == null) {
             throw new IllegalArgumentException("Unknown payment method: " + paymentMethod);
         }
 
-        return DEFAULT_FEES.get(key).calculateCost(amount);
+        return cost.calculateCost(amount);
     }
 
     /**
@@ -340,6 +341,6 @@ public class PaymentRoutingServiceImpl implements PaymentRoutingService {
      * @return The routing cost structure
      */
     public static RoutingCost getDefaultFeeStructure(PaymentMethod paymentMethod, boolean isToken) {
-        return DEFAULT_FEES.get(getKey(paymentMethod, isToken));
+        return (isToken ? TOKEN_FEES : PAN_FEES)[paymentMethod.ordinal()];
     }
 }
@@ -0,0 +1,178 @@
+package com.example.paymentrouting.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.paymentrouting.model.BucketingKey;
+import com.example.paymentrouting.model.ExperimentArmStatistics;
+import com.example.paymentrouting.model.RoutingContext;
+import com.example.paymentrouting.model.RoutingResult;
+import com.example.paymentrouting.service.PaymentRoutingService;
+import com.example.shared.model.PaymentMethod;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+public class ExperimentRoutingServiceTest {
+
+    private static final BigDecimal AMOUNT = BigDecimal.valueOf(100.00);
+    private static final Set<PaymentMethod> NETWORKS =
+            new HashSet<>(Arrays.asList(PaymentMethod.VISA, PaymentMethod.ACCEL));
+
+    private Map<String, PaymentRoutingService> strategies;
+
+    @BeforeEach
+    void setUp() {
+        strategies = new LinkedHashMap<>();
+        strategies.put("control", new PaymentRoutingServiceImpl());
+        strategies.put("lowest-fee", new LowestFeeRoutingServiceImpl());
+    }
+
+    private ExperimentRoutingServiceImpl experiment(boolean enabled, int controlPercentage) {
+        Map<String, Integer> allocation = new LinkedHashMap<>();
+        allocation.put("control", controlPercentage);
+        allocation.put("lowest-fee", 100 - controlPercentage);
+        return new ExperimentRoutingServiceImpl(
+                "test-experiment",
+                BucketingKey.MERCHANT_REFERENCE,
+                enabled,
+                "control",
+                strategies,
+                allocation);
+    }
+
+    private RoutingContext context(String merchantReference) {
+        return RoutingContext.builder()
+                .merchantId("merchant")
+                .merchantReference(merchantReference)
+                .build();
+    }
+
+    @Test
+    void findOptimalNetwork_WithSameReference_ShouldAlwaysUseSameArm() {
+        // Arrange
+        ExperimentRoutingServiceImpl service = experiment(true, 50);
+
+        // Act
+        RoutingResult first = service.findOptimalNetwork(AMOUNT, "USD", NETWORKS, context("ref-1"));
+        RoutingResult second =
+                service.findOptimalNetwork(AMOUNT, "USD", NETWORKS, context("ref-1"));
+
+        // Assert
+        assertNotNull(first.getExperimentArm());
+        assertEquals(first.getExperimentArm(), second.getExperimentArm());
+    }
+
+    @Test
+    void findOptimalNetwork_WithManyReferences_ShouldRespectAllocation() {
+        // Arrange
+        ExperimentRoutingServiceImpl service = experiment(true, 80);
+
+        // Act
+        for (int i = 0; i < 20_000; i++) {
+            service.findOptimalNetwork(AMOUNT, "USD", NETWORKS, context("ref-" + i));
+        }
+
+        // Assert
+        List<ExperimentArmStatistics> statistics = service.getArmStatistics();
+        assertEquals(2, statistics.size());
+        double controlShare = statistics.get(0).getDecisions() / 20_000.0;
+        assertEquals(0.8, controlShare, 0.02);
+    }
+
+    @Test
+    void findOptimalNetwork_WithoutContext_ShouldRespectAllocation() {
+        // Arrange
+        ExperimentRoutingServiceImpl service = experiment(true, 80);
+
+        // Act
+        RoutingResult result = null;
+        for (int i = 0; i < 20_000; i++) {
+            result = service.findOptimalNetwork(AMOUNT, "USD", NETWORKS);
+        }
+
+        // Assert
+        assertNotNull(result.getExperimentArm());
+        List<ExperimentArmStatistics> statistics = service.getArmStatistics();
+        double controlShare = statistics.get(0).getDecisions() / 20_000.0;
+        assertEquals(0.8, controlShare, 0.02);
+        assertEquals(80, statistics.get(0).getAllocationPercentage());
+    }
+
+    @Test
+    void findOptimalNetwork_WhenCancelled_ShouldNotCountDecision() {
+        // Arrange
+        ExperimentRoutingServiceImpl service = experiment(true, 100);
+
+        // Act: a cancelled concurrent routing stage runs on an interrupted thread
+        Thread.currentThread().interrupt();
+        RoutingResult result;
+        try {
+            result = service.findOptimalNetwork(AMOUNT, "USD", NETWORKS, context("ref"));
+        } finally {
+            Thread.interrupted();
+        }
+
+        // Assert
+        assertTrue(result.hasValidOption());
+        ExperimentArmStatistics control = service.getArmStatistics().get(0);
+        assertEquals(0, control.getDecisions());
+        assertEquals(BigDecimal.valueOf(0, 6), control.getTotalEstimatedCost());
+    }
+
+    @Test
+    void findOptimalNetwork_WhenDisabled_ShouldUseControlWithoutTracking() {
+        // Arrange
+        ExperimentRoutingServiceImpl service = experiment(false, 0);
+
+        // Act
+        RoutingResult result = service.findOptimalNetwork(AMOUNT, "USD", NETWORKS, context("ref"));
+
+        // Assert
+        assertNull(result.getExperimentArm());
+        assertTrue(result.hasValidOption());
+        assertEquals(0, service.getArmStatistics().get(1).getDecisions());
+    }
+
+    @Test
+    void recordOutcome_ShouldAggregateApprovalRateAndLatency() {
+        // Arrange
+        ExperimentRoutingServiceImpl service = experiment(true, 100);
+        RoutingResult result = service.findOptimalNetwork(AMOUNT, "USD", NETWORKS, context("ref"));
+
+        // Act
+        service.recordOutcome(result, true, 2_000_000L);
+        service.recordOutcome(result, false, 4_000_000L);
+
+        // Assert
+        ExperimentArmStatistics control = service.getArmStatistics().get(0);
+        assertEquals(2, control.getOutcomes());
+        assertEquals(0.5, control.getApprovalRate(), 0.0001);
+        assertEquals(3.0, control.getAverageLatencyMillis(), 0.0001);
+        assertEquals(4.0, control.getMaxLatencyMillis(), 0.0001);
+        assertEquals(
+                result.getEstimatedCost().setScale(6, RoundingMode.DOWN),
+                control.getTotalEstimatedCost());
+    }
+
+    @Test
+    void constructor_WithAllocationNotAddingUpTo100_ShouldThrowException() {
+        // Arrange
+        Map<String, Integer> allocation = Map.of("control", 60, "lowest-fee", 30);
+
+        // Act & Assert
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        new ExperimentRoutingServiceImpl(
+                                "test-experiment",
+                                BucketingKey.MERCHANT_REFERENCE,
+                                true,
+                                "control",
+                                strategies,
+                                allocation));
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import com.example.paymentrouting.model.RoutingResult;
 import com.example.shared.model.PaymentMethod;
+import com.example.shared.util.PaymentMethodMask;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -236,4 +237,57 @@ public class PaymentRoutingServiceTest {
         assertEquals(amount, result.getTransactionAmount());
         assertEquals(currency, result.getCurrency());
     }
+
+    @Test
+    void findOptimalNetwork_WithEligibilityMask_ShouldMatchSetBasedRouting() {
+        // Arrange
+        BigDecimal amount = BigDecimal.valueOf(100.00);
+        String currency = "USD";
+
+        for (int mask = 1; mask <= PaymentMethodMask.ALL; mask++) {
+            // Act
+            RoutingResult fromMask =
+                    paymentRoutingService.findOptimalNetwork(amount, currency, mask, null);
+            RoutingResult fromSet =
+                    paymentRoutingService.findOptimalNetwork(
+                            amount, currency, PaymentMethodMask.toSet(mask));
+
+            // Assert
+            assertTrue(PaymentMethodMask.contains(mask, fromMask.getSelectedPaymentMethod()));
+            assertEquals(fromSet.getSelectedPaymentMethod(), fromMask.getSelectedPaymentMethod());
+            assertEquals(fromSet.getEstimatedCost(), fromMask.getEstimatedCost());
+            assertEquals(fromSet.getAllOptions(), fromMask.getAllOptions());
+            assertEquals(Integer.bitCount(mask), fromMask.getAllOptions().size());
+        }
+    }
+
+    @Test
+    void findOptimalNetwork_WithDualNetworkDebitMask_ShouldConsiderUnaffiliatedNetwork() {
+        // Arrange
+        BigDecimal amount = BigDecimal.valueOf(100.00);
+        String currency = "USD";
+        int eligibleNetworks = PaymentMethodMask.of(PaymentMethod.MASTERCARD, PaymentMethod.NYCE);
+
+        // Act
+        RoutingResult result =
+                paymentRoutingService.findOptimalNetwork(amount, currency, eligibleNetworks, null);
+
+        // Assert
+        assertTrue(result.hasValidOption());
+        assertEquals(
+                Set.of(PaymentMethod.MASTERCARD, PaymentMethod.NYCE),
+                result.getAllOptions().keySet());
+    }
+
+    @Test
+    void findOptimalNetwork_WithEmptyEligibilityMask_ShouldReturnNoValidOptions() {
+        // Act
+        RoutingResult result =
+                paymentRoutingService.findOptimalNetwork(
+                        BigDecimal.TEN, "USD", PaymentMethodMask.NONE, null);
+
+        // Assert
+        assertFalse(result.hasValidOption());
+        assertTrue(result.getAllOptions().isEmpty());
+    }
 }
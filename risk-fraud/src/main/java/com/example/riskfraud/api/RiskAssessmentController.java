@@ -1,24 +1,59 @@
 package com.example.riskfraud.api;
 
+import com.example.riskfraud.api.dto.BatchAssessmentError;
+import com.example.riskfraud.api.dto.MerchantRiskProfileRequest;
 import com.example.riskfraud.api.dto.TransactionRequest;
+import com.example.riskfraud.model.MerchantRiskProfile;
+import com.example.riskfraud.model.MerchantSketchSnapshot;
 import com.example.riskfraud.model.RiskAssessment;
+import com.example.riskfraud.model.RiskDeadlineStatistics;
+import com.example.riskfraud.model.ShadowEvaluationStatistics;
 import com.example.riskfraud.model.Transaction;
+import com.example.riskfraud.service.MerchantRiskProfileRegistry;
+import com.example.riskfraud.service.MerchantSketchService;
 import com.example.riskfraud.service.RiskAssessmentService;
+import com.example.riskfraud.service.RiskBatchExecutor;
+import com.example.riskfraud.service.RiskScoringDeadline;
+import com.example.riskfraud.service.ShadowRiskEvaluator;
+import com.example.shared.util.NdjsonWriter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 
 import lombok.RequiredArgsConstructor;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
 /** REST controller for handling risk assessment requests. */
 @RestController
 @RequestMapping("/api/risk")
 @RequiredArgsConstructor
 public class RiskAssessmentController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final RiskAssessmentService riskAssessmentService;
+    private final ShadowRiskEvaluator shadowRiskEvaluator;
+    private final RiskBatchExecutor riskBatchExecutor;
+    private final RiskScoringDeadline riskScoringDeadline;
+    private final MerchantSketchService merchantSketchService;
+    private final MerchantRiskProfileRegistry merchantRiskProfileRegistry;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
 
     /**
      * Performs a comprehensive risk assessment for a transaction.
@@ -33,4 +68,160 @@ public class RiskAssessmentController {
         RiskAssessment assessment = riskAssessmentService.assessRisk(transaction);
         return ResponseEntity.ok(assessment);
     }
+
+    /**
+     * Assesses a stream of transactions. The request and the response are newline-delimited JSON,
+     * one transaction request per line in and one risk assessment per line out, in the same order.
+     * Lines that cannot be parsed or are invalid produce a {@link BatchAssessmentError} instead.
+     * Lines are read and assessed in chunks, so the batch does not have to fit in memory.
+     *
+     * @param record Whether to record the transactions as attempts in the velocity counters,
+     *     merchant sketches and entity graph used by live scoring; off by default
+     * @param body The transaction requests
+     * @param response The response to stream the risk assessments to
+     * @throws IOException If the request cannot be read or the response cannot be written
+     */
+    @PostMapping(value = "/assess/batch", consumes = NDJSON, produces = NDJSON)
+    public void assessBatch(
+            @RequestParam(defaultValue = "false") boolean record,
+            InputStream body,
+            HttpServletResponse response)
+            throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        int chunkSize = riskBatchExecutor.getChunkSize();
+        List<Transaction> transactions = new ArrayList<>(chunkSize);
+        // One entry per line of the chunk, null for lines that are assessed
+        List<BatchAssessmentError> errors = new ArrayList<>(chunkSize);
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        try (NdjsonWriter writer = new NdjsonWriter(objectMapper, response.getOutputStream())) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                BatchAssessmentError error = parseBatchLine(line, lineNumber, transactions);
+                errors.add(error);
+                if (errors.size() == chunkSize) {
+                    writeBatchChunk(writer, transactions, errors, record);
+                }
+            }
+            writeBatchChunk(writer, transactions, errors, record);
+        }
+    }
+
+    /**
+     * Gets how the candidate rules and models in shadow evaluation compare with production.
+     *
+     * @return The statistics per candidate, empty if no candidates are configured
+     */
+    @GetMapping("/shadow")
+    public ResponseEntity<List<ShadowEvaluationStatistics>> getShadowStatistics() {
+        return ResponseEntity.ok(shadowRiskEvaluator.getStatistics());
+    }
+
+    /**
+     * Gets how often risk scoring ran out of its time budget and used the fallback score.
+     *
+     * @return The assessment and timeout counts since startup
+     */
+    @GetMapping("/deadline")
+    public ResponseEntity<RiskDeadlineStatistics> getDeadlineStatistics() {
+        return ResponseEntity.ok(riskScoringDeadline.getStatistics());
+    }
+
+    /**
+     * Gets the estimated distinct card count and amount percentiles of a merchant.
+     *
+     * @param merchantId The merchant ID
+     * @return The sketch estimates, zero if the merchant has not been seen recently
+     */
+    @GetMapping("/merchants/{merchantId}/sketches")
+    public ResponseEntity<MerchantSketchSnapshot> getMerchantSketches(
+            @PathVariable String merchantId) {
+        return ResponseEntity.ok(merchantSketchService.getSnapshot(merchantId));
+    }
+
+    /**
+     * Gets the risk profile of a merchant.
+     *
+     * @param merchantId The merchant ID
+     * @return The profile, or not found if the merchant has no profile of its own
+     */
+    @GetMapping("/merchants/{merchantId}/profile")
+    public ResponseEntity<MerchantRiskProfile> getMerchantProfile(@PathVariable String merchantId) {
+        MerchantRiskProfile profile = merchantRiskProfileRegistry.getProfile(merchantId);
+        return profile != null ? ResponseEntity.ok(profile) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Sets the risk profile of a merchant. The change applies to the next assessment and lasts
+     * until the profile file is next reloaded.
+     *
+     * @param merchantId The merchant ID
+     * @param request The merchant's risk and chargeback ratio
+     * @return The updated profile
+     */
+    @PutMapping("/merchants/{merchantId}/profile")
+    public ResponseEntity<MerchantRiskProfile> updateMerchantProfile(
+            @PathVariable String merchantId,
+            @RequestBody @Valid MerchantRiskProfileRequest request) {
+        merchantRiskProfileRegistry.updateMerchant(
+                merchantId, request.getRiskScore(), request.getChargebackRatio());
+        return ResponseEntity.ok(merchantRiskProfileRegistry.getProfile(merchantId));
+    }
+
+    /**
+     * Removes the risk profile of a merchant, so that the risk of its category applies again.
+     *
+     * @param merchantId The merchant ID
+     * @return No content, or not found if the merchant had no profile of its own
+     */
+    @DeleteMapping("/merchants/{merchantId}/profile")
+    public ResponseEntity<Void> removeMerchantProfile(@PathVariable String merchantId) {
+        return merchantRiskProfileRegistry.removeMerchant(merchantId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    private BatchAssessmentError parseBatchLine(
+            String line, long lineNumber, List<Transaction> transactions) {
+        TransactionRequest request;
+        try {
+            request = objectMapper.readValue(line, TransactionRequest.class);
+        } catch (JsonProcessingException e) {
+            return new BatchAssessmentError(lineNumber, "Invalid JSON: " + e.getOriginalMessage());
+        }
+
+        Set<ConstraintViolation<TransactionRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<TransactionRequest> violation = violations.iterator().next();
+            return new BatchAssessmentError(
+                    lineNumber, violation.getPropertyPath() + " " + violation.getMessage());
+        }
+
+        transactions.add(request.toTransaction());
+        return null;
+    }
+
+    private void writeBatchChunk(
+            NdjsonWriter writer,
+            List<Transaction> transactions,
+            List<BatchAssessmentError> errors,
+            boolean record)
+            throws IOException {
+        List<RiskAssessment> assessments = riskAssessmentService.assessBatch(transactions, record);
+        int next = 0;
+        for (BatchAssessmentError error : errors) {
+            writer.write(error != null ? error : assessments.get(next++));
+        }
+        writer.flush();
+        transactions.clear();
+        errors.clear();
+    }
 }
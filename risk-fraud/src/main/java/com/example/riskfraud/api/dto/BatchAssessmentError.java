@@ -0,0 +1,17 @@
+package com.example.riskfraud.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Written in place of a risk assessment for a batch line that could not be assessed. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchAssessmentError {
+    /** The line number in the request, starting at 1. */
+    private long line;
+
+    /** Why the line was rejected. */
+    private String error;
+}
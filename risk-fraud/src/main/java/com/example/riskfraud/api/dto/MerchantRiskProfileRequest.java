@@ -0,0 +1,20 @@
+package com.example.riskfraud.api.dto;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+
+import lombok.Data;
+
+/** DTO for setting the risk profile of a single merchant. */
+@Data
+public class MerchantRiskProfileRequest {
+    /** The merchant's baseline risk between 0 and 1, or null to use its category's risk. */
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private Double riskScore;
+
+    /** The share of the merchant's transactions that were charged back. */
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double chargebackRatio;
+}
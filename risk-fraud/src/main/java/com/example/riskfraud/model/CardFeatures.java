@@ -0,0 +1,29 @@
+package com.example.riskfraud.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Authorization history of a card, as kept by the risk feature store. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardFeatures {
+    /** Whether the card has been seen before; all other fields are zero or null if not. */
+    private boolean known;
+
+    private int successfulAuthorizations;
+    private int failedAuthorizations;
+    private int chargebacks;
+
+    /** ISO 3166 alpha-2 country of the last authorization, or null if unknown. */
+    private String lastCountry;
+
+    /** Amount of the last authorization in minor currency units. */
+    private long lastAmount;
+
+    /** Time of the last authorization in epoch seconds. */
+    private long lastSeenEpochSecond;
+}
@@ -0,0 +1,40 @@
+package com.example.riskfraud.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregates of a cluster of entities (cards, devices, IP addresses and emails) linked by
+ * transactions that used them together.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntityCluster {
+    /** The number of entities in the cluster. */
+    private long entities;
+
+    /** The number of cards in the cluster. */
+    private long cards;
+
+    /** The number of transactions of the cluster's entities. */
+    private long transactions;
+
+    /** The number of those transactions that were declined. */
+    private long failures;
+
+    /** The number of chargebacks on the cluster's cards. */
+    private long chargebacks;
+
+    /**
+     * Gets the share of the cluster's transactions that were declined.
+     *
+     * @return The failure rate, 0 without transactions
+     */
+    public double getFailureRate() {
+        return transactions == 0 ? 0.0 : (double) failures / transactions;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.riskfraud.model;
+
+/** Reputation of an IP address, from the most specific matching block of the reputation list. */
+public enum IpReputation {
+    /** Not on the reputation list. */
+    CLEAN,
+    VPN,
+    PROXY,
+    /** TOR exit node. */
+    TOR;
+
+    /**
+     * Checks if traffic from the address hides the customer's real location.
+     *
+     * @return true for anything other than {@link #CLEAN}
+     */
+    public boolean isAnonymizing() {
+        return this != CLEAN;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.riskfraud.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** The risk profile of a single merchant, overriding the baseline of its merchant category. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MerchantRiskProfile {
+    private String merchantId;
+
+    /** The merchant's baseline risk between 0 and 1, or null to use its category's risk. */
+    private Double riskScore;
+
+    /** The share of the merchant's transactions that were charged back. */
+    private double chargebackRatio;
+}
@@ -0,0 +1,30 @@
+package com.example.riskfraud.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A point-in-time view of the sketches kept for a merchant. Counts and quantiles are estimates. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MerchantSketchSnapshot {
+    private String merchantId;
+
+    /** The number of distinct cards used at the merchant in the last hour. */
+    private long distinctCardsLastHour;
+
+    /** The number of amounts recorded for the merchant in the last 24 hours. */
+    private long amountsLast24Hours;
+
+    /** The median amount of the last 24 hours, null while there are too few amounts. */
+    private Double amountP50;
+
+    /** The 90th percentile amount of the last 24 hours, null while there are too few amounts. */
+    private Double amountP90;
+
+    /** The 99th percentile amount of the last 24 hours, null while there are too few amounts. */
+    private Double amountP99;
+}
@@ -12,6 +12,9 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class RiskAssessment {
+    /** Transactions scoring below this are approved. */
+    public static final double APPROVAL_THRESHOLD = 0.7;
+
     private String transactionId;
     private RiskLevel riskLevel;
     private double riskScore;
@@ -20,13 +23,16 @@ public class RiskAssessment {
     private LocalDateTime assessmentTime;
     private String assessmentId;
 
+    /** Whether scoring ran out of its time budget and the fallback score was used. */
+    private boolean timedOut;
+
     public static RiskAssessment fromTransaction(Transaction transaction, double riskScore) {
         RiskLevel riskLevel = RiskLevel.fromScore(riskScore);
         return RiskAssessment.builder()
                 .transactionId(transaction.getId())
                 .riskScore(riskScore)
                 .riskLevel(riskLevel)
-                .approved(riskScore < 0.7) // Example threshold
+                .approved(riskScore < APPROVAL_THRESHOLD)
                 .reason("Risk assessment completed")
                 .assessmentTime(LocalDateTime.now())
                 .assessmentId(java.util.UUID.randomUUID().toString())
@@ -0,0 +1,31 @@
+package com.example.riskfraud.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A point-in-time snapshot of how often risk scoring ran out of its time budget. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RiskDeadlineStatistics {
+    /** The time budget per risk assessment in milliseconds, 0 if unlimited. */
+    private long budgetMillis;
+
+    /** The number of risk assessments since startup. */
+    private long assessments;
+
+    /** The number of assessments that ran out of time and used the fallback score. */
+    private long timeouts;
+
+    /** The number of assessments that found no free scoring thread and used the fallback score. */
+    private long rejections;
+
+    /** Timeouts and rejections divided by assessments (0.0 when there were none). */
+    private double fallbackRate;
+
+    /** The number of scoring threads currently busy. */
+    private int busyThreads;
+}
@@ -0,0 +1,70 @@
+package com.example.riskfraud.model;
+
+import java.util.Locale;
+
+/**
+ * Numeric transaction features that risk rules can test. Features are passed to the rule engine as
+ * a {@code double[]} indexed by {@link #ordinal()}; flags are 1 when set and 0 otherwise. Rules
+ * refer to features by their lower-case name, for example {@code card_attempts_last_hour}.
+ */
+public enum RiskFeature {
+    /** Transaction amount in major currency units. */
+    AMOUNT,
+    PREVIOUS_SUCCESSFUL,
+    PREVIOUS_FAILED,
+    PREVIOUS_CHARGEBACKS,
+    /** Share of previous transactions that succeeded, 0 without history. */
+    SUCCESS_RATE,
+    /** Amount relative to the card's previous amount, 0 if unknown. */
+    AMOUNT_TO_LAST_AMOUNT,
+    /** Merchant category code, -1 if missing or not numeric. */
+    MERCHANT_CATEGORY,
+    /** Baseline risk of the merchant, from its own profile or else its merchant category. */
+    MERCHANT_RISK,
+    /** Share of the merchant's transactions that were charged back, 0 if unknown. */
+    MERCHANT_CHARGEBACK_RATIO,
+    /** IP address is a VPN, proxy or TOR exit. */
+    IP_ANONYMIZING,
+    IP_TOR,
+    DEVICE_PRESENT,
+    /** Device completed a payment before. */
+    DEVICE_KNOWN,
+    DEVICE_BAD,
+    /** Billing country does not match the IP address country. */
+    SUSPICIOUS_LOCATION,
+    /** Card country differs from the card's previous authorization. */
+    COUNTRY_CHANGED,
+    CARD_ATTEMPTS_LAST_MINUTE,
+    CARD_ATTEMPTS_LAST_HOUR,
+    CARD_DECLINES_LAST_HOUR,
+    /** Card amount in the last 24 hours, in minor currency units. */
+    CARD_AMOUNT_LAST_24_HOURS,
+    IP_ATTEMPTS_LAST_HOUR,
+    DEVICE_ATTEMPTS_LAST_HOUR,
+    MERCHANT_ATTEMPTS_LAST_HOUR,
+    /** Share of the merchant's attempts in the last hour that were declined. */
+    MERCHANT_DECLINE_RATE_LAST_HOUR,
+    /** Estimated number of distinct cards used at the merchant in the last hour. */
+    MERCHANT_DISTINCT_CARDS_LAST_HOUR,
+    /** Amount relative to the merchant's p99 amount of the last 24 hours, 0 if unknown. */
+    AMOUNT_TO_MERCHANT_P99,
+    /** Cards linked to the transaction's card, device, IP address or email by earlier ones. */
+    CLUSTER_CARDS,
+    /** Share of the transactions of that cluster that were declined. */
+    CLUSTER_FAILURE_RATE,
+    /** Chargebacks on the cards of that cluster. */
+    CLUSTER_CHARGEBACKS,
+    RECURRING;
+
+    /** Number of features, the length of a feature vector. */
+    public static final int COUNT = values().length;
+
+    /**
+     * Gets the name rules use for this feature.
+     *
+     * @return The lower-case feature name
+     */
+    public String ruleName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.riskfraud.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A point-in-time snapshot of how a candidate rule set or model scored live traffic in shadow. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShadowEvaluationStatistics {
+    /** The kind of candidate, "rules" or "model". */
+    private String candidate;
+
+    /** The file the candidate was loaded from. */
+    private String source;
+
+    /** The number of transactions scored by the candidate. */
+    private long evaluated;
+
+    /** The number of transactions dropped because the shadow queue was full. */
+    private long dropped;
+
+    /** The number of transactions the candidate would have approved or declined differently. */
+    private long disagreements;
+
+    /** Disagreements divided by evaluated transactions (0.0 when none were evaluated). */
+    private double disagreementRate;
+
+    /** The average candidate score. */
+    private double averageScore;
+
+    /** The average production score of the same transactions. */
+    private double averageProductionScore;
+
+    /** The average absolute difference between the candidate and production scores. */
+    private double averageAbsoluteDifference;
+
+    /** Candidate scores per bucket of width 0.05, from [0, 0.05) to [0.95, 1]. */
+    private long[] scoreHistogram;
+
+    /** Production scores of the same transactions, in the same buckets. */
+    private long[] productionScoreHistogram;
+}
@@ -21,6 +21,7 @@ public class Transaction {
     private String transactionReference;
     private BigDecimal amount;
     private CardInfo cardInfo;
+    private long cardFingerprint; // Stable hash of the PAN for velocity tracking, 0 if unknown
     private String merchantId;
     private String merchantName;
     private String merchantCategoryCode;
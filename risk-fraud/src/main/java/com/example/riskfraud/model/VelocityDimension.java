@@ -0,0 +1,10 @@
+package com.example.riskfraud.model;
+
+/** Transaction attributes that velocity counters are kept for. */
+public enum VelocityDimension {
+    /** Card fingerprint, so counts follow a card across tokens and merchants. */
+    CARD,
+    MERCHANT,
+    IP_ADDRESS,
+    DEVICE
+}
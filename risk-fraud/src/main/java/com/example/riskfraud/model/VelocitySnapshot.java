@@ -0,0 +1,68 @@
+package com.example.riskfraud.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Point-in-time velocity counts for a single key (card, merchant, IP address or device). Amounts
+ * are in minor currency units and are summed regardless of currency.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VelocitySnapshot {
+    private long attemptsLastMinute;
+    private long attemptsLastHour;
+    private long attemptsLast24Hours;
+    private long declinesLastMinute;
+    private long declinesLastHour;
+    private long declinesLast24Hours;
+    private long amountLastMinute;
+    private long amountLastHour;
+    private long amountLast24Hours;
+
+    /**
+     * Gets the number of authorization attempts in a window.
+     *
+     * @param window The window
+     * @return The number of attempts
+     */
+    public long getAttempts(VelocityWindow window) {
+        return switch (window) {
+            case ONE_MINUTE -> attemptsLastMinute;
+            case ONE_HOUR -> attemptsLastHour;
+            case TWENTY_FOUR_HOURS -> attemptsLast24Hours;
+        };
+    }
+
+    /**
+     * Gets the number of declined or rejected attempts in a window.
+     *
+     * @param window The window
+     * @return The number of declines
+     */
+    public long getDeclines(VelocityWindow window) {
+        return switch (window) {
+            case ONE_MINUTE -> declinesLastMinute;
+            case ONE_HOUR -> declinesLastHour;
+            case TWENTY_FOUR_HOURS -> declinesLast24Hours;
+        };
+    }
+
+    /**
+     * Gets the attempted amount in a window, in minor currency units.
+     *
+     * @param window The window
+     * @return The summed amount
+     */
+    public long getAmount(VelocityWindow window) {
+        return switch (window) {
+            case ONE_MINUTE -> amountLastMinute;
+            case ONE_HOUR -> amountLastHour;
+            case TWENTY_FOUR_HOURS -> amountLast24Hours;
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.riskfraud.model;
+
+/**
+ * Sliding windows that velocity counters are aggregated over. Each window is split into a fixed
+ * number of buckets; a window covers the current, partially filled bucket plus the preceding
+ * buckets, so its effective length varies by at most one bucket width.
+ */
+public enum VelocityWindow {
+    ONE_MINUTE(60_000L, 6),
+    ONE_HOUR(3_600_000L, 12),
+    TWENTY_FOUR_HOURS(86_400_000L, 24);
+
+    private final long durationMillis;
+    private final int buckets;
+
+    VelocityWindow(long durationMillis, int buckets) {
+        this.durationMillis = durationMillis;
+        this.buckets = buckets;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public long getBucketMillis() {
+        return durationMillis / buckets;
+    }
+}
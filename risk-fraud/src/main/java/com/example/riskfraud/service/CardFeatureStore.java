@@ -0,0 +1,525 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.CardFeatures;
+import com.example.shared.util.FastHash;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory per-card authorization history for risk scoring, keyed by the 64-bit card fingerprint.
+ *
+ * <p>Each card is a fixed-size record of packed longs in a single preallocated array, so memory is
+ * bounded by the configured capacity. Cards are placed by open addressing within a short probe
+ * window; when the window is full a victim is chosen CLOCK-style, skipping (and clearing) recently
+ * referenced records.
+ *
+ * <p>All mutations run on one writer thread, fed asynchronously by the {@code *Async} methods, so
+ * callers on the authorization path never wait. Readers are lock-free: every record carries a
+ * version that the writer makes odd while updating, and readers retry until they see the same even
+ * version before and after reading.
+ *
+ * <p>The store can be snapshotted to a local file, periodically and on shutdown, and is reloaded
+ * from it on startup. The snapshot contains card fingerprints, which callers must derive from a
+ * keyed hash of the card number, and must be protected like other cardholder data; snapshots are
+ * disabled unless a path is configured.
+ */
+@Slf4j
+@Service
+public class CardFeatureStore {
+
+    /** Number of records searched for a card before evicting. */
+    static final int MAX_PROBE = 8;
+
+    private static final int SNAPSHOT_MAGIC = 0x52464653; // "RFFS"
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    // Record layout
+    private static final int VERSION = 0;
+    private static final int KEY = 1;
+    private static final int COUNTS = 2;
+    private static final int LAST = 3;
+    private static final int SEEN = 4;
+    private static final int RECORD_WORDS = 5;
+
+    // COUNTS word: successes (24 bits) | failures (24 bits) | chargebacks (16 bits)
+    private static final int SUCCESS_SHIFT = 40;
+    private static final int FAILURE_SHIFT = 16;
+    private static final long COUNT_MAX = (1L << 24) - 1;
+    private static final long CHARGEBACK_MAX = (1L << 16) - 1;
+
+    // LAST word: country (10 bits) | amount in minor units (40 bits)
+    private static final int COUNTRY_SHIFT = 40;
+    private static final long COUNTRY_MASK = (1L << 10) - 1;
+    private static final long AMOUNT_MAX = (1L << 40) - 1;
+
+    private final int mask;
+    private final AtomicLongArray records;
+    private final AtomicIntegerArray referenced;
+    private final Path snapshotPath;
+    private final long snapshotIntervalSeconds;
+    private final int maxPendingUpdates;
+    private final ScheduledExecutorService writer;
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+    private final LongAdder droppedUpdates = new LongAdder();
+    private final LongAdder occupied = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Only accessed by the writer thread
+    private int clockHand;
+
+    /**
+     * Creates the feature store.
+     *
+     * @param capacity The maximum number of cards, rounded up to a power of two
+     * @param snapshotPath The snapshot file, or empty to disable snapshots
+     * @param snapshotIntervalSeconds The interval between periodic snapshots, 0 to only snapshot on
+     *     shutdown
+     * @param maxPendingUpdates The maximum number of queued updates; further updates are dropped
+     */
+    public CardFeatureStore(
+            @Value("${risk-fraud.feature-store.capacity:65536}") int capacity,
+            @Value("${risk-fraud.feature-store.snapshot-path:}") String snapshotPath,
+            @Value("${risk-fraud.feature-store.snapshot-interval-seconds:300}")
+                    long snapshotIntervalSeconds,
+            @Value("${risk-fraud.feature-store.max-pending-updates:10000}")
+                    int maxPendingUpdates) {
+        if (capacity < MAX_PROBE) {
+            throw new IllegalArgumentException(
+                    "Feature store capacity must be at least " + MAX_PROBE);
+        }
+
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        if (slots <= 0 || (long) slots * RECORD_WORDS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Feature store capacity is too large: " + capacity);
+        }
+
+        this.mask = slots - 1;
+        this.records = new AtomicLongArray(slots * RECORD_WORDS);
+        this.referenced = new AtomicIntegerArray(slots);
+        this.snapshotPath =
+                snapshotPath == null || snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+        this.maxPendingUpdates = maxPendingUpdates;
+        this.writer =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "risk-feature-store-writer");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @PostConstruct
+    public void start() {
+        if (snapshotPath == null) {
+            return;
+        }
+
+        loadSnapshot(snapshotPath);
+        if (snapshotIntervalSeconds > 0) {
+            writer.scheduleWithFixedDelay(
+                    () -> writeSnapshotQuietly(snapshotPath),
+                    snapshotIntervalSeconds,
+                    snapshotIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Drain queued updates before the final snapshot
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Risk feature store writer did not finish pending updates in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (snapshotPath != null) {
+            writeSnapshotQuietly(snapshotPath);
+        }
+    }
+
+    /**
+     * Queues an authorization outcome for a card. Never blocks; the update is dropped if too many
+     * updates are already queued.
+     *
+     * @param cardFingerprint The card fingerprint, ignored if 0
+     * @param approved Whether the authorization was approved
+     * @param amount The authorization amount in minor currency units
+     * @param country The ISO 3166 alpha-2 country of the authorization, may be null
+     */
+    public void recordAuthorizationAsync(
+            long cardFingerprint, boolean approved, long amount, String country) {
+        if (cardFingerprint != 0L) {
+            long nowSeconds = Instant.now().getEpochSecond();
+            submit(
+                    () ->
+                            recordAuthorization(
+                                    cardFingerprint, approved, amount, country, nowSeconds));
+        }
+    }
+
+    /**
+     * Queues a chargeback for a card. Never blocks; the update is dropped if too many updates are
+     * already queued.
+     *
+     * @param cardFingerprint The card fingerprint, ignored if 0
+     */
+    public void recordChargebackAsync(long cardFingerprint) {
+        if (cardFingerprint != 0L) {
+            submit(() -> recordChargeback(cardFingerprint));
+        }
+    }
+
+    /**
+     * Gets the history of a card without locking.
+     *
+     * @param cardFingerprint The card fingerprint
+     * @return The card features; {@link CardFeatures#isKnown()} is false for unknown cards
+     */
+    public CardFeatures getFeatures(long cardFingerprint) {
+        if (cardFingerprint == 0L) {
+            return new CardFeatures();
+        }
+
+        long[] record = new long[RECORD_WORDS];
+        int start = (int) FastHash.mix64(cardFingerprint) & mask;
+        for (int probe = 0; probe < MAX_PROBE; probe++) {
+            int slot = (start + probe) & mask;
+            readRecord(slot, record);
+            if (record[KEY] == cardFingerprint) {
+                if (referenced.get(slot) == 0) {
+                    referenced.lazySet(slot, 1);
+                }
+                return toFeatures(record);
+            }
+            if (record[KEY] == 0L) {
+                // Records are never removed, so the card cannot be further along
+                break;
+            }
+        }
+        return new CardFeatures();
+    }
+
+    /**
+     * Gets the number of cards in the store.
+     *
+     * @return The number of cards
+     */
+    public long getSize() {
+        return occupied.sum();
+    }
+
+    /**
+     * Gets the number of cards evicted to make room for new ones.
+     *
+     * @return The eviction count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of updates dropped because the writer queue was full.
+     *
+     * @return The dropped update count
+     */
+    public long getDroppedUpdates() {
+        return droppedUpdates.sum();
+    }
+
+    /** Waits until all updates queued so far have been applied. */
+    void flush() throws InterruptedException, ExecutionException {
+        writer.submit(() -> {}).get();
+    }
+
+    void recordAuthorization(
+            long cardFingerprint, boolean approved, long amount, String country, long nowSeconds) {
+        int slot = findOrInsert(cardFingerprint);
+        int base = slot * RECORD_WORDS;
+
+        long counts = records.get(base + COUNTS);
+        if (approved) {
+            counts = incrementField(counts, SUCCESS_SHIFT, COUNT_MAX);
+        } else {
+            counts = incrementField(counts, FAILURE_SHIFT, COUNT_MAX);
+        }
+        long last =
+                (packCountry(country) << COUNTRY_SHIFT)
+                        | Math.min(Math.max(0L, amount), AMOUNT_MAX);
+
+        beginWrite(base);
+        records.set(base + COUNTS, counts);
+        records.set(base + LAST, last);
+        records.set(base + SEEN, nowSeconds);
+        endWrite(base);
+    }
+
+    void recordChargeback(long cardFingerprint) {
+        int slot = findOrInsert(cardFingerprint);
+        int base = slot * RECORD_WORDS;
+        long counts = incrementField(records.get(base + COUNTS), 0, CHARGEBACK_MAX);
+
+        beginWrite(base);
+        records.set(base + COUNTS, counts);
+        endWrite(base);
+    }
+
+    /**
+     * Writes all records to a file, replacing it atomically. Safe to call while updates are
+     * applied, since records are read the same way as by {@link #getFeatures(long)}.
+     *
+     * @param path The snapshot file
+     * @return The number of records written
+     * @throws IOException If the file cannot be written
+     */
+    int writeSnapshot(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+
+            long[] record = new long[RECORD_WORDS];
+            for (int slot = 0; slot <= mask; slot++) {
+                readRecord(slot, record);
+                if (record[KEY] != 0L) {
+                    out.writeLong(record[KEY]);
+                    out.writeLong(record[COUNTS]);
+                    out.writeLong(record[LAST]);
+                    out.writeLong(record[SEEN]);
+                    written++;
+                }
+            }
+            // A zero key marks the end of the records
+            out.writeLong(0L);
+        }
+
+        Files.move(
+                temporary,
+                path,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Loads records from a snapshot file written by {@link #writeSnapshot(Path)}. Must only be
+     * called before updates are submitted. Missing or unreadable files are logged and ignored.
+     *
+     * @param path The snapshot file
+     * @return The number of records loaded
+     */
+    int loadSnapshot(Path path) {
+        if (!Files.isRegularFile(path)) {
+            log.info("No risk feature store snapshot at {}, starting empty", path);
+            return 0;
+        }
+
+        int loaded = 0;
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                log.warn("Ignoring risk feature store snapshot {} with unknown format", path);
+                return 0;
+            }
+
+            long key;
+            while ((key = in.readLong()) != 0L) {
+                long counts = in.readLong();
+                long last = in.readLong();
+                long seen = in.readLong();
+
+                int base = findOrInsert(key) * RECORD_WORDS;
+                beginWrite(base);
+                records.set(base + COUNTS, counts);
+                records.set(base + LAST, last);
+                records.set(base + SEEN, seen);
+                endWrite(base);
+                loaded++;
+            }
+            log.info("Loaded {} cards from risk feature store snapshot {}", loaded, path);
+        } catch (EOFException e) {
+            log.warn("Risk feature store snapshot {} is truncated, loaded {} cards", path, loaded);
+        } catch (IOException e) {
+            log.warn("Failed to load risk feature store snapshot {}: {}", path, e.getMessage());
+        }
+        return loaded;
+    }
+
+    private void writeSnapshotQuietly(Path path) {
+        try {
+            int written = writeSnapshot(path);
+            log.debug("Wrote {} cards to risk feature store snapshot {}", written, path);
+        } catch (IOException e) {
+            log.warn("Failed to write risk feature store snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void submit(Runnable update) {
+        if (pendingUpdates.incrementAndGet() > maxPendingUpdates) {
+            pendingUpdates.decrementAndGet();
+            droppedUpdates.increment();
+            return;
+        }
+
+        try {
+            writer.execute(
+                    () -> {
+                        try {
+                            update.run();
+                        } finally {
+                            pendingUpdates.decrementAndGet();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            // Rejected after shutdown
+            pendingUpdates.decrementAndGet();
+            droppedUpdates.increment();
+        }
+    }
+
+    /** Finds the record of a card, claiming or evicting one if needed. Writer thread only. */
+    private int findOrInsert(long cardFingerprint) {
+        int start = (int) FastHash.mix64(cardFingerprint) & mask;
+        for (int probe = 0; probe < MAX_PROBE; probe++) {
+            int slot = (start + probe) & mask;
+            long key = records.get(slot * RECORD_WORDS + KEY);
+            if (key == cardFingerprint) {
+                referenced.lazySet(slot, 1);
+                return slot;
+            }
+            if (key == 0L) {
+                initRecord(slot, cardFingerprint);
+                occupied.increment();
+                return slot;
+            }
+        }
+
+        // Probe window is full: give referenced records a second chance, evict the first other one
+        int offset = clockHand++ & (MAX_PROBE - 1);
+        int victim = (start + offset) & mask;
+        for (int probe = 0; probe < MAX_PROBE; probe++) {
+            int slot = (start + ((offset + probe) & (MAX_PROBE - 1))) & mask;
+            if (referenced.get(slot) == 0) {
+                victim = slot;
+                break;
+            }
+            referenced.lazySet(slot, 0);
+        }
+
+        initRecord(victim, cardFingerprint);
+        evictions.increment();
+        return victim;
+    }
+
+    private void initRecord(int slot, long cardFingerprint) {
+        int base = slot * RECORD_WORDS;
+        beginWrite(base);
+        records.set(base + KEY, cardFingerprint);
+        records.set(base + COUNTS, 0L);
+        records.set(base + LAST, 0L);
+        records.set(base + SEEN, 0L);
+        endWrite(base);
+        referenced.lazySet(slot, 1);
+    }
+
+    private void beginWrite(int base) {
+        records.set(base + VERSION, records.get(base + VERSION) + 1);
+    }
+
+    private void endWrite(int base) {
+        records.set(base + VERSION, records.get(base + VERSION) + 1);
+    }
+
+    /** Reads a consistent copy of a record, retrying while the writer is updating it. */
+    private void readRecord(int slot, long[] record) {
+        int base = slot * RECORD_WORDS;
+        while (true) {
+            long version = records.get(base + VERSION);
+            if ((version & 1L) == 0L) {
+                for (int word = KEY; word < RECORD_WORDS; word++) {
+                    record[word] = records.get(base + word);
+                }
+                if (records.get(base + VERSION) == version) {
+                    return;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static CardFeatures toFeatures(long[] record) {
+        long counts = record[COUNTS];
+        long last = record[LAST];
+        return CardFeatures.builder()
+                .known(true)
+                .successfulAuthorizations((int) ((counts >>> SUCCESS_SHIFT) & COUNT_MAX))
+                .failedAuthorizations((int) ((counts >>> FAILURE_SHIFT) & COUNT_MAX))
+                .chargebacks((int) (counts & CHARGEBACK_MAX))
+                .lastCountry(unpackCountry((last >>> COUNTRY_SHIFT) & COUNTRY_MASK))
+                .lastAmount(last & AMOUNT_MAX)
+                .lastSeenEpochSecond(record[SEEN])
+                .build();
+    }
+
+    private static long incrementField(long word, int shift, long fieldMax) {
+        long field = (word >>> shift) & fieldMax;
+        return field == fieldMax ? word : word + (1L << shift);
+    }
+
+    // Two upper-case letters, 5 bits each (1-26), 0 if the country is missing or not alpha-2
+    private static long packCountry(String country) {
+        if (country == null || country.length() != 2) {
+            return 0L;
+        }
+        int first = Character.toUpperCase(country.charAt(0)) - 'A' + 1;
+        int second = Character.toUpperCase(country.charAt(1)) - 'A' + 1;
+        if (first < 1 || first > 26 || second < 1 || second > 26) {
+            return 0L;
+        }
+        return ((long) first << 5) | second;
+    }
+
+    private static String unpackCountry(long packed) {
+        if (packed == 0L) {
+            return null;
+        }
+        return new String(
+                new char[] {(char) ('A' + (packed >>> 5) - 1), (char) ('A' + (packed & 31) - 1)});
+    }
+}
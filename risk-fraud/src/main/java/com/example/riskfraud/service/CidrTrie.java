@@ -0,0 +1,393 @@
+package com.example.riskfraud.service;
+
+import java.util.Arrays;
+
+/**
+ * Immutable longest-prefix-match table for CIDR blocks of up to 128 bits, built as a
+ * path-compressed binary radix trie stored in flat primitive arrays.
+ *
+ * <p>Keys are given as two longs, most significant bit first: IPv4 addresses occupy the upper 32
+ * bits of {@code hi}, IPv6 addresses all of {@code hi} and {@code lo}. Every node stores its full
+ * (masked) prefix, so a lookup compares one node per branching point instead of one per bit and
+ * never allocates.
+ *
+ * <p>Lookups are dominated by cache misses, so each node is packed into adjacent words of a single
+ * array, and the top of the trie is replaced by direct-indexed stride tables: one table for the
+ * first {@value #ROOT_BITS} bits, and tables of {@value #STRIDE_BITS} bits below it wherever a
+ * subtree has at least {@value #STRIDE_MIN_NODES} nodes. A table entry holds where to continue (a
+ * node or another table) and the best value found above it, replacing up to a stride of
+ * branching nodes with a single memory access.
+ */
+final class CidrTrie {
+
+    /** Value returned by {@link #lookup} when no prefix matches. */
+    static final int NO_MATCH = -1;
+
+    private static final int NO_CHILD = -1;
+
+    // Node layout: prefix (2 words), children (2 ints), prefix length and value + 1
+    private static final int KEY_HI = 0;
+    private static final int KEY_LO = 1;
+    private static final int CHILDREN = 2;
+    private static final int META = 3;
+    private static final int NODE_WORDS = 4;
+
+    private static final int ROOT_BITS = 16;
+    private static final int STRIDE_BITS = 8;
+    private static final int STRIDE_MIN_NODES = 32;
+
+    private final int bits;
+    private final int prefixes;
+    private final long[] nodes;
+    // Table entries: continuation (high int; a node, NO_CHILD, or -2 - table) and best value
+    private final long[] roots;
+    private long[] strides;
+    private int strideTables;
+
+    private CidrTrie(Builder builder) {
+        this.bits = builder.bits;
+        this.prefixes = builder.prefixes;
+        this.nodes = new long[builder.nodes * NODE_WORDS];
+        for (int node = 0; node < builder.nodes; node++) {
+            int offset = node * NODE_WORDS;
+            nodes[offset + KEY_HI] = builder.keyHi[node];
+            nodes[offset + KEY_LO] = builder.keyLo[node];
+            nodes[offset + CHILDREN] =
+                    ((long) builder.children[2 * node] << 32)
+                            | (builder.children[2 * node + 1] & 0xFFFFFFFFL);
+            nodes[offset + META] =
+                    ((builder.prefixLength[node] & 0xFF) << 8) | builder.values[node];
+        }
+
+        int[] subtreeNodes = subtreeNodes();
+        this.roots = new long[1 << ROOT_BITS];
+        this.strides = new long[0];
+        for (int index = 0; index < roots.length; index++) {
+            roots[index] =
+                    tableEntry(
+                            (long) index << (64 - ROOT_BITS),
+                            0L,
+                            ROOT_BITS,
+                            0,
+                            NO_MATCH,
+                            subtreeNodes);
+        }
+        this.strides = Arrays.copyOf(strides, strideTables << STRIDE_BITS);
+    }
+
+    /**
+     * Finds the value of the longest prefix containing an address.
+     *
+     * @param hi The upper 64 bits of the address
+     * @param lo The lower 64 bits of the address, 0 for IPv4
+     * @return The value of the longest matching prefix, or {@link #NO_MATCH}
+     */
+    int lookup(long hi, long lo) {
+        long entry = roots[(int) (hi >>> (64 - ROOT_BITS))];
+        int node = (int) (entry >> 32);
+        int depth = ROOT_BITS;
+        while (node < NO_CHILD) {
+            int index =
+                    depth < 64
+                            ? (int) (hi >>> (64 - STRIDE_BITS - depth))
+                            : (int) (lo >>> (128 - STRIDE_BITS - depth));
+            entry = strides[((-2 - node) << STRIDE_BITS) | (index & ((1 << STRIDE_BITS) - 1))];
+            node = (int) (entry >> 32);
+            depth += STRIDE_BITS;
+        }
+
+        int best = (int) entry;
+        while (node != NO_CHILD) {
+            int offset = node * NODE_WORDS;
+            int meta = (int) nodes[offset + META];
+            int length = meta >>> 8;
+            if (!matches(hi, lo, nodes[offset + KEY_HI], nodes[offset + KEY_LO], length)) {
+                break;
+            }
+            if ((meta & 0xFF) != 0) {
+                best = (meta & 0xFF) - 1;
+            }
+            if (length == bits) {
+                break;
+            }
+            long children = nodes[offset + CHILDREN];
+            node = bitAt(hi, lo, length) == 0 ? (int) (children >> 32) : (int) children;
+        }
+        return best;
+    }
+
+    /**
+     * Gets the number of distinct prefixes in the trie.
+     *
+     * @return The number of prefixes
+     */
+    int size() {
+        return prefixes;
+    }
+
+    /**
+     * Gets the number of nodes in the trie, including branching nodes without a value.
+     *
+     * @return The number of nodes
+     */
+    int nodeCount() {
+        return nodes.length / NODE_WORDS;
+    }
+
+    /**
+     * Gets the number of {@value #STRIDE_BITS}-bit stride tables below the root table.
+     *
+     * @return The number of stride tables
+     */
+    int strideTableCount() {
+        return strideTables;
+    }
+
+    /**
+     * Computes a stride table entry: walks the nodes whose prefix is fully determined by the
+     * first {@code depth} bits of the key, and adds a stride table below if the remaining subtree
+     * is large enough.
+     */
+    private long tableEntry(
+            long hi, long lo, int depth, int node, int best, int[] subtreeNodes) {
+        while (node != NO_CHILD) {
+            int offset = node * NODE_WORDS;
+            int meta = (int) nodes[offset + META];
+            int length = meta >>> 8;
+            if (length >= depth) {
+                // Branches on bits beyond this table, continue from here
+                break;
+            }
+            if (!matches(hi, lo, nodes[offset + KEY_HI], nodes[offset + KEY_LO], length)) {
+                node = NO_CHILD;
+                break;
+            }
+            if ((meta & 0xFF) != 0) {
+                best = (meta & 0xFF) - 1;
+            }
+            long children = nodes[offset + CHILDREN];
+            node = bitAt(hi, lo, length) == 0 ? (int) (children >> 32) : (int) children;
+        }
+
+        if (node != NO_CHILD
+                && subtreeNodes[node] >= STRIDE_MIN_NODES
+                && depth + STRIDE_BITS <= bits) {
+            int table = strideTables++;
+            if (strides.length < strideTables << STRIDE_BITS) {
+                strides = Arrays.copyOf(strides, Math.max(16, strideTables * 2) << STRIDE_BITS);
+            }
+            for (int index = 0; index < 1 << STRIDE_BITS; index++) {
+                long entry =
+                        depth < 64
+                                ? tableEntry(
+                                        hi | ((long) index << (64 - STRIDE_BITS - depth)),
+                                        lo,
+                                        depth + STRIDE_BITS,
+                                        node,
+                                        best,
+                                        subtreeNodes)
+                                : tableEntry(
+                                        hi,
+                                        lo | ((long) index << (128 - STRIDE_BITS - depth)),
+                                        depth + STRIDE_BITS,
+                                        node,
+                                        best,
+                                        subtreeNodes);
+                // Nested tables may have grown the array, so store after computing the entry
+                strides[(table << STRIDE_BITS) | index] = entry;
+            }
+            node = -2 - table;
+        }
+        return ((long) node << 32) | (best & 0xFFFFFFFFL);
+    }
+
+    /** Counts the nodes of every subtree, children first. */
+    private int[] subtreeNodes() {
+        int count = nodes.length / NODE_WORDS;
+        int[] subtreeNodes = new int[count];
+        int[] order = new int[count];
+        int visited = 0;
+        order[visited++] = 0;
+        for (int i = 0; i < visited; i++) {
+            long children = nodes[order[i] * NODE_WORDS + CHILDREN];
+            if ((int) (children >> 32) != NO_CHILD) {
+                order[visited++] = (int) (children >> 32);
+            }
+            if ((int) children != NO_CHILD) {
+                order[visited++] = (int) children;
+            }
+        }
+        for (int i = visited - 1; i >= 0; i--) {
+            long children = nodes[order[i] * NODE_WORDS + CHILDREN];
+            int left = (int) (children >> 32);
+            int right = (int) children;
+            subtreeNodes[order[i]] =
+                    1
+                            + (left == NO_CHILD ? 0 : subtreeNodes[left])
+                            + (right == NO_CHILD ? 0 : subtreeNodes[right]);
+        }
+        return subtreeNodes;
+    }
+
+    static boolean matches(long hi, long lo, long prefixHi, long prefixLo, int length) {
+        if (length <= 64) {
+            return length == 0 || ((hi ^ prefixHi) & (-1L << (64 - length))) == 0;
+        }
+        return hi == prefixHi && ((lo ^ prefixLo) & (-1L << (128 - length))) == 0;
+    }
+
+    static int bitAt(long hi, long lo, int index) {
+        return index < 64 ? (int) (hi >>> (63 - index)) & 1 : (int) (lo >>> (127 - index)) & 1;
+    }
+
+    static long maskHi(long hi, int length) {
+        return length >= 64 ? hi : length == 0 ? 0L : hi & (-1L << (64 - length));
+    }
+
+    static long maskLo(long lo, int length) {
+        return length <= 64 ? 0L : lo & (-1L << (128 - length));
+    }
+
+    private static int commonPrefixLength(long aHi, long aLo, long bHi, long bLo) {
+        long diff = aHi ^ bHi;
+        if (diff != 0) {
+            return Long.numberOfLeadingZeros(diff);
+        }
+        diff = aLo ^ bLo;
+        return diff == 0 ? 128 : 64 + Long.numberOfLeadingZeros(diff);
+    }
+
+    /** Builds a {@link CidrTrie}. Not thread-safe. */
+    static final class Builder {
+
+        private final int bits;
+        private int nodes;
+        private int prefixes;
+        private long[] keyHi;
+        private long[] keyLo;
+        private byte[] prefixLength;
+        private byte[] values;
+        private int[] children;
+
+        /**
+         * Creates a builder.
+         *
+         * @param bits The address length, 32 for IPv4 or 128 for IPv6
+         */
+        Builder(int bits) {
+            if (bits != 32 && bits != 128) {
+                throw new IllegalArgumentException("Address length must be 32 or 128 bits");
+            }
+            this.bits = bits;
+            this.keyHi = new long[16];
+            this.keyLo = new long[16];
+            this.prefixLength = new byte[16];
+            this.values = new byte[16];
+            this.children = new int[32];
+            newNode(0L, 0L, 0, NO_MATCH);
+        }
+
+        /**
+         * Adds a prefix. Host bits beyond the prefix length are ignored; adding a prefix again
+         * replaces its value.
+         *
+         * @param hi The upper 64 bits of the prefix
+         * @param lo The lower 64 bits of the prefix
+         * @param length The prefix length
+         * @param value The value, between 0 and 126
+         * @return This builder
+         */
+        Builder add(long hi, long lo, int length, int value) {
+            if (length < 0 || length > bits) {
+                throw new IllegalArgumentException("Invalid prefix length: " + length);
+            }
+            if (value < 0 || value >= Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid value: " + value);
+            }
+
+            hi = maskHi(hi, length);
+            lo = maskLo(lo, length);
+
+            // Invariant: the prefix of node is a prefix of the key
+            int node = 0;
+            while (true) {
+                int nodeLength = prefixLength[node] & 0xFF;
+                if (nodeLength == length) {
+                    setValue(node, value);
+                    return this;
+                }
+
+                int slot = 2 * node + bitAt(hi, lo, nodeLength);
+                int child = children[slot];
+                if (child == NO_CHILD) {
+                    // newNode may grow the arrays, so it must run before the store
+                    int leaf = newNode(hi, lo, length, value);
+                    children[slot] = leaf;
+                    return this;
+                }
+
+                int childLength = prefixLength[child] & 0xFF;
+                int common =
+                        Math.min(
+                                commonPrefixLength(hi, lo, keyHi[child], keyLo[child]),
+                                Math.min(length, childLength));
+                if (common == childLength) {
+                    node = child;
+                    continue;
+                }
+
+                // The key diverges from the child's compressed path, split it at the divergence
+                int split =
+                        common == length
+                                ? newNode(hi, lo, length, value)
+                                : newNode(maskHi(hi, common), maskLo(lo, common), common, NO_MATCH);
+                if (common != length) {
+                    int leaf = newNode(hi, lo, length, value);
+                    children[2 * split + bitAt(hi, lo, common)] = leaf;
+                }
+                children[2 * split + bitAt(keyHi[child], keyLo[child], common)] = child;
+                children[slot] = split;
+                return this;
+            }
+        }
+
+        /**
+         * Builds the trie. The builder should not be used afterwards.
+         *
+         * @return The trie
+         */
+        CidrTrie build() {
+            return new CidrTrie(this);
+        }
+
+        private int newNode(long hi, long lo, int length, int value) {
+            if (nodes == prefixLength.length) {
+                int capacity = nodes * 2;
+                keyHi = Arrays.copyOf(keyHi, capacity);
+                keyLo = Arrays.copyOf(keyLo, capacity);
+                prefixLength = Arrays.copyOf(prefixLength, capacity);
+                values = Arrays.copyOf(values, capacity);
+                children = Arrays.copyOf(children, capacity * 2);
+            }
+
+            int node = nodes++;
+            keyHi[node] = hi;
+            keyLo[node] = lo;
+            prefixLength[node] = (byte) length;
+            children[2 * node] = NO_CHILD;
+            children[2 * node + 1] = NO_CHILD;
+            setValue(node, value);
+            return node;
+        }
+
+        private void setValue(int node, int value) {
+            if (value == NO_MATCH) {
+                return;
+            }
+            if (values[node] == 0) {
+                prefixes++;
+            }
+            values[node] = (byte) (value + 1);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.riskfraud.service;
+
+import com.example.shared.util.FastHash;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which devices have been seen before, and which are known to be bad.
+ *
+ * <p>Seen devices are kept in a {@link RotatingBloomFilter}, so memory is fixed regardless of the
+ * number of devices: a device is remembered for at least {@code generations - 1} generation periods
+ * after it was last recorded, and an unseen device is reported as seen with at most the configured
+ * false-positive rate. Generations rotate when their period ends or when they reach their expected
+ * number of devices, whichever comes first.
+ *
+ * <p>Known-bad devices are a small exact set, since a false positive there would wrongly flag a
+ * customer.
+ *
+ * <p>Both can be snapshotted to a local file, periodically and on shutdown, and are reloaded from
+ * it on startup. Snapshots are disabled unless a path is configured.
+ */
+@Slf4j
+@Service
+public class DeviceReputationService {
+
+    private static final int SNAPSHOT_MAGIC = 0x52464452; // "RFDR"
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    // Keeps device hashes independent from other uses of FastHash
+    private static final long DEVICE_SEED = 0x0DE7_1CE5_EED0_0001L;
+
+    private final RotatingBloomFilter seenDevices;
+    private final Set<String> knownBadDevices = ConcurrentHashMap.newKeySet();
+    private final long generationMillis;
+    private final Path snapshotPath;
+    private final long snapshotIntervalSeconds;
+    private final ScheduledExecutorService maintenance;
+
+    /**
+     * Creates the service.
+     *
+     * @param expectedDevicesPerGeneration The number of distinct devices expected per generation
+     * @param falsePositiveRate The rate at which unseen devices may be reported as seen
+     * @param generations The number of generations, at least 2
+     * @param generationHours The period of a generation
+     * @param snapshotPath The snapshot file, or empty to disable snapshots
+     * @param snapshotIntervalSeconds The interval between periodic snapshots, 0 to only snapshot on
+     *     shutdown
+     */
+    public DeviceReputationService(
+            @Value("${risk-fraud.device-reputation.expected-devices-per-generation:1000000}")
+                    long expectedDevicesPerGeneration,
+            @Value("${risk-fraud.device-reputation.false-positive-rate:0.01}")
+                    double falsePositiveRate,
+            @Value("${risk-fraud.device-reputation.generations:4}") int generations,
+            @Value("${risk-fraud.device-reputation.generation-hours:168}") long generationHours,
+            @Value("${risk-fraud.device-reputation.snapshot-path:}") String snapshotPath,
+            @Value("${risk-fraud.device-reputation.snapshot-interval-seconds:900}")
+                    long snapshotIntervalSeconds) {
+        if (generationHours <= 0) {
+            throw new IllegalArgumentException("Generation period must be positive");
+        }
+
+        this.seenDevices =
+                new RotatingBloomFilter(
+                        generations,
+                        expectedDevicesPerGeneration,
+                        falsePositiveRate,
+                        System.currentTimeMillis());
+        this.generationMillis = Duration.ofHours(generationHours).toMillis();
+        this.snapshotPath =
+                snapshotPath == null || snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+        this.maintenance =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "risk-device-reputation");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @PostConstruct
+    public void start() {
+        if (snapshotPath != null) {
+            loadSnapshot(snapshotPath);
+        }
+
+        // Rotation also runs on the maintenance thread, so it never overlaps with itself
+        maintenance.scheduleWithFixedDelay(
+                () -> rotateIfDue(System.currentTimeMillis()), 1, 1, TimeUnit.MINUTES);
+        if (snapshotPath != null && snapshotIntervalSeconds > 0) {
+            maintenance.scheduleWithFixedDelay(
+                    () -> writeSnapshotQuietly(snapshotPath),
+                    snapshotIntervalSeconds,
+                    snapshotIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        maintenance.shutdownNow();
+        if (snapshotPath != null) {
+            writeSnapshotQuietly(snapshotPath);
+        }
+    }
+
+    /**
+     * Checks if a device has been recorded before.
+     *
+     * @param deviceId The device identifier
+     * @return true if the device was (probably) recorded within the retention period
+     */
+    public boolean isKnownDevice(String deviceId) {
+        return deviceId != null && seenDevices.mightContain(hash(deviceId));
+    }
+
+    /**
+     * Records that a device has been seen.
+     *
+     * @param deviceId The device identifier, ignored if null
+     */
+    public void recordDevice(String deviceId) {
+        if (deviceId != null) {
+            seenDevices.put(hash(deviceId));
+        }
+    }
+
+    /**
+     * Checks if a device is known to be bad.
+     *
+     * @param deviceId The device identifier
+     * @return true if the device was marked as bad
+     */
+    public boolean isKnownBadDevice(String deviceId) {
+        return deviceId != null && knownBadDevices.contains(deviceId);
+    }
+
+    /**
+     * Marks a device as bad, for example after a confirmed fraud case.
+     *
+     * @param deviceId The device identifier
+     */
+    public void markBadDevice(String deviceId) {
+        if (deviceId == null || deviceId.isBlank()) {
+            throw new IllegalArgumentException("Device ID cannot be empty");
+        }
+        knownBadDevices.add(deviceId);
+    }
+
+    /**
+     * Removes a device from the known-bad devices.
+     *
+     * @param deviceId The device identifier
+     * @return true if the device was marked as bad
+     */
+    public boolean clearBadDevice(String deviceId) {
+        return deviceId != null && knownBadDevices.remove(deviceId);
+    }
+
+    /**
+     * Gets the approximate number of distinct devices seen within the retention period.
+     *
+     * @return The device count
+     */
+    public long getApproximateDeviceCount() {
+        return seenDevices.getApproximateElementCount();
+    }
+
+    /**
+     * Starts a new generation of seen devices, dropping the oldest one, if the current generation
+     * is older than its period or full.
+     *
+     * @param nowMillis The current time in epoch milliseconds
+     * @return true if the generations were rotated
+     */
+    boolean rotateIfDue(long nowMillis) {
+        boolean expired =
+                nowMillis - seenDevices.getCurrentGenerationStartMillis() >= generationMillis;
+        boolean full = seenDevices.isCurrentGenerationFull();
+        if (!expired && !full) {
+            return false;
+        }
+
+        if (full && !expired) {
+            log.warn(
+                    "Seen device generation is full before the end of its period, consider raising"
+                            + " the expected devices per generation");
+        }
+        seenDevices.rotate(nowMillis);
+        return true;
+    }
+
+    /**
+     * Writes the seen and known-bad devices to a file, replacing it atomically. Safe to call while
+     * devices are recorded; devices recorded during the snapshot may be missed.
+     *
+     * @param path The snapshot file
+     * @throws IOException If the file cannot be written
+     */
+    void writeSnapshot(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+
+            String[] badDevices = knownBadDevices.toArray(new String[0]);
+            out.writeInt(badDevices.length);
+            for (String deviceId : badDevices) {
+                out.writeUTF(deviceId);
+            }
+            seenDevices.writeTo(out);
+        }
+
+        Files.move(
+                temporary,
+                path,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads devices from a snapshot file written by {@link #writeSnapshot(Path)}. Must only be
+     * called before devices are recorded. Missing or unreadable files are logged and ignored; seen
+     * devices are also ignored if the filter was configured differently.
+     *
+     * @param path The snapshot file
+     */
+    void loadSnapshot(Path path) {
+        if (!Files.isRegularFile(path)) {
+            log.info("No device reputation snapshot at {}, starting empty", path);
+            return;
+        }
+
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                log.warn("Ignoring device reputation snapshot {} with unknown format", path);
+                return;
+            }
+
+            int badDevices = in.readInt();
+            for (int i = 0; i < badDevices; i++) {
+                knownBadDevices.add(in.readUTF());
+            }
+            if (!seenDevices.readFrom(in)) {
+                log.warn(
+                        "Seen devices in snapshot {} were written with a different configuration,"
+                                + " starting empty",
+                        path);
+            }
+            log.info(
+                    "Loaded {} known-bad and about {} seen devices from snapshot {}",
+                    badDevices,
+                    seenDevices.getApproximateElementCount(),
+                    path);
+        } catch (IOException e) {
+            log.warn("Failed to load device reputation snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void writeSnapshotQuietly(Path path) {
+        try {
+            writeSnapshot(path);
+        } catch (IOException e) {
+            log.warn("Failed to write device reputation snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static long hash(String deviceId) {
+        return FastHash.hash64(deviceId, DEVICE_SEED);
+    }
+}
@@ -0,0 +1,521 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.EntityCluster;
+
+import java.util.Arrays;
+
+/**
+ * Incremental disjoint-set forest over entities seen together in transactions (card fingerprints,
+ * devices, IP addresses and emails), so that cards sharing a device, IP address or email end up in
+ * one cluster. All state lives in primitive arrays: entity keys are mapped to dense node numbers by
+ * an open-addressing index, and each node has a parent, with union by size and path compression so
+ * that finding a node's cluster takes near-constant time. Each cluster root holds the cluster's
+ * aggregates.
+ *
+ * <p>Shared infrastructure such as carrier NAT addresses would chain unrelated cards into one
+ * giant cluster, so each entity joins at most a fixed number of clusters to its own; later cards
+ * only add to their own cluster.
+ *
+ * <p>Memory is bounded by the node capacity. Disjoint sets cannot remove nodes, so {@link #compact}
+ * rebuilds the forest from the nodes seen since a cutoff: surviving nodes stay together and keep
+ * their cluster's transaction, failure and chargeback counts, while node and card counts are
+ * recounted. Survivors that were only connected through removed nodes stay joined.
+ *
+ * <p>Updates and lookups are synchronized; every operation is a few array accesses. A compaction
+ * only holds the lock to copy the arrays and to swap in the result: it rebuilds the copy off the
+ * lock, while updates keep going to the current forest and are recorded, then replayed on the
+ * rebuilt forest before it is swapped in. It briefly needs memory for a second forest.
+ */
+final class EntityLinkGraph {
+
+    static final int NOT_FOUND = -1;
+
+    // Kinds of the updates recorded during a compaction
+    private static final long LINK = 0L;
+    private static final long FAILURE = 1L;
+    private static final long CHARGEBACK = 2L;
+    private static final int PENDING_FIELDS = 6;
+
+    private final int capacity;
+    private final int maxLinksPerEntity;
+    private final Object compactionLock = new Object();
+
+    // Guarded by this
+    private Forest forest;
+    // Updates since the running compaction copied the forest, null if none is running
+    private long[] pending;
+    private int pendingLength;
+
+    /**
+     * Creates an empty graph.
+     *
+     * @param capacity The maximum number of nodes
+     * @param maxLinksPerEntity How many other clusters an entity may join to its own
+     */
+    EntityLinkGraph(int capacity, int maxLinksPerEntity) {
+        if (capacity < 16 || capacity > (1 << 28)) {
+            throw new IllegalArgumentException(
+                    "Entity graph capacity must be between 16 and " + (1 << 28));
+        }
+        if (maxLinksPerEntity < 1) {
+            throw new IllegalArgumentException("Links per entity must be positive");
+        }
+
+        this.capacity = capacity;
+        this.maxLinksPerEntity = maxLinksPerEntity;
+        this.forest = new Forest(capacity, maxLinksPerEntity);
+    }
+
+    /**
+     * Links the entities of a transaction into one cluster and counts the transaction. Keys of 0
+     * are absent. The card is the anchor; without a card, the first present entity is.
+     *
+     * @param cardKey The card key
+     * @param deviceKey The device key
+     * @param ipKey The IP address key
+     * @param emailKey The email key
+     * @param nowMillis The current time in epoch milliseconds
+     * @return false if the graph is full and must be compacted first
+     */
+    synchronized boolean link(
+            long cardKey, long deviceKey, long ipKey, long emailKey, long nowMillis) {
+        if (!forest.link(cardKey, deviceKey, ipKey, emailKey, nowMillis)) {
+            return false;
+        }
+        if (pending != null) {
+            record(LINK, cardKey, deviceKey, ipKey, emailKey, nowMillis);
+        }
+        return true;
+    }
+
+    /**
+     * Counts a failed transaction for the cluster of an entity.
+     *
+     * @param key The entity key
+     */
+    synchronized void recordFailure(long key) {
+        forest.recordFailure(key);
+        if (pending != null) {
+            record(FAILURE, key, 0L, 0L, 0L, 0L);
+        }
+    }
+
+    /**
+     * Counts a chargeback for the cluster of an entity.
+     *
+     * @param key The entity key
+     */
+    synchronized void recordChargeback(long key) {
+        forest.recordChargeback(key);
+        if (pending != null) {
+            record(CHARGEBACK, key, 0L, 0L, 0L, 0L);
+        }
+    }
+
+    /**
+     * Gets the cluster the entities of a transaction would form, summing the clusters they are in.
+     * Keys of 0 and unknown keys are ignored.
+     *
+     * @param cardKey The card key
+     * @param deviceKey The device key
+     * @param ipKey The IP address key
+     * @param emailKey The email key
+     * @return The cluster aggregates, all zero if no entity is known
+     */
+    synchronized EntityCluster cluster(long cardKey, long deviceKey, long ipKey, long emailKey) {
+        return forest.cluster(cardKey, deviceKey, ipKey, emailKey);
+    }
+
+    /**
+     * Rebuilds the graph from the nodes seen at or after a cutoff, and additionally drops the least
+     * recently seen nodes beyond a maximum count. Concurrent compactions run one after the other.
+     *
+     * @param cutoffMillis Nodes last seen before this time are removed
+     * @param maxNodes The most nodes to keep, apart from nodes seen at the same time as the
+     *     oldest kept one
+     * @return The number of nodes removed
+     */
+    int compact(long cutoffMillis, int maxNodes) {
+        synchronized (compactionLock) {
+            Forest compacted = new Forest(capacity, maxLinksPerEntity);
+            synchronized (this) {
+                forest.copyTo(compacted);
+                pending = new long[PENDING_FIELDS * 64];
+                pendingLength = 0;
+            }
+
+            int removed;
+            try {
+                removed = compacted.compact(cutoffMillis, maxNodes);
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    pending = null;
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                // Nodes removed above come back as new nodes if they were seen in the meantime
+                for (int i = 0; i < pendingLength; i += PENDING_FIELDS) {
+                    replay(compacted, i);
+                }
+                forest = compacted;
+                pending = null;
+            }
+            return removed;
+        }
+    }
+
+    synchronized int size() {
+        return forest.nodeCount;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private void record(long kind, long a, long b, long c, long d, long nowMillis) {
+        if (pendingLength == pending.length) {
+            pending = Arrays.copyOf(pending, pendingLength * 2);
+        }
+        pending[pendingLength] = kind;
+        pending[pendingLength + 1] = a;
+        pending[pendingLength + 2] = b;
+        pending[pendingLength + 3] = c;
+        pending[pendingLength + 4] = d;
+        pending[pendingLength + 5] = nowMillis;
+        pendingLength += PENDING_FIELDS;
+    }
+
+    private void replay(Forest target, int offset) {
+        long kind = pending[offset];
+        long key = pending[offset + 1];
+        if (kind == LINK) {
+            target.link(
+                    key,
+                    pending[offset + 2],
+                    pending[offset + 3],
+                    pending[offset + 4],
+                    pending[offset + 5]);
+        } else if (kind == FAILURE) {
+            target.recordFailure(key);
+        } else {
+            target.recordChargeback(key);
+        }
+    }
+
+    private static int saturatedIncrement(int value) {
+        return value == Integer.MAX_VALUE ? value : value + 1;
+    }
+
+    private static int saturatedAdd(int a, int b) {
+        long sum = (long) a + b;
+        return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    /** The arrays of one version of the graph. Not thread-safe. */
+    private static final class Forest {
+
+        private final int capacity;
+        private final int maxLinksPerEntity;
+        private final int indexMask;
+
+        // Open-addressing index from entity key to node number, key 0 marks an empty slot
+        private final long[] indexKeys;
+        private final int[] indexNodes;
+
+        // Per node
+        private final long[] nodeKeys;
+        private final boolean[] cardNodes;
+        private final int[] parent;
+        private final int[] links;
+        private final long[] lastSeen;
+
+        // Per cluster, valid at the root node
+        private final int[] clusterNodes;
+        private final int[] clusterCards;
+        private final int[] clusterTransactions;
+        private final int[] clusterFailures;
+        private final int[] clusterChargebacks;
+
+        private int nodeCount;
+
+        private Forest(int capacity, int maxLinksPerEntity) {
+            this.capacity = capacity;
+            this.maxLinksPerEntity = maxLinksPerEntity;
+            // Load factor at most 50%
+            int indexSize = Integer.highestOneBit(capacity - 1) << 2;
+            this.indexMask = indexSize - 1;
+            this.indexKeys = new long[indexSize];
+            this.indexNodes = new int[indexSize];
+            this.nodeKeys = new long[capacity];
+            this.cardNodes = new boolean[capacity];
+            this.parent = new int[capacity];
+            this.links = new int[capacity];
+            this.lastSeen = new long[capacity];
+            this.clusterNodes = new int[capacity];
+            this.clusterCards = new int[capacity];
+            this.clusterTransactions = new int[capacity];
+            this.clusterFailures = new int[capacity];
+            this.clusterChargebacks = new int[capacity];
+        }
+
+        private boolean link(
+                long cardKey, long deviceKey, long ipKey, long emailKey, long nowMillis) {
+            int present =
+                    (cardKey != 0L ? 1 : 0)
+                            + (deviceKey != 0L ? 1 : 0)
+                            + (ipKey != 0L ? 1 : 0)
+                            + (emailKey != 0L ? 1 : 0);
+            if (present == 0) {
+                return true;
+            }
+            if (nodeCount + present > capacity) {
+                return false;
+            }
+
+            int anchor = NOT_FOUND;
+            if (cardKey != 0L) {
+                anchor = addNode(cardKey, true, nowMillis);
+            }
+            anchor = join(anchor, deviceKey, nowMillis);
+            anchor = join(anchor, ipKey, nowMillis);
+            anchor = join(anchor, emailKey, nowMillis);
+
+            int root = find(anchor);
+            clusterTransactions[root] = saturatedIncrement(clusterTransactions[root]);
+            return true;
+        }
+
+        private void recordFailure(long key) {
+            int node = findNode(key);
+            if (node != NOT_FOUND) {
+                int root = find(node);
+                clusterFailures[root] = saturatedIncrement(clusterFailures[root]);
+            }
+        }
+
+        private void recordChargeback(long key) {
+            int node = findNode(key);
+            if (node != NOT_FOUND) {
+                int root = find(node);
+                clusterChargebacks[root] = saturatedIncrement(clusterChargebacks[root]);
+            }
+        }
+
+        private EntityCluster cluster(long cardKey, long deviceKey, long ipKey, long emailKey) {
+            int root1 = rootOf(cardKey);
+            int root2 = rootOf(deviceKey);
+            int root3 = rootOf(ipKey);
+            int root4 = rootOf(emailKey);
+
+            EntityCluster cluster = new EntityCluster();
+            addCluster(cluster, root1);
+            if (root2 != root1) {
+                addCluster(cluster, root2);
+            }
+            if (root3 != root1 && root3 != root2) {
+                addCluster(cluster, root3);
+            }
+            if (root4 != root1 && root4 != root2 && root4 != root3) {
+                addCluster(cluster, root4);
+            }
+            return cluster;
+        }
+
+        // Copies the nodes and clusters, but not the index, which compact() rebuilds
+        private void copyTo(Forest target) {
+            int count = nodeCount;
+            System.arraycopy(nodeKeys, 0, target.nodeKeys, 0, count);
+            System.arraycopy(cardNodes, 0, target.cardNodes, 0, count);
+            System.arraycopy(parent, 0, target.parent, 0, count);
+            System.arraycopy(links, 0, target.links, 0, count);
+            System.arraycopy(lastSeen, 0, target.lastSeen, 0, count);
+            System.arraycopy(clusterNodes, 0, target.clusterNodes, 0, count);
+            System.arraycopy(clusterCards, 0, target.clusterCards, 0, count);
+            System.arraycopy(clusterTransactions, 0, target.clusterTransactions, 0, count);
+            System.arraycopy(clusterFailures, 0, target.clusterFailures, 0, count);
+            System.arraycopy(clusterChargebacks, 0, target.clusterChargebacks, 0, count);
+            target.nodeCount = count;
+        }
+
+        private int compact(long cutoffMillis, int maxNodes) {
+            int oldCount = nodeCount;
+            long cutoff = cutoffMillis;
+            if (maxNodes <= 0) {
+                cutoff = Long.MAX_VALUE;
+            } else if (maxNodes < oldCount) {
+                long[] times = Arrays.copyOf(lastSeen, oldCount);
+                Arrays.sort(times);
+                // Nodes seen at the same time as the oldest kept node are kept too
+                cutoff = Math.max(cutoff, times[oldCount - maxNodes]);
+            }
+
+            // New node number of each surviving node and new root of each old root
+            int[] renumbered = new int[oldCount];
+            int[] newRoots = new int[oldCount];
+            Arrays.fill(newRoots, NOT_FOUND);
+            int[] oldRoots = new int[oldCount];
+            int survivors = 0;
+            for (int node = 0; node < oldCount; node++) {
+                oldRoots[node] = find(node);
+                renumbered[node] = lastSeen[node] >= cutoff ? survivors++ : NOT_FOUND;
+            }
+
+            // Aggregates of the old roots, read before the arrays are overwritten in place
+            int[] transactions = new int[oldCount];
+            int[] failures = new int[oldCount];
+            int[] chargebacks = new int[oldCount];
+            for (int node = 0; node < oldCount; node++) {
+                if (oldRoots[node] == node) {
+                    transactions[node] = clusterTransactions[node];
+                    failures[node] = clusterFailures[node];
+                    chargebacks[node] = clusterChargebacks[node];
+                }
+            }
+
+            // Survivors only move to lower or equal node numbers, so compacting in place is safe
+            Arrays.fill(indexKeys, 0L);
+            Arrays.fill(clusterNodes, 0, oldCount, 0);
+            Arrays.fill(clusterCards, 0, oldCount, 0);
+            for (int node = 0; node < oldCount; node++) {
+                int target = renumbered[node];
+                if (target == NOT_FOUND) {
+                    continue;
+                }
+
+                int oldRoot = oldRoots[node];
+                int root = newRoots[oldRoot];
+                if (root == NOT_FOUND) {
+                    root = target;
+                    newRoots[oldRoot] = root;
+                    clusterTransactions[root] = transactions[oldRoot];
+                    clusterFailures[root] = failures[oldRoot];
+                    clusterChargebacks[root] = chargebacks[oldRoot];
+                }
+
+                nodeKeys[target] = nodeKeys[node];
+                cardNodes[target] = cardNodes[node];
+                links[target] = links[node];
+                lastSeen[target] = lastSeen[node];
+                parent[target] = root;
+                clusterNodes[root]++;
+                if (cardNodes[target]) {
+                    clusterCards[root]++;
+                }
+                putIndex(nodeKeys[target], target);
+            }
+            nodeCount = survivors;
+            return oldCount - survivors;
+        }
+
+        private int join(int anchor, long key, long nowMillis) {
+            if (key == 0L) {
+                return anchor;
+            }
+            int node = addNode(key, false, nowMillis);
+            if (anchor == NOT_FOUND) {
+                return node;
+            }
+
+            int anchorRoot = find(anchor);
+            int nodeRoot = find(node);
+            if (anchorRoot != nodeRoot && links[node] < maxLinksPerEntity) {
+                links[node]++;
+                union(anchorRoot, nodeRoot);
+            }
+            return anchor;
+        }
+
+        private int addNode(long key, boolean card, long nowMillis) {
+            int slot = indexSlot(key);
+            if (indexKeys[slot] == key) {
+                int node = indexNodes[slot];
+                lastSeen[node] = Math.max(lastSeen[node], nowMillis);
+                return node;
+            }
+
+            int node = nodeCount++;
+            indexKeys[slot] = key;
+            indexNodes[slot] = node;
+            nodeKeys[node] = key;
+            cardNodes[node] = card;
+            parent[node] = node;
+            links[node] = 0;
+            lastSeen[node] = nowMillis;
+            clusterNodes[node] = 1;
+            clusterCards[node] = card ? 1 : 0;
+            clusterTransactions[node] = 0;
+            clusterFailures[node] = 0;
+            clusterChargebacks[node] = 0;
+            return node;
+        }
+
+        private void union(int rootA, int rootB) {
+            // Union by size: the smaller cluster hangs below the larger one's root
+            int root = clusterNodes[rootA] >= clusterNodes[rootB] ? rootA : rootB;
+            int child = root == rootA ? rootB : rootA;
+            parent[child] = root;
+            clusterNodes[root] += clusterNodes[child];
+            clusterCards[root] += clusterCards[child];
+            clusterTransactions[root] =
+                    saturatedAdd(clusterTransactions[root], clusterTransactions[child]);
+            clusterFailures[root] = saturatedAdd(clusterFailures[root], clusterFailures[child]);
+            clusterChargebacks[root] =
+                    saturatedAdd(clusterChargebacks[root], clusterChargebacks[child]);
+        }
+
+        private int find(int node) {
+            int root = node;
+            while (parent[root] != root) {
+                root = parent[root];
+            }
+            // Path compression
+            while (parent[node] != root) {
+                int next = parent[node];
+                parent[node] = root;
+                node = next;
+            }
+            return root;
+        }
+
+        private int rootOf(long key) {
+            if (key == 0L) {
+                return NOT_FOUND;
+            }
+            int node = findNode(key);
+            return node == NOT_FOUND ? NOT_FOUND : find(node);
+        }
+
+        private void addCluster(EntityCluster cluster, int root) {
+            if (root == NOT_FOUND) {
+                return;
+            }
+            cluster.setEntities(cluster.getEntities() + clusterNodes[root]);
+            cluster.setCards(cluster.getCards() + clusterCards[root]);
+            cluster.setTransactions(cluster.getTransactions() + clusterTransactions[root]);
+            cluster.setFailures(cluster.getFailures() + clusterFailures[root]);
+            cluster.setChargebacks(cluster.getChargebacks() + clusterChargebacks[root]);
+        }
+
+        private int findNode(long key) {
+            int slot = indexSlot(key);
+            return indexKeys[slot] == key ? indexNodes[slot] : NOT_FOUND;
+        }
+
+        // The slot holding the key, or the empty slot where it belongs
+        private int indexSlot(long key) {
+            int slot = (int) (key ^ (key >>> 32)) & indexMask;
+            while (indexKeys[slot] != 0L && indexKeys[slot] != key) {
+                slot = (slot + 1) & indexMask;
+            }
+            return slot;
+        }
+
+        private void putIndex(long key, int node) {
+            int slot = indexSlot(key);
+            indexKeys[slot] = key;
+            indexNodes[slot] = node;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.EntityCluster;
+import com.example.riskfraud.model.Transaction;
+import com.example.shared.util.FastHash;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Links the cards, devices, IP addresses and emails of transactions into clusters in an {@link
+ * EntityLinkGraph}, to expose fraud rings that spread over many cards but share devices, IP
+ * addresses or emails. Each cluster counts its transactions, declines and chargebacks.
+ *
+ * <p>Nodes not seen for the maximum age are removed by a periodic compaction. If the graph fills up
+ * before that, new links are skipped until a compaction in the background has dropped the least
+ * recently seen quarter of the nodes.
+ */
+@Slf4j
+@Service
+public class EntityLinkService {
+
+    private static final long CARD_SEED = FastHash.hash64("entity-card");
+    private static final long DEVICE_SEED = FastHash.hash64("entity-device");
+    private static final long IP_SEED = FastHash.hash64("entity-ip");
+    private static final long EMAIL_SEED = FastHash.hash64("entity-email");
+
+    private final EntityLinkGraph graph;
+    private final long maxAgeMillis;
+    private final long compactionIntervalMinutes;
+    private final ScheduledExecutorService maintenance;
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+    private final LongAdder skippedLinks = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    /**
+     * Creates the service.
+     *
+     * @param capacity The maximum number of entities in the graph
+     * @param maxLinksPerEntity How many other clusters one device, IP address or email may join
+     * @param maxAgeHours How long an entity is kept after it was last seen
+     * @param compactionIntervalMinutes The interval between compactions of stale entities
+     */
+    public EntityLinkService(
+            @Value("${risk-fraud.entity-graph.capacity:262144}") int capacity,
+            @Value("${risk-fraud.entity-graph.max-links-per-entity:50}") int maxLinksPerEntity,
+            @Value("${risk-fraud.entity-graph.max-age-hours:168}") long maxAgeHours,
+            @Value("${risk-fraud.entity-graph.compaction-interval-minutes:60}")
+                    long compactionIntervalMinutes) {
+        if (maxAgeHours <= 0 || compactionIntervalMinutes <= 0) {
+            throw new IllegalArgumentException(
+                    "Entity age and compaction interval must be positive");
+        }
+
+        this.graph = new EntityLinkGraph(capacity, maxLinksPerEntity);
+        this.maxAgeMillis = Duration.ofHours(maxAgeHours).toMillis();
+        this.compactionIntervalMinutes = compactionIntervalMinutes;
+        this.maintenance =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "risk-entity-graph");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @PostConstruct
+    public void start() {
+        maintenance.scheduleWithFixedDelay(
+                this::compactQuietly,
+                compactionIntervalMinutes,
+                compactionIntervalMinutes,
+                TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        maintenance.shutdownNow();
+    }
+
+    /**
+     * Links the entities of a transaction and counts the transaction for their cluster.
+     *
+     * @param transaction The transaction being assessed
+     */
+    public void recordAttempt(Transaction transaction) {
+        recordAttempt(transaction, System.currentTimeMillis());
+    }
+
+    void recordAttempt(Transaction transaction, long nowMillis) {
+        boolean linked =
+                graph.link(
+                        cardKey(transaction),
+                        key(transaction.getUserDeviceId(), DEVICE_SEED),
+                        key(transaction.getUserIpAddress(), IP_SEED),
+                        emailKey(transaction),
+                        nowMillis);
+        if (!linked) {
+            skippedLinks.increment();
+            if (compactionPending.compareAndSet(false, true)) {
+                log.warn("Entity graph is full, compacting in the background");
+                int keep = graph.capacity() * 3 / 4;
+                maintenance.execute(() -> compact(nowMillis - maxAgeMillis, keep));
+            }
+        }
+    }
+
+    /**
+     * Counts a declined transaction for the cluster of its card.
+     *
+     * @param transaction The declined transaction
+     */
+    public void recordDecline(Transaction transaction) {
+        long key = anchorKey(transaction);
+        if (key != 0L) {
+            graph.recordFailure(key);
+        }
+    }
+
+    /**
+     * Counts a chargeback for the cluster of a transaction's card.
+     *
+     * @param transaction The charged back transaction
+     */
+    public void recordChargeback(Transaction transaction) {
+        long key = anchorKey(transaction);
+        if (key != 0L) {
+            graph.recordChargeback(key);
+        }
+    }
+
+    /**
+     * Gets the cluster a transaction's entities belong to. If they are in several clusters, which
+     * this transaction would link, the aggregates of all of them are summed.
+     *
+     * @param transaction The transaction
+     * @return The cluster aggregates, all zero if none of its entities is known
+     */
+    public EntityCluster getCluster(Transaction transaction) {
+        return graph.cluster(
+                cardKey(transaction),
+                key(transaction.getUserDeviceId(), DEVICE_SEED),
+                key(transaction.getUserIpAddress(), IP_SEED),
+                emailKey(transaction));
+    }
+
+    /**
+     * Gets the number of entities in the graph.
+     *
+     * @return The number of entities
+     */
+    public int getEntityCount() {
+        return graph.size();
+    }
+
+    /**
+     * Gets the number of transactions that were not linked because the graph was full.
+     *
+     * @return The number of skipped transactions
+     */
+    public long getSkippedLinks() {
+        return skippedLinks.sum();
+    }
+
+    /**
+     * Gets the number of compactions since startup.
+     *
+     * @return The compaction count
+     */
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    /**
+     * Removes entities last seen before a cutoff, and the least recently seen entities beyond a
+     * maximum count.
+     *
+     * @param cutoffMillis Entities last seen before this time are removed
+     * @param maxEntities The most entities to keep
+     * @return The number of entities removed
+     */
+    int compact(long cutoffMillis, int maxEntities) {
+        try {
+            long start = System.nanoTime();
+            int removed = graph.compact(cutoffMillis, maxEntities);
+            compactions.increment();
+            log.info(
+                    "Compacted entity graph, removed {} entities, kept {} in {} ms",
+                    removed,
+                    graph.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return removed;
+        } finally {
+            compactionPending.set(false);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact(System.currentTimeMillis() - maxAgeMillis, graph.capacity());
+        } catch (RuntimeException e) {
+            // Keep the compaction task scheduled
+            log.error("Failed to compact entity graph", e);
+        }
+    }
+
+    // The entity declines and chargebacks are counted for: the card, else the first other entity
+    private long anchorKey(Transaction transaction) {
+        long key = cardKey(transaction);
+        if (key == 0L) {
+            key = key(transaction.getUserDeviceId(), DEVICE_SEED);
+        }
+        if (key == 0L) {
+            key = key(transaction.getUserIpAddress(), IP_SEED);
+        }
+        if (key == 0L) {
+            key = emailKey(transaction);
+        }
+        return key;
+    }
+
+    private static long cardKey(Transaction transaction) {
+        long fingerprint = transaction.getCardFingerprint();
+        return fingerprint == 0L ? 0L : nonZero(FastHash.hash64(fingerprint, CARD_SEED));
+    }
+
+    private static long emailKey(Transaction transaction) {
+        String email = transaction.getUserEmail();
+        if (email == null || email.isBlank()) {
+            return 0L;
+        }
+        return key(email.trim().toLowerCase(Locale.ROOT), EMAIL_SEED);
+    }
+
+    private static long key(String value, long seed) {
+        if (value == null || value.isEmpty()) {
+            return 0L;
+        }
+        return nonZero(FastHash.hash64(value, seed));
+    }
+
+    // 0 marks an absent entity
+    private static long nonZero(long key) {
+        return key != 0L ? key : 1L;
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.IpReputation;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Looks up the reputation (VPN, proxy, TOR) of IPv4 and IPv6 addresses in a list of CIDR blocks.
+ *
+ * <p>The list is a local text file with one block per line, followed by its reputation:
+ *
+ * <pre>
+ * # comment
+ * 198.51.100.0/24 VPN
+ * 2001:db8::/32   PROXY
+ * 203.0.113.7     TOR
+ * 198.51.100.64/26 CLEAN
+ * </pre>
+ *
+ * The most specific block wins, so {@code CLEAN} entries can carve exceptions out of larger blocks.
+ * IPv4-mapped IPv6 addresses are looked up in the IPv4 blocks.
+ *
+ * <p>Blocks are held in {@link CidrTrie}s that are rebuilt from scratch and swapped in atomically
+ * when the file changes, so lookups never see a partially loaded list and never block.
+ */
+@Slf4j
+@Service
+public class IpReputationService {
+
+    private static final IpReputation[] REPUTATIONS = IpReputation.values();
+
+    private static final Tables EMPTY =
+            new Tables(new CidrTrie.Builder(32).build(), new CidrTrie.Builder(128).build());
+
+    // Parsed address of the current lookup, so that lookups do not allocate
+    private static final ThreadLocal<long[]> ADDRESS = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final ReloadableFile listFile;
+    private volatile Tables tables = EMPTY;
+
+    /**
+     * Creates the service.
+     *
+     * @param listPath The reputation list file, or empty to treat all addresses as clean
+     * @param reloadIntervalSeconds How often to check the file for changes, 0 to only load it on
+     *     startup
+     * @param scheduler The scheduler to check the file on
+     */
+    public IpReputationService(
+            @Value("${risk-fraud.ip-reputation.list-path:}") String listPath,
+            @Value("${risk-fraud.ip-reputation.reload-interval-seconds:60}")
+                    long reloadIntervalSeconds,
+            RiskMaintenanceScheduler scheduler) {
+        this.listFile =
+                new ReloadableFile(
+                        "IP reputation list",
+                        listPath,
+                        reloadIntervalSeconds,
+                        scheduler,
+                        this::reload);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!listFile.isConfigured()) {
+            log.info("No IP reputation list configured, all addresses are treated as clean");
+            return;
+        }
+        listFile.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listFile.stop();
+    }
+
+    /**
+     * Looks up the reputation of an IP address.
+     *
+     * @param ipAddress The IPv4 or IPv6 address
+     * @return The reputation of the most specific matching block, or {@link IpReputation#CLEAN} if
+     *     there is none or the address is invalid
+     */
+    public IpReputation lookup(CharSequence ipAddress) {
+        if (ipAddress == null) {
+            return IpReputation.CLEAN;
+        }
+
+        long[] address = ADDRESS.get();
+        int bits = parseAddress(ipAddress, 0, ipAddress.length(), address);
+        if (bits < 0) {
+            return IpReputation.CLEAN;
+        }
+
+        Tables current = tables;
+        int value;
+        if (bits == 32) {
+            value = current.ipv4.lookup(address[0], 0L);
+        } else if (address[0] == 0L && (address[1] >>> 32) == 0xFFFFL) {
+            // IPv4-mapped address (::ffff:a.b.c.d)
+            value = current.ipv4.lookup(address[1] << 32, 0L);
+        } else {
+            value = current.ipv6.lookup(address[0], address[1]);
+        }
+        return value == CidrTrie.NO_MATCH ? IpReputation.CLEAN : REPUTATIONS[value];
+    }
+
+    /**
+     * Reloads the reputation list now. On failure the previous list stays in use.
+     *
+     * @return true if the list was reloaded
+     */
+    public boolean reload() {
+        return listFile.reload();
+    }
+
+    /**
+     * Gets the number of IPv4 and IPv6 blocks in the current list.
+     *
+     * @return The number of blocks
+     */
+    public int getBlockCount() {
+        Tables current = tables;
+        return current.ipv4.size() + current.ipv6.size();
+    }
+
+    /**
+     * Loads a reputation list and swaps it in. Lines that cannot be parsed are skipped.
+     *
+     * @param path The list file
+     * @return true if the list was loaded
+     */
+    boolean reload(Path path) {
+        CidrTrie.Builder ipv4 = new CidrTrie.Builder(32);
+        CidrTrie.Builder ipv6 = new CidrTrie.Builder(128);
+        long[] address = new long[2];
+        int invalid = 0;
+
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comment = line.indexOf('#');
+                    String entry = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                    if (entry.isEmpty()) {
+                        continue;
+                    }
+                    if (!addBlock(entry, address, ipv4, ipv6)) {
+                        invalid++;
+                    }
+                }
+            }
+
+            tables = new Tables(ipv4.build(), ipv6.build());
+        } catch (IOException e) {
+            log.error("Failed to load IP reputation list {}: {}", path, e.getMessage());
+            return false;
+        }
+
+        if (invalid > 0) {
+            log.warn("Skipped {} invalid entries in IP reputation list {}", invalid, path);
+        }
+        log.info("Loaded {} blocks from IP reputation list {}", getBlockCount(), path);
+        return true;
+    }
+
+    private static boolean addBlock(
+            String entry,
+            long[] address,
+            CidrTrie.Builder ipv4,
+            CidrTrie.Builder ipv6) {
+        String[] fields = entry.split("[\\s,]+");
+        if (fields.length != 2) {
+            return false;
+        }
+
+        IpReputation reputation;
+        try {
+            reputation = IpReputation.valueOf(fields[1].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        String block = fields[0];
+        int slash = block.indexOf('/');
+        int end = slash >= 0 ? slash : block.length();
+        int bits = parseAddress(block, 0, end, address);
+        if (bits < 0) {
+            return false;
+        }
+
+        int length = bits;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(block.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (length < 0 || length > bits) {
+                return false;
+            }
+        }
+
+        (bits == 32 ? ipv4 : ipv6).add(address[0], address[1], length, reputation.ordinal());
+        return true;
+    }
+
+    /**
+     * Parses an IPv4 or IPv6 address without allocating. IPv4 addresses are returned in the upper
+     * 32 bits of {@code address[0]}.
+     *
+     * @param text The text containing the address
+     * @param from The start of the address
+     * @param to The end of the address
+     * @param address Receives the upper and lower 64 bits of the address
+     * @return 32 or 128 for a valid IPv4 or IPv6 address, -1 otherwise
+     */
+    static int parseAddress(CharSequence text, int from, int to, long[] address) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == ':') {
+                return parseIpv6(text, from, to, address) ? 128 : -1;
+            }
+        }
+
+        long ipv4 = parseIpv4(text, from, to);
+        if (ipv4 < 0) {
+            return -1;
+        }
+        address[0] = ipv4 << 32;
+        address[1] = 0L;
+        return 32;
+    }
+
+    private static long parseIpv4(CharSequence text, int from, int to) {
+        long value = 0;
+        int octets = 0;
+        int i = from;
+        while (octets < 4) {
+            int start = i;
+            int octet = 0;
+            while (i < to && i - start < 3) {
+                int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                octet = octet * 10 + digit;
+                i++;
+            }
+            if (i == start || octet > 255) {
+                return -1;
+            }
+
+            value = (value << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (i >= to || text.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i == to ? value : -1;
+    }
+
+    private static boolean parseIpv6(CharSequence text, int from, int to, long[] address) {
+        // A zone index (fe80::1%eth0) does not affect reputation
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '%') {
+                to = i;
+                break;
+            }
+        }
+
+        // Groups before "::" are placed from the top, groups after it are shifted in from the
+        // bottom so that they end up right-aligned
+        long hi = 0;
+        long lo = 0;
+        long tailHi = 0;
+        long tailLo = 0;
+        int groups = 0;
+        int gap = -1;
+        int i = from;
+
+        if (to - i >= 2 && text.charAt(i) == ':' && text.charAt(i + 1) == ':') {
+            gap = 0;
+            i += 2;
+        } else if (i < to && text.charAt(i) == ':') {
+            return false;
+        }
+
+        while (i < to) {
+            int start = i;
+            int group = 0;
+            while (i < to && i - start < 4) {
+                int digit = hexDigit(text.charAt(i));
+                if (digit < 0) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                i++;
+            }
+
+            int count = 1;
+            long value = group;
+            if (i < to && text.charAt(i) == '.') {
+                // Embedded IPv4 address in the last two groups
+                long ipv4 = parseIpv4(text, start, to);
+                if (ipv4 < 0) {
+                    return false;
+                }
+                count = 2;
+                value = ipv4;
+                i = to;
+            } else if (i == start) {
+                return false;
+            }
+
+            if (groups + count > 8) {
+                return false;
+            }
+            if (gap < 0) {
+                for (int g = count - 1; g >= 0; g--) {
+                    long word = (value >>> (16 * g)) & 0xFFFFL;
+                    if (groups < 4) {
+                        hi |= word << (48 - 16 * groups);
+                    } else {
+                        lo |= word << (48 - 16 * (groups - 4));
+                    }
+                    groups++;
+                }
+            } else {
+                int shift = 16 * count;
+                tailHi = (tailHi << shift) | (tailLo >>> (64 - shift));
+                tailLo = (tailLo << shift) | value;
+                groups += count;
+            }
+
+            if (i == to) {
+                break;
+            }
+            if (text.charAt(i) != ':' || ++i == to) {
+                return false;
+            }
+            if (text.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return false;
+                }
+                gap = groups;
+                i++;
+            }
+        }
+
+        if (gap < 0 ? groups != 8 : groups > 7) {
+            return false;
+        }
+
+        address[0] = hi | tailHi;
+        address[1] = lo | tailLo;
+        return true;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /** The tries of one version of the list. */
+    private static final class Tables {
+        private final CidrTrie ipv4;
+        private final CidrTrie ipv6;
+
+        private Tables(CidrTrie ipv4, CidrTrie ipv6) {
+            this.ipv4 = ipv4;
+            this.ipv6 = ipv6;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.riskfraud.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable merchant risk profiles: a baseline risk per merchant category code (MCC), and risk and
+ * chargeback ratio overrides per merchant.
+ *
+ * <p>Both are open-addressing hash tables with linear probing over primitive arrays. MCCs are
+ * stored as {@code int} keys; merchant IDs are interned to dense {@code int} profile numbers that
+ * index the merchant's values. Lookups only compare keys and read arrays, without allocating.
+ * Changes are made by copying the table into a {@link Builder} and building a new one.
+ */
+final class MerchantProfileTable {
+
+    static final int NOT_FOUND = -1;
+
+    private static final int EMPTY_MCC = -1;
+
+    private final double defaultRisk;
+
+    private final int[] mccKeys;
+    private final double[] mccRisk;
+    private final int mccMask;
+
+    private final String[] merchantKeys;
+    // Profile number of the merchant in each slot of merchantKeys
+    private final int[] merchantProfiles;
+    private final int merchantMask;
+
+    // Indexed by profile number; risk is NaN if the merchant only overrides its chargeback ratio
+    private final String[] merchantIds;
+    private final double[] merchantRisk;
+    private final double[] merchantChargebackRatio;
+
+    private MerchantProfileTable(Builder builder) {
+        this.defaultRisk = builder.defaultRisk;
+
+        int mccCapacity = tableCapacity(builder.mccRisk.size());
+        this.mccKeys = new int[mccCapacity];
+        this.mccRisk = new double[mccCapacity];
+        this.mccMask = mccCapacity - 1;
+        Arrays.fill(mccKeys, EMPTY_MCC);
+        for (Map.Entry<Integer, Double> entry : builder.mccRisk.entrySet()) {
+            int slot = mccSlot(entry.getKey());
+            mccKeys[slot] = entry.getKey();
+            mccRisk[slot] = entry.getValue();
+        }
+
+        int merchants = builder.merchants.size();
+        int merchantCapacity = tableCapacity(merchants);
+        this.merchantKeys = new String[merchantCapacity];
+        this.merchantProfiles = new int[merchantCapacity];
+        this.merchantMask = merchantCapacity - 1;
+        this.merchantIds = new String[merchants];
+        this.merchantRisk = new double[merchants];
+        this.merchantChargebackRatio = new double[merchants];
+        int profile = 0;
+        for (Map.Entry<String, double[]> entry : builder.merchants.entrySet()) {
+            int slot = merchantSlot(entry.getKey());
+            merchantKeys[slot] = entry.getKey();
+            merchantProfiles[slot] = profile;
+            merchantIds[profile] = entry.getKey();
+            merchantRisk[profile] = entry.getValue()[0];
+            merchantChargebackRatio[profile] = entry.getValue()[1];
+            profile++;
+        }
+    }
+
+    /**
+     * Parses profiles from their text form, one entry per line:
+     *
+     * <pre>
+     * # Comment
+     * default &lt;risk&gt;
+     * mcc &lt;code&gt; &lt;risk&gt;
+     * merchant &lt;id&gt; &lt;risk|-&gt; [&lt;chargeback ratio&gt;]
+     * </pre>
+     *
+     * A merchant risk of {@code -} keeps the baseline of the merchant's category.
+     *
+     * @param lines The profile lines
+     * @return The profiles
+     * @throws IllegalArgumentException If a line is invalid, with its line number
+     */
+    static MerchantProfileTable parse(List<String> lines) {
+        Builder builder = new Builder();
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                parseLine(builder, lines.get(i));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the baseline risk of a merchant.
+     *
+     * @param merchantId The merchant ID, may be null
+     * @param mcc The merchant category code, or a negative value if unknown
+     * @return The merchant's own risk if it has one, else the risk of its category, else the
+     *     default risk
+     */
+    double getRisk(String merchantId, int mcc) {
+        int profile = findMerchant(merchantId);
+        if (profile != NOT_FOUND && !Double.isNaN(merchantRisk[profile])) {
+            return merchantRisk[profile];
+        }
+        if (mcc >= 0) {
+            int slot = mix(mcc) & mccMask;
+            while (mccKeys[slot] != EMPTY_MCC) {
+                if (mccKeys[slot] == mcc) {
+                    return mccRisk[slot];
+                }
+                slot = (slot + 1) & mccMask;
+            }
+        }
+        return defaultRisk;
+    }
+
+    /**
+     * Gets the chargeback ratio of a merchant.
+     *
+     * @param merchantId The merchant ID, may be null
+     * @return The chargeback ratio, 0 if unknown
+     */
+    double getChargebackRatio(String merchantId) {
+        int profile = findMerchant(merchantId);
+        return profile == NOT_FOUND ? 0.0 : merchantChargebackRatio[profile];
+    }
+
+    /**
+     * Finds the profile number a merchant ID is interned to.
+     *
+     * @param merchantId The merchant ID, may be null
+     * @return The profile number, or {@link #NOT_FOUND}
+     */
+    int findMerchant(String merchantId) {
+        if (merchantId == null) {
+            return NOT_FOUND;
+        }
+        int slot = spread(merchantId.hashCode()) & merchantMask;
+        String key;
+        while ((key = merchantKeys[slot]) != null) {
+            if (key.equals(merchantId)) {
+                return merchantProfiles[slot];
+            }
+            slot = (slot + 1) & merchantMask;
+        }
+        return NOT_FOUND;
+    }
+
+    double getMerchantRisk(int profile) {
+        return merchantRisk[profile];
+    }
+
+    double getMerchantChargebackRatio(int profile) {
+        return merchantChargebackRatio[profile];
+    }
+
+    int getMerchantCount() {
+        return merchantIds.length;
+    }
+
+    int getMccCount() {
+        int count = 0;
+        for (int key : mccKeys) {
+            if (key != EMPTY_MCC) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    double getDefaultRisk() {
+        return defaultRisk;
+    }
+
+    /**
+     * Copies the profiles into a builder, to derive a changed table.
+     *
+     * @return A builder with all profiles of this table
+     */
+    Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.defaultRisk(defaultRisk);
+        for (int slot = 0; slot < mccKeys.length; slot++) {
+            if (mccKeys[slot] != EMPTY_MCC) {
+                builder.mcc(mccKeys[slot], mccRisk[slot]);
+            }
+        }
+        for (int profile = 0; profile < merchantIds.length; profile++) {
+            builder.merchant(
+                    merchantIds[profile], merchantRisk[profile], merchantChargebackRatio[profile]);
+        }
+        return builder;
+    }
+
+    /**
+     * Parses a merchant category code without allocating.
+     *
+     * @param mcc The code, 1 to 4 digits
+     * @return The code, or -1 if it is null or not a valid code
+     */
+    static int parseMcc(String mcc) {
+        if (mcc == null || mcc.isEmpty() || mcc.length() > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < mcc.length(); i++) {
+            char c = mcc.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private int mccSlot(int mcc) {
+        int slot = mix(mcc) & mccMask;
+        while (mccKeys[slot] != EMPTY_MCC && mccKeys[slot] != mcc) {
+            slot = (slot + 1) & mccMask;
+        }
+        return slot;
+    }
+
+    private int merchantSlot(String merchantId) {
+        int slot = spread(merchantId.hashCode()) & merchantMask;
+        while (merchantKeys[slot] != null && !merchantKeys[slot].equals(merchantId)) {
+            slot = (slot + 1) & merchantMask;
+        }
+        return slot;
+    }
+
+    /** Keeps the load factor at or below 50%, so probe sequences stay short. */
+    private static int tableCapacity(int entries) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1);
+    }
+
+    private static int mix(int key) {
+        return spread(key * 0x9E3779B9);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void parseLine(Builder builder, String line) {
+        int comment = line.indexOf('#');
+        String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+        if (content.isEmpty()) {
+            return;
+        }
+
+        String[] tokens = content.split("\\s+");
+        switch (tokens[0]) {
+            case "default" -> {
+                expectTokens(tokens, 2, 2, "default <risk>");
+                builder.defaultRisk(parseRisk(tokens[1]));
+            }
+            case "mcc" -> {
+                expectTokens(tokens, 3, 3, "mcc <code> <risk>");
+                int mcc = parseMcc(tokens[1]);
+                if (mcc < 0) {
+                    throw new IllegalArgumentException("Invalid MCC '" + tokens[1] + "'");
+                }
+                builder.mcc(mcc, parseRisk(tokens[2]));
+            }
+            case "merchant" -> {
+                expectTokens(tokens, 3, 4, "merchant <id> <risk|-> [<chargeback ratio>]");
+                double risk = tokens[2].equals("-") ? Double.NaN : parseRisk(tokens[2]);
+                double chargebackRatio = tokens.length == 4 ? parseRisk(tokens[3]) : 0.0;
+                builder.merchant(tokens[1], risk, chargebackRatio);
+            }
+            default -> throw new IllegalArgumentException(
+                    "Expected 'default', 'mcc' or 'merchant' but found '" + tokens[0] + "'");
+        }
+    }
+
+    private static void expectTokens(String[] tokens, int min, int max, String syntax) {
+        if (tokens.length < min || tokens.length > max) {
+            throw new IllegalArgumentException("Expected '" + syntax + "'");
+        }
+    }
+
+    private static double parseRisk(String value) {
+        try {
+            double risk = Double.parseDouble(value);
+            if (risk >= 0.0 && risk <= 1.0) {
+                return risk;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(
+                "Expected a number between 0 and 1 but found '" + value + "'");
+    }
+
+    /** Collects profiles for a new table; later entries for the same key replace earlier ones. */
+    static final class Builder {
+        private double defaultRisk;
+        private final Map<Integer, Double> mccRisk = new LinkedHashMap<>();
+        // Merchant ID to {risk, chargeback ratio}
+        private final Map<String, double[]> merchants = new LinkedHashMap<>();
+
+        Builder defaultRisk(double risk) {
+            this.defaultRisk = risk;
+            return this;
+        }
+
+        Builder mcc(int mcc, double risk) {
+            mccRisk.put(mcc, risk);
+            return this;
+        }
+
+        Builder merchant(String merchantId, double risk, double chargebackRatio) {
+            merchants.put(merchantId, new double[] {risk, chargebackRatio});
+            return this;
+        }
+
+        Builder removeMerchant(String merchantId) {
+            merchants.remove(merchantId);
+            return this;
+        }
+
+        MerchantProfileTable build() {
+            return new MerchantProfileTable(this);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.MerchantRiskProfile;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Baseline risk and chargeback ratio of merchants, by merchant category code (MCC) and with
+ * per-merchant overrides, held in a {@link MerchantProfileTable}.
+ *
+ * <p>Profiles are bulk-loaded from a local file, or from the built-in defaults if no file is
+ * configured, and reloaded when the file changes. Single merchants can also be updated at runtime;
+ * every change builds a new table that is swapped in atomically (copy-on-write), so lookups never
+ * block or allocate. Runtime updates are lost when the file is reloaded, so they should also be
+ * added to the file.
+ */
+@Slf4j
+@Service
+public class MerchantRiskProfileRegistry {
+
+    static final String DEFAULT_PROFILES = "/merchant-profiles/default.profiles";
+
+    private final ReloadableFile profilesFile;
+    private final Object updateLock = new Object();
+    private volatile MerchantProfileTable table;
+
+    /**
+     * Creates the registry with the default profiles.
+     *
+     * @param profilesPath The profile file, or empty to use the default profiles
+     * @param reloadIntervalSeconds How often to check the profile file for changes, 0 to only load
+     *     it on startup
+     * @param scheduler The scheduler to check the profile file on
+     */
+    public MerchantRiskProfileRegistry(
+            @Value("${risk-fraud.merchant-profiles.path:}") String profilesPath,
+            @Value("${risk-fraud.merchant-profiles.reload-interval-seconds:60}")
+                    long reloadIntervalSeconds,
+            RiskMaintenanceScheduler scheduler) {
+        this.table = MerchantProfileTable.parse(readDefaultProfiles());
+        this.profilesFile =
+                new ReloadableFile(
+                        "merchant profiles",
+                        profilesPath,
+                        reloadIntervalSeconds,
+                        scheduler,
+                        this::reload);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!profilesFile.isConfigured()) {
+            log.info("No merchant profile file configured, using the default profiles");
+            return;
+        }
+        profilesFile.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        profilesFile.stop();
+    }
+
+    /**
+     * Gets the baseline risk of a merchant.
+     *
+     * @param merchantId The merchant ID, may be null
+     * @param merchantCategoryCode The merchant category code, may be null or invalid
+     * @return The merchant's own risk if it has one, else the risk of its category, else the
+     *     default risk
+     */
+    public double getRisk(String merchantId, String merchantCategoryCode) {
+        return table.getRisk(merchantId, MerchantProfileTable.parseMcc(merchantCategoryCode));
+    }
+
+    /**
+     * Gets the chargeback ratio of a merchant.
+     *
+     * @param merchantId The merchant ID, may be null
+     * @return The share of the merchant's transactions that were charged back, 0 if unknown
+     */
+    public double getChargebackRatio(String merchantId) {
+        return table.getChargebackRatio(merchantId);
+    }
+
+    /**
+     * Gets the profile of a merchant.
+     *
+     * @param merchantId The merchant ID
+     * @return The profile, or null if the merchant has no profile of its own
+     */
+    public MerchantRiskProfile getProfile(String merchantId) {
+        MerchantProfileTable current = table;
+        int profile = current.findMerchant(merchantId);
+        if (profile == MerchantProfileTable.NOT_FOUND) {
+            return null;
+        }
+        double risk = current.getMerchantRisk(profile);
+        return MerchantRiskProfile.builder()
+                .merchantId(merchantId)
+                .riskScore(Double.isNaN(risk) ? null : risk)
+                .chargebackRatio(current.getMerchantChargebackRatio(profile))
+                .build();
+    }
+
+    /**
+     * Sets the profile of a merchant.
+     *
+     * @param merchantId The merchant ID
+     * @param riskScore The merchant's risk between 0 and 1, or null to use its category's risk
+     * @param chargebackRatio The merchant's chargeback ratio between 0 and 1
+     */
+    public void updateMerchant(String merchantId, Double riskScore, double chargebackRatio) {
+        if (merchantId == null || merchantId.isBlank()) {
+            throw new IllegalArgumentException("Merchant ID cannot be empty");
+        }
+        if (riskScore != null && !(riskScore >= 0.0 && riskScore <= 1.0)) {
+            throw new IllegalArgumentException("Risk score must be between 0 and 1");
+        }
+        if (!(chargebackRatio >= 0.0 && chargebackRatio <= 1.0)) {
+            throw new IllegalArgumentException("Chargeback ratio must be between 0 and 1");
+        }
+
+        double risk = riskScore != null ? riskScore : Double.NaN;
+        synchronized (updateLock) {
+            table = table.toBuilder().merchant(merchantId, risk, chargebackRatio).build();
+        }
+    }
+
+    /**
+     * Removes the profile of a merchant, so that the risk of its category applies again.
+     *
+     * @param merchantId The merchant ID
+     * @return true if the merchant had a profile
+     */
+    public boolean removeMerchant(String merchantId) {
+        synchronized (updateLock) {
+            if (table.findMerchant(merchantId) == MerchantProfileTable.NOT_FOUND) {
+                return false;
+            }
+            table = table.toBuilder().removeMerchant(merchantId).build();
+            return true;
+        }
+    }
+
+    /**
+     * Gets the number of merchants with a profile of their own.
+     *
+     * @return The number of merchants
+     */
+    public int getMerchantCount() {
+        return table.getMerchantCount();
+    }
+
+    /**
+     * Reloads the profile file now. On failure the previous profiles stay in use.
+     *
+     * @return true if the profiles were reloaded
+     */
+    public boolean reload() {
+        return profilesFile.reload();
+    }
+
+    /**
+     * Parses a profile file and swaps it in, replacing all profiles.
+     *
+     * @param path The profile file
+     * @return true if the profiles were loaded
+     */
+    boolean reload(Path path) {
+        MerchantProfileTable parsed;
+        try {
+            parsed = MerchantProfileTable.parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("Failed to read merchant profiles {}: {}", path, e.getMessage());
+            return false;
+        } catch (IllegalArgumentException e) {
+            log.error(
+                    "Invalid merchant profiles {}, keeping the previous profiles: {}",
+                    path,
+                    e.getMessage());
+            return false;
+        }
+
+        synchronized (updateLock) {
+            table = parsed;
+        }
+        log.info(
+                "Loaded {} MCC and {} merchant risk profiles from {}",
+                parsed.getMccCount(),
+                parsed.getMerchantCount(),
+                path);
+        return true;
+    }
+
+    private static List<String> readDefaultProfiles() {
+        InputStream in = MerchantRiskProfileRegistry.class.getResourceAsStream(DEFAULT_PROFILES);
+        if (in == null) {
+            throw new IllegalStateException(
+                    "Default merchant profiles not found: " + DEFAULT_PROFILES);
+        }
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.MerchantSketchSnapshot;
+import com.example.riskfraud.model.Transaction;
+import com.example.riskfraud.sketch.HyperLogLog;
+import com.example.riskfraud.sketch.LogHistogram;
+import com.example.riskfraud.sketch.WindowedSketch;
+import com.example.shared.util.FastHash;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps per-merchant sketches for anomaly features: the number of distinct cards over the last hour
+ * (many new cards at one merchant is typical for card testing) and the distribution of amounts
+ * over the last 24 hours (to tell how unusual an amount is for the merchant). Each sketch has a
+ * fixed size, so memory is bounded by the merchant capacity, and recording costs O(1).
+ */
+@Slf4j
+@Service
+public class MerchantSketchService {
+
+    static final long DISTINCT_CARDS_WINDOW_MILLIS = 3_600_000L;
+    static final long AMOUNTS_WINDOW_MILLIS = 86_400_000L;
+    static final int GENERATIONS = 4;
+
+    // Amounts are told apart from 0.01 to 10 billion in major units
+    private static final double MIN_AMOUNT = 0.01;
+    private static final double MAX_AMOUNT = 1e10;
+
+    private static final long MERCHANT_SEED = FastHash.hash64("merchant-sketch");
+
+    private final MerchantSketchTable table;
+    private final long minAmountSamples;
+
+    /**
+     * Creates the sketch service.
+     *
+     * @param merchantCapacity The maximum number of merchants tracked
+     * @param cardPrecision The HyperLogLog precision of distinct card counts
+     * @param amountAccuracy The relative accuracy of amount quantiles
+     * @param minAmountSamples The fewest amounts a merchant needs before its quantiles are used
+     */
+    public MerchantSketchService(
+            @Value("${risk-fraud.sketches.merchant-capacity:1024}") int merchantCapacity,
+            @Value("${risk-fraud.sketches.card-precision:10}") int cardPrecision,
+            @Value("${risk-fraud.sketches.amount-accuracy:0.05}") double amountAccuracy,
+            @Value("${risk-fraud.sketches.min-amount-samples:100}") long minAmountSamples) {
+        // Sketches are created per merchant on first use, check the settings now
+        if (cardPrecision < HyperLogLog.MIN_PRECISION
+                || cardPrecision > HyperLogLog.MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "Card precision must be between "
+                            + HyperLogLog.MIN_PRECISION
+                            + " and "
+                            + HyperLogLog.MAX_PRECISION);
+        }
+        int amountBuckets =
+                new LogHistogram(amountAccuracy, MIN_AMOUNT, MAX_AMOUNT).getBucketCount();
+
+        this.table =
+                new MerchantSketchTable(
+                        merchantCapacity,
+                        () ->
+                                new WindowedSketch<>(
+                                        DISTINCT_CARDS_WINDOW_MILLIS,
+                                        GENERATIONS,
+                                        () -> new HyperLogLog(cardPrecision)),
+                        () ->
+                                new WindowedSketch<>(
+                                        AMOUNTS_WINDOW_MILLIS,
+                                        GENERATIONS,
+                                        () ->
+                                                new LogHistogram(
+                                                        amountAccuracy, MIN_AMOUNT, MAX_AMOUNT)));
+        this.minAmountSamples = minAmountSamples;
+
+        long bytesPerMerchant = (GENERATIONS + 1) * ((1L << cardPrecision) + amountBuckets * 4L);
+        log.info(
+                "Merchant sketches initialized for {} merchants, up to {} KB each",
+                table.capacity(),
+                bytesPerMerchant / 1024);
+    }
+
+    /**
+     * Records the card and amount of a transaction for its merchant.
+     *
+     * @param transaction The transaction being assessed
+     */
+    public void record(Transaction transaction) {
+        record(transaction, System.currentTimeMillis());
+    }
+
+    void record(Transaction transaction, long nowMillis) {
+        long key = keyOf(transaction.getMerchantId());
+        if (key == 0L) {
+            return;
+        }
+        long cardHash =
+                transaction.getCardFingerprint() != 0L
+                        ? FastHash.mix64(transaction.getCardFingerprint())
+                        : 0L;
+        double amount =
+                transaction.getAmount() != null ? transaction.getAmount().doubleValue() : 0.0;
+        table.record(key, cardHash, amount, nowMillis);
+    }
+
+    /**
+     * Estimates the number of distinct cards used at a merchant in the last hour.
+     *
+     * @param merchantId The merchant ID, may be null
+     * @return The estimated count, 0 if the merchant is unknown
+     */
+    public long getDistinctCardsLastHour(String merchantId) {
+        return getDistinctCardsLastHour(merchantId, System.currentTimeMillis());
+    }
+
+    long getDistinctCardsLastHour(String merchantId, long nowMillis) {
+        long key = keyOf(merchantId);
+        return key == 0L ? 0L : table.distinctCards(key, nowMillis);
+    }
+
+    /**
+     * Estimates a quantile of a merchant's amounts in the last 24 hours.
+     *
+     * @param merchantId The merchant ID, may be null
+     * @param quantile The quantile, between 0 and 1
+     * @return The estimated amount, or NaN if the merchant has too few amounts
+     */
+    public double getAmountQuantile(String merchantId, double quantile) {
+        return getAmountQuantile(merchantId, quantile, System.currentTimeMillis());
+    }
+
+    double getAmountQuantile(String merchantId, double quantile, long nowMillis) {
+        long key = keyOf(merchantId);
+        if (key == 0L) {
+            return Double.NaN;
+        }
+        return table.amountQuantile(key, quantile, minAmountSamples, nowMillis);
+    }
+
+    /**
+     * Gets the current sketch estimates of a merchant.
+     *
+     * @param merchantId The merchant ID
+     * @return The estimates; quantiles are null while the merchant has too few amounts
+     */
+    public MerchantSketchSnapshot getSnapshot(String merchantId) {
+        long nowMillis = System.currentTimeMillis();
+        long key = keyOf(merchantId);
+        return MerchantSketchSnapshot.builder()
+                .merchantId(merchantId)
+                .distinctCardsLastHour(getDistinctCardsLastHour(merchantId, nowMillis))
+                .amountsLast24Hours(key == 0L ? 0L : table.amountCount(key, nowMillis))
+                .amountP50(toNullable(getAmountQuantile(merchantId, 0.5, nowMillis)))
+                .amountP90(toNullable(getAmountQuantile(merchantId, 0.9, nowMillis)))
+                .amountP99(toNullable(getAmountQuantile(merchantId, 0.99, nowMillis)))
+                .build();
+    }
+
+    /**
+     * Gets the number of merchants currently tracked.
+     *
+     * @return The number of tracked merchants
+     */
+    public long getTrackedMerchants() {
+        return table.size();
+    }
+
+    /**
+     * Gets the number of merchants evicted to make room for new ones.
+     *
+     * @return The eviction count
+     */
+    public long getEvictions() {
+        return table.evictions();
+    }
+
+    private static long keyOf(String merchantId) {
+        if (merchantId == null || merchantId.isEmpty()) {
+            return 0L;
+        }
+        long key = FastHash.hash64(merchantId, MERCHANT_SEED);
+        // 0 marks an empty slot
+        return key != 0L ? key : 1L;
+    }
+
+    private static Double toNullable(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.sketch.HyperLogLog;
+import com.example.riskfraud.sketch.LogHistogram;
+import com.example.riskfraud.sketch.MergeableSketch;
+import com.example.riskfraud.sketch.WindowedSketch;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Fixed-capacity table of windowed sketches per merchant: a {@link HyperLogLog} of the card
+ * fingerprints and a {@link LogHistogram} of the amounts seen. Memory is bounded by the capacity
+ * regardless of how many merchants are seen.
+ *
+ * <p>The table is set-associative: a key hashes to a set of {@value #WAYS} slots, and when the set
+ * is full the least recently seen key in it is evicted and its sketches cleared. Each set has its
+ * own lock, held for the O(1) update or the read of one merchant, so merchants in different sets
+ * never contend. Sketches are allocated the first time a slot is used.
+ *
+ * <p>Estimating distinct cards reads every register of the sketch, so the estimate is cached per
+ * merchant until a card changes a register or the window moves to its next generation. After a
+ * merchant's first few hundred cards most cards no longer change a register.
+ */
+final class MerchantSketchTable {
+
+    /** Number of slots per set. */
+    static final int WAYS = 8;
+
+    private final int setMask;
+    private final long[] keys;
+    private final long[] lastSeen;
+    private final Object[] locks;
+    private final WindowedSketch<HyperLogLog>[] cards;
+    // Cached distinct card estimate per slot, -1 if stale, and the generation it was made in
+    private final long[] cardEstimates;
+    private final long[] cardEstimateGenerations;
+    private final WindowedSketch<LogHistogram>[] amounts;
+    private final Supplier<WindowedSketch<HyperLogLog>> cardFactory;
+    private final Supplier<WindowedSketch<LogHistogram>> amountFactory;
+    private final LongAdder occupied = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a table.
+     *
+     * @param capacity The maximum number of merchants, rounded up to a power of two
+     * @param cardFactory Creates the distinct card sketch of a merchant
+     * @param amountFactory Creates the amount sketch of a merchant
+     */
+    MerchantSketchTable(
+            int capacity,
+            Supplier<WindowedSketch<HyperLogLog>> cardFactory,
+            Supplier<WindowedSketch<LogHistogram>> amountFactory) {
+        if (capacity < WAYS || capacity > (1 << 24)) {
+            throw new IllegalArgumentException(
+                    "Merchant sketch capacity must be between " + WAYS + " and " + (1 << 24));
+        }
+
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        int sets = slots / WAYS;
+        this.setMask = sets - 1;
+        this.keys = new long[slots];
+        this.lastSeen = new long[slots];
+        this.locks = new Object[sets];
+        for (int set = 0; set < sets; set++) {
+            locks[set] = new Object();
+        }
+        this.cards = newSketches(slots);
+        this.cardEstimates = new long[slots];
+        this.cardEstimateGenerations = new long[slots];
+        this.amounts = newSketches(slots);
+        this.cardFactory = cardFactory;
+        this.amountFactory = amountFactory;
+    }
+
+    /**
+     * Records a transaction of a merchant.
+     *
+     * @param key The non-zero merchant key
+     * @param cardHash The hash of the card, 0 if unknown
+     * @param amount The amount, ignored unless positive
+     * @param nowMillis The current time in epoch milliseconds
+     */
+    void record(long key, long cardHash, double amount, long nowMillis) {
+        int set = setOf(key);
+        synchronized (locks[set]) {
+            int slot = claimSlot(set, key, nowMillis);
+            if (cardHash != 0L && cards[slot].current(nowMillis).add(cardHash)) {
+                cardEstimates[slot] = -1L;
+            }
+            if (amount > 0.0) {
+                amounts[slot].current(nowMillis).add(amount);
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct cards of a merchant in the card window.
+     *
+     * @param key The non-zero merchant key
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The estimated count, 0 if the merchant is unknown
+     */
+    long distinctCards(long key, long nowMillis) {
+        int set = setOf(key);
+        synchronized (locks[set]) {
+            int slot = findSlot(set, key);
+            if (slot < 0) {
+                return 0L;
+            }
+            WindowedSketch<HyperLogLog> window = cards[slot];
+            HyperLogLog current = window.current(nowMillis);
+            if (cardEstimates[slot] < 0L
+                    || cardEstimateGenerations[slot] != window.getGeneration()) {
+                cardEstimates[slot] = current.unionEstimate(window.completed(nowMillis));
+                cardEstimateGenerations[slot] = window.getGeneration();
+            }
+            return cardEstimates[slot];
+        }
+    }
+
+    /**
+     * Counts the amounts of a merchant in the amount window.
+     *
+     * @param key The non-zero merchant key
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The number of amounts, 0 if the merchant is unknown
+     */
+    long amountCount(long key, long nowMillis) {
+        int set = setOf(key);
+        synchronized (locks[set]) {
+            int slot = findSlot(set, key);
+            if (slot < 0) {
+                return 0L;
+            }
+            WindowedSketch<LogHistogram> window = amounts[slot];
+            return window.current(nowMillis).unionCount(window.completed(nowMillis));
+        }
+    }
+
+    /**
+     * Estimates a quantile of the amounts of a merchant in the amount window.
+     *
+     * @param key The non-zero merchant key
+     * @param quantile The quantile, between 0 and 1
+     * @param minCount The fewest amounts the estimate is made from
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The estimated amount, or NaN if the merchant has fewer than minCount amounts
+     */
+    double amountQuantile(long key, double quantile, long minCount, long nowMillis) {
+        int set = setOf(key);
+        synchronized (locks[set]) {
+            int slot = findSlot(set, key);
+            if (slot < 0) {
+                return Double.NaN;
+            }
+            WindowedSketch<LogHistogram> window = amounts[slot];
+            LogHistogram current = window.current(nowMillis);
+            LogHistogram completed = window.completed(nowMillis);
+            if (current.unionCount(completed) < Math.max(1L, minCount)) {
+                return Double.NaN;
+            }
+            return current.unionQuantile(completed, quantile);
+        }
+    }
+
+    long size() {
+        return occupied.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    private int setOf(long key) {
+        return (int) (key ^ (key >>> 32)) & setMask;
+    }
+
+    private int findSlot(int set, long key) {
+        int base = set * WAYS;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int claimSlot(int set, long key, long nowMillis) {
+        int base = set * WAYS;
+        int oldest = base;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (keys[slot] == key) {
+                lastSeen[slot] = nowMillis;
+                return slot;
+            }
+            if (keys[slot] == 0L) {
+                keys[slot] = key;
+                lastSeen[slot] = nowMillis;
+                cards[slot] = cardFactory.get();
+                amounts[slot] = amountFactory.get();
+                cardEstimates[slot] = -1L;
+                occupied.increment();
+                return slot;
+            }
+            if (lastSeen[slot] < lastSeen[oldest]) {
+                oldest = slot;
+            }
+        }
+
+        // Set is full: reuse the slot of its least recently seen merchant
+        keys[oldest] = key;
+        lastSeen[oldest] = nowMillis;
+        cards[oldest].clear();
+        amounts[oldest].clear();
+        cardEstimates[oldest] = -1L;
+        evictions.increment();
+        return oldest;
+    }
+
+    // Arrays of a generic type can only be created through a wildcard array
+    @SuppressWarnings("unchecked")
+    private static <S extends MergeableSketch<S>> WindowedSketch<S>[] newSketches(int length) {
+        return (WindowedSketch<S>[]) new WindowedSketch<?>[length];
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.riskfraud.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * A local file that is loaded on startup and reloaded on the {@link RiskMaintenanceScheduler}
+ * when its modification time changes.
+ *
+ * <p>The loader parses the file and swaps it in, returning false and keeping the previous version
+ * if the file cannot be read or parsed. A failed load is retried on the next check.
+ */
+@Slf4j
+final class ReloadableFile {
+
+    private final String description;
+    private final Path path;
+    private final long checkIntervalSeconds;
+    private final RiskMaintenanceScheduler scheduler;
+    private final Predicate<Path> loader;
+    private volatile FileTime loadedModified;
+    private volatile ScheduledFuture<?> checkTask;
+
+    /**
+     * Creates the file.
+     *
+     * @param description What the file holds, for logging
+     * @param path The file, or empty if none is configured
+     * @param checkIntervalSeconds How often to check the file for changes, 0 to only load it on
+     *     startup
+     * @param scheduler The scheduler to check the file on
+     * @param loader Loads the file, returning true on success
+     */
+    ReloadableFile(
+            String description,
+            String path,
+            long checkIntervalSeconds,
+            RiskMaintenanceScheduler scheduler,
+            Predicate<Path> loader) {
+        this.description = description;
+        this.path = path == null || path.isBlank() ? null : Path.of(path);
+        this.checkIntervalSeconds = checkIntervalSeconds;
+        this.scheduler = scheduler;
+        this.loader = loader;
+    }
+
+    boolean isConfigured() {
+        return path != null;
+    }
+
+    /** Loads the file and starts checking it for changes. Does nothing if no file is configured. */
+    void start() {
+        if (path == null) {
+            return;
+        }
+
+        reload();
+        if (checkIntervalSeconds > 0) {
+            checkTask =
+                    scheduler.scheduleWithFixedDelay(
+                            description,
+                            this::reloadIfModified,
+                            checkIntervalSeconds,
+                            TimeUnit.SECONDS);
+        }
+    }
+
+    void stop() {
+        ScheduledFuture<?> task = checkTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Loads the file now.
+     *
+     * @return true if the file was loaded, false if it failed or no file is configured
+     */
+    boolean reload() {
+        if (path == null) {
+            return false;
+        }
+
+        FileTime modified;
+        try {
+            // Read before loading, so that a change made during the load is picked up next time
+            modified = Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            log.error("Failed to read {} {}: {}", description, path, e.getMessage());
+            return false;
+        }
+        if (!loader.test(path)) {
+            return false;
+        }
+        loadedModified = modified;
+        return true;
+    }
+
+    private void reloadIfModified() {
+        try {
+            if (!Files.getLastModifiedTime(path).equals(loadedModified)) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to check {} {}: {}", description, path, e.getMessage());
+        }
+    }
+}
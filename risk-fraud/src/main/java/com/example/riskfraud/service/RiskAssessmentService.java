@@ -1,127 +1,298 @@
 package com.example.riskfraud.service;
 
+import com.example.riskfraud.model.CardFeatures;
+import com.example.riskfraud.model.EntityCluster;
+import com.example.riskfraud.model.IpReputation;
 import com.example.riskfraud.model.RiskAssessment;
+import com.example.riskfraud.model.RiskFeature;
 import com.example.riskfraud.model.Transaction;
+import com.example.riskfraud.model.VelocityDimension;
+import com.example.riskfraud.model.VelocitySnapshot;
+
+import lombok.RequiredArgsConstructor;
 
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 @Service
+@RequiredArgsConstructor
 public class RiskAssessmentService {
 
+    // Reused by each thread, the features are only needed until the transaction is scored
+    private static final ThreadLocal<double[]> FEATURE_BUFFER =
+            ThreadLocal.withInitial(() -> new double[RiskFeature.COUNT]);
+
+    private final VelocityService velocityService;
+    private final CardFeatureStore cardFeatureStore;
+    private final IpReputationService ipReputationService;
+    private final DeviceReputationService deviceReputationService;
+    private final RiskRuleEngine riskRuleEngine;
+    private final RiskModelScorer riskModelScorer;
+    private final ShadowRiskEvaluator shadowRiskEvaluator;
+    private final RiskBatchExecutor riskBatchExecutor;
+    private final MerchantRiskProfileRegistry merchantRiskProfileRegistry;
+    private final RiskScoringDeadline riskScoringDeadline;
+    private final MerchantSketchService merchantSketchService;
+    private final EntityLinkService entityLinkService;
     private final Random random = new Random();
 
+    /**
+     * Assesses the risk of a transaction within the time budget of the {@link
+     * RiskScoringDeadline}. If the budget runs out, the assessment uses a fallback score based on
+     * the amount and the merchant profile and is flagged as timed out.
+     *
+     * @param transaction The transaction to assess
+     * @return The risk assessment
+     */
     public RiskAssessment assessRisk(Transaction transaction) {
-        double riskScore = calculateRiskScore(transaction);
-        return RiskAssessment.fromTransaction(transaction, riskScore);
-    }
-
-    private double calculateRiskScore(Transaction transaction) {
-        double score = 0.0;
-
-        // 1. Transaction amount risk (0-0.3)
-        score += calculateAmountRisk(transaction.getAmount());
+        double riskScore = riskScoringDeadline.score(() -> scoreAndPublish(transaction));
+        boolean timedOut = Double.isNaN(riskScore);
+        if (timedOut) {
+            riskScore =
+                    riskScoringDeadline.fallbackScore(
+                            transaction.getAmount().doubleValue(),
+                            merchantRiskProfileRegistry.getRisk(
+                                    transaction.getMerchantId(),
+                                    transaction.getMerchantCategoryCode()));
+        }
+        // Recorded here rather than while scoring, so a timed out assessment still counts once
+        recordAttempt(transaction);
 
-        // 2. User behavior risk (0-0.3)
-        score += calculateUserBehaviorRisk(transaction);
+        RiskAssessment assessment = RiskAssessment.fromTransaction(transaction, riskScore);
+        if (timedOut) {
+            assessment.setTimedOut(true);
+            assessment.setReason("Risk scoring timed out, fallback score used");
+        }
+        return assessment;
+    }
 
-        // 3. Merchant risk (0-0.2)
-        score += calculateMerchantRisk(transaction.getMerchantCategoryCode());
+    /**
+     * Scores a transaction with the feature buffer of the scoring thread and queues it for shadow
+     * evaluation. A scoring thread runs one assessment at a time, so scoring that overruns the
+     * budget goes on filling its own buffer without touching the buffer of a later assessment.
+     *
+     * @param transaction The transaction to score
+     * @return The risk score
+     */
+    private double scoreAndPublish(Transaction transaction) {
+        double[] features = FEATURE_BUFFER.get();
+        double riskScore = score(transaction, features);
+        // Interrupted once the assessment ran out of time and used the fallback score instead
+        if (!Thread.currentThread().isInterrupted()) {
+            shadowRiskEvaluator.publish(features, riskScore);
+        }
+        return riskScore;
+    }
 
-        // 4. Device and location risk (0-0.2)
-        score += calculateDeviceAndLocationRisk(transaction);
+    /**
+     * Assesses a batch of transactions, split across cores by the {@link RiskBatchExecutor}. Each
+     * thread reuses its feature buffer for its whole share of the batch. Batches are not bound by
+     * the time budget of single assessments.
+     *
+     * <p>Batches are typically re-scoring or backfills of past transactions, so by default they do
+     * not count as attempts in the velocity counters, merchant sketches and entity graph that live
+     * scoring reads.
+     *
+     * @param transactions The transactions to assess
+     * @param recordAttempts Whether to record the transactions as attempts, like live assessments
+     * @return The risk assessments, in the order of the transactions
+     */
+    public List<RiskAssessment> assessBatch(
+            List<Transaction> transactions, boolean recordAttempts) {
+        return riskBatchExecutor.map(
+                transactions,
+                transaction -> {
+                    double[] features = FEATURE_BUFFER.get();
+                    double riskScore = score(transaction, features);
+                    shadowRiskEvaluator.publish(features, riskScore);
+                    if (recordAttempts) {
+                        recordAttempt(transaction);
+                    }
+                    return RiskAssessment.fromTransaction(transaction, riskScore);
+                });
+    }
 
-        // Ensure score is between 0 and 1
-        return Math.min(1.0, Math.max(0.0, score));
+    /**
+     * Records the final outcome of an assessed transaction, so that declines count towards the
+     * velocity of its card, merchant, IP address and device.
+     *
+     * @param transaction The transaction that was assessed
+     * @param approved Whether the transaction was approved by the issuer
+     */
+    public void recordOutcome(Transaction transaction, boolean approved) {
+        if (!approved) {
+            velocityService.recordDecline(transaction);
+            entityLinkService.recordDecline(transaction);
+        }
     }
 
-    private double calculateAmountRisk(BigDecimal amount) {
-        // Higher amounts are riskier, but not linearly
-        double amountValue = amount.doubleValue();
-        if (amountValue < 100) return 0.1;
-        if (amountValue < 1000) return 0.15;
-        if (amountValue < 5000) return 0.2;
-        if (amountValue < 10000) return 0.3;
-        return 0.35; // Very high amount
+    /**
+     * Records the issuer's authorization result for an assessed transaction. In addition to the
+     * velocity counters, this updates the card's history in the feature store asynchronously and,
+     * if approved, remembers the device.
+     *
+     * @param transaction The transaction that was assessed
+     * @param approved Whether the transaction was approved by the issuer
+     */
+    public void recordAuthorization(Transaction transaction, boolean approved) {
+        recordOutcome(transaction, approved);
+        if (approved) {
+            // Only devices that completed a payment count as known
+            deviceReputationService.recordDevice(transaction.getUserDeviceId());
+        }
+        cardFeatureStore.recordAuthorizationAsync(
+                transaction.getCardFingerprint(),
+                approved,
+                VelocityService.toMinorUnits(transaction.getAmount()),
+                transaction.getCardCountry());
     }
 
-    private double calculateUserBehaviorRisk(Transaction transaction) {
-        double score = 0.0;
-
-        // New user with no history is medium risk
-        if (transaction.getPreviousSuccessfulTransactions() == 0) {
-            score += 0.2;
-        } else {
-            // Calculate success rate
-            double successRate =
-                    (double) transaction.getPreviousSuccessfulTransactions()
-                            / (transaction.getPreviousSuccessfulTransactions()
-                                    + transaction.getPreviousFailedTransactions());
-
-            if (successRate < 0.7) score += 0.25; // Low success rate is risky
-            else if (successRate > 0.95) score += 0.05; // Very reliable user
-
-            // High number of chargebacks is very risky
-            if (transaction.getPreviousChargebacks() > 0) {
-                score += 0.1 * transaction.getPreviousChargebacks();
-            }
+    /**
+     * Records a chargeback on the card of a transaction, and marks its device as bad.
+     *
+     * @param transaction The charged back transaction
+     */
+    public void recordChargeback(Transaction transaction) {
+        cardFeatureStore.recordChargebackAsync(transaction.getCardFingerprint());
+        entityLinkService.recordChargeback(transaction);
+        if (transaction.getUserDeviceId() != null && !transaction.getUserDeviceId().isBlank()) {
+            deviceReputationService.markBadDevice(transaction.getUserDeviceId());
         }
+    }
 
-        return Math.min(0.3, score); // Cap at 0.3 for this factor
+    private void recordAttempt(Transaction transaction) {
+        velocityService.recordAttempt(transaction);
+        merchantSketchService.record(transaction);
+        entityLinkService.recordAttempt(transaction);
     }
 
-    private double calculateMerchantRisk(String merchantCategoryCode) {
-        // In a real system, this would use a database of merchant risk profiles
-        // For now, we'll use some example categories
-        if (merchantCategoryCode == null) return 0.1;
-
-        return switch (merchantCategoryCode.toUpperCase()) { // Groceries
-            case "5411", "5412" -> // Discount stores
-                    0.05; // Jewelry
-            case "5944", "5941" -> // Sports equipment
-                    0.15; // Wire transfers
-            case "4829", "6051" -> // Cryptocurrency
-                    0.25;
-            default -> 0.1; // Average risk
-        };
+    // Only reads the transaction and the stores: it may run on past the time budget, after the
+    // caller has moved on with the transaction
+    private double score(Transaction transaction, double[] features) {
+        // Read velocity and sketches before recording this attempt, so they describe prior activity
+        VelocitySnapshot cardVelocity =
+                velocityService.getVelocity(transaction, VelocityDimension.CARD);
+        CardFeatures cardFeatures = cardFeatureStore.getFeatures(transaction.getCardFingerprint());
+        extractFeatures(transaction, cardFeatures, cardVelocity, features);
+        return riskModelScorer.blend(riskRuleEngine.score(features), features);
     }
 
-    private double calculateDeviceAndLocationRisk(Transaction transaction) {
-        double score = 0.0;
+    private void extractFeatures(
+            Transaction transaction,
+            CardFeatures cardFeatures,
+            VelocitySnapshot cardVelocity,
+            double[] features) {
+        Arrays.fill(features, 0.0);
+        features[RiskFeature.AMOUNT.ordinal()] = transaction.getAmount().doubleValue();
+        features[RiskFeature.RECURRING.ordinal()] = flag(transaction.isRecurring());
 
-        // High risk if using VPN/TOR
-        if (isSuspiciousIp(transaction.getUserIpAddress())) {
-            score += 0.15;
+        // Card history: callers that know it take precedence over the feature store
+        int successful = transaction.getPreviousSuccessfulTransactions();
+        int failed = transaction.getPreviousFailedTransactions();
+        int chargebacks = transaction.getPreviousChargebacks();
+        if (successful == 0 && failed == 0 && chargebacks == 0) {
+            if (cardFeatures.isKnown()) {
+                successful = cardFeatures.getSuccessfulAuthorizations();
+                failed = cardFeatures.getFailedAuthorizations();
+                chargebacks = cardFeatures.getChargebacks();
+            } else {
+                // Not in the feature store (yet), fall back to the last 24 hours of velocity
+                long attempts = cardVelocity.getAttemptsLast24Hours();
+                long declines = Math.min(attempts, cardVelocity.getDeclinesLast24Hours());
+                successful = (int) (attempts - declines);
+                failed = (int) declines;
+            }
         }
-
-        // New device or device with bad history
-        if (isNewOrRiskyDevice(transaction.getUserDeviceId())) {
-            score += 0.1;
+        features[RiskFeature.PREVIOUS_SUCCESSFUL.ordinal()] = successful;
+        features[RiskFeature.PREVIOUS_FAILED.ordinal()] = failed;
+        features[RiskFeature.PREVIOUS_CHARGEBACKS.ordinal()] = chargebacks;
+        if (successful + failed > 0) {
+            features[RiskFeature.SUCCESS_RATE.ordinal()] =
+                    (double) successful / (successful + failed);
+        }
+        long lastAmount = cardFeatures.getLastAmount();
+        if (lastAmount > 0) {
+            features[RiskFeature.AMOUNT_TO_LAST_AMOUNT.ordinal()] =
+                    (double) VelocityService.toMinorUnits(transaction.getAmount()) / lastAmount;
         }
+        features[RiskFeature.MERCHANT_CATEGORY.ordinal()] =
+                MerchantProfileTable.parseMcc(transaction.getMerchantCategoryCode());
+        features[RiskFeature.MERCHANT_RISK.ordinal()] =
+                merchantRiskProfileRegistry.getRisk(
+                        transaction.getMerchantId(), transaction.getMerchantCategoryCode());
+        features[RiskFeature.MERCHANT_CHARGEBACK_RATIO.ordinal()] =
+                merchantRiskProfileRegistry.getChargebackRatio(transaction.getMerchantId());
 
-        // Location mismatch between billing and IP country
-        if (hasSuspiciousLocation(transaction)) {
-            score += 0.15;
+        // Device and location
+        IpReputation ipReputation = ipReputationService.lookup(transaction.getUserIpAddress());
+        features[RiskFeature.IP_ANONYMIZING.ordinal()] = flag(ipReputation.isAnonymizing());
+        features[RiskFeature.IP_TOR.ordinal()] = flag(ipReputation == IpReputation.TOR);
+        String deviceId = transaction.getUserDeviceId();
+        features[RiskFeature.DEVICE_PRESENT.ordinal()] = flag(deviceId != null);
+        features[RiskFeature.DEVICE_KNOWN.ordinal()] =
+                flag(deviceReputationService.isKnownDevice(deviceId));
+        features[RiskFeature.DEVICE_BAD.ordinal()] =
+                flag(deviceReputationService.isKnownBadDevice(deviceId));
+        features[RiskFeature.SUSPICIOUS_LOCATION.ordinal()] =
+                flag(hasSuspiciousLocation(transaction));
+        String lastCountry = cardFeatures.getLastCountry();
+        features[RiskFeature.COUNTRY_CHANGED.ordinal()] =
+                flag(
+                        lastCountry != null
+                                && transaction.getCardCountry() != null
+                                && !lastCountry.equalsIgnoreCase(transaction.getCardCountry()));
+
+        // Velocity
+        features[RiskFeature.CARD_ATTEMPTS_LAST_MINUTE.ordinal()] =
+                cardVelocity.getAttemptsLastMinute();
+        features[RiskFeature.CARD_ATTEMPTS_LAST_HOUR.ordinal()] =
+                cardVelocity.getAttemptsLastHour();
+        features[RiskFeature.CARD_DECLINES_LAST_HOUR.ordinal()] =
+                cardVelocity.getDeclinesLastHour();
+        features[RiskFeature.CARD_AMOUNT_LAST_24_HOURS.ordinal()] =
+                cardVelocity.getAmountLast24Hours();
+        features[RiskFeature.IP_ATTEMPTS_LAST_HOUR.ordinal()] =
+                velocityService
+                        .getVelocity(transaction, VelocityDimension.IP_ADDRESS)
+                        .getAttemptsLastHour();
+        features[RiskFeature.DEVICE_ATTEMPTS_LAST_HOUR.ordinal()] =
+                velocityService
+                        .getVelocity(transaction, VelocityDimension.DEVICE)
+                        .getAttemptsLastHour();
+        VelocitySnapshot merchantVelocity =
+                velocityService.getVelocity(transaction, VelocityDimension.MERCHANT);
+        long merchantAttempts = merchantVelocity.getAttemptsLastHour();
+        features[RiskFeature.MERCHANT_ATTEMPTS_LAST_HOUR.ordinal()] = merchantAttempts;
+        if (merchantAttempts > 0) {
+            features[RiskFeature.MERCHANT_DECLINE_RATE_LAST_HOUR.ordinal()] =
+                    (double) merchantVelocity.getDeclinesLastHour() / merchantAttempts;
         }
 
-        return Math.min(0.2, score); // Cap at 0.2 for this factor
-    }
+        // Merchant anomalies
+        features[RiskFeature.MERCHANT_DISTINCT_CARDS_LAST_HOUR.ordinal()] =
+                merchantSketchService.getDistinctCardsLastHour(transaction.getMerchantId());
+        double merchantP99 =
+                merchantSketchService.getAmountQuantile(transaction.getMerchantId(), 0.99);
+        if (merchantP99 > 0) {
+            features[RiskFeature.AMOUNT_TO_MERCHANT_P99.ordinal()] =
+                    transaction.getAmount().doubleValue() / merchantP99;
+        }
 
-    // Mock methods - in a real system, these would check against databases or services
-    private boolean isSuspiciousIp(String ip) {
-        // Check against known VPN/proxy/TOR exits
-        // For demo, randomly return true 10% of the time
-        return random.nextDouble() < 0.1;
+        // Entity cluster of cards sharing devices, IP addresses or emails
+        EntityCluster cluster = entityLinkService.getCluster(transaction);
+        features[RiskFeature.CLUSTER_CARDS.ordinal()] = cluster.getCards();
+        features[RiskFeature.CLUSTER_FAILURE_RATE.ordinal()] = cluster.getFailureRate();
+        features[RiskFeature.CLUSTER_CHARGEBACKS.ordinal()] = cluster.getChargebacks();
     }
 
-    private boolean isNewOrRiskyDevice(String deviceId) {
-        // Check device reputation
-        // For demo, randomly return true 5% of the time
-        return random.nextDouble() < 0.05;
+    private static double flag(boolean value) {
+        return value ? 1.0 : 0.0;
     }
 
+    // Mock methods - in a real system, these would check against databases or services
     private boolean hasSuspiciousLocation(Transaction transaction) {
         // Check if billing country matches IP country
         // For demo, randomly return true 8% of the time
@@ -0,0 +1,155 @@
+package com.example.riskfraud.service;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Splits batches of risk assessments across cores. A batch is cut into one contiguous slice per
+ * thread, and each slice is processed sequentially by a single thread, so per-thread buffers are
+ * reused for the whole slice. The calling thread processes the last slice itself.
+ */
+@Component
+public class RiskBatchExecutor {
+
+    private final int parallelism;
+    private final int minSliceSize;
+    private final int chunkSize;
+    private final ExecutorService executor;
+
+    /**
+     * Creates the batch executor.
+     *
+     * @param parallelism The number of threads per batch, 0 for the number of processors
+     * @param minSliceSize The smallest number of items worth handing to another thread
+     * @param chunkSize The number of items streaming callers should collect per batch
+     */
+    public RiskBatchExecutor(
+            @Value("${risk-fraud.batch.parallelism:0}") int parallelism,
+            @Value("${risk-fraud.batch.min-slice-size:64}") int minSliceSize,
+            @Value("${risk-fraud.batch.chunk-size:1000}") int chunkSize) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Parallelism cannot be negative");
+        }
+        if (minSliceSize <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Slice and chunk sizes must be positive");
+        }
+
+        this.parallelism =
+                parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+        this.minSliceSize = minSliceSize;
+        this.chunkSize = chunkSize;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor =
+                this.parallelism > 1
+                        ? Executors.newFixedThreadPool(
+                                this.parallelism - 1,
+                                runnable -> {
+                                    Thread thread =
+                                            new Thread(
+                                                    runnable,
+                                                    "risk-batch-" + threadCount.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                })
+                        : null;
+    }
+
+    /**
+     * Gets the number of items streaming callers should collect before calling {@link #map}.
+     *
+     * @return The chunk size
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Applies a function to every item of a batch, in parallel.
+     *
+     * @param items The items
+     * @param function The function, which must be safe to call concurrently
+     * @param <T> The item type
+     * @param <R> The result type
+     * @return The results, in the order of the items
+     * @throws RuntimeException The first exception thrown by the function, after all slices ended
+     */
+    public <T, R> List<R> map(List<T> items, Function<T, R> function) {
+        int slices = executor == null ? 1 : Math.min(parallelism, items.size() / minSliceSize);
+        if (slices <= 1) {
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(function.apply(item));
+            }
+            return results;
+        }
+
+        Object[] results = new Object[items.size()];
+        List<Future<?>> futures = new ArrayList<>(slices - 1);
+        for (int slice = 0; slice < slices - 1; slice++) {
+            int from = sliceStart(slice, slices, items.size());
+            int to = sliceStart(slice + 1, slices, items.size());
+            futures.add(executor.submit(() -> apply(items, function, results, from, to)));
+        }
+
+        RuntimeException failure = null;
+        int lastSliceStart = sliceStart(slices - 1, slices, items.size());
+        try {
+            apply(items, function, results, lastSliceStart, items.size());
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure =
+                            e.getCause() instanceof RuntimeException runtime
+                                    ? runtime
+                                    : new IllegalStateException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(pending -> pending.cancel(true));
+                throw new IllegalStateException("Interrupted while assessing a batch", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T, R> void apply(
+            List<T> items, Function<T, R> function, Object[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = function.apply(items.get(i));
+        }
+    }
+
+    private static int sliceStart(int slice, int slices, int size) {
+        return (int) ((long) size * slice / slices);
+    }
+}
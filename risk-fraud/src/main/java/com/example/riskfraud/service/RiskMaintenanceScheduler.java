@@ -0,0 +1,62 @@
+package com.example.riskfraud.service;
+
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the periodic background tasks of the risk services, such as reloading their files, on one
+ * shared daemon thread.
+ *
+ * <p>Tasks run one at a time, so they should be short; a task that throws is logged and stays
+ * scheduled.
+ */
+@Slf4j
+@Service
+public class RiskMaintenanceScheduler {
+
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "risk-maintenance");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    /**
+     * Runs a task repeatedly, with a fixed delay between the end of one run and the next.
+     *
+     * @param name The name of the task, for logging
+     * @param task The task
+     * @param delay The delay before the first run and between runs
+     * @param unit The unit of the delay
+     * @return The scheduled task, to cancel it
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(
+            String name, Runnable task, long delay, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        // Keep the task scheduled
+                        log.error("Risk maintenance task {} failed", name, e);
+                    }
+                },
+                delay,
+                delay,
+                unit);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.RiskFeature;
+
+import java.util.List;
+
+/**
+ * Immutable logistic regression model over the {@link RiskFeature} vector.
+ *
+ * <p>Models are loaded from text, one entry per line:
+ *
+ * <pre>
+ * # Comment
+ * version &lt;name&gt;
+ * intercept &lt;value&gt;
+ * &lt;feature&gt; &lt;weight&gt;
+ * </pre>
+ *
+ * Features are the lower-case names of {@link RiskFeature}; features that are not listed have a
+ * weight of 0. Any scaling of the features must be folded into the weights and intercept when the
+ * model is exported.
+ */
+final class RiskModel {
+
+    private final String version;
+    private final double intercept;
+    // Indexed by RiskFeature.ordinal()
+    private final double[] weights;
+
+    private RiskModel(String version, double intercept, double[] weights) {
+        this.version = version;
+        this.intercept = intercept;
+        this.weights = weights;
+    }
+
+    /**
+     * Parses a model from its text form.
+     *
+     * @param lines The model lines
+     * @return The model
+     * @throws IllegalArgumentException If a line is invalid, with its line number
+     */
+    static RiskModel parse(List<String> lines) {
+        String version = "unversioned";
+        double intercept = 0.0;
+        double[] weights = new double[RiskFeature.COUNT];
+        boolean[] seen = new boolean[RiskFeature.COUNT];
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (content.isEmpty()) {
+                continue;
+            }
+
+            String[] tokens = content.split("\\s+");
+            if (tokens.length != 2) {
+                throw new IllegalArgumentException(
+                        "Line " + (i + 1) + ": Expected '<name> <value>'");
+            }
+            switch (tokens[0]) {
+                case "version" -> version = tokens[1];
+                case "intercept" -> intercept = parseNumber(tokens[1], i);
+                default -> {
+                    int feature = parseFeature(tokens[0], i);
+                    if (seen[feature]) {
+                        throw new IllegalArgumentException(
+                                "Line " + (i + 1) + ": Duplicate feature '" + tokens[0] + "'");
+                    }
+                    seen[feature] = true;
+                    weights[feature] = parseNumber(tokens[1], i);
+                }
+            }
+        }
+        return new RiskModel(version, intercept, weights);
+    }
+
+    /**
+     * Scores a transaction.
+     *
+     * @param features The feature vector, indexed by {@link RiskFeature#ordinal()}
+     * @return The fraud probability between 0 and 1
+     */
+    double score(double[] features) {
+        double z = intercept;
+        for (int i = 0; i < weights.length; i++) {
+            z += weights[i] * features[i];
+        }
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    private static int parseFeature(String name, int line) {
+        for (RiskFeature feature : RiskFeature.values()) {
+            if (feature.ruleName().equals(name)) {
+                return feature.ordinal();
+            }
+        }
+        throw new IllegalArgumentException(
+                "Line " + (line + 1) + ": Unknown feature '" + name + "'");
+    }
+
+    private static double parseNumber(String value, int line) {
+        try {
+            double number = Double.parseDouble(value);
+            if (Double.isFinite(number)) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(
+                "Line " + (line + 1) + ": Invalid number '" + value + "'");
+    }
+}
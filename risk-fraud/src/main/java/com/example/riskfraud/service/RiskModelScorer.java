@@ -0,0 +1,140 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.RiskFeature;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Scores transactions with a {@link RiskModel} loaded from a local file, and blends that score
+ * with the score of the risk rules.
+ *
+ * <p>Models are parsed on a background thread when the file changes and swapped in atomically, so
+ * scoring never waits for a reload. A file that does not parse is rejected and the previous model
+ * stays in use. Without a model file, the rule score is used unchanged.
+ */
+@Slf4j
+@Service
+public class RiskModelScorer {
+
+    private final ReloadableFile modelFile;
+    private final double blendWeight;
+    private volatile RiskModel model;
+
+    /**
+     * Creates the scorer without a model.
+     *
+     * @param modelPath The model file, or empty to disable the model
+     * @param reloadIntervalSeconds How often to check the model file for changes, 0 to only load it
+     *     on startup
+     * @param blendWeight The share of the model score in the blended score, between 0 and 1
+     * @param scheduler The scheduler to check the model file on
+     */
+    public RiskModelScorer(
+            @Value("${risk-fraud.model.path:}") String modelPath,
+            @Value("${risk-fraud.model.reload-interval-seconds:30}") long reloadIntervalSeconds,
+            @Value("${risk-fraud.model.blend-weight:0.5}") double blendWeight,
+            RiskMaintenanceScheduler scheduler) {
+        if (!(blendWeight >= 0.0 && blendWeight <= 1.0)) {
+            throw new IllegalArgumentException("Blend weight must be between 0 and 1");
+        }
+
+        this.blendWeight = blendWeight;
+        this.modelFile =
+                new ReloadableFile(
+                        "risk model", modelPath, reloadIntervalSeconds, scheduler, this::reload);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!modelFile.isConfigured()) {
+            log.info("No risk model configured, scoring with rules only");
+            return;
+        }
+        modelFile.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        modelFile.stop();
+    }
+
+    /**
+     * Blends the rule score of a transaction with the model score.
+     *
+     * @param ruleScore The score of the risk rules
+     * @param features The feature vector, indexed by {@link RiskFeature#ordinal()}
+     * @return The blended risk score, or the rule score if no model is loaded
+     */
+    public double blend(double ruleScore, double[] features) {
+        RiskModel current = model;
+        if (current == null) {
+            return ruleScore;
+        }
+        return (1.0 - blendWeight) * ruleScore + blendWeight * current.score(features);
+    }
+
+    /**
+     * Scores a transaction with the model alone.
+     *
+     * @param features The feature vector, indexed by {@link RiskFeature#ordinal()}
+     * @return The fraud probability between 0 and 1, or NaN if no model is loaded
+     */
+    public double score(double[] features) {
+        RiskModel current = model;
+        return current == null ? Double.NaN : current.score(features);
+    }
+
+    /**
+     * Gets the version of the loaded model.
+     *
+     * @return The model version, or null if no model is loaded
+     */
+    public String getModelVersion() {
+        RiskModel current = model;
+        return current == null ? null : current.getVersion();
+    }
+
+    /**
+     * Reloads the model file now. On failure the previous model stays in use.
+     *
+     * @return true if the model was reloaded
+     */
+    public boolean reload() {
+        return modelFile.reload();
+    }
+
+    /**
+     * Parses a model file and swaps it in.
+     *
+     * @param path The model file
+     * @return true if the model was loaded
+     */
+    boolean reload(Path path) {
+        RiskModel parsed;
+        try {
+            parsed = RiskModel.parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("Failed to read risk model {}: {}", path, e.getMessage());
+            return false;
+        } catch (IllegalArgumentException e) {
+            log.error(
+                    "Invalid risk model {}, keeping the previous model: {}", path, e.getMessage());
+            return false;
+        }
+
+        model = parsed;
+        log.info("Loaded risk model {} from {}", parsed.getVersion(), path);
+        return true;
+    }
+}
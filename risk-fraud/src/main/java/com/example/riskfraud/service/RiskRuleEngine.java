@@ -0,0 +1,143 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.RiskFeature;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Scores transactions with a {@link RiskRuleSet} loaded from a local rule file, or with the
+ * built-in default rules if no file is configured.
+ *
+ * <p>Rule files are compiled when loaded and swapped in atomically when they change; a file that
+ * does not compile is rejected as a whole and the previous rules stay in use.
+ */
+@Slf4j
+@Service
+public class RiskRuleEngine {
+
+    static final String DEFAULT_RULES = "/risk-rules/default.rules";
+
+    private final ReloadableFile rulesFile;
+    private volatile RiskRuleSet ruleSet;
+
+    /**
+     * Creates the rule engine with the default rules.
+     *
+     * @param rulesPath The rule file, or empty to use the default rules
+     * @param reloadIntervalSeconds How often to check the rule file for changes, 0 to only load it
+     *     on startup
+     * @param scheduler The scheduler to check the rule file on
+     */
+    public RiskRuleEngine(
+            @Value("${risk-fraud.rules.path:}") String rulesPath,
+            @Value("${risk-fraud.rules.reload-interval-seconds:30}") long reloadIntervalSeconds,
+            RiskMaintenanceScheduler scheduler) {
+        this.ruleSet = RiskRuleSet.compile(readDefaultRules());
+        this.rulesFile =
+                new ReloadableFile(
+                        "risk rules", rulesPath, reloadIntervalSeconds, scheduler, this::reload);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!rulesFile.isConfigured()) {
+            log.info("No risk rule file configured, using the default rules");
+            return;
+        }
+        rulesFile.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        rulesFile.stop();
+    }
+
+    /**
+     * Scores a transaction with the current rules.
+     *
+     * @param features The feature vector, indexed by {@link RiskFeature#ordinal()}
+     * @return The risk score between 0 and 1
+     */
+    public double score(double[] features) {
+        if (features.length != RiskFeature.COUNT) {
+            throw new IllegalArgumentException(
+                    "Expected " + RiskFeature.COUNT + " features but got " + features.length);
+        }
+        return ruleSet.score(features);
+    }
+
+    /**
+     * Reloads the rule file now. On failure the previous rules stay in use.
+     *
+     * @return true if the rules were reloaded
+     */
+    public boolean reload() {
+        return rulesFile.reload();
+    }
+
+    /**
+     * Gets the number of rules currently in use.
+     *
+     * @return The number of rules
+     */
+    public int getRuleCount() {
+        return ruleSet.getRuleCount();
+    }
+
+    /**
+     * Compiles a rule file and swaps it in.
+     *
+     * @param path The rule file
+     * @return true if the rules were loaded
+     */
+    boolean reload(Path path) {
+        RiskRuleSet compiled;
+        try {
+            compiled = RiskRuleSet.compile(Files.readAllLines(path, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("Failed to read risk rules {}: {}", path, e.getMessage());
+            return false;
+        } catch (IllegalArgumentException e) {
+            log.error(
+                    "Invalid risk rules {}, keeping the previous rules: {}", path, e.getMessage());
+            return false;
+        }
+
+        ruleSet = compiled;
+        log.info(
+                "Loaded {} risk rules in {} groups from {}",
+                compiled.getRuleCount(),
+                compiled.getGroupCount(),
+                path);
+        return true;
+    }
+
+    static List<String> readDefaultRules() {
+        InputStream in = RiskRuleEngine.class.getResourceAsStream(DEFAULT_RULES);
+        if (in == null) {
+            throw new IllegalStateException("Default risk rules not found: " + DEFAULT_RULES);
+        }
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.RiskFeature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable set of risk scoring rules, compiled from their text form into flat primitive arrays.
+ *
+ * <p>Rules are organized in groups, each contributing a sub-score to the total:
+ *
+ * <pre>
+ * # Comment
+ * group &lt;name&gt; sum|first [cap &lt;max&gt;]
+ * rule &lt;weight&gt;[*&lt;feature&gt;] [when &lt;feature&gt; &lt;op&gt; &lt;value&gt; [and ...]]
+ * </pre>
+ *
+ * In a {@code sum} group the weights of all matching rules are added up, in a {@code first} group
+ * only the first matching rule counts; either way the sub-score is limited to the cap. A weight
+ * followed by {@code *feature} is multiplied by that feature's value. Operators are {@code <},
+ * {@code <=}, {@code >}, {@code >=}, {@code ==}, {@code !=} and {@code in}, which takes a
+ * comma-separated list of values. Features are the lower-case names of {@link RiskFeature}. The
+ * total score is clamped to [0, 1].
+ *
+ * <p>Evaluation only walks the arrays and compares doubles, without reflection, boxing or
+ * allocation.
+ */
+final class RiskRuleSet {
+
+    private static final byte LESS = 0;
+    private static final byte LESS_OR_EQUAL = 1;
+    private static final byte GREATER = 2;
+    private static final byte GREATER_OR_EQUAL = 3;
+    private static final byte EQUAL = 4;
+    private static final byte NOT_EQUAL = 5;
+    private static final byte IN = 6;
+
+    private static final String[] OPERATORS = {"<", "<=", ">", ">=", "==", "!=", "in"};
+
+    private static final int NO_FEATURE = -1;
+
+    // Group g owns rules groupRules[g] until groupRules[g + 1]
+    private final int[] groupRules;
+    private final boolean[] groupFirstMatch;
+    private final double[] groupCap;
+
+    // Rule r owns conditions ruleConditions[r] until ruleConditions[r + 1]
+    private final int[] ruleConditions;
+    private final double[] ruleWeight;
+    private final int[] ruleWeightFeature;
+
+    private final int[] conditionFeature;
+    private final byte[] conditionOperator;
+    // The operand, or for IN the start of its values in inValues
+    private final double[] conditionValue;
+    private final int[] conditionValueCount;
+    private final double[] inValues;
+
+    private RiskRuleSet(Compiler compiler) {
+        this.groupRules = toIntArray(compiler.groupRules);
+        this.groupFirstMatch = new boolean[compiler.groupFirstMatch.size()];
+        for (int group = 0; group < groupFirstMatch.length; group++) {
+            groupFirstMatch[group] = compiler.groupFirstMatch.get(group);
+        }
+        this.groupCap = toDoubleArray(compiler.groupCap);
+        this.ruleConditions = toIntArray(compiler.ruleConditions);
+        this.ruleWeight = toDoubleArray(compiler.ruleWeight);
+        this.ruleWeightFeature = toIntArray(compiler.ruleWeightFeature);
+        this.conditionFeature = toIntArray(compiler.conditionFeature);
+        this.conditionOperator = new byte[compiler.conditionOperator.size()];
+        for (int condition = 0; condition < conditionOperator.length; condition++) {
+            conditionOperator[condition] = compiler.conditionOperator.get(condition);
+        }
+        this.conditionValue = toDoubleArray(compiler.conditionValue);
+        this.conditionValueCount = toIntArray(compiler.conditionValueCount);
+        this.inValues = toDoubleArray(compiler.inValues);
+    }
+
+    /**
+     * Compiles rules from their text form.
+     *
+     * @param lines The rule lines
+     * @return The compiled rules
+     * @throws IllegalArgumentException If a line is invalid, with its line number
+     */
+    static RiskRuleSet compile(List<String> lines) {
+        Compiler compiler = new Compiler();
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                compiler.compileLine(lines.get(i));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return compiler.finish();
+    }
+
+    /**
+     * Scores a transaction.
+     *
+     * @param features The feature vector, indexed by {@link RiskFeature#ordinal()}
+     * @return The risk score between 0 and 1
+     */
+    double score(double[] features) {
+        double score = 0.0;
+        int groups = groupFirstMatch.length;
+        for (int group = 0; group < groups; group++) {
+            double groupScore = 0.0;
+            boolean firstMatch = groupFirstMatch[group];
+            int end = groupRules[group + 1];
+            for (int rule = groupRules[group]; rule < end; rule++) {
+                if (matches(rule, features)) {
+                    int weightFeature = ruleWeightFeature[rule];
+                    groupScore +=
+                            weightFeature == NO_FEATURE
+                                    ? ruleWeight[rule]
+                                    : ruleWeight[rule] * features[weightFeature];
+                    if (firstMatch) {
+                        break;
+                    }
+                }
+            }
+            score += Math.min(groupScore, groupCap[group]);
+        }
+        return Math.min(1.0, Math.max(0.0, score));
+    }
+
+    int getGroupCount() {
+        return groupFirstMatch.length;
+    }
+
+    int getRuleCount() {
+        return ruleWeight.length;
+    }
+
+    private boolean matches(int rule, double[] features) {
+        int end = ruleConditions[rule + 1];
+        for (int condition = ruleConditions[rule]; condition < end; condition++) {
+            double feature = features[conditionFeature[condition]];
+            double value = conditionValue[condition];
+            boolean matches =
+                    switch (conditionOperator[condition]) {
+                        case LESS -> feature < value;
+                        case LESS_OR_EQUAL -> feature <= value;
+                        case GREATER -> feature > value;
+                        case GREATER_OR_EQUAL -> feature >= value;
+                        case EQUAL -> feature == value;
+                        case NOT_EQUAL -> feature != value;
+                        default -> isIn(feature, (int) value, conditionValueCount[condition]);
+                    };
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isIn(double feature, int start, int count) {
+        for (int i = start; i < start + count; i++) {
+            if (inValues[i] == feature) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static double[] toDoubleArray(List<Double> values) {
+        return values.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /** Collects the arrays of a rule set while parsing. */
+    private static final class Compiler {
+        private final List<Integer> groupRules = new ArrayList<>();
+        private final List<Boolean> groupFirstMatch = new ArrayList<>();
+        private final List<Double> groupCap = new ArrayList<>();
+        private final List<Integer> ruleConditions = new ArrayList<>();
+        private final List<Double> ruleWeight = new ArrayList<>();
+        private final List<Integer> ruleWeightFeature = new ArrayList<>();
+        private final List<Integer> conditionFeature = new ArrayList<>();
+        private final List<Byte> conditionOperator = new ArrayList<>();
+        private final List<Double> conditionValue = new ArrayList<>();
+        private final List<Integer> conditionValueCount = new ArrayList<>();
+        private final List<Double> inValues = new ArrayList<>();
+
+        private void compileLine(String line) {
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (content.isEmpty()) {
+                return;
+            }
+
+            String[] tokens = content.split("\\s+");
+            switch (tokens[0]) {
+                case "group" -> compileGroup(tokens);
+                case "rule" -> compileRule(tokens);
+                default -> throw new IllegalArgumentException(
+                        "Expected 'group' or 'rule' but found '" + tokens[0] + "'");
+            }
+        }
+
+        private void compileGroup(String[] tokens) {
+            if (tokens.length != 3 && !(tokens.length == 5 && tokens[3].equals("cap"))) {
+                throw new IllegalArgumentException(
+                        "Expected 'group <name> sum|first [cap <max>]'");
+            }
+
+            boolean firstMatch =
+                    switch (tokens[2]) {
+                        case "sum" -> false;
+                        case "first" -> true;
+                        default -> throw new IllegalArgumentException(
+                                "Group mode must be 'sum' or 'first' but was '" + tokens[2] + "'");
+                    };
+
+            groupFirstMatch.add(firstMatch);
+            groupRules.add(ruleWeight.size());
+            groupCap.add(tokens.length == 5 ? parseNumber(tokens[4]) : Double.POSITIVE_INFINITY);
+        }
+
+        private void compileRule(String[] tokens) {
+            if (groupFirstMatch.isEmpty()) {
+                throw new IllegalArgumentException("Rule must follow a group");
+            }
+            if (tokens.length < 2 || (tokens.length > 2 && !tokens[2].equals("when"))) {
+                throw new IllegalArgumentException(
+                        "Expected 'rule <weight>[*<feature>] [when <conditions>]'");
+            }
+
+            String weight = tokens[1];
+            int multiply = weight.indexOf('*');
+            ruleConditions.add(conditionFeature.size());
+            ruleWeight.add(parseNumber(multiply >= 0 ? weight.substring(0, multiply) : weight));
+            ruleWeightFeature.add(
+                    multiply >= 0 ? parseFeature(weight.substring(multiply + 1)) : NO_FEATURE);
+
+            // Conditions are "<feature> <op> <value>", separated by "and"
+            int position = 3;
+            while (position < tokens.length) {
+                if (position + 3 > tokens.length) {
+                    throw new IllegalArgumentException("Expected '<feature> <op> <value>'");
+                }
+                compileCondition(tokens[position], tokens[position + 1], tokens[position + 2]);
+                position += 3;
+                if (position < tokens.length) {
+                    if (!tokens[position].equals("and") || position + 1 == tokens.length) {
+                        throw new IllegalArgumentException("Expected 'and <condition>'");
+                    }
+                    position++;
+                }
+            }
+            if (tokens.length > 2 && position == 3) {
+                throw new IllegalArgumentException("Expected a condition after 'when'");
+            }
+        }
+
+        private void compileCondition(String feature, String operator, String value) {
+            byte op = -1;
+            for (byte i = 0; i < OPERATORS.length; i++) {
+                if (OPERATORS[i].equals(operator)) {
+                    op = i;
+                }
+            }
+            if (op < 0) {
+                throw new IllegalArgumentException("Unknown operator '" + operator + "'");
+            }
+
+            conditionFeature.add(parseFeature(feature));
+            conditionOperator.add(op);
+            if (op == IN) {
+                String[] values = value.split(",");
+                conditionValue.add((double) inValues.size());
+                conditionValueCount.add(values.length);
+                for (String inValue : values) {
+                    inValues.add(parseNumber(inValue));
+                }
+            } else {
+                conditionValue.add(parseNumber(value));
+                conditionValueCount.add(1);
+            }
+        }
+
+        private RiskRuleSet finish() {
+            groupRules.add(ruleWeight.size());
+            ruleConditions.add(conditionFeature.size());
+            return new RiskRuleSet(this);
+        }
+
+        private static int parseFeature(String name) {
+            for (RiskFeature feature : RiskFeature.values()) {
+                if (feature.ruleName().equals(name)) {
+                    return feature.ordinal();
+                }
+            }
+            throw new IllegalArgumentException("Unknown feature '" + name + "'");
+        }
+
+        private static double parseNumber(String value) {
+            try {
+                double number = Double.parseDouble(value);
+                if (Double.isNaN(number)) {
+                    throw new NumberFormatException();
+                }
+                return number;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number '" + value + "'");
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.RiskDeadlineStatistics;
+
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Bounds how long a single risk assessment may take, so that a slow dependency of risk scoring
+ * cannot stall authorizations.
+ *
+ * <p>Scoring runs on a bounded pool of threads while the caller waits up to the time budget. If
+ * the budget runs out, or every pool thread is still busy with earlier assessments, the caller
+ * gets no score and uses the fallback score instead, which only depends on the amount and the
+ * merchant profile. The hand-off costs a few microseconds per assessment; a budget of 0 scores on
+ * the caller's thread without a limit.
+ */
+@Slf4j
+@Component
+public class RiskScoringDeadline {
+
+    private final long budgetMillis;
+    private final double[] fallbackAmountLimits;
+    private final double[] fallbackAmountScores;
+    private final double fallbackMargin;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder assessments = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Creates the scoring deadline.
+     *
+     * @param budgetMillis The time budget per risk assessment, 0 for no limit
+     * @param threads The maximum number of assessments scored at the same time
+     * @param fallbackAmountLimits The upper amount limits of the fallback amount tiers, ascending
+     * @param fallbackAmountScores The fallback score of each amount tier, plus one for amounts
+     *     above the last limit
+     * @param fallbackMargin Added to the fallback score for the signals that were not scored
+     */
+    public RiskScoringDeadline(
+            @Value("${risk-fraud.deadline.budget-ms:50}") long budgetMillis,
+            @Value("${risk-fraud.deadline.threads:200}") int threads,
+            @Value("${risk-fraud.deadline.fallback-amount-limits:100,1000,5000,10000}")
+                    double[] fallbackAmountLimits,
+            @Value("${risk-fraud.deadline.fallback-amount-scores:0.1,0.15,0.2,0.3,0.35}")
+                    double[] fallbackAmountScores,
+            @Value("${risk-fraud.deadline.fallback-margin:0.2}") double fallbackMargin) {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("Risk scoring budget cannot be negative");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Risk scoring threads must be positive");
+        }
+        if (fallbackAmountScores.length != fallbackAmountLimits.length + 1) {
+            throw new IllegalArgumentException(
+                    "Expected one more fallback amount score than amount limits");
+        }
+        for (int i = 1; i < fallbackAmountLimits.length; i++) {
+            if (!(fallbackAmountLimits[i] > fallbackAmountLimits[i - 1])) {
+                throw new IllegalArgumentException("Fallback amount limits must be ascending");
+            }
+        }
+        for (double score : fallbackAmountScores) {
+            checkScore(score, "Fallback amount scores");
+        }
+        checkScore(fallbackMargin, "Fallback margin");
+
+        this.budgetMillis = budgetMillis;
+        this.fallbackAmountLimits = fallbackAmountLimits.clone();
+        this.fallbackAmountScores = fallbackAmountScores.clone();
+        this.fallbackMargin = fallbackMargin;
+        this.executor = budgetMillis > 0 ? newExecutor(threads) : null;
+    }
+
+    /**
+     * Scores within the time budget.
+     *
+     * @param scoring Computes the risk score
+     * @return The risk score, or NaN if the budget ran out or no scoring thread was free
+     */
+    public double score(DoubleSupplier scoring) {
+        assessments.increment();
+        if (executor == null) {
+            return scoring.getAsDouble();
+        }
+
+        Future<Double> future;
+        try {
+            future = executor.submit(scoring::getAsDouble);
+        } catch (RejectedExecutionException e) {
+            // Every thread is busy with earlier assessments, likely stuck on a slow dependency
+            rejections.increment();
+            return Double.NaN;
+        }
+
+        try {
+            return future.get(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            log.debug("Risk scoring exceeded its budget of {} ms", budgetMillis);
+            return Double.NaN;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Risk scoring failed", e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scoring risk", e);
+        }
+    }
+
+    /**
+     * Computes the fallback score for a transaction that could not be scored in time.
+     *
+     * @param amount The transaction amount
+     * @param merchantRisk The baseline risk of the merchant
+     * @return The amount tier score plus the merchant risk and the margin, at most 1
+     */
+    public double fallbackScore(double amount, double merchantRisk) {
+        int tier = 0;
+        while (tier < fallbackAmountLimits.length && amount >= fallbackAmountLimits[tier]) {
+            tier++;
+        }
+        return Math.min(1.0, fallbackAmountScores[tier] + merchantRisk + fallbackMargin);
+    }
+
+    /**
+     * Gets how often the budget ran out since startup.
+     *
+     * @return The assessment and timeout counts
+     */
+    public RiskDeadlineStatistics getStatistics() {
+        long assessed = assessments.sum();
+        long timedOut = timeouts.sum();
+        long rejected = rejections.sum();
+        return RiskDeadlineStatistics.builder()
+                .budgetMillis(budgetMillis)
+                .assessments(assessed)
+                .timeouts(timedOut)
+                .rejections(rejected)
+                .fallbackRate(assessed == 0 ? 0.0 : (double) (timedOut + rejected) / assessed)
+                .busyThreads(executor == null ? 0 : executor.getActiveCount())
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void checkScore(double score, String name) {
+        if (!(score >= 0.0 && score <= 1.0)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1");
+        }
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads) {
+        // No queue: an assessment either gets a thread right away or falls back
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                0,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread =
+                            new Thread(runnable, "risk-scoring-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
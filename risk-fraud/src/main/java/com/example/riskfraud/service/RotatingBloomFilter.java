@@ -0,0 +1,253 @@
+package com.example.riskfraud.service;
+
+import com.example.shared.util.FastHash;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Set membership filter that forgets old elements, built from a ring of Bloom filters
+ * ("generations") over plain {@code long[]} bitsets.
+ *
+ * <p>Elements are added to the current generation and looked up in all of them, so an element is
+ * remembered for between {@code generations - 1} and {@code generations} rotation periods. When
+ * the filter is rotated, the oldest generation is cleared and becomes the current one. A
+ * generation is sized for an expected number of insertions at the configured false-positive rate;
+ * callers should also rotate when {@link #isCurrentGenerationFull()}, so that the false-positive
+ * rate holds even if more elements arrive than expected.
+ *
+ * <p>Bits are only ever set with atomic OR operations, so concurrent adds and lookups are safe
+ * without locking. Rotation must not run concurrently with itself.
+ */
+final class RotatingBloomFilter {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[][] generations;
+    private final long[] startMillis;
+    private final LongAdder[] insertions;
+    private final long bitsPerGeneration;
+    private final int hashes;
+    private final long expectedInsertions;
+    private volatile int current;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param generations The number of generations, at least 2
+     * @param expectedInsertions The number of distinct elements per generation
+     * @param falsePositiveRate The false-positive rate of a generation at its expected insertions
+     * @param nowMillis The start time of the current generation
+     */
+    RotatingBloomFilter(
+            int generations, long expectedInsertions, double falsePositiveRate, long nowMillis) {
+        if (generations < 2) {
+            throw new IllegalArgumentException("At least 2 generations are required");
+        }
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        }
+        if (!(falsePositiveRate > 0.0 && falsePositiveRate < 1.0)) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1");
+        }
+
+        // Optimal size and number of hash functions for a standard Bloom filter
+        double bits =
+                -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long words = (long) Math.ceil(bits / Long.SIZE);
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(
+                    "Bloom filter generation would exceed " + Integer.MAX_VALUE + " words");
+        }
+
+        this.bitsPerGeneration = words * Long.SIZE;
+        double bitsPerElement = (double) bitsPerGeneration / expectedInsertions;
+        this.hashes = Math.max(1, (int) Math.round(bitsPerElement * Math.log(2)));
+        this.expectedInsertions = expectedInsertions;
+        this.generations = new long[generations][];
+        this.startMillis = new long[generations];
+        this.insertions = new LongAdder[generations];
+        for (int generation = 0; generation < generations; generation++) {
+            this.generations[generation] = new long[(int) words];
+            this.insertions[generation] = new LongAdder();
+        }
+        this.startMillis[0] = nowMillis;
+    }
+
+    /**
+     * Adds an element to the current generation.
+     *
+     * @param hash A 64-bit hash of the element
+     * @return true if the element was not yet in the current generation
+     */
+    boolean put(long hash) {
+        int generation = current;
+        long[] words = generations[generation];
+        long second = secondHash(hash);
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(hash + i * second, bitsPerGeneration);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            // Skip the atomic write if the bit is already set, which is the common case
+            if (((long) WORDS.getOpaque(words, word) & mask) == 0
+                    && ((long) WORDS.getAndBitwiseOr(words, word, mask) & mask) == 0) {
+                added = true;
+            }
+        }
+        if (added) {
+            insertions[generation].increment();
+        }
+        return added;
+    }
+
+    /**
+     * Checks if an element may have been added in any generation.
+     *
+     * @param hash A 64-bit hash of the element
+     * @return false if the element was definitely not added since its generation was cleared
+     */
+    boolean mightContain(long hash) {
+        long second = secondHash(hash);
+        int newest = current;
+        for (int offset = 0; offset < generations.length; offset++) {
+            // Newest first, recently seen elements are the most likely to be queried
+            long[] words = generations[(newest - offset + generations.length) % generations.length];
+            if (contains(words, hash, second)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clears the oldest generation and makes it the current one.
+     *
+     * @param nowMillis The start time of the new current generation
+     */
+    void rotate(long nowMillis) {
+        int next = (current + 1) % generations.length;
+        Arrays.fill(generations[next], 0L);
+        insertions[next].reset();
+        startMillis[next] = nowMillis;
+        current = next;
+    }
+
+    /**
+     * Gets the start time of the current generation.
+     *
+     * @return The start time in epoch milliseconds
+     */
+    long getCurrentGenerationStartMillis() {
+        return startMillis[current];
+    }
+
+    /**
+     * Checks if the current generation has reached its expected number of insertions.
+     *
+     * @return true if the filter should be rotated to keep its false-positive rate
+     */
+    boolean isCurrentGenerationFull() {
+        return insertions[current].sum() >= expectedInsertions;
+    }
+
+    /**
+     * Gets the approximate number of distinct elements added to all generations.
+     *
+     * @return The element count
+     */
+    long getApproximateElementCount() {
+        long count = 0;
+        for (LongAdder generation : insertions) {
+            count += generation.sum();
+        }
+        return count;
+    }
+
+    long getBitsPerGeneration() {
+        return bitsPerGeneration;
+    }
+
+    int getHashes() {
+        return hashes;
+    }
+
+    int getGenerations() {
+        return generations.length;
+    }
+
+    /**
+     * Writes all generations. Bits set concurrently may or may not be included.
+     *
+     * @param out The stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        int newest = current;
+        out.writeInt(generations.length);
+        out.writeLong(bitsPerGeneration);
+        out.writeInt(hashes);
+        out.writeInt(newest);
+        for (int generation = 0; generation < generations.length; generation++) {
+            out.writeLong(startMillis[generation]);
+            out.writeLong(insertions[generation].sum());
+            long[] words = generations[generation];
+            for (int word = 0; word < words.length; word++) {
+                out.writeLong((long) WORDS.getOpaque(words, word));
+            }
+        }
+    }
+
+    /**
+     * Replaces all generations with ones written by {@link #writeTo(DataOutputStream)}. Must only
+     * be called before the filter is used.
+     *
+     * @param in The stream to read from
+     * @return false if the stream was written by a filter with a different configuration, in which
+     *     case nothing is read after the header and the filter is unchanged
+     * @throws IOException If the stream cannot be read
+     */
+    boolean readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != generations.length
+                || in.readLong() != bitsPerGeneration
+                || in.readInt() != hashes) {
+            return false;
+        }
+
+        int newest = in.readInt();
+        if (newest < 0 || newest >= generations.length) {
+            throw new IOException("Invalid current generation: " + newest);
+        }
+        for (int generation = 0; generation < generations.length; generation++) {
+            startMillis[generation] = in.readLong();
+            insertions[generation].reset();
+            insertions[generation].add(in.readLong());
+            long[] words = generations[generation];
+            for (int word = 0; word < words.length; word++) {
+                words[word] = in.readLong();
+            }
+        }
+        current = newest;
+        return true;
+    }
+
+    private boolean contains(long[] words, long hash, long second) {
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(hash + i * second, bitsPerGeneration);
+            if (((long) WORDS.getOpaque(words, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Second hash for double hashing, never zero so that the probes do not collapse. */
+    private static long secondHash(long hash) {
+        return FastHash.mix64(hash) | 1L;
+    }
+}
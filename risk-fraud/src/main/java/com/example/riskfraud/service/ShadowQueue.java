@@ -0,0 +1,110 @@
+package com.example.riskfraud.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer, multi-consumer queue of feature vectors with their production
+ * score, stored inline in a preallocated {@code double[]} so that neither offering nor polling
+ * allocates.
+ *
+ * <p>Each slot has a sequence number that tells producers and consumers whose turn it is (Dmitry
+ * Vyukov's bounded queue). Producers claim a position with a CAS on the tail, write the slot and
+ * then publish it by advancing its sequence; consumers do the same on the head. A full queue
+ * rejects the offer instead of waiting.
+ */
+final class ShadowQueue {
+
+    private final int mask;
+    private final int width;
+    private final double[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity The number of entries, rounded up to a power of two of at least 2
+     * @param width The length of the feature vectors
+     */
+    ShadowQueue(int capacity, int width) {
+        if (capacity <= 0 || capacity > 1 << 20) {
+            throw new IllegalArgumentException("Queue capacity must be between 1 and 1048576");
+        }
+
+        // The sequence numbers need at least two slots to tell a full queue from an empty one
+        int slotCount = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = slotCount - 1;
+        this.width = width;
+        // Each slot holds the features followed by the production score
+        this.slots = new double[slotCount * (width + 1)];
+        this.sequences = new AtomicLongArray(slotCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            sequences.set(slot, slot);
+        }
+    }
+
+    /**
+     * Adds an entry if there is room.
+     *
+     * @param features The features, copied into the queue
+     * @param productionScore The score production assigned to them
+     * @return false if the queue was full
+     */
+    boolean offer(double[] features, double productionScore) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference < 0) {
+                return false;
+            }
+            if (difference == 0 && tail.compareAndSet(position, position + 1)) {
+                int offset = slot * (width + 1);
+                System.arraycopy(features, 0, slots, offset, width);
+                slots[offset + width] = productionScore;
+                sequences.lazySet(slot, position + 1);
+                return true;
+            }
+            // Another producer claimed the position first, retry with the new tail
+        }
+    }
+
+    /**
+     * Removes the oldest entry.
+     *
+     * @param features Receives the features of the entry
+     * @return The production score of the entry, or NaN if the queue was empty
+     */
+    double poll(double[] features) {
+        while (true) {
+            long position = head.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - (position + 1);
+            if (difference < 0) {
+                return Double.NaN;
+            }
+            if (difference == 0 && head.compareAndSet(position, position + 1)) {
+                int offset = slot * (width + 1);
+                System.arraycopy(slots, offset, features, 0, width);
+                double productionScore = slots[offset + width];
+                sequences.lazySet(slot, position + mask + 1);
+                return productionScore;
+            }
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Gets the approximate number of entries, exact when the queue is not being used concurrently.
+     *
+     * @return The number of entries
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(capacity(), tail.get() - head.get()));
+    }
+}
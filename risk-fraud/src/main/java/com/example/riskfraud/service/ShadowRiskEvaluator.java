@@ -0,0 +1,267 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.RiskAssessment;
+import com.example.riskfraud.model.RiskFeature;
+import com.example.riskfraud.model.ShadowEvaluationStatistics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Scores live traffic with candidate rules and models in shadow, to compare them with production
+ * before promoting them.
+ *
+ * <p>{@link #publish(double[], double)} copies the features and production score of a transaction
+ * into a bounded lock-free {@link ShadowQueue} and returns immediately; if the queue is full the
+ * transaction is dropped from the shadow evaluation instead of slowing down the authorization.
+ * Worker threads drain the queue, score each candidate and record its score distribution and how
+ * often it would have made a different approval decision than production.
+ *
+ * <p>Candidates are loaded on startup from the configured files. Without candidates, publishing is
+ * a no-op and no workers are started.
+ */
+@Slf4j
+@Service
+public class ShadowRiskEvaluator {
+
+    static final int HISTOGRAM_BUCKETS = 20;
+
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final ShadowQueue queue;
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private final int workers;
+    private final ExecutorService workerPool;
+    private volatile boolean enabled;
+
+    /**
+     * Creates the evaluator.
+     *
+     * @param rulesPath The candidate rule file, or empty for none
+     * @param modelPath The candidate model file, or empty for none
+     * @param queueCapacity The number of transactions that can wait for shadow evaluation
+     * @param workers The number of worker threads, 0 to only evaluate through {@link
+     *     #evaluatePending()}
+     */
+    public ShadowRiskEvaluator(
+            @Value("${risk-fraud.shadow.rules-path:}") String rulesPath,
+            @Value("${risk-fraud.shadow.model-path:}") String modelPath,
+            @Value("${risk-fraud.shadow.queue-capacity:4096}") int queueCapacity,
+            @Value("${risk-fraud.shadow.workers:1}") int workers) {
+        if (workers < 0) {
+            throw new IllegalArgumentException("Number of workers cannot be negative");
+        }
+
+        this.queue = new ShadowQueue(queueCapacity, RiskFeature.COUNT);
+        this.workers = workers;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workerPool =
+                Executors.newCachedThreadPool(
+                        runnable -> {
+                            Thread thread =
+                                    new Thread(
+                                            runnable,
+                                            "risk-shadow-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+
+        if (rulesPath != null && !rulesPath.isBlank()) {
+            load("rules", Path.of(rulesPath), lines -> RiskRuleSet.compile(lines)::score);
+        }
+        if (modelPath != null && !modelPath.isBlank()) {
+            load("model", Path.of(modelPath), lines -> RiskModel.parse(lines)::score);
+        }
+        this.enabled = !candidates.isEmpty();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        log.info("Shadow evaluation of {} candidates with {} workers", candidates.size(), workers);
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::runWorker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        enabled = false;
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * Queues a scored transaction for shadow evaluation, without waiting.
+     *
+     * @param features The feature vector, indexed by {@link RiskFeature#ordinal()}; copied
+     * @param productionScore The risk score production assigned to the transaction
+     * @return false if there are no candidates or the transaction was dropped
+     */
+    public boolean publish(double[] features, double productionScore) {
+        if (!enabled) {
+            return false;
+        }
+        if (!queue.offer(features, productionScore)) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the results collected for each candidate so far.
+     *
+     * @return The statistics per candidate
+     */
+    public List<ShadowEvaluationStatistics> getStatistics() {
+        List<ShadowEvaluationStatistics> statistics = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            statistics.add(candidate.toStatistics(dropped.sum()));
+        }
+        return statistics;
+    }
+
+    /**
+     * Evaluates the queued transactions on the calling thread.
+     *
+     * @return The number of transactions evaluated
+     */
+    int evaluatePending() {
+        double[] features = new double[RiskFeature.COUNT];
+        int evaluated = 0;
+        while (evaluateNext(features)) {
+            evaluated++;
+        }
+        return evaluated;
+    }
+
+    private void runWorker() {
+        double[] features = new double[RiskFeature.COUNT];
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!evaluateNext(features)) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private boolean evaluateNext(double[] features) {
+        double productionScore = queue.poll(features);
+        if (Double.isNaN(productionScore)) {
+            return false;
+        }
+
+        for (Candidate candidate : candidates) {
+            try {
+                candidate.record(candidate.scorer.applyAsDouble(features), productionScore);
+            } catch (RuntimeException e) {
+                // Keep the worker running, a failing candidate must not affect the others
+                log.warn("Shadow candidate {} failed: {}", candidate.name, e.toString());
+            }
+        }
+        return true;
+    }
+
+    private void load(
+            String name, Path path, Function<List<String>, ToDoubleFunction<double[]>> parser) {
+        try {
+            ToDoubleFunction<double[]> scorer =
+                    parser.apply(Files.readAllLines(path, StandardCharsets.UTF_8));
+            candidates.add(new Candidate(name, path.toString(), scorer));
+            log.info("Loaded shadow {} from {}", name, path);
+        } catch (IOException e) {
+            log.error("Failed to read shadow {} {}: {}", name, path, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid shadow {} {}: {}", name, path, e.getMessage());
+        }
+    }
+
+    private static int bucket(double score) {
+        return Math.min(HISTOGRAM_BUCKETS - 1, Math.max(0, (int) (score * HISTOGRAM_BUCKETS)));
+    }
+
+    private static long[] toArray(AtomicLongArray counts) {
+        long[] array = new long[counts.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = counts.get(i);
+        }
+        return array;
+    }
+
+    /** A candidate scorer and the results collected for it. */
+    private static final class Candidate {
+        private final String name;
+        private final String source;
+        private final ToDoubleFunction<double[]> scorer;
+        private final LongAdder evaluated = new LongAdder();
+        private final LongAdder disagreements = new LongAdder();
+        private final DoubleAdder scoreSum = new DoubleAdder();
+        private final DoubleAdder productionScoreSum = new DoubleAdder();
+        private final DoubleAdder absoluteDifferenceSum = new DoubleAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+        private final AtomicLongArray productionHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        private Candidate(String name, String source, ToDoubleFunction<double[]> scorer) {
+            this.name = name;
+            this.source = source;
+            this.scorer = scorer;
+        }
+
+        private void record(double score, double productionScore) {
+            evaluated.increment();
+            boolean approved = score < RiskAssessment.APPROVAL_THRESHOLD;
+            boolean productionApproved = productionScore < RiskAssessment.APPROVAL_THRESHOLD;
+            if (approved != productionApproved) {
+                disagreements.increment();
+            }
+            scoreSum.add(score);
+            productionScoreSum.add(productionScore);
+            absoluteDifferenceSum.add(Math.abs(score - productionScore));
+            histogram.incrementAndGet(bucket(score));
+            productionHistogram.incrementAndGet(bucket(productionScore));
+        }
+
+        private ShadowEvaluationStatistics toStatistics(long dropped) {
+            long count = evaluated.sum();
+            long disagreementCount = disagreements.sum();
+            return ShadowEvaluationStatistics.builder()
+                    .candidate(name)
+                    .source(source)
+                    .evaluated(count)
+                    .dropped(dropped)
+                    .disagreements(disagreementCount)
+                    .disagreementRate(count == 0 ? 0.0 : (double) disagreementCount / count)
+                    .averageScore(count == 0 ? 0.0 : scoreSum.sum() / count)
+                    .averageProductionScore(count == 0 ? 0.0 : productionScoreSum.sum() / count)
+                    .averageAbsoluteDifference(
+                            count == 0 ? 0.0 : absoluteDifferenceSum.sum() / count)
+                    .scoreHistogram(toArray(histogram))
+                    .productionScoreHistogram(toArray(productionHistogram))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.Transaction;
+import com.example.riskfraud.model.VelocityDimension;
+import com.example.riskfraud.model.VelocitySnapshot;
+import com.example.shared.util.FastHash;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+
+/**
+ * Keeps sliding-window attempt, decline and amount counts per card fingerprint, merchant, IP
+ * address and device over one minute, one hour and 24 hours. Each dimension has its own
+ * fixed-capacity {@link VelocityTable}, so recording and reading are lock-free and memory stays
+ * bounded; the least recently seen keys are evicted when a table fills up.
+ */
+@Slf4j
+@Service
+public class VelocityService {
+
+    private static final VelocityDimension[] DIMENSIONS = VelocityDimension.values();
+
+    private final VelocityTable[] tables = new VelocityTable[DIMENSIONS.length];
+    private final long[] keySeeds = new long[DIMENSIONS.length];
+
+    /**
+     * Creates the velocity service.
+     *
+     * @param capacityPerDimension The maximum number of keys tracked per dimension
+     */
+    public VelocityService(
+            @Value("${risk-fraud.velocity.capacity-per-dimension:4096}")
+                    int capacityPerDimension) {
+        for (VelocityDimension dimension : DIMENSIONS) {
+            tables[dimension.ordinal()] = new VelocityTable(capacityPerDimension);
+            keySeeds[dimension.ordinal()] = FastHash.hash64(dimension.name());
+        }
+        log.info(
+                "Velocity counters initialized with {} keys per dimension",
+                tables[0].capacity());
+    }
+
+    /**
+     * Records an authorization attempt for every dimension the transaction has a key for.
+     *
+     * @param transaction The transaction being assessed
+     */
+    public void recordAttempt(Transaction transaction) {
+        recordAttempt(transaction, System.currentTimeMillis());
+    }
+
+    void recordAttempt(Transaction transaction, long nowMillis) {
+        long amount = toMinorUnits(transaction.getAmount());
+        for (VelocityDimension dimension : DIMENSIONS) {
+            long key = keyOf(transaction, dimension);
+            if (key != 0L) {
+                tables[dimension.ordinal()].recordAttempt(key, amount, nowMillis);
+            }
+        }
+    }
+
+    /**
+     * Records that an attempt was declined by the issuer or rejected by risk.
+     *
+     * @param transaction The declined transaction
+     */
+    public void recordDecline(Transaction transaction) {
+        recordDecline(transaction, System.currentTimeMillis());
+    }
+
+    void recordDecline(Transaction transaction, long nowMillis) {
+        for (VelocityDimension dimension : DIMENSIONS) {
+            long key = keyOf(transaction, dimension);
+            if (key != 0L) {
+                tables[dimension.ordinal()].recordDecline(key, nowMillis);
+            }
+        }
+    }
+
+    /**
+     * Gets the current velocity of a transaction's key in one dimension.
+     *
+     * @param transaction The transaction
+     * @param dimension The dimension
+     * @return The velocity counts, all zero if the transaction has no key for the dimension
+     */
+    public VelocitySnapshot getVelocity(Transaction transaction, VelocityDimension dimension) {
+        return getVelocity(transaction, dimension, System.currentTimeMillis());
+    }
+
+    VelocitySnapshot getVelocity(
+            Transaction transaction, VelocityDimension dimension, long nowMillis) {
+        long key = keyOf(transaction, dimension);
+        if (key == 0L) {
+            return new VelocitySnapshot();
+        }
+        return tables[dimension.ordinal()].snapshot(key, nowMillis);
+    }
+
+    /**
+     * Gets the number of keys currently tracked in a dimension.
+     *
+     * @param dimension The dimension
+     * @return The number of tracked keys
+     */
+    public long getTrackedKeys(VelocityDimension dimension) {
+        return tables[dimension.ordinal()].size();
+    }
+
+    /**
+     * Gets the number of keys evicted from a dimension to make room for new ones.
+     *
+     * @param dimension The dimension
+     * @return The eviction count
+     */
+    public long getEvictions(VelocityDimension dimension) {
+        return tables[dimension.ordinal()].evictions();
+    }
+
+    // Card keys are the fingerprint computed by the caller, the other dimensions hash their
+    // identifier with a per-dimension seed. Returns 0 if the transaction has no value.
+    private long keyOf(Transaction transaction, VelocityDimension dimension) {
+        return switch (dimension) {
+            case CARD -> transaction.getCardFingerprint();
+            case MERCHANT -> hash(transaction.getMerchantId(), dimension);
+            case IP_ADDRESS -> hash(transaction.getUserIpAddress(), dimension);
+            case DEVICE -> hash(transaction.getUserDeviceId(), dimension);
+        };
+    }
+
+    private long hash(String value, VelocityDimension dimension) {
+        if (value == null || value.isEmpty()) {
+            return 0L;
+        }
+        long key = FastHash.hash64(value, keySeeds[dimension.ordinal()]);
+        // 0 marks an empty slot
+        return key != 0L ? key : 1L;
+    }
+
+    /**
+     * Converts an amount to minor currency units, assuming two decimal places.
+     *
+     * @param amount The amount
+     * @return The amount in minor units, or 0 if the amount is null or not positive
+     */
+    static long toMinorUnits(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            return 0L;
+        }
+        return amount.movePointRight(2).longValue();
+    }
+}
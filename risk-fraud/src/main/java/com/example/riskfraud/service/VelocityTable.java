@@ -0,0 +1,290 @@
+package com.example.riskfraud.service;
+
+import com.example.riskfraud.model.VelocitySnapshot;
+import com.example.riskfraud.model.VelocityWindow;
+import com.example.shared.util.FastHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-capacity table of time-bucketed velocity counters for one {@link
+ * com.example.riskfraud.model.VelocityDimension}. All state lives in primitive arrays allocated up
+ * front, so memory is bounded by the capacity regardless of how many distinct keys are seen.
+ *
+ * <p>Keys are placed by open addressing within a short probe window. When the window is full, the
+ * least recently seen key in it is evicted and its slot reused, so idle keys make room for new
+ * ones without a background sweep.
+ *
+ * <p>Every slot holds a ring buffer per {@link VelocityWindow}. Each bucket is two longs tagged
+ * with the bucket epoch in the upper 24 bits: one packs the attempt and decline counts (20 bits
+ * each), the other the amount in minor units (40 bits). A bucket is rotated by the first writer of
+ * a new epoch and updated with a single compare-and-set, so recording never blocks. Counts
+ * saturate instead of overflowing. Under concurrent eviction of the same slot a few updates may be
+ * attributed to the wrong key, which is acceptable for risk signals.
+ */
+final class VelocityTable {
+
+    /** Number of slots searched for a key before evicting. */
+    static final int MAX_PROBE = 8;
+
+    private static final int EPOCH_SHIFT = 40;
+    private static final long EPOCH_MASK = (1L << 24) - 1;
+    private static final long PAYLOAD_MASK = (1L << EPOCH_SHIFT) - 1;
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MAX = (1L << COUNT_BITS) - 1;
+    private static final int ATTEMPTS_SHIFT = COUNT_BITS;
+    private static final int DECLINES_SHIFT = 0;
+
+    private static final VelocityWindow[] WINDOWS = VelocityWindow.values();
+    private static final int[] WINDOW_OFFSETS = new int[WINDOWS.length];
+    private static final int STRIDE;
+
+    static {
+        int offset = 0;
+        for (VelocityWindow window : WINDOWS) {
+            WINDOW_OFFSETS[window.ordinal()] = offset;
+            offset += window.getBuckets() * 2;
+        }
+        STRIDE = offset;
+    }
+
+    private final int mask;
+    private final AtomicLongArray keys;
+    private final AtomicLongArray lastSeen;
+    private final AtomicLongArray buckets;
+    private final LongAdder occupied = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a table.
+     *
+     * @param capacity The maximum number of keys, rounded up to a power of two
+     */
+    VelocityTable(int capacity) {
+        if (capacity < MAX_PROBE) {
+            throw new IllegalArgumentException(
+                    "Velocity table capacity must be at least " + MAX_PROBE);
+        }
+
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        if (slots <= 0 || (long) slots * STRIDE > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Velocity table capacity is too large: " + capacity);
+        }
+        this.mask = slots - 1;
+        this.keys = new AtomicLongArray(slots);
+        this.lastSeen = new AtomicLongArray(slots);
+        this.buckets = new AtomicLongArray(slots * STRIDE);
+    }
+
+    /**
+     * Records an authorization attempt.
+     *
+     * @param key The non-zero key
+     * @param amount The attempted amount in minor units
+     * @param nowMillis The current time in epoch milliseconds
+     */
+    void recordAttempt(long key, long amount, long nowMillis) {
+        int slot = claimSlot(key, nowMillis);
+        for (VelocityWindow window : WINDOWS) {
+            long epoch = nowMillis / window.getBucketMillis();
+            int index = bucketIndex(slot, window, epoch);
+            add(index, epoch, ATTEMPTS_SHIFT, COUNT_MAX, 1);
+            add(index + 1, epoch, 0, PAYLOAD_MASK, Math.max(0L, amount));
+        }
+    }
+
+    /**
+     * Records a declined or rejected attempt.
+     *
+     * @param key The non-zero key
+     * @param nowMillis The current time in epoch milliseconds
+     */
+    void recordDecline(long key, long nowMillis) {
+        int slot = claimSlot(key, nowMillis);
+        for (VelocityWindow window : WINDOWS) {
+            long epoch = nowMillis / window.getBucketMillis();
+            add(bucketIndex(slot, window, epoch), epoch, DECLINES_SHIFT, COUNT_MAX, 1);
+        }
+    }
+
+    /**
+     * Sums the buckets of every window for a key.
+     *
+     * @param key The non-zero key
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The velocity counts, all zero if the key is unknown
+     */
+    VelocitySnapshot snapshot(long key, long nowMillis) {
+        VelocitySnapshot snapshot = new VelocitySnapshot();
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return snapshot;
+        }
+
+        for (VelocityWindow window : WINDOWS) {
+            long currentTag = (nowMillis / window.getBucketMillis()) & EPOCH_MASK;
+            int base = slot * STRIDE + WINDOW_OFFSETS[window.ordinal()];
+            long attempts = 0;
+            long declines = 0;
+            long amount = 0;
+            for (int bucket = 0; bucket < window.getBuckets(); bucket++) {
+                long counts = buckets.get(base + bucket * 2);
+                if (isCurrent(counts, currentTag, window)) {
+                    attempts += (counts >>> ATTEMPTS_SHIFT) & COUNT_MAX;
+                    declines += (counts >>> DECLINES_SHIFT) & COUNT_MAX;
+                }
+                long amounts = buckets.get(base + bucket * 2 + 1);
+                if (isCurrent(amounts, currentTag, window)) {
+                    amount += amounts & PAYLOAD_MASK;
+                }
+            }
+
+            switch (window) {
+                case ONE_MINUTE -> {
+                    snapshot.setAttemptsLastMinute(attempts);
+                    snapshot.setDeclinesLastMinute(declines);
+                    snapshot.setAmountLastMinute(amount);
+                }
+                case ONE_HOUR -> {
+                    snapshot.setAttemptsLastHour(attempts);
+                    snapshot.setDeclinesLastHour(declines);
+                    snapshot.setAmountLastHour(amount);
+                }
+                case TWENTY_FOUR_HOURS -> {
+                    snapshot.setAttemptsLast24Hours(attempts);
+                    snapshot.setDeclinesLast24Hours(declines);
+                    snapshot.setAmountLast24Hours(amount);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of slots in the table.
+     *
+     * @return The capacity
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Gets the number of occupied slots.
+     *
+     * @return The number of keys currently tracked
+     */
+    long size() {
+        return occupied.sum();
+    }
+
+    /**
+     * Gets the number of keys evicted to make room for new ones.
+     *
+     * @return The eviction count
+     */
+    long evictions() {
+        return evictions.sum();
+    }
+
+    private int findSlot(long key) {
+        int start = (int) FastHash.mix64(key) & mask;
+        for (int probe = 0; probe < MAX_PROBE; probe++) {
+            int slot = (start + probe) & mask;
+            long current = keys.get(slot);
+            if (current == key) {
+                return slot;
+            }
+            if (current == 0L) {
+                // Slots are never emptied, so the key cannot be further along
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private int claimSlot(long key, long nowMillis) {
+        int start = (int) FastHash.mix64(key) & mask;
+        while (true) {
+            int victim = -1;
+            long victimKey = 0L;
+            long victimLastSeen = Long.MAX_VALUE;
+
+            for (int probe = 0; probe < MAX_PROBE; probe++) {
+                int slot = (start + probe) & mask;
+                long current = keys.get(slot);
+                if (current == 0L) {
+                    if (keys.compareAndSet(slot, 0L, key)) {
+                        occupied.increment();
+                        lastSeen.set(slot, nowMillis);
+                        return slot;
+                    }
+                    current = keys.get(slot);
+                }
+                if (current == key) {
+                    lastSeen.set(slot, nowMillis);
+                    return slot;
+                }
+
+                long seen = lastSeen.get(slot);
+                if (seen < victimLastSeen) {
+                    victim = slot;
+                    victimKey = current;
+                    victimLastSeen = seen;
+                }
+            }
+
+            // Probe window is full: reuse the slot of the least recently seen key
+            if (keys.compareAndSet(victim, victimKey, key)) {
+                int base = victim * STRIDE;
+                for (int i = 0; i < STRIDE; i++) {
+                    buckets.set(base + i, 0L);
+                }
+                lastSeen.set(victim, nowMillis);
+                evictions.increment();
+                return victim;
+            }
+        }
+    }
+
+    private int bucketIndex(int slot, VelocityWindow window, long epoch) {
+        int bucket = (int) (epoch % window.getBuckets());
+        return slot * STRIDE + WINDOW_OFFSETS[window.ordinal()] + bucket * 2;
+    }
+
+    private boolean isCurrent(long word, long currentTag, VelocityWindow window) {
+        if (word == 0L) {
+            return false;
+        }
+        long age = (currentTag - (word >>> EPOCH_SHIFT)) & EPOCH_MASK;
+        return age < window.getBuckets();
+    }
+
+    /** Adds to a field of an epoch-tagged bucket word, rotating the bucket if it is stale. */
+    private void add(int index, long epoch, int shift, long fieldMax, long delta) {
+        long tag = epoch & EPOCH_MASK;
+        long increment = Math.min(delta, fieldMax);
+        while (true) {
+            long word = buckets.get(index);
+            long payload = 0L;
+            if (word != 0L) {
+                long wordTag = word >>> EPOCH_SHIFT;
+                if (wordTag == tag) {
+                    payload = word & PAYLOAD_MASK;
+                } else if (((tag - wordTag) & EPOCH_MASK) > (EPOCH_MASK >>> 1)) {
+                    // A newer epoch already rotated this bucket; the update is too late to count
+                    return;
+                }
+            }
+
+            long field = (payload >>> shift) & fieldMax;
+            long updatedField = Math.min(fieldMax, field + increment);
+            long updated =
+                    (tag << EPOCH_SHIFT) | (payload & ~(fieldMax << shift)) | (updatedField << shift);
+            if (updated == word || buckets.compareAndSet(index, word, updated)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.riskfraud.sketch;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct 64-bit hashes added to it, in a fixed
+ * {@code 2^precision} bytes. The standard error is about {@code 1.04 / sqrt(2^precision)}, e.g.
+ * 3.25% at precision 10. Adding is O(1); estimating is O(2^precision). Small cardinalities are
+ * estimated by linear counting.
+ *
+ * <p>Sketches of the same precision can be merged, which yields the sketch of the union of their
+ * inputs. Not thread-safe.
+ */
+public final class HyperLogLog implements MergeableSketch<HyperLogLog> {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    // 2^-rank for every possible register value
+    private static final double[] INVERSE_POWERS = new double[65];
+
+    static {
+        for (int rank = 0; rank < INVERSE_POWERS.length; rank++) {
+            INVERSE_POWERS[rank] = Math.scalb(1.0, -rank);
+        }
+    }
+
+    private final int precision;
+    private final byte[] registers;
+    private final double alphaMm;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision The number of index bits, between {@value #MIN_PRECISION} and {@value
+     *     #MAX_PRECISION}
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+        int m = registers.length;
+        double alpha =
+                switch (m) {
+                    case 16 -> 0.673;
+                    case 32 -> 0.697;
+                    case 64 -> 0.709;
+                    default -> 0.7213 / (1.0 + 1.079 / m);
+                };
+        this.alphaMm = alpha * m * m;
+    }
+
+    /**
+     * Adds a hash. The hash must be well mixed, e.g. from {@link
+     * com.example.shared.util.FastHash}.
+     *
+     * @param hash The 64-bit hash of the item
+     * @return true if the sketch changed, so that estimates may have changed
+     */
+    public boolean add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The guard bit bounds the rank when all remaining bits are zero
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the number of distinct hashes added.
+     *
+     * @return The estimated cardinality
+     */
+    public long estimate() {
+        return unionEstimate(this);
+    }
+
+    /**
+     * Estimates the number of distinct hashes added to this or another sketch, without merging
+     * them.
+     *
+     * @param other A sketch of the same precision
+     * @return The estimated cardinality of the union
+     */
+    public long unionEstimate(HyperLogLog other) {
+        checkCompatible(other);
+        byte[] otherRegisters = other.registers;
+        double sum = 0.0;
+        int zeros = 0;
+        for (int i = 0; i < registers.length; i++) {
+            int rank = Math.max(registers[i], otherRegisters[i]);
+            sum += INVERSE_POWERS[rank];
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+
+        int m = registers.length;
+        double estimate = alphaMm / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Merges another sketch into this one.
+     *
+     * @param other A sketch of the same precision
+     */
+    @Override
+    public void merge(HyperLogLog other) {
+        checkCompatible(other);
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    private void checkCompatible(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(
+                    "Cannot combine sketches of precision "
+                            + precision
+                            + " and "
+                            + other.precision);
+        }
+    }
+}
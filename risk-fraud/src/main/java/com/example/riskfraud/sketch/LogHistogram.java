@@ -0,0 +1,169 @@
+package com.example.riskfraud.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Quantile sketch over positive values with a fixed relative accuracy, in a fixed number of
+ * logarithmically sized buckets. Bucket {@code i} holds the values in {@code (gamma^(i-1),
+ * gamma^i]} relative to the minimum, with {@code gamma = (1 + accuracy) / (1 - accuracy)}, so any
+ * quantile is returned within the relative accuracy of a value in that bucket. Values at or below
+ * the minimum and above the maximum are counted in the first and last bucket.
+ *
+ * <p>Adding is O(1); a quantile is O(buckets). Histograms with the same settings can be merged.
+ * Not thread-safe.
+ */
+public final class LogHistogram implements MergeableSketch<LogHistogram> {
+
+    private final double minValue;
+    private final double gamma;
+    private final double inverseLogGamma;
+    // Counts per bucket; int halves the footprint and one window never sees 2^31 equal values
+    private final int[] counts;
+    private long total;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param relativeAccuracy The relative accuracy of quantiles, between 0 and 1 exclusive
+     * @param minValue The smallest value that is told apart from smaller ones, positive
+     * @param maxValue The largest value that is told apart from larger ones
+     */
+    public LogHistogram(double relativeAccuracy, double minValue, double maxValue) {
+        if (!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1");
+        }
+        if (!(minValue > 0.0 && maxValue > minValue && Double.isFinite(maxValue))) {
+            throw new IllegalArgumentException("Expected 0 < minValue < maxValue");
+        }
+
+        this.minValue = minValue;
+        this.gamma = (1.0 + relativeAccuracy) / (1.0 - relativeAccuracy);
+        this.inverseLogGamma = 1.0 / Math.log(gamma);
+        int buckets = (int) Math.ceil(Math.log(maxValue / minValue) * inverseLogGamma) + 1;
+        this.counts = new int[buckets];
+    }
+
+    /**
+     * Adds a value. NaN values are ignored.
+     *
+     * @param value The value
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        counts[bucketOf(value)]++;
+        total++;
+    }
+
+    /**
+     * Estimates a quantile of the values added.
+     *
+     * @param quantile The quantile, between 0 and 1
+     * @return The estimated value, or NaN if the histogram is empty
+     */
+    public double quantile(double quantile) {
+        return unionQuantile(this, quantile);
+    }
+
+    /**
+     * Estimates a quantile of the values added to this or another histogram, without merging them.
+     *
+     * @param other A histogram with the same settings
+     * @param quantile The quantile, between 0 and 1
+     * @return The estimated value, or NaN if both histograms are empty
+     */
+    public double unionQuantile(LogHistogram other, double quantile) {
+        checkCompatible(other);
+        if (!(quantile >= 0.0 && quantile <= 1.0)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        long count = other == this ? total : total + other.total;
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        // The rank of the quantile among the values in ascending order, 0-based
+        long rank = (long) (quantile * (count - 1));
+        int[] otherCounts = other == this ? null : other.counts;
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (otherCounts != null) {
+                seen += otherCounts[bucket];
+            }
+            if (seen > rank) {
+                return valueOf(bucket);
+            }
+        }
+        return valueOf(counts.length - 1);
+    }
+
+    /**
+     * Merges another histogram into this one.
+     *
+     * @param other A histogram with the same settings
+     */
+    @Override
+    public void merge(LogHistogram other) {
+        checkCompatible(other);
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        total += other.total;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    /**
+     * Gets the number of values added.
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return total;
+    }
+
+    /**
+     * Gets the number of values added to this or another histogram.
+     *
+     * @param other A histogram with the same settings
+     * @return The combined count
+     */
+    public long unionCount(LogHistogram other) {
+        checkCompatible(other);
+        return other == this ? total : total + other.total;
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    private int bucketOf(double value) {
+        if (value <= minValue) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log(value / minValue) * inverseLogGamma);
+        return Math.min(bucket, counts.length - 1);
+    }
+
+    // The value with the same relative distance to both ends of the bucket
+    private double valueOf(int bucket) {
+        if (bucket == 0) {
+            return minValue;
+        }
+        return minValue * Math.pow(gamma, bucket) * 2.0 / (gamma + 1.0);
+    }
+
+    private void checkCompatible(LogHistogram other) {
+        if (other.counts.length != counts.length
+                || other.gamma != gamma
+                || other.minValue != minValue) {
+            throw new IllegalArgumentException("Cannot combine histograms with different settings");
+        }
+    }
+}
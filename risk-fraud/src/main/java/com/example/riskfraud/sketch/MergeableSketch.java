@@ -0,0 +1,21 @@
+package com.example.riskfraud.sketch;
+
+/**
+ * A fixed-size summary of a stream that can be merged with summaries of other streams with the
+ * same settings.
+ *
+ * @param <S> The sketch type
+ */
+public interface MergeableSketch<S extends MergeableSketch<S>> {
+
+    /**
+     * Merges another sketch into this one, as if its inputs had been added to this sketch.
+     *
+     * @param other A sketch with the same settings
+     * @throws IllegalArgumentException If the settings differ
+     */
+    void merge(S other);
+
+    /** Removes all inputs. */
+    void clear();
+}
@@ -0,0 +1,113 @@
+package com.example.riskfraud.sketch;
+
+import java.util.function.Supplier;
+
+/**
+ * A sketch over a sliding time window, kept as a ring of sketches per generation. The window
+ * covers the current, partially filled generation plus the preceding ones, so its effective length
+ * varies by at most one generation. The completed generations are kept merged, so reading the
+ * window only combines two sketches; they are re-merged once per generation.
+ *
+ * <p>Not thread-safe.
+ *
+ * @param <S> The sketch type
+ */
+public final class WindowedSketch<S extends MergeableSketch<S>> {
+
+    private final S[] generations;
+    private final S completed;
+    private final long generationMillis;
+    private long epoch = Long.MIN_VALUE;
+
+    /**
+     * Creates an empty windowed sketch.
+     *
+     * @param windowMillis The window length
+     * @param generations The number of generations the window is split into, at least 2
+     * @param factory Creates the empty sketch of a generation, all with the same settings
+     */
+    @SuppressWarnings("unchecked")
+    public WindowedSketch(long windowMillis, int generations, Supplier<S> factory) {
+        if (generations < 2) {
+            throw new IllegalArgumentException("A window needs at least 2 generations");
+        }
+        if (windowMillis < generations) {
+            throw new IllegalArgumentException(
+                    "Window must be at least " + generations + " milliseconds");
+        }
+
+        this.generations = (S[]) new MergeableSketch<?>[generations];
+        for (int i = 0; i < generations; i++) {
+            this.generations[i] = factory.get();
+        }
+        this.completed = factory.get();
+        this.generationMillis = windowMillis / generations;
+    }
+
+    /**
+     * Gets the sketch of the current generation, to add to.
+     *
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The current generation
+     */
+    public S current(long nowMillis) {
+        advance(nowMillis);
+        return generations[(int) Math.floorMod(epoch, (long) generations.length)];
+    }
+
+    /**
+     * Gets the completed generations of the window merged into one sketch, to combine with the
+     * {@link #current} generation when reading. The sketch must not be modified.
+     *
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The merged completed generations
+     */
+    public S completed(long nowMillis) {
+        advance(nowMillis);
+        return completed;
+    }
+
+    /**
+     * Gets the generation that is current as of the last call to {@link #current} or {@link
+     * #completed}. The merged completed generations only change when it changes.
+     *
+     * @return The generation number, counted from the epoch
+     */
+    public long getGeneration() {
+        return epoch;
+    }
+
+    /** Removes all inputs from every generation. */
+    public void clear() {
+        for (S generation : generations) {
+            generation.clear();
+        }
+        completed.clear();
+        epoch = Long.MIN_VALUE;
+    }
+
+    private void advance(long nowMillis) {
+        long target = nowMillis / generationMillis;
+        if (target <= epoch) {
+            // Also when the clock goes backwards, keep adding to the current generation
+            return;
+        }
+
+        int count = generations.length;
+        if (epoch == Long.MIN_VALUE || target - epoch >= count) {
+            for (S generation : generations) {
+                generation.clear();
+            }
+        } else {
+            for (long next = epoch + 1; next <= target; next++) {
+                generations[(int) Math.floorMod(next, (long) count)].clear();
+            }
+        }
+        epoch = target;
+
+        completed.clear();
+        for (int age = 1; age < count; age++) {
+            completed.merge(generations[(int) Math.floorMod(target - age, (long) count)]);
+        }
+    }
+}
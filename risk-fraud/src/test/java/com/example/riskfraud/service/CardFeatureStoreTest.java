@@ -0,0 +1,139 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.CardFeatures;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CardFeatureStoreTest {
+
+    private static final long NOW_SECONDS = 1_700_000_000L;
+
+    @TempDir Path tempDir;
+
+    private CardFeatureStore featureStore;
+
+    @BeforeEach
+    void setUp() {
+        featureStore = new CardFeatureStore(64, "", 0, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        featureStore.stop();
+    }
+
+    @Test
+    void recordAuthorization_ThenGetFeatures_ShouldReturnHistory() {
+        // Arrange
+        long card = 42L;
+
+        // Act
+        featureStore.recordAuthorization(card, true, 1_000, "US", NOW_SECONDS);
+        featureStore.recordAuthorization(card, false, 2_500, "gb", NOW_SECONDS + 5);
+        featureStore.recordChargeback(card);
+        CardFeatures features = featureStore.getFeatures(card);
+
+        // Assert
+        assertTrue(features.isKnown());
+        assertEquals(1, features.getSuccessfulAuthorizations());
+        assertEquals(1, features.getFailedAuthorizations());
+        assertEquals(1, features.getChargebacks());
+        assertEquals("GB", features.getLastCountry());
+        assertEquals(2_500, features.getLastAmount());
+        assertEquals(NOW_SECONDS + 5, features.getLastSeenEpochSecond());
+    }
+
+    @Test
+    void getFeatures_WithUnknownCard_ShouldReturnUnknownFeatures() {
+        // Act
+        CardFeatures features = featureStore.getFeatures(42L);
+        CardFeatures withoutFingerprint = featureStore.getFeatures(0L);
+
+        // Assert
+        assertFalse(features.isKnown());
+        assertFalse(withoutFingerprint.isKnown());
+        assertEquals(0, features.getSuccessfulAuthorizations());
+    }
+
+    @Test
+    void recordAuthorizationAsync_ShouldBeVisibleAfterFlush() throws Exception {
+        // Act
+        for (int i = 0; i < 50; i++) {
+            featureStore.recordAuthorizationAsync(42L, true, 100, "US");
+        }
+        featureStore.flush();
+
+        // Assert
+        assertEquals(50, featureStore.getFeatures(42L).getSuccessfulAuthorizations());
+        assertEquals(0, featureStore.getDroppedUpdates());
+    }
+
+    @Test
+    void recordAuthorization_BeyondCapacity_ShouldEvictUnreferencedCards() {
+        // Arrange
+        featureStore = new CardFeatureStore(8, "", 0, 100);
+        long hotCard = 1L;
+        featureStore.recordAuthorization(hotCard, true, 100, "US", NOW_SECONDS);
+
+        // Act
+        for (long card = 2; card < 100; card++) {
+            featureStore.getFeatures(hotCard);
+            featureStore.recordAuthorization(card, true, 100, "US", NOW_SECONDS);
+        }
+
+        // Assert
+        assertEquals(8, featureStore.getSize());
+        assertTrue(featureStore.getEvictions() > 0);
+        assertTrue(featureStore.getFeatures(hotCard).isKnown());
+        assertTrue(featureStore.getFeatures(99L).isKnown());
+    }
+
+    @Test
+    void writeSnapshot_ThenLoadSnapshot_ShouldRestoreFeatures() throws Exception {
+        // Arrange
+        Path snapshot = tempDir.resolve("features.bin");
+        for (long card = 1; card <= 20; card++) {
+            featureStore.recordAuthorization(card, card % 2 == 0, card * 100, "NL", NOW_SECONDS);
+        }
+
+        // Act
+        int written = featureStore.writeSnapshot(snapshot);
+        CardFeatureStore restored = new CardFeatureStore(64, "", 0, 100);
+        int loaded = restored.loadSnapshot(snapshot);
+
+        // Assert
+        assertEquals(20, written);
+        assertEquals(20, loaded);
+        CardFeatures odd = restored.getFeatures(7L);
+        assertEquals(0, odd.getSuccessfulAuthorizations());
+        assertEquals(1, odd.getFailedAuthorizations());
+        assertEquals(700, odd.getLastAmount());
+        assertEquals("NL", odd.getLastCountry());
+        assertEquals(NOW_SECONDS, odd.getLastSeenEpochSecond());
+        assertEquals(1, restored.getFeatures(20L).getSuccessfulAuthorizations());
+        assertFalse(Files.exists(tempDir.resolve("features.bin.tmp")));
+        restored.stop();
+    }
+
+    @Test
+    void loadSnapshot_WithUnknownFormat_ShouldStartEmpty() throws Exception {
+        // Arrange
+        Path snapshot = tempDir.resolve("features.bin");
+        Files.write(snapshot, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+
+        // Act
+        int loaded = featureStore.loadSnapshot(snapshot);
+
+        // Assert
+        assertEquals(0, loaded);
+        assertEquals(0, featureStore.getSize());
+    }
+}
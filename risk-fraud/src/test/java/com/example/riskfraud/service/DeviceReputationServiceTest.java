@@ -0,0 +1,160 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DeviceReputationServiceTest {
+
+    private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+    @TempDir Path tempDir;
+
+    private DeviceReputationService deviceReputationService;
+
+    @BeforeEach
+    void setUp() {
+        deviceReputationService = new DeviceReputationService(10_000, 0.01, 2, 1, "", 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deviceReputationService.stop();
+    }
+
+    @Test
+    void recordDevice_ThenIsKnownDevice_ShouldReturnTrue() {
+        // Act
+        deviceReputationService.recordDevice("device-1");
+
+        // Assert
+        assertTrue(deviceReputationService.isKnownDevice("device-1"));
+        assertFalse(deviceReputationService.isKnownDevice("device-2"));
+        assertFalse(deviceReputationService.isKnownDevice(null));
+        assertEquals(1, deviceReputationService.getApproximateDeviceCount());
+    }
+
+    @Test
+    void isKnownDevice_WithUnseenDevices_ShouldStayNearFalsePositiveRate() {
+        // Arrange
+        for (int i = 0; i < 10_000; i++) {
+            deviceReputationService.recordDevice("seen-" + i);
+        }
+
+        // Act
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (deviceReputationService.isKnownDevice("unseen-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // Assert: each of the 2 generations may contribute up to 1%, only one is filled here
+        assertTrue(falsePositives < 1_500, "False positives: " + falsePositives);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(deviceReputationService.isKnownDevice("seen-" + i));
+        }
+    }
+
+    @Test
+    void rotateIfDue_AfterAllGenerations_ShouldForgetDevice() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        deviceReputationService.recordDevice("device-1");
+
+        // Act & Assert
+        assertFalse(deviceReputationService.rotateIfDue(now + HOUR_MILLIS / 2));
+        assertTrue(deviceReputationService.rotateIfDue(now + HOUR_MILLIS));
+        assertTrue(deviceReputationService.isKnownDevice("device-1"));
+        assertTrue(deviceReputationService.rotateIfDue(now + 2 * HOUR_MILLIS));
+        assertFalse(deviceReputationService.isKnownDevice("device-1"));
+    }
+
+    @Test
+    void rotateIfDue_WhenGenerationIsFull_ShouldRotateEarly() {
+        // Arrange
+        deviceReputationService = new DeviceReputationService(100, 0.01, 3, 1, "", 0);
+        for (int i = 0; i < 150; i++) {
+            deviceReputationService.recordDevice("device-" + i);
+        }
+
+        // Act
+        boolean rotated = deviceReputationService.rotateIfDue(System.currentTimeMillis());
+
+        // Assert
+        assertTrue(rotated);
+        assertTrue(deviceReputationService.isKnownDevice("device-0"));
+    }
+
+    @Test
+    void markBadDevice_ThenClear_ShouldUpdateKnownBadDevices() {
+        // Act & Assert
+        deviceReputationService.markBadDevice("device-1");
+        assertTrue(deviceReputationService.isKnownBadDevice("device-1"));
+        assertFalse(deviceReputationService.isKnownBadDevice("device-2"));
+        assertTrue(deviceReputationService.clearBadDevice("device-1"));
+        assertFalse(deviceReputationService.isKnownBadDevice("device-1"));
+        assertThrows(
+                IllegalArgumentException.class, () -> deviceReputationService.markBadDevice(" "));
+    }
+
+    @Test
+    void recordDevice_FromConcurrentThreads_ShouldKeepAllDevices() throws Exception {
+        // Arrange
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 2_000; i++) {
+                                    deviceReputationService.recordDevice(thread + "-" + i);
+                                }
+                            }));
+        }
+
+        // Act
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 2_000; i++) {
+                assertTrue(deviceReputationService.isKnownDevice(t + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    void writeSnapshot_ThenLoadSnapshot_ShouldRestoreDevices() throws Exception {
+        // Arrange
+        Path snapshot = tempDir.resolve("devices.bin");
+        deviceReputationService.recordDevice("device-1");
+        deviceReputationService.markBadDevice("device-2");
+
+        // Act
+        deviceReputationService.writeSnapshot(snapshot);
+        DeviceReputationService restored = new DeviceReputationService(10_000, 0.01, 2, 1, "", 0);
+        restored.loadSnapshot(snapshot);
+        DeviceReputationService resized = new DeviceReputationService(20_000, 0.01, 2, 1, "", 0);
+        resized.loadSnapshot(snapshot);
+
+        // Assert
+        assertTrue(restored.isKnownDevice("device-1"));
+        assertTrue(restored.isKnownBadDevice("device-2"));
+        assertFalse(resized.isKnownDevice("device-1"));
+        assertTrue(resized.isKnownBadDevice("device-2"));
+        restored.stop();
+        resized.stop();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.EntityCluster;
+import com.example.riskfraud.model.Transaction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EntityLinkServiceTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long HOUR = 3_600_000L;
+
+    private EntityLinkService entityLinkService;
+
+    @BeforeEach
+    void setUp() {
+        entityLinkService = new EntityLinkService(1024, 3, 24, 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityLinkService.stop();
+    }
+
+    @Test
+    void getCluster_WithCardsSharingDevicesAndEmails_ShouldLinkThemTransitively() {
+        // Arrange: card 1 and 2 share a device, card 2 and 3 share an email
+        entityLinkService.recordAttempt(transaction(1, "device-a", "10.0.0.1", null), NOW);
+        entityLinkService.recordAttempt(transaction(2, "device-a", "10.0.0.2", "x@y.com"), NOW);
+        entityLinkService.recordAttempt(transaction(3, "device-b", "10.0.0.3", "X@Y.com "), NOW);
+        entityLinkService.recordAttempt(transaction(4, "device-c", "10.0.0.4", null), NOW);
+        entityLinkService.recordDecline(transaction(1, null, null, null));
+        entityLinkService.recordChargeback(transaction(3, null, null, null));
+
+        // Act
+        EntityCluster ring = entityLinkService.getCluster(transaction(1, null, null, null));
+        EntityCluster single = entityLinkService.getCluster(transaction(4, null, null, null));
+
+        // Assert
+        assertEquals(3, ring.getCards());
+        assertEquals(9, ring.getEntities());
+        assertEquals(3, ring.getTransactions());
+        assertEquals(1, ring.getFailures());
+        assertEquals(1, ring.getChargebacks());
+        assertEquals(1.0 / 3, ring.getFailureRate(), 1e-12);
+        assertEquals(1, single.getCards());
+        assertEquals(0, single.getChargebacks());
+    }
+
+    @Test
+    void getCluster_WithUnlinkedEntities_ShouldSumTheClustersTheTransactionWouldJoin() {
+        // Arrange
+        entityLinkService.recordAttempt(transaction(1, "device-a", null, null), NOW);
+        entityLinkService.recordAttempt(transaction(2, "device-b", null, null), NOW);
+
+        // Act
+        EntityCluster cluster =
+                entityLinkService.getCluster(transaction(3, "device-a", "10.0.0.9", null));
+        EntityCluster both =
+                entityLinkService.getCluster(transaction(1, "device-b", null, null));
+        EntityCluster unknown =
+                entityLinkService.getCluster(transaction(99, "device-z", null, null));
+
+        // Assert
+        assertEquals(1, cluster.getCards());
+        assertEquals(2, both.getCards());
+        assertEquals(2, both.getTransactions());
+        assertEquals(0, unknown.getEntities());
+    }
+
+    @Test
+    void recordAttempt_WithSharedIpAddress_ShouldStopLinkingAfterMaxLinks() {
+        // Act: five cards behind one NAT address, which may link at most 3 of them
+        for (long card = 1; card <= 5; card++) {
+            entityLinkService.recordAttempt(transaction(card, null, "10.0.0.1", null), NOW);
+        }
+
+        // Assert
+        assertEquals(3, entityLinkService.getCluster(transaction(1, null, null, null)).getCards());
+        assertEquals(1, entityLinkService.getCluster(transaction(4, null, null, null)).getCards());
+        assertEquals(1, entityLinkService.getCluster(transaction(5, null, null, null)).getCards());
+    }
+
+    @Test
+    void compact_WithStaleEntities_ShouldRemoveThemAndKeepClusterCounts() {
+        // Arrange
+        entityLinkService.recordAttempt(transaction(1, "device-a", null, null), NOW);
+        entityLinkService.recordAttempt(transaction(2, "device-a", null, null), NOW + 10 * HOUR);
+        entityLinkService.recordChargeback(transaction(2, null, null, null));
+        entityLinkService.recordAttempt(transaction(3, "device-b", null, null), NOW);
+
+        // Act
+        int removed = entityLinkService.compact(NOW + 5 * HOUR, Integer.MAX_VALUE);
+
+        // Assert
+        assertEquals(3, removed);
+        assertEquals(2, entityLinkService.getEntityCount());
+        EntityCluster cluster = entityLinkService.getCluster(transaction(2, null, null, null));
+        assertEquals(1, cluster.getCards());
+        assertEquals(2, cluster.getEntities());
+        assertEquals(2, cluster.getTransactions());
+        assertEquals(1, cluster.getChargebacks());
+        assertEquals(0, entityLinkService.getCluster(transaction(1, null, null, null)).getCards());
+        assertEquals(0, entityLinkService.getCluster(transaction(3, null, null, null)).getCards());
+    }
+
+    @Test
+    void recordAttempt_WhenGraphIsFull_ShouldSkipLinksAndCompactToLeastRecentlySeen()
+            throws Exception {
+        // Act
+        for (long card = 1; card <= 600; card++) {
+            entityLinkService.recordAttempt(
+                    transaction(card, "device-" + card, null, null), NOW + card);
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (entityLinkService.getCompactions() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Assert
+        assertTrue(entityLinkService.getSkippedLinks() > 0);
+        assertEquals(1, entityLinkService.getCompactions());
+        assertTrue(entityLinkService.getEntityCount() < 1024);
+        assertEquals(0, entityLinkService.getCluster(transaction(1, null, null, null)).getCards());
+        assertEquals(
+                1, entityLinkService.getCluster(transaction(500, null, null, null)).getCards());
+    }
+
+    @Test
+    void compact_WhileRecordingAttempts_ShouldKeepTheAttemptsMadeDuringIt() throws Exception {
+        // Arrange: compact continuously, keeping every entity
+        AtomicBoolean done = new AtomicBoolean();
+        Thread compactor =
+                new Thread(
+                        () -> {
+                            while (!done.get()) {
+                                entityLinkService.compact(0L, Integer.MAX_VALUE);
+                            }
+                        });
+        compactor.start();
+
+        // Act
+        for (long card = 1; card <= 400; card++) {
+            Transaction transaction = transaction(card, "device-" + card, null, null);
+            entityLinkService.recordAttempt(transaction, NOW + card);
+            entityLinkService.recordChargeback(transaction);
+        }
+        done.set(true);
+        compactor.join();
+
+        // Assert
+        assertEquals(800, entityLinkService.getEntityCount());
+        for (long card = 1; card <= 400; card++) {
+            EntityCluster cluster =
+                    entityLinkService.getCluster(transaction(card, null, null, null));
+            assertEquals(2, cluster.getEntities());
+            assertEquals(1, cluster.getTransactions());
+            assertEquals(1, cluster.getChargebacks());
+        }
+    }
+
+    private static Transaction transaction(
+            long cardFingerprint, String deviceId, String ipAddress, String email) {
+        return Transaction.builder()
+                .cardFingerprint(cardFingerprint)
+                .userDeviceId(deviceId)
+                .userIpAddress(ipAddress)
+                .userEmail(email)
+                .build();
+    }
+}
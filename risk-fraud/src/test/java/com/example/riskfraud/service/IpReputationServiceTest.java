@@ -0,0 +1,180 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.IpReputation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+public class IpReputationServiceTest {
+
+    @TempDir Path tempDir;
+
+    private final RiskMaintenanceScheduler scheduler = new RiskMaintenanceScheduler();
+    private IpReputationService ipReputationService;
+
+    @BeforeEach
+    void setUp() {
+        ipReputationService = new IpReputationService("", 0, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ipReputationService.stop();
+        scheduler.stop();
+    }
+
+    @Test
+    void lookup_WithIpv4Blocks_ShouldReturnMostSpecificBlock() throws Exception {
+        // Arrange
+        load(
+                "# Test list",
+                "198.51.100.0/24 VPN",
+                "198.51.100.64/26 CLEAN",
+                "198.51.100.70 TOR",
+                "10.0.0.0/8,PROXY");
+
+        // Act & Assert
+        assertEquals(IpReputation.VPN, ipReputationService.lookup("198.51.100.1"));
+        assertEquals(IpReputation.CLEAN, ipReputationService.lookup("198.51.100.65"));
+        assertEquals(IpReputation.TOR, ipReputationService.lookup("198.51.100.70"));
+        assertEquals(IpReputation.PROXY, ipReputationService.lookup("10.200.3.4"));
+        assertEquals(IpReputation.CLEAN, ipReputationService.lookup("198.51.101.1"));
+        assertEquals(4, ipReputationService.getBlockCount());
+    }
+
+    @Test
+    void lookup_WithIpv6Blocks_ShouldMatchAllAddressForms() throws Exception {
+        // Arrange
+        load("2001:db8::/32 PROXY", "2001:db8:0:1::/64 TOR", "::1/128 VPN");
+
+        // Act & Assert
+        assertEquals(IpReputation.PROXY, ipReputationService.lookup("2001:db8:ffff::1"));
+        assertEquals(IpReputation.TOR, ipReputationService.lookup("2001:0DB8:0000:0001:0:0:0:2"));
+        assertEquals(IpReputation.TOR, ipReputationService.lookup("2001:db8:0:1::2%eth0"));
+        assertEquals(IpReputation.VPN, ipReputationService.lookup("::1"));
+        assertEquals(IpReputation.CLEAN, ipReputationService.lookup("2001:db9::1"));
+        assertEquals(IpReputation.CLEAN, ipReputationService.lookup("::"));
+    }
+
+    @Test
+    void lookup_WithIpv4MappedAddress_ShouldUseIpv4Blocks() throws Exception {
+        // Arrange
+        load("203.0.113.0/24 TOR");
+
+        // Act & Assert
+        assertEquals(IpReputation.TOR, ipReputationService.lookup("::ffff:203.0.113.9"));
+        assertEquals(IpReputation.TOR, ipReputationService.lookup("::ffff:cb00:7109"));
+        assertEquals(IpReputation.CLEAN, ipReputationService.lookup("::ffff:203.0.114.9"));
+    }
+
+    @Test
+    void lookup_WithInvalidAddress_ShouldReturnClean() throws Exception {
+        // Arrange
+        load("0.0.0.0/0 VPN", "::/0 VPN");
+
+        // Act & Assert
+        for (String address :
+                new String[] {
+                    null, "", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.4 ", "1::2::3", ":1::2",
+                    "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "12345::1", "1:", "g::1", "::1.2.3"
+                }) {
+            assertEquals(IpReputation.CLEAN, ipReputationService.lookup(address), address);
+        }
+        assertEquals(IpReputation.VPN, ipReputationService.lookup("1.2.3.4"));
+        assertEquals(IpReputation.VPN, ipReputationService.lookup("1:2:3:4:5:6:7:8"));
+    }
+
+    @Test
+    void reload_WithInvalidEntriesOrMissingFile_ShouldKeepValidBlocks() throws Exception {
+        // Arrange
+        Path list =
+                load(
+                        "198.51.100.0/24 VPN",
+                        "198.51.100.0/33 VPN",
+                        "198.51.100.0/24 UNKNOWN",
+                        "not-an-address PROXY",
+                        "203.0.113.0/24");
+        assertEquals(1, ipReputationService.getBlockCount());
+
+        // Act
+        boolean reloaded = ipReputationService.reload(tempDir.resolve("missing.txt"));
+
+        // Assert
+        assertFalse(reloaded);
+        assertEquals(IpReputation.VPN, ipReputationService.lookup("198.51.100.1"));
+
+        // Act
+        Files.write(list, List.of("203.0.113.0/24 PROXY"));
+        assertTrue(ipReputationService.reload(list));
+
+        // Assert
+        assertEquals(IpReputation.CLEAN, ipReputationService.lookup("198.51.100.1"));
+        assertEquals(IpReputation.PROXY, ipReputationService.lookup("203.0.113.1"));
+    }
+
+    @Test
+    void lookup_WithManyBlocks_ShouldMatchLinearScan() {
+        // Arrange
+        Random random = new Random(7);
+        int count = 2_000;
+        long[] prefixes = new long[count];
+        int[] lengths = new int[count];
+        int[] values = new int[count];
+        CidrTrie.Builder builder = new CidrTrie.Builder(32);
+        for (int i = 0; i < count; i++) {
+            lengths[i] = 8 + random.nextInt(25);
+            // Half of the blocks are packed into 10.0.0.0/16, deep enough for stride tables
+            long prefix = (long) random.nextInt() << 32;
+            if (i % 2 == 0) {
+                prefix = (10L << 56) | (prefix & 0x0000FFFF00000000L);
+            }
+            prefixes[i] = CidrTrie.maskHi(prefix, lengths[i]);
+            values[i] = random.nextInt(4);
+            builder.add(prefixes[i], 0L, lengths[i], values[i]);
+        }
+        CidrTrie trie = builder.build();
+        assertTrue(trie.strideTableCount() > 0);
+
+        for (int probe = 0; probe < 20_000; probe++) {
+            // Probe inside a known block half of the time, so that long prefixes are hit as well
+            long address = (long) random.nextInt() << 32;
+            if (random.nextBoolean()) {
+                int block = random.nextInt(count);
+                address =
+                        prefixes[block]
+                                | (address & ~CidrTrie.maskHi(-1L, lengths[block]));
+            }
+
+            // Act
+            int actual = trie.lookup(address, 0L);
+
+            // Assert
+            int expected = CidrTrie.NO_MATCH;
+            int bestLength = -1;
+            for (int i = 0; i < count; i++) {
+                if (lengths[i] >= bestLength
+                        && CidrTrie.matches(address, 0L, prefixes[i], 0L, lengths[i])) {
+                    expected = values[i];
+                    bestLength = lengths[i];
+                }
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    private Path load(String... lines) throws Exception {
+        Path list = tempDir.resolve("ip-reputation.txt");
+        Files.write(list, List.of(lines));
+        assertTrue(ipReputationService.reload(list));
+        return list;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.MerchantRiskProfile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MerchantRiskProfileRegistryTest {
+
+    @TempDir Path tempDir;
+
+    private final RiskMaintenanceScheduler scheduler = new RiskMaintenanceScheduler();
+    private MerchantRiskProfileRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MerchantRiskProfileRegistry("", 0, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.stop();
+        scheduler.stop();
+    }
+
+    @Test
+    void getRisk_WithDefaultProfiles_ShouldUseCategoryBaseline() {
+        // Act & Assert
+        assertEquals(0.05, registry.getRisk("merchant-1", "5411"), 1e-12);
+        assertEquals(0.15, registry.getRisk("merchant-1", "5941"), 1e-12);
+        assertEquals(0.25, registry.getRisk("merchant-1", "6051"), 1e-12);
+        assertEquals(0.1, registry.getRisk("merchant-1", "7011"), 1e-12);
+        assertEquals(0.1, registry.getRisk("merchant-1", "default"), 1e-12);
+        assertEquals(0.1, registry.getRisk(null, null), 1e-12);
+        assertEquals(0.0, registry.getChargebackRatio("merchant-1"), 1e-12);
+    }
+
+    @Test
+    void updateMerchant_WithOverride_ShouldTakePrecedenceOverCategory() {
+        // Act
+        registry.updateMerchant("merchant-1", 0.6, 0.02);
+        registry.updateMerchant("merchant-2", null, 0.005);
+
+        // Assert
+        assertEquals(0.6, registry.getRisk("merchant-1", "5411"), 1e-12);
+        assertEquals(0.02, registry.getChargebackRatio("merchant-1"), 1e-12);
+        assertEquals(0.05, registry.getRisk("merchant-2", "5411"), 1e-12);
+        assertEquals(0.005, registry.getChargebackRatio("merchant-2"), 1e-12);
+        MerchantRiskProfile profile = registry.getProfile("merchant-2");
+        assertNull(profile.getRiskScore());
+        assertEquals(2, registry.getMerchantCount());
+
+        assertTrue(registry.removeMerchant("merchant-1"));
+        assertFalse(registry.removeMerchant("merchant-1"));
+        assertEquals(0.05, registry.getRisk("merchant-1", "5411"), 1e-12);
+        assertNull(registry.getProfile("merchant-1"));
+        assertThrows(
+                IllegalArgumentException.class, () -> registry.updateMerchant("m", 1.5, 0.0));
+        assertThrows(
+                IllegalArgumentException.class, () -> registry.updateMerchant(" ", 0.5, 0.0));
+    }
+
+    @Test
+    void reload_WithManyMerchants_ShouldFindEachProfile() throws Exception {
+        // Arrange
+        List<String> lines = new ArrayList<>();
+        lines.add("default 0.2");
+        for (int mcc = 0; mcc < 10000; mcc += 7) {
+            lines.add("mcc " + mcc + " " + (mcc % 100) / 100.0);
+        }
+        for (int i = 0; i < 20000; i++) {
+            lines.add("merchant m" + i + " " + (i % 2 == 0 ? "-" : (i % 1000) / 1000.0) + " 0.001");
+        }
+        Path profiles = tempDir.resolve("merchants.profiles");
+        Files.write(profiles, lines);
+
+        // Act
+        assertTrue(registry.reload(profiles));
+
+        // Assert
+        assertEquals(20000, registry.getMerchantCount());
+        for (int i = 0; i < 20000; i++) {
+            double expected = i % 2 == 0 ? (7 % 100) / 100.0 : (i % 1000) / 1000.0;
+            assertEquals(expected, registry.getRisk("m" + i, "0007"), 1e-12);
+        }
+        for (int mcc = 0; mcc < 10000; mcc++) {
+            double expected = mcc % 7 == 0 ? (mcc % 100) / 100.0 : 0.2;
+            assertEquals(expected, registry.getRisk("unknown", String.valueOf(mcc)), 1e-12);
+        }
+        assertEquals(0.0, registry.getChargebackRatio("m20000"), 1e-12);
+    }
+
+    @Test
+    void reload_WithInvalidFile_ShouldKeepPreviousProfiles() throws Exception {
+        // Arrange
+        Path profiles = tempDir.resolve("merchants.profiles");
+
+        // Act & Assert
+        assertInvalid(profiles, "Line 2: Invalid MCC '54111'", "default 0.1", "mcc 54111 0.2");
+        assertInvalid(profiles, "Line 1: Expected a number between 0 and 1", "mcc 5411 2");
+        assertInvalid(profiles, "Line 1: Expected 'merchant", "merchant m1");
+        assertInvalid(profiles, "Line 1: Expected 'default', 'mcc' or 'merchant'", "bin 4111 0.1");
+        assertEquals(0.05, registry.getRisk("merchant-1", "5411"), 1e-12);
+    }
+
+    private void assertInvalid(Path profiles, String expectedMessage, String... lines)
+            throws Exception {
+        IllegalArgumentException exception =
+                assertThrows(
+                        IllegalArgumentException.class,
+                        () -> MerchantProfileTable.parse(List.of(lines)));
+        assertTrue(
+                exception.getMessage().startsWith(expectedMessage),
+                "Unexpected message: " + exception.getMessage());
+
+        Files.write(profiles, List.of(lines));
+        assertFalse(registry.reload(profiles));
+    }
+}
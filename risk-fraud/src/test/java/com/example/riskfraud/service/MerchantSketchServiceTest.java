@@ -0,0 +1,127 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.MerchantSketchSnapshot;
+import com.example.riskfraud.model.Transaction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+public class MerchantSketchServiceTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long MINUTE = 60_000L;
+
+    private MerchantSketchService merchantSketchService;
+
+    @BeforeEach
+    void setUp() {
+        merchantSketchService = new MerchantSketchService(64, 10, 0.02, 100);
+    }
+
+    @Test
+    void getDistinctCardsLastHour_WithRepeatedCards_ShouldCountEachCardOnce() {
+        // Arrange
+        for (int attempt = 0; attempt < 5; attempt++) {
+            for (long card = 1; card <= 200; card++) {
+                merchantSketchService.record(transaction("merchant-1", card, "10.00"), NOW);
+            }
+        }
+        merchantSketchService.record(transaction("merchant-2", 1, "10.00"), NOW);
+
+        // Act
+        long merchant1 = merchantSketchService.getDistinctCardsLastHour("merchant-1", NOW);
+        long merchant2 = merchantSketchService.getDistinctCardsLastHour("merchant-2", NOW);
+
+        // Assert
+        assertEquals(200, merchant1, 200 * 0.1);
+        assertEquals(1, merchant2);
+        assertEquals(0, merchantSketchService.getDistinctCardsLastHour("unknown", NOW));
+        assertEquals(0, merchantSketchService.getDistinctCardsLastHour(null, NOW));
+    }
+
+    @Test
+    void getDistinctCardsLastHour_AfterWindow_ShouldForgetOldCards() {
+        // Arrange
+        for (long card = 1; card <= 100; card++) {
+            merchantSketchService.record(transaction("merchant-1", card, "10.00"), NOW);
+        }
+        for (long card = 101; card <= 150; card++) {
+            merchantSketchService.record(
+                    transaction("merchant-1", card, "10.00"), NOW + 40 * MINUTE);
+        }
+
+        // Act
+        long withinHour =
+                merchantSketchService.getDistinctCardsLastHour("merchant-1", NOW + 40 * MINUTE);
+        long afterHour =
+                merchantSketchService.getDistinctCardsLastHour("merchant-1", NOW + 80 * MINUTE);
+        long afterTwoHours =
+                merchantSketchService.getDistinctCardsLastHour("merchant-1", NOW + 120 * MINUTE);
+
+        // Assert
+        assertEquals(150, withinHour, 150 * 0.1);
+        assertEquals(50, afterHour, 50 * 0.1);
+        assertEquals(0, afterTwoHours);
+    }
+
+    @Test
+    void getAmountQuantile_WithEnoughAmounts_ShouldEstimatePercentiles() {
+        // Arrange
+        for (int i = 1; i <= 1000; i++) {
+            merchantSketchService.record(
+                    transaction("merchant-1", i, String.valueOf(i)), NOW + i * 1000L);
+        }
+        for (int i = 1; i < 100; i++) {
+            merchantSketchService.record(transaction("merchant-2", i, "5.00"), NOW);
+        }
+
+        // Act
+        double p50 = merchantSketchService.getAmountQuantile("merchant-1", 0.5, NOW + MINUTE);
+        double p99 = merchantSketchService.getAmountQuantile("merchant-1", 0.99, NOW + MINUTE);
+
+        // Assert
+        assertEquals(500, p50, 500 * 0.02 + 1);
+        assertEquals(990, p99, 990 * 0.02 + 1);
+        assertTrue(Double.isNaN(merchantSketchService.getAmountQuantile("merchant-2", 0.99, NOW)));
+        assertTrue(Double.isNaN(merchantSketchService.getAmountQuantile("unknown", 0.99, NOW)));
+    }
+
+    @Test
+    void record_WithMoreMerchantsThanCapacity_ShouldEvictAndStayBounded() {
+        // Act
+        for (int merchant = 0; merchant < 1000; merchant++) {
+            merchantSketchService.record(
+                    transaction("merchant-" + merchant, merchant + 1, "10.00"), NOW + merchant);
+        }
+
+        // Assert
+        assertTrue(merchantSketchService.getTrackedMerchants() <= 64);
+        assertTrue(merchantSketchService.getEvictions() >= 1000 - 64);
+        assertEquals(1, merchantSketchService.getDistinctCardsLastHour("merchant-999", NOW + 999));
+        MerchantSketchSnapshot snapshot = merchantSketchService.getSnapshot("unknown");
+        assertEquals(0, snapshot.getDistinctCardsLastHour());
+        assertNull(snapshot.getAmountP99());
+    }
+
+    @Test
+    void constructor_WithInvalidSettings_ShouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class, () -> new MerchantSketchService(4, 10, 0.02, 100));
+        assertThrows(
+                IllegalArgumentException.class, () -> new MerchantSketchService(64, 2, 0.02, 100));
+        assertThrows(
+                IllegalArgumentException.class, () -> new MerchantSketchService(64, 10, 1.0, 100));
+    }
+
+    private static Transaction transaction(String merchantId, long cardFingerprint, String amount) {
+        return Transaction.builder()
+                .amount(new BigDecimal(amount))
+                .cardFingerprint(cardFingerprint)
+                .merchantId(merchantId)
+                .build();
+    }
+}
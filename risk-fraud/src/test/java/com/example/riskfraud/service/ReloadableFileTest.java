@@ -0,0 +1,110 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReloadableFileTest {
+
+    @TempDir Path tempDir;
+
+    private final RiskMaintenanceScheduler scheduler = new RiskMaintenanceScheduler();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void reload_WithoutConfiguredFile_ShouldNotCallLoader() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        ReloadableFile file =
+                new ReloadableFile(
+                        "test file", " ", 0, scheduler, path -> loads.incrementAndGet() > 0);
+
+        // Act
+        file.start();
+        boolean reloaded = file.reload();
+
+        // Assert
+        assertFalse(file.isConfigured());
+        assertFalse(reloaded);
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void start_WithFileChangedAfterLoad_ShouldReloadOnNextCheck() throws Exception {
+        // Arrange
+        Path path = tempDir.resolve("test.txt");
+        Files.write(path, List.of("first"));
+        CountDownLatch changed = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ReloadableFile file =
+                new ReloadableFile(
+                        "test file",
+                        path.toString(),
+                        1,
+                        scheduler,
+                        loaded -> {
+                            loads.incrementAndGet();
+                            if (readLine(loaded).equals("second")) {
+                                changed.countDown();
+                            }
+                            return true;
+                        });
+
+        // Act
+        file.start();
+        Files.write(path, List.of("second"));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+
+        // Assert
+        assertTrue(changed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+        file.stop();
+    }
+
+    @Test
+    void start_WithFailedLoad_ShouldRetryOnNextCheck() throws Exception {
+        // Arrange
+        Path path = tempDir.resolve("test.txt");
+        Files.write(path, List.of("first"));
+        CountDownLatch retried = new CountDownLatch(2);
+        ReloadableFile file =
+                new ReloadableFile(
+                        "test file",
+                        path.toString(),
+                        1,
+                        scheduler,
+                        loaded -> {
+                            retried.countDown();
+                            return false;
+                        });
+
+        // Act
+        file.start();
+
+        // Assert
+        assertTrue(retried.await(5, TimeUnit.SECONDS));
+        file.stop();
+    }
+
+    private static String readLine(Path path) {
+        try {
+            return Files.readAllLines(path).get(0);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RiskBatchExecutorTest {
+
+    private RiskBatchExecutor riskBatchExecutor;
+
+    @BeforeEach
+    void setUp() {
+        riskBatchExecutor = new RiskBatchExecutor(4, 10, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        riskBatchExecutor.shutdown();
+    }
+
+    @Test
+    void map_WithLargeBatch_ShouldSplitAcrossThreadsAndKeepOrder() {
+        // Arrange
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i);
+        }
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        // Act
+        List<Integer> results =
+                riskBatchExecutor.map(
+                        items,
+                        item -> {
+                            threads.add(Thread.currentThread().getName());
+                            return item * 2;
+                        });
+
+        // Assert
+        assertEquals(1000, results.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i * 2, (int) results.get(i));
+        }
+        assertEquals(4, threads.size());
+        assertTrue(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    void map_WithSmallBatch_ShouldRunOnCallingThread() {
+        // Arrange
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        // Act
+        List<String> results =
+                riskBatchExecutor.map(
+                        List.of("a", "b", "c"),
+                        item -> {
+                            threads.add(Thread.currentThread().getName());
+                            return item.toUpperCase();
+                        });
+
+        // Assert
+        assertEquals(List.of("A", "B", "C"), results);
+        assertEquals(Set.of(Thread.currentThread().getName()), threads);
+    }
+
+    @Test
+    void map_WhenItemFails_ShouldRethrowAfterAllSlices() {
+        // Arrange
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(i);
+        }
+
+        // Act & Assert
+        IllegalArgumentException exception =
+                assertThrows(
+                        IllegalArgumentException.class,
+                        () ->
+                                riskBatchExecutor.map(
+                                        items,
+                                        item -> {
+                                            if (item == 7) {
+                                                throw new IllegalArgumentException("Bad item 7");
+                                            }
+                                            return item;
+                                        }));
+        assertEquals("Bad item 7", exception.getMessage());
+        assertEquals(List.of(), riskBatchExecutor.map(List.<Integer>of(), item -> item));
+    }
+
+    @Test
+    void constructor_WithInvalidSizes_ShouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> new RiskBatchExecutor(-1, 10, 100));
+        assertThrows(IllegalArgumentException.class, () -> new RiskBatchExecutor(2, 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new RiskBatchExecutor(2, 10, 0));
+    }
+}
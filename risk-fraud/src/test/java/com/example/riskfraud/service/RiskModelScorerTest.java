@@ -0,0 +1,101 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.RiskFeature;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class RiskModelScorerTest {
+
+    @TempDir Path tempDir;
+
+    private final RiskMaintenanceScheduler scheduler = new RiskMaintenanceScheduler();
+    private RiskModelScorer riskModelScorer;
+
+    @BeforeEach
+    void setUp() {
+        riskModelScorer = new RiskModelScorer("", 0, 0.5, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        riskModelScorer.stop();
+        scheduler.stop();
+    }
+
+    @Test
+    void blend_WithoutModel_ShouldReturnRuleScore() {
+        // Arrange
+        double[] features = new double[RiskFeature.COUNT];
+
+        // Act & Assert
+        assertEquals(0.42, riskModelScorer.blend(0.42, features), 1e-12);
+        assertTrue(Double.isNaN(riskModelScorer.score(features)));
+        assertNull(riskModelScorer.getModelVersion());
+    }
+
+    @Test
+    void score_WithModel_ShouldApplyLogisticRegression() throws Exception {
+        // Arrange
+        load("# Test model", "version v1", "intercept -2", "amount 0.001", "ip_tor 1.5");
+        double[] features = new double[RiskFeature.COUNT];
+        features[RiskFeature.AMOUNT.ordinal()] = 1000;
+        features[RiskFeature.IP_TOR.ordinal()] = 1;
+        features[RiskFeature.DEVICE_BAD.ordinal()] = 1; // Not in the model
+
+        // Act
+        double score = riskModelScorer.score(features);
+
+        // Assert
+        double expected = 1.0 / (1.0 + Math.exp(-(-2 + 1.0 + 1.5)));
+        assertEquals(expected, score, 1e-12);
+        assertEquals(0.5 * 0.2 + 0.5 * expected, riskModelScorer.blend(0.2, features), 1e-12);
+        assertEquals("v1", riskModelScorer.getModelVersion());
+    }
+
+    @Test
+    void reload_WithInvalidModel_ShouldKeepPreviousModel() throws Exception {
+        // Arrange
+        load("version v1", "intercept 0");
+
+        // Act & Assert
+        assertInvalid("Line 2: Unknown feature 'colour'", "version v2", "colour 1");
+        assertInvalid("Line 2: Duplicate feature 'amount'", "amount 1", "amount 2");
+        assertInvalid("Line 1: Invalid number 'NaN'", "intercept NaN");
+        assertInvalid("Line 1: Expected '<name> <value>'", "amount");
+        assertEquals("v1", riskModelScorer.getModelVersion());
+        assertEquals(0.5, riskModelScorer.score(new double[RiskFeature.COUNT]), 1e-12);
+    }
+
+    @Test
+    void constructor_WithInvalidBlendWeight_ShouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class, () -> new RiskModelScorer("", 0, 1.5, scheduler));
+    }
+
+    private void load(String... lines) throws Exception {
+        Path model = tempDir.resolve("risk.model");
+        Files.write(model, List.of(lines));
+        assertTrue(riskModelScorer.reload(model));
+    }
+
+    private void assertInvalid(String expectedMessage, String... lines) throws Exception {
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> RiskModel.parse(List.of(lines)));
+        assertTrue(
+                exception.getMessage().startsWith(expectedMessage),
+                "Unexpected message: " + exception.getMessage());
+
+        Path model = tempDir.resolve("invalid.model");
+        Files.write(model, List.of(lines));
+        assertFalse(riskModelScorer.reload(model));
+    }
+}
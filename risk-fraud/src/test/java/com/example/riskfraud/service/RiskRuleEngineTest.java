@@ -0,0 +1,165 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.RiskFeature;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class RiskRuleEngineTest {
+
+    @TempDir Path tempDir;
+
+    private final RiskMaintenanceScheduler scheduler = new RiskMaintenanceScheduler();
+    private RiskRuleEngine riskRuleEngine;
+
+    @BeforeEach
+    void setUp() {
+        riskRuleEngine = new RiskRuleEngine("", 0, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        riskRuleEngine.stop();
+        scheduler.stop();
+    }
+
+    @Test
+    void score_WithDefaultRulesAndNewCard_ShouldMatchBuiltInScoring() {
+        // Arrange: $50 at a grocery store, no history, known device
+        double[] features = features();
+        features[RiskFeature.AMOUNT.ordinal()] = 50;
+        features[RiskFeature.MERCHANT_CATEGORY.ordinal()] = 5411;
+        features[RiskFeature.MERCHANT_RISK.ordinal()] = 0.05;
+
+        // Act
+        double score = riskRuleEngine.score(features);
+
+        // Assert: amount 0.1 + new card 0.2 + merchant 0.05
+        assertEquals(0.35, score, 1e-9);
+    }
+
+    @Test
+    void score_WithDefaultRulesAndRiskyTransaction_ShouldCapGroups() {
+        // Arrange
+        double[] features = features();
+        features[RiskFeature.AMOUNT.ordinal()] = 20_000;
+        features[RiskFeature.PREVIOUS_SUCCESSFUL.ordinal()] = 1;
+        features[RiskFeature.PREVIOUS_FAILED.ordinal()] = 3;
+        features[RiskFeature.SUCCESS_RATE.ordinal()] = 0.25;
+        features[RiskFeature.PREVIOUS_CHARGEBACKS.ordinal()] = 2;
+        features[RiskFeature.MERCHANT_CATEGORY.ordinal()] = 6051;
+        features[RiskFeature.MERCHANT_RISK.ordinal()] = 0.25;
+        features[RiskFeature.IP_ANONYMIZING.ordinal()] = 1;
+        features[RiskFeature.IP_TOR.ordinal()] = 1;
+        features[RiskFeature.CARD_ATTEMPTS_LAST_MINUTE.ordinal()] = 5;
+
+        // Act
+        double score = riskRuleEngine.score(features);
+
+        // Assert: amount 0.35 + behavior capped at 0.3 + merchant 0.25 + TOR 0.2 + velocity 0.1
+        assertEquals(1.0, score, 1e-9);
+        features[RiskFeature.IP_TOR.ordinal()] = 0;
+        features[RiskFeature.IP_ANONYMIZING.ordinal()] = 0;
+        features[RiskFeature.CARD_ATTEMPTS_LAST_MINUTE.ordinal()] = 0;
+        features[RiskFeature.MERCHANT_CATEGORY.ordinal()] = 5411;
+        features[RiskFeature.MERCHANT_RISK.ordinal()] = 0.05;
+        assertEquals(0.7, riskRuleEngine.score(features), 1e-9);
+        features[RiskFeature.MERCHANT_CHARGEBACK_RATIO.ordinal()] = 0.02;
+        assertEquals(0.8, riskRuleEngine.score(features), 1e-9);
+    }
+
+    @Test
+    void compile_WithGroupModes_ShouldApplyFirstMatchSumAndCap() {
+        // Arrange
+        RiskRuleSet ruleSet =
+                RiskRuleSet.compile(
+                        List.of(
+                                "group first first",
+                                "rule 0.1 when amount > 10 # comment",
+                                "rule 0.2 when amount > 5",
+                                "",
+                                "group sum sum cap 0.25",
+                                "rule 0.1 when merchant_category in 1,2,3",
+                                "rule 0.2 when merchant_category != 4 and recurring == 1",
+                                "rule 0.01*card_attempts_last_hour"));
+        double[] features = features();
+
+        // Act & Assert
+        assertEquals(2, ruleSet.getGroupCount());
+        assertEquals(5, ruleSet.getRuleCount());
+        features[RiskFeature.AMOUNT.ordinal()] = 20;
+        assertEquals(0.1, ruleSet.score(features), 1e-9);
+        features[RiskFeature.AMOUNT.ordinal()] = 8;
+        features[RiskFeature.MERCHANT_CATEGORY.ordinal()] = 2;
+        assertEquals(0.3, ruleSet.score(features), 1e-9);
+        features[RiskFeature.CARD_ATTEMPTS_LAST_HOUR.ordinal()] = 3;
+        assertEquals(0.33, ruleSet.score(features), 1e-9);
+        features[RiskFeature.RECURRING.ordinal()] = 1;
+        assertEquals(0.45, ruleSet.score(features), 1e-9);
+    }
+
+    @Test
+    void compile_WithInvalidRules_ShouldReportLineNumber() {
+        assertCompileError("Line 1: Rule must follow a group", "rule 0.1");
+        assertCompileError(
+                "Line 2: Unknown feature 'colour'", "group a sum", "rule 0.1 when colour == 1");
+        assertCompileError(
+                "Line 2: Unknown operator '=~'", "group a sum", "rule 0.1 when amount =~ 1");
+        assertCompileError("Line 1: Group mode", "group a max");
+        assertCompileError("Line 2: Invalid number 'x'", "group a sum", "rule x");
+        assertCompileError(
+                "Line 2: Expected 'and", "group a sum", "rule 0.1 when amount > 1 or");
+        assertCompileError("Line 2: Expected a condition", "group a sum", "rule 0.1 when");
+    }
+
+    @Test
+    void reload_WithChangedFile_ShouldSwapRulesAndKeepThemOnError() throws Exception {
+        // Arrange
+        Path rules = tempDir.resolve("custom.rules");
+        Files.write(rules, List.of("group all sum", "rule 0.5 when amount > 100"));
+        double[] features = features();
+        features[RiskFeature.AMOUNT.ordinal()] = 200;
+
+        // Act & Assert
+        assertTrue(riskRuleEngine.reload(rules));
+        assertEquals(1, riskRuleEngine.getRuleCount());
+        assertEquals(0.5, riskRuleEngine.score(features), 1e-9);
+
+        Files.write(rules, List.of("group all sum", "rule 0.5 when amount >"));
+        assertFalse(riskRuleEngine.reload(rules));
+        assertEquals(0.5, riskRuleEngine.score(features), 1e-9);
+        assertFalse(riskRuleEngine.reload(tempDir.resolve("missing.rules")));
+        assertEquals(0.5, riskRuleEngine.score(features), 1e-9);
+    }
+
+    @Test
+    void score_WithWrongFeatureCount_ShouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> riskRuleEngine.score(new double[3]));
+    }
+
+    private static double[] features() {
+        double[] features = new double[RiskFeature.COUNT];
+        features[RiskFeature.MERCHANT_CATEGORY.ordinal()] = -1;
+        features[RiskFeature.MERCHANT_RISK.ordinal()] = 0.1;
+        features[RiskFeature.DEVICE_PRESENT.ordinal()] = 1;
+        features[RiskFeature.DEVICE_KNOWN.ordinal()] = 1;
+        return features;
+    }
+
+    private static void assertCompileError(String expectedMessage, String... lines) {
+        IllegalArgumentException exception =
+                assertThrows(
+                        IllegalArgumentException.class, () -> RiskRuleSet.compile(List.of(lines)));
+        assertTrue(
+                exception.getMessage().startsWith(expectedMessage),
+                "Unexpected message: " + exception.getMessage());
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.RiskDeadlineStatistics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RiskScoringDeadlineTest {
+
+    private static final double[] LIMITS = {100, 1000, 5000, 10000};
+    private static final double[] SCORES = {0.1, 0.15, 0.2, 0.3, 0.35};
+
+    private RiskScoringDeadline riskScoringDeadline;
+
+    @AfterEach
+    void tearDown() {
+        if (riskScoringDeadline != null) {
+            riskScoringDeadline.shutdown();
+        }
+    }
+
+    @Test
+    void score_WithinBudget_ShouldReturnScore() {
+        // Arrange
+        riskScoringDeadline = new RiskScoringDeadline(1000, 4, LIMITS, SCORES, 0.2);
+
+        // Act
+        double score = riskScoringDeadline.score(() -> 0.42);
+
+        // Assert
+        assertEquals(0.42, score, 1e-12);
+        RiskDeadlineStatistics statistics = riskScoringDeadline.getStatistics();
+        assertEquals(1, statistics.getAssessments());
+        assertEquals(0, statistics.getTimeouts());
+        assertEquals(0.0, statistics.getFallbackRate(), 1e-12);
+    }
+
+    @Test
+    void score_WhenBudgetRunsOut_ShouldReturnNaNAndInterruptScoring() throws Exception {
+        // Arrange
+        riskScoringDeadline = new RiskScoringDeadline(20, 4, LIMITS, SCORES, 0.2);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        // Act
+        long start = System.nanoTime();
+        double score =
+                riskScoringDeadline.score(
+                        () -> {
+                            try {
+                                Thread.sleep(10_000);
+                            } catch (InterruptedException e) {
+                                interrupted.countDown();
+                            }
+                            return 0.1;
+                        });
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Assert
+        assertTrue(Double.isNaN(score));
+        assertTrue(elapsedMillis < 5_000, "Waited " + elapsedMillis + " ms");
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        RiskDeadlineStatistics statistics = riskScoringDeadline.getStatistics();
+        assertEquals(1, statistics.getTimeouts());
+        assertEquals(1.0, statistics.getFallbackRate(), 1e-12);
+    }
+
+    @Test
+    void score_WhenAllThreadsBusy_ShouldFallBackImmediately() throws Exception {
+        // Arrange
+        riskScoringDeadline = new RiskScoringDeadline(20, 1, LIMITS, SCORES, 0.2);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(
+                Double.isNaN(
+                        riskScoringDeadline.score(
+                                () -> {
+                                    awaitUninterruptibly(release);
+                                    return 0.1;
+                                })));
+
+        // Act
+        double score = riskScoringDeadline.score(() -> 0.1);
+        release.countDown();
+
+        // Assert
+        assertTrue(Double.isNaN(score));
+        RiskDeadlineStatistics statistics = riskScoringDeadline.getStatistics();
+        assertEquals(2, statistics.getAssessments());
+        assertEquals(1, statistics.getTimeouts());
+        assertEquals(1, statistics.getRejections());
+    }
+
+    @Test
+    void score_WithoutBudget_ShouldScoreOnCallingThreadAndRethrowFailures() {
+        // Arrange
+        riskScoringDeadline = new RiskScoringDeadline(0, 4, LIMITS, SCORES, 0.2);
+        Thread caller = Thread.currentThread();
+
+        // Act & Assert
+        assertEquals(
+                0.3, riskScoringDeadline.score(() -> Thread.currentThread() == caller ? 0.3 : 0));
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        riskScoringDeadline.score(
+                                () -> {
+                                    throw new IllegalStateException("Store unavailable");
+                                }));
+        assertEquals(0L, riskScoringDeadline.getStatistics().getBudgetMillis());
+    }
+
+    @Test
+    void fallbackScore_ShouldAddAmountTierMerchantRiskAndMargin() {
+        // Arrange
+        riskScoringDeadline = new RiskScoringDeadline(50, 4, LIMITS, SCORES, 0.2);
+
+        // Act & Assert
+        assertEquals(0.4, riskScoringDeadline.fallbackScore(50, 0.1), 1e-12);
+        assertEquals(0.45, riskScoringDeadline.fallbackScore(100, 0.1), 1e-12);
+        assertEquals(0.6, riskScoringDeadline.fallbackScore(9999.99, 0.1), 1e-12);
+        assertEquals(0.8, riskScoringDeadline.fallbackScore(25000, 0.25), 1e-12);
+        assertEquals(1.0, riskScoringDeadline.fallbackScore(25000, 0.9), 1e-12);
+    }
+
+    @Test
+    void constructor_WithInvalidSettings_ShouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new RiskScoringDeadline(-1, 4, LIMITS, SCORES, 0.2));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new RiskScoringDeadline(50, 0, LIMITS, SCORES, 0.2));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new RiskScoringDeadline(50, 4, LIMITS, new double[] {0.1}, 0.2));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new RiskScoringDeadline(50, 4, new double[] {1000, 100}, SCORES, 0.2));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new RiskScoringDeadline(50, 4, LIMITS, SCORES, 1.5));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // Keep the thread busy like a dependency that ignores interrupts
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.RiskFeature;
+import com.example.riskfraud.model.ShadowEvaluationStatistics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ShadowRiskEvaluatorTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    void publish_WithoutCandidates_ShouldBeNoOp() {
+        // Arrange
+        ShadowRiskEvaluator evaluator = new ShadowRiskEvaluator("", "", 16, 0);
+
+        // Act & Assert
+        assertFalse(evaluator.publish(new double[RiskFeature.COUNT], 0.5));
+        assertEquals(0, evaluator.evaluatePending());
+        assertTrue(evaluator.getStatistics().isEmpty());
+    }
+
+    @Test
+    void evaluatePending_WithCandidates_ShouldRecordDistributionAndDisagreements()
+            throws Exception {
+        // Arrange: the candidate rules score 0.8 above $1000, the model always scores 0.5
+        Path rules = write("candidate.rules", "group amount first", "rule 0.8 when amount > 1000");
+        Path model = write("candidate.model", "version m1", "intercept 0");
+        ShadowRiskEvaluator evaluator =
+                new ShadowRiskEvaluator(rules.toString(), model.toString(), 16, 0);
+        double[] features = new double[RiskFeature.COUNT];
+
+        // Act
+        features[RiskFeature.AMOUNT.ordinal()] = 5000;
+        assertTrue(evaluator.publish(features, 0.3)); // Rules disagree, model agrees
+        features[RiskFeature.AMOUNT.ordinal()] = 50;
+        assertTrue(evaluator.publish(features, 0.1)); // Both agree
+        assertTrue(evaluator.publish(features, 0.9)); // Both disagree
+        int evaluated = evaluator.evaluatePending();
+
+        // Assert
+        assertEquals(3, evaluated);
+        List<ShadowEvaluationStatistics> statistics = evaluator.getStatistics();
+        assertEquals(2, statistics.size());
+
+        ShadowEvaluationStatistics rulesStatistics = statistics.get(0);
+        assertEquals("rules", rulesStatistics.getCandidate());
+        assertEquals(3, rulesStatistics.getEvaluated());
+        assertEquals(2, rulesStatistics.getDisagreements());
+        assertEquals(2.0 / 3, rulesStatistics.getDisagreementRate(), 1e-9);
+        assertEquals(0.8 / 3, rulesStatistics.getAverageScore(), 1e-9);
+        assertEquals(1.3 / 3, rulesStatistics.getAverageProductionScore(), 1e-9);
+        assertEquals((0.5 + 0.1 + 0.9) / 3, rulesStatistics.getAverageAbsoluteDifference(), 1e-9);
+        assertEquals(2, rulesStatistics.getScoreHistogram()[0]);
+        assertEquals(1, rulesStatistics.getScoreHistogram()[16]);
+        assertEquals(1, rulesStatistics.getProductionScoreHistogram()[2]);
+        assertEquals(1, rulesStatistics.getProductionScoreHistogram()[6]);
+        assertEquals(1, rulesStatistics.getProductionScoreHistogram()[18]);
+
+        ShadowEvaluationStatistics modelStatistics = statistics.get(1);
+        assertEquals("model", modelStatistics.getCandidate());
+        assertEquals(1, modelStatistics.getDisagreements());
+        assertEquals(3, modelStatistics.getScoreHistogram()[10]);
+    }
+
+    @Test
+    void publish_WithFullQueue_ShouldDropTransactions() throws Exception {
+        // Arrange
+        Path model = write("candidate.model", "intercept 0");
+        ShadowRiskEvaluator evaluator = new ShadowRiskEvaluator("", model.toString(), 4, 0);
+        double[] features = new double[RiskFeature.COUNT];
+
+        // Act
+        int published = 0;
+        for (int i = 0; i < 10; i++) {
+            if (evaluator.publish(features, 0.1)) {
+                published++;
+            }
+        }
+
+        // Assert
+        assertEquals(4, published);
+        assertEquals(4, evaluator.evaluatePending());
+        assertEquals(6, evaluator.getStatistics().get(0).getDropped());
+        assertTrue(evaluator.publish(features, 0.1));
+    }
+
+    @Test
+    void shadowQueue_WithConcurrentProducersAndConsumers_ShouldDeliverEachEntryOnce()
+            throws Exception {
+        // Arrange
+        ShadowQueue queue = new ShadowQueue(64, 2);
+        int producers = 4;
+        int perProducer = 20_000;
+        AtomicLong consumedSum = new AtomicLong();
+        AtomicLong consumedCount = new AtomicLong();
+        AtomicLong mismatches = new AtomicLong();
+        Thread[] threads = new Thread[producers + 2];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] =
+                    new Thread(
+                            () -> {
+                                double[] entry = new double[2];
+                                for (int i = 1; i <= perProducer; i++) {
+                                    entry[0] = producer;
+                                    entry[1] = i;
+                                    while (!queue.offer(entry, producer * 1_000_000 + i)) {
+                                        Thread.onSpinWait();
+                                    }
+                                }
+                            });
+        }
+        for (int c = producers; c < threads.length; c++) {
+            threads[c] =
+                    new Thread(
+                            () -> {
+                                double[] entry = new double[2];
+                                while (consumedCount.get() < (long) producers * perProducer) {
+                                    double score = queue.poll(entry);
+                                    if (Double.isNaN(score)) {
+                                        Thread.onSpinWait();
+                                        continue;
+                                    }
+                                    // The entry must be the one written together with its score
+                                    if (entry[0] * 1_000_000 + entry[1] != score) {
+                                        mismatches.incrementAndGet();
+                                    }
+                                    consumedSum.addAndGet((long) entry[1]);
+                                    consumedCount.incrementAndGet();
+                                }
+                            });
+        }
+
+        // Act
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30_000);
+        }
+
+        // Assert
+        assertEquals((long) producers * perProducer, consumedCount.get());
+        assertEquals(0, mismatches.get());
+        assertEquals((long) producers * perProducer * (perProducer + 1) / 2, consumedSum.get());
+        assertEquals(0, queue.size());
+    }
+
+    private Path write(String name, String... lines) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.write(path, List.of(lines));
+        return path;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.riskfraud.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.riskfraud.model.Transaction;
+import com.example.riskfraud.model.VelocityDimension;
+import com.example.riskfraud.model.VelocitySnapshot;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VelocityServiceTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private VelocityService velocityService;
+
+    @BeforeEach
+    void setUp() {
+        velocityService = new VelocityService(64);
+    }
+
+    @Test
+    void recordAttempt_ThenGetVelocity_ShouldCountAllWindows() {
+        // Arrange
+        Transaction transaction = transaction(42L, "10.00");
+
+        // Act
+        velocityService.recordAttempt(transaction, NOW);
+        velocityService.recordAttempt(transaction, NOW + 1_000);
+        VelocitySnapshot snapshot =
+                velocityService.getVelocity(transaction, VelocityDimension.CARD, NOW + 2_000);
+
+        // Assert
+        assertEquals(2, snapshot.getAttemptsLastMinute());
+        assertEquals(2, snapshot.getAttemptsLastHour());
+        assertEquals(2, snapshot.getAttemptsLast24Hours());
+        assertEquals(2_000, snapshot.getAmountLastMinute());
+        assertEquals(2_000, snapshot.getAmountLast24Hours());
+        assertEquals(0, snapshot.getDeclinesLastHour());
+    }
+
+    @Test
+    void getVelocity_AfterWindowElapses_ShouldExpireOldBuckets() {
+        // Arrange
+        Transaction transaction = transaction(42L, "10.00");
+        velocityService.recordAttempt(transaction, NOW);
+
+        // Act
+        VelocitySnapshot afterTwoMinutes =
+                velocityService.getVelocity(
+                        transaction, VelocityDimension.CARD, NOW + 2 * 60_000L);
+        VelocitySnapshot afterTwoHours =
+                velocityService.getVelocity(
+                        transaction, VelocityDimension.CARD, NOW + 2 * 3_600_000L);
+        VelocitySnapshot afterTwoDays =
+                velocityService.getVelocity(
+                        transaction, VelocityDimension.CARD, NOW + 2 * 86_400_000L);
+
+        // Assert
+        assertEquals(0, afterTwoMinutes.getAttemptsLastMinute());
+        assertEquals(1, afterTwoMinutes.getAttemptsLastHour());
+        assertEquals(0, afterTwoHours.getAttemptsLastHour());
+        assertEquals(1, afterTwoHours.getAttemptsLast24Hours());
+        assertEquals(0, afterTwoDays.getAttemptsLast24Hours());
+        assertEquals(0, afterTwoDays.getAmountLast24Hours());
+    }
+
+    @Test
+    void recordDecline_ShouldCountDeclinesPerDimension() {
+        // Arrange
+        Transaction transaction = transaction(42L, "10.00");
+        transaction.setUserIpAddress("203.0.113.7");
+        velocityService.recordAttempt(transaction, NOW);
+
+        // Act
+        velocityService.recordDecline(transaction, NOW + 10);
+        VelocitySnapshot card =
+                velocityService.getVelocity(transaction, VelocityDimension.CARD, NOW + 20);
+        VelocitySnapshot ip =
+                velocityService.getVelocity(transaction, VelocityDimension.IP_ADDRESS, NOW + 20);
+        VelocitySnapshot device =
+                velocityService.getVelocity(transaction, VelocityDimension.DEVICE, NOW + 20);
+
+        // Assert
+        assertEquals(1, card.getDeclinesLastMinute());
+        assertEquals(1, ip.getAttemptsLastHour());
+        assertEquals(1, ip.getDeclinesLastHour());
+        assertEquals(0, device.getAttemptsLastHour());
+    }
+
+    @Test
+    void recordAttempt_BeyondCapacity_ShouldEvictLeastRecentlySeenKeys() {
+        // Arrange
+        VelocityService smallService = new VelocityService(8);
+        Transaction active = transaction(1L, "1.00");
+
+        // Act
+        for (long card = 2; card < 200; card++) {
+            smallService.recordAttempt(active, NOW + card);
+            smallService.recordAttempt(transaction(card, "1.00"), NOW + card);
+        }
+
+        // Assert
+        assertEquals(8, smallService.getTrackedKeys(VelocityDimension.CARD));
+        assertTrue(smallService.getEvictions(VelocityDimension.CARD) > 0);
+        VelocitySnapshot snapshot =
+                smallService.getVelocity(active, VelocityDimension.CARD, NOW + 200);
+        assertEquals(198, snapshot.getAttemptsLastMinute());
+    }
+
+    @Test
+    void recordAttempt_FromManyThreads_ShouldNotLoseUpdates() throws InterruptedException {
+        // Arrange
+        Transaction transaction = transaction(42L, "1.00");
+        int threads = 8;
+        int attemptsPerThread = 10_000;
+        List<Thread> workers = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < threads; t++) {
+            Thread worker =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < attemptsPerThread; i++) {
+                                    velocityService.recordAttempt(transaction, NOW);
+                                }
+                            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Assert
+        VelocitySnapshot snapshot =
+                velocityService.getVelocity(transaction, VelocityDimension.CARD, NOW);
+        assertEquals(threads * attemptsPerThread, snapshot.getAttemptsLastMinute());
+        assertEquals(threads * attemptsPerThread * 100L, snapshot.getAmountLastMinute());
+    }
+
+    @Test
+    void getVelocity_WithoutCardFingerprint_ShouldReturnZeros() {
+        // Arrange
+        Transaction transaction = transaction(0L, "10.00");
+        velocityService.recordAttempt(transaction, NOW);
+
+        // Act
+        VelocitySnapshot snapshot =
+                velocityService.getVelocity(transaction, VelocityDimension.CARD, NOW);
+
+        // Assert
+        assertEquals(0, snapshot.getAttemptsLast24Hours());
+        assertEquals(0, velocityService.getTrackedKeys(VelocityDimension.CARD));
+        assertEquals(1, velocityService.getTrackedKeys(VelocityDimension.MERCHANT));
+    }
+
+    private static Transaction transaction(long cardFingerprint, String amount) {
+        return Transaction.builder()
+                .amount(new BigDecimal(amount))
+                .cardFingerprint(cardFingerprint)
+                .merchantId("merchant-1")
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.riskfraud.sketch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.example.shared.util.FastHash;
+
+import org.junit.jupiter.api.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    void estimate_WithManyDistinctHashes_ShouldBeWithinErrorBound() {
+        // Arrange
+        HyperLogLog sketch = new HyperLogLog(10);
+
+        // Act & Assert
+        assertEquals(0, sketch.estimate());
+        for (long i = 1; i <= 100_000; i++) {
+            sketch.add(FastHash.mix64(i));
+            if (i == 10 || i == 100 || i == 1_000 || i == 10_000 || i == 100_000) {
+                // 3 standard errors of 3.25%
+                assertEquals(i, sketch.estimate(), Math.max(1.0, i * 0.1), "After " + i);
+            }
+        }
+    }
+
+    @Test
+    void add_WithRepeatedHashes_ShouldNotChangeEstimate() {
+        // Arrange
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (long i = 0; i < 500; i++) {
+            sketch.add(FastHash.mix64(i));
+        }
+        long estimate = sketch.estimate();
+
+        // Act
+        for (int repeat = 0; repeat < 10; repeat++) {
+            for (long i = 0; i < 500; i++) {
+                sketch.add(FastHash.mix64(i));
+            }
+        }
+
+        // Assert
+        assertEquals(estimate, sketch.estimate());
+    }
+
+    @Test
+    void merge_WithOverlappingSketches_ShouldEstimateUnion() {
+        // Arrange
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        for (long i = 0; i < 20_000; i++) {
+            first.add(FastHash.mix64(i));
+        }
+        for (long i = 10_000; i < 30_000; i++) {
+            second.add(FastHash.mix64(i));
+        }
+
+        // Act
+        long unionEstimate = first.unionEstimate(second);
+        first.merge(second);
+
+        // Assert
+        assertEquals(30_000, unionEstimate, 30_000 * 0.05);
+        assertEquals(unionEstimate, first.estimate());
+        first.clear();
+        assertEquals(0, first.estimate());
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new HyperLogLog(10)));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(17));
+    }
+}
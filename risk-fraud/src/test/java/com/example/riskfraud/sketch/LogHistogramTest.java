@@ -0,0 +1,75 @@
+package com.example.riskfraud.sketch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LogHistogramTest {
+
+    @Test
+    void quantile_WithSkewedValues_ShouldBeWithinRelativeAccuracy() {
+        // Arrange
+        LogHistogram histogram = new LogHistogram(0.02, 0.01, 1e10);
+        Random random = new Random(42);
+        double[] values = new double[50_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(3 + 1.5 * random.nextGaussian());
+            histogram.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        // Act & Assert
+        for (double quantile : new double[] {0.0, 0.1, 0.5, 0.9, 0.99, 1.0}) {
+            double expected = values[(int) (quantile * (values.length - 1))];
+            double actual = histogram.quantile(quantile);
+            assertEquals(expected, actual, expected * 0.02 + 1e-9, "Quantile " + quantile);
+        }
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    void quantile_WithOutOfRangeValues_ShouldClampToEndBuckets() {
+        // Arrange
+        LogHistogram histogram = new LogHistogram(0.05, 1, 1000);
+
+        // Act
+        histogram.add(0);
+        histogram.add(-5);
+        histogram.add(1e9);
+        histogram.add(Double.NaN);
+
+        // Assert
+        assertEquals(3, histogram.getCount());
+        assertEquals(1.0, histogram.quantile(0.0), 1e-12);
+        assertEquals(1000, histogram.quantile(1.0), 1000 * 0.05);
+        assertTrue(Double.isNaN(new LogHistogram(0.05, 1, 1000).quantile(0.5)));
+    }
+
+    @Test
+    void merge_WithTwoHistograms_ShouldMatchUnionQuantiles() {
+        // Arrange
+        LogHistogram first = new LogHistogram(0.05, 0.01, 1e10);
+        LogHistogram second = new LogHistogram(0.05, 0.01, 1e10);
+        for (int i = 1; i <= 1000; i++) {
+            first.add(i);
+            second.add(i * 10.0);
+        }
+
+        // Act
+        double unionMedian = first.unionQuantile(second, 0.5);
+        first.merge(second);
+
+        // Assert
+        assertEquals(unionMedian, first.quantile(0.5), 1e-12);
+        assertEquals(2000, first.getCount());
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> first.merge(new LogHistogram(0.02, 0.01, 1e10)));
+        assertThrows(IllegalArgumentException.class, () -> first.quantile(1.5));
+        assertThrows(IllegalArgumentException.class, () -> new LogHistogram(0, 1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new LogHistogram(0.05, 10, 1));
+    }
+}
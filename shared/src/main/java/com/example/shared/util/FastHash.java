@@ -0,0 +1,96 @@
+package com.example.shared.util;
+
+/**
+ * Fast, allocation-free, non-cryptographic 64-bit hashing used for bucketing, sketches and
+ * in-memory keys. The mixing follows MurmurHash3's 64-bit block and finalizer steps.
+ *
+ * <p>These hashes are deterministic across JVMs and restarts, but they are NOT suitable for
+ * protecting sensitive values: never use them as a substitute for a keyed cryptographic hash.
+ */
+public final class FastHash {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private FastHash() {}
+
+    /**
+     * Hashes a character sequence with a seed of zero.
+     *
+     * @param value The value to hash (null hashes to 0)
+     * @return The 64-bit hash
+     */
+    public static long hash64(CharSequence value) {
+        return hash64(value, 0L);
+    }
+
+    /**
+     * Hashes a character sequence with the given seed. Four UTF-16 chars are consumed per round.
+     *
+     * @param value The value to hash (null hashes to 0)
+     * @param seed The seed, e.g. to give independent hash functions per experiment
+     * @return The 64-bit hash
+     */
+    public static long hash64(CharSequence value, long seed) {
+        if (value == null) {
+            return 0L;
+        }
+
+        int length = value.length();
+        long h = seed;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long k =
+                    value.charAt(i)
+                            | (long) value.charAt(i + 1) << 16
+                            | (long) value.charAt(i + 2) << 32
+                            | (long) value.charAt(i + 3) << 48;
+            h ^= mixBlock(k);
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+
+        if (i < length) {
+            long k = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                k |= (long) value.charAt(i) << shift;
+            }
+            h ^= mixBlock(k);
+        }
+
+        return mix64(h ^ length);
+    }
+
+    /**
+     * Hashes a 64-bit value with the given seed.
+     *
+     * @param value The value to hash
+     * @param seed The seed
+     * @return The 64-bit hash
+     */
+    public static long hash64(long value, long seed) {
+        return mix64(mixBlock(value) ^ seed);
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer. Every input bit affects every output bit, which makes the
+     * result safe to reduce with a modulo or a mask.
+     *
+     * @param h The value to mix
+     * @return The mixed value
+     */
+    public static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long mixBlock(long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        return k;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.shared.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes values as newline-delimited JSON, one value per line, each line terminated by a newline.
+ *
+ * <p>Output is buffered until {@link #flush()} is called, so callers streaming a large response
+ * decide how often it is sent, e.g. once per chunk rather than once per line. Not thread-safe.
+ */
+public final class NdjsonWriter implements Closeable, Flushable {
+
+    private final JsonGenerator generator;
+    private final ObjectWriter writer;
+
+    /**
+     * Creates a writer for a stream, encoded as UTF-8.
+     *
+     * @param objectMapper The mapper to serialize values with
+     * @param out The stream to write to, closed with this writer
+     * @throws IOException If the generator cannot be created
+     */
+    public NdjsonWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(out);
+        // The generator separates root values with a space unless told otherwise, and the mapper
+        // flushes after every value by default
+        this.writer =
+                objectMapper
+                        .writer()
+                        .withRootValueSeparator("")
+                        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Writes a value as one line.
+     *
+     * @param value The value to write
+     * @throws IOException If the value cannot be serialized or written
+     */
+    public void write(Object value) throws IOException {
+        writer.writeValue(generator, value);
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
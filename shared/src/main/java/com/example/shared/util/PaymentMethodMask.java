@@ -0,0 +1,110 @@
+package com.example.shared.util;
+
+import com.example.shared.model.PaymentMethod;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Helpers for representing a set of {@link PaymentMethod}s as an int bitmask, with one bit per
+ * enum ordinal. A mask can be passed around, stored and combined without building collections.
+ *
+ * <p>Iterate over a mask without allocating:
+ *
+ * <pre>{@code
+ * for (int m = mask; m != 0; m &= m - 1) {
+ *     PaymentMethod method = PaymentMethodMask.methodAt(Integer.numberOfTrailingZeros(m));
+ * }
+ * }</pre>
+ */
+public final class PaymentMethodMask {
+
+    /** The mask containing no payment methods. */
+    public static final int NONE = 0;
+
+    private static final PaymentMethod[] METHODS = PaymentMethod.values();
+
+    /** The mask containing every payment method. */
+    public static final int ALL = (1 << METHODS.length) - 1;
+
+    private PaymentMethodMask() {}
+
+    /**
+     * Gets the bit for a single payment method.
+     *
+     * @param method The payment method
+     * @return The mask containing only that method
+     */
+    public static int bit(PaymentMethod method) {
+        return 1 << method.ordinal();
+    }
+
+    /**
+     * Creates a mask from payment methods.
+     *
+     * @param methods The payment methods
+     * @return The mask
+     */
+    public static int of(PaymentMethod... methods) {
+        int mask = NONE;
+        for (PaymentMethod method : methods) {
+            mask |= bit(method);
+        }
+        return mask;
+    }
+
+    /**
+     * Creates a mask from a collection of payment methods. Null collections and elements are
+     * ignored.
+     *
+     * @param methods The payment methods
+     * @return The mask
+     */
+    public static int of(Collection<PaymentMethod> methods) {
+        int mask = NONE;
+        if (methods != null) {
+            for (PaymentMethod method : methods) {
+                if (method != null) {
+                    mask |= bit(method);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Checks whether a mask contains a payment method.
+     *
+     * @param mask The mask
+     * @param method The payment method
+     * @return true if the method is in the mask
+     */
+    public static boolean contains(int mask, PaymentMethod method) {
+        return (mask & bit(method)) != 0;
+    }
+
+    /**
+     * Gets the payment method for a bit position.
+     *
+     * @param ordinal The bit position (enum ordinal)
+     * @return The payment method
+     */
+    public static PaymentMethod methodAt(int ordinal) {
+        return METHODS[ordinal];
+    }
+
+    /**
+     * Converts a mask to a set of payment methods.
+     *
+     * @param mask The mask
+     * @return A new mutable set with the methods in the mask
+     */
+    public static Set<PaymentMethod> toSet(int mask) {
+        Set<PaymentMethod> methods = EnumSet.noneOf(PaymentMethod.class);
+        for (int m = mask & ALL; m != 0; m &= m - 1) {
+            methods.add(METHODS[Integer.numberOfTrailingZeros(m)]);
+        }
+        return methods;
+    }
+}